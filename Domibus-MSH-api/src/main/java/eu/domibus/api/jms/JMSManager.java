@@ -55,6 +55,22 @@ public interface JMSManager {
 
     void sendMessageToQueue(JmsMessage message, Queue destination);
 
+    /**
+     * Tells whether the JMS server supports delaying the delivery of a message.
+     *
+     * @return true if {@link #sendMessageToQueue(JmsMessage, Queue, long)} is supported
+     */
+    boolean isDeliveryDelaySupported();
+
+    /**
+     * Sends a message to a queue, the JMS server delivering it only once the delivery delay has elapsed.
+     *
+     * @param message       the message to send
+     * @param destination   the queue
+     * @param deliveryDelay the delay in milliseconds before the message is delivered
+     */
+    void sendMessageToQueue(JmsMessage message, Queue destination, long deliveryDelay);
+
     void deleteMessages(String source, String[] messageIds);
 
     void moveMessages(String source, String destination, String[] messageIds);
@@ -67,4 +83,13 @@ public interface JMSManager {
      * @return a JmsMessage
      */
     JmsMessage consumeMessage(String source, String messageId);
+
+    /**
+     * Consumes several business messages from a source without returning them.
+     *
+     * @param source     a JMS source
+     * @param messageIds Business message ids
+     * @return the number of JMS messages consumed
+     */
+    int consumeMessages(String source, List<String> messageIds);
 }
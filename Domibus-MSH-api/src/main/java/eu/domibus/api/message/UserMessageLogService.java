@@ -6,7 +6,7 @@ package eu.domibus.api.message;
  */
 public interface UserMessageLogService {
 
-    void save(String messageId, String messageStatus, String notificationStatus, String mshRole, Integer maxAttempts, String mpc, String backendName, String endpoint);
+    void save(String messageId, String messageStatus, String notificationStatus, String mshRole, Integer maxAttempts, String mpc, String backendName, String endpoint, String receiver);
 
     void setMessageAsDeleted(String messageId);
 
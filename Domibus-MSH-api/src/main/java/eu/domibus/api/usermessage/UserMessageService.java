@@ -31,6 +31,16 @@ public interface UserMessageService {
 
     void scheduleSending(String messageId, Long delay);
 
+    /**
+     * Schedules the sending of a message claimed with a send lease. The message is only sent if its send lease is still
+     * the given one when the sender picks it up, i.e. it has not been claimed again in the meantime.
+     *
+     * @param messageId the id of the message to send
+     * @param delay     the delivery delay in milliseconds, null to send it right away
+     * @param sendLease the send lease stamped on the message when it was claimed
+     */
+    void scheduleSending(String messageId, Long delay, Date sendLease);
+
     /**
      * Gets a User Message based on the {@code messageId}
      * @param messageId User Message Identifier
@@ -9,6 +9,7 @@ import eu.domibus.jms.spi.helper.JMSSelectorUtil;
 import eu.domibus.jms.spi.helper.JmsMessageCreator;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.activemq.ScheduledMessage;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.jmx.BrokerViewMBean;
 import org.apache.activemq.broker.jmx.QueueViewMBean;
@@ -126,6 +127,17 @@ public class InternalJMSManagerActiveMQ implements InternalJMSManager {
         jmsOperations.send(destination, new JmsMessageCreator(message));
     }
 
+    @Override
+    public boolean isDeliveryDelaySupported() {
+        return brokerService.isSchedulerSupport();
+    }
+
+    @Override
+    public void sendMessage(InternalJmsMessage message, Destination destination, long deliveryDelay) {
+        message.getProperties().put(ScheduledMessage.AMQ_SCHEDULED_DELAY, deliveryDelay);
+        sendMessage(message, destination);
+    }
+
     @Override
     public void deleteMessages(String source, String[] messageIds) {
         try {
@@ -285,6 +297,16 @@ public class InternalJMSManagerActiveMQ implements InternalJMSManager {
         return intJmsMsg;
     }
 
+    @Override
+    public int consumeMessages(String source, List<String> customMessageIds) {
+        String selector = jmsSelectorUtil.getSelector("MESSAGE_ID", customMessageIds) + " AND NOTIFICATION_TYPE ='MESSAGE_RECEIVED'";
+        try {
+            return getQueueViewMBean(source).removeMatchingMessages(selector);
+        } catch (Exception ex) {
+            throw new InternalJMSException("Failed to consume [" + customMessageIds.size() + "] messages from source [" + source + "]", ex);
+        }
+    }
+
     //TODO: Duplicate code that will be refactored in the scope of a task in 4.0
     protected List<InternalJmsMessage> getMessagesFromDestination(String destination, String selector) throws Exception {
         Queue queue = getQueue(destination);
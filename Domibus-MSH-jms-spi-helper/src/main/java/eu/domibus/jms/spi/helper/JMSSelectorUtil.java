@@ -1,5 +1,6 @@
 package eu.domibus.jms.spi.helper;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -13,4 +14,13 @@ public interface JMSSelectorUtil {
     String getSelector(String[] messageIds);
 
     String getSelector(Map<String, Object> criteria);
+
+    /**
+     * Gets a selector matching the messages having one of the given values for a property.
+     *
+     * @param propertyName the name of the message property
+     * @param values       the values of the property
+     * @return the selector
+     */
+    String getSelector(String propertyName, List<String> values);
 }
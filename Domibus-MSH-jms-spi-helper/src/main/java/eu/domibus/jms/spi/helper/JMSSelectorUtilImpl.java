@@ -3,6 +3,7 @@ package eu.domibus.jms.spi.helper;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -65,4 +66,24 @@ public class JMSSelectorUtilImpl implements JMSSelectorUtil {
 //        }
         return selector.toString().trim();
     }
+
+    @Override
+    public String getSelector(String propertyName, List<String> values) {
+        if (values.size() == 1) {
+            return propertyName + " = " + getStringLiteral(values.get(0));
+        }
+        StringBuffer selector = new StringBuffer(propertyName).append(" IN (");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                selector.append(", ");
+            }
+            selector.append(getStringLiteral(values.get(i)));
+        }
+        selector.append(")");
+        return selector.toString();
+    }
+
+    protected String getStringLiteral(String value) {
+        return "'" + StringUtils.replace(value, "'", "''") + "'";
+    }
 }
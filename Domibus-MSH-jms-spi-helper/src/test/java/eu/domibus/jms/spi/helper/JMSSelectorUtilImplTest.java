@@ -6,6 +6,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,4 +42,16 @@ public class JMSSelectorUtilImplTest {
         String selector = selectorUtil.getSelector(criteria);
         Assert.assertEquals("JMSType='myType' and JMSTimestamp>=123 and JMSTimestamp<=456 and JMSMessageID = 'myMessageId'", selector);
     }
+
+    @Test
+    public void testGetSelectorWithPropertyValues() throws Exception {
+        String selector = selectorUtil.getSelector("MESSAGE_ID", Arrays.asList("message1", "message'2"));
+        Assert.assertEquals("MESSAGE_ID IN ('message1', 'message''2')", selector);
+    }
+
+    @Test
+    public void testGetSelectorWithSinglePropertyValue() throws Exception {
+        String selector = selectorUtil.getSelector("MESSAGE_ID", Arrays.asList("message1"));
+        Assert.assertEquals("MESSAGE_ID = 'message1'", selector);
+    }
 }
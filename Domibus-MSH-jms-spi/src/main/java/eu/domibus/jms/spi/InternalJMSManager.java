@@ -23,6 +23,22 @@ public interface InternalJMSManager {
 
     void sendMessage(InternalJmsMessage message, Destination destination);
 
+    /**
+     * Tells whether the broker can hold back a message until its delivery delay has elapsed.
+     *
+     * @return true if {@link #sendMessage(InternalJmsMessage, Destination, long)} is supported
+     */
+    boolean isDeliveryDelaySupported();
+
+    /**
+     * Sends a message that the broker delivers only once the delivery delay has elapsed.
+     *
+     * @param message       the message to send
+     * @param destination   the destination of the message
+     * @param deliveryDelay the delay in milliseconds before the message is delivered
+     */
+    void sendMessage(InternalJmsMessage message, Destination destination, long deliveryDelay);
+
     void deleteMessages(String source, String[] messageIds);
 
     void moveMessages(String source, String destination, String[] messageIds);
@@ -34,4 +50,13 @@ public interface InternalJMSManager {
     List<InternalJmsMessage> browseMessages(String source);
 
     InternalJmsMessage consumeMessage(String source, String customMessageId);
+
+    /**
+     * Removes from a source the messages received for several business messages.
+     *
+     * @param source           name of the JMS queue
+     * @param customMessageIds ids of the business messages present in the custom properties
+     * @return the number of JMS messages removed
+     */
+    int consumeMessages(String source, List<String> customMessageIds);
 }
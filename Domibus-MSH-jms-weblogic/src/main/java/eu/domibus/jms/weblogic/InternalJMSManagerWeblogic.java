@@ -12,17 +12,24 @@ import eu.domibus.logging.DomibusLoggerFactory;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.core.JmsOperations;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.ProducerCallback;
 import org.springframework.stereotype.Component;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import weblogic.jms.extensions.WLMessageProducer;
 import weblogic.messaging.runtime.MessageInfo;
 
 import javax.annotation.Resource;
 import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
+import javax.jms.Session;
 import javax.jms.Topic;
 import javax.management.*;
 import javax.management.openmbean.CompositeData;
@@ -293,6 +300,34 @@ public class InternalJMSManagerWeblogic implements InternalJMSManager {
         jmsOperations.send(destination, new JmsMessageCreator(message));
     }
 
+    @Override
+    public boolean isDeliveryDelaySupported() {
+        return true;
+    }
+
+    @Override
+    public void sendMessage(InternalJmsMessage message, Destination destination, final long deliveryDelay) {
+        final JmsMessageCreator messageCreator = new JmsMessageCreator(message);
+        jmsOperations.execute(destination, new ProducerCallback<Object>() {
+            @Override
+            public Object doInJms(Session session, MessageProducer producer) throws JMSException {
+                if (!(producer instanceof WLMessageProducer)) {
+                    throw new InternalJMSException("The time-to-deliver cannot be set on the producer [" + producer.getClass().getName() + "]");
+                }
+                ((WLMessageProducer) producer).setTimeToDeliver(deliveryDelay);
+                final Message jmsMessage = messageCreator.createMessage(session);
+                // applies the quality of service of the template, as JmsTemplate.send does
+                if (jmsOperations instanceof JmsTemplate && ((JmsTemplate) jmsOperations).isExplicitQosEnabled()) {
+                    final JmsTemplate jmsTemplate = (JmsTemplate) jmsOperations;
+                    producer.send(jmsMessage, jmsTemplate.getDeliveryMode(), jmsTemplate.getPriority(), jmsTemplate.getTimeToLive());
+                } else {
+                    producer.send(jmsMessage);
+                }
+                return null;
+            }
+        });
+    }
+
     protected ObjectName getMessageDestinationName(String source) {
         InternalJMSDestination intJmsDest = getInternalJMSDestination(source);
         return intJmsDest.getProperty(PROPERTY_OBJECT_NAME);
@@ -602,6 +637,28 @@ public class InternalJMSManagerWeblogic implements InternalJMSManager {
         return internalJmsMessage;
     }
 
+    /**
+     * Deletes from every member of the destination the messages received for the given business messages.
+     *
+     * @param source           name of the JMS queue
+     * @param customMessageIds IDs of the messages present in the custom properties.
+     * @return the number of deleted messages
+     */
+    @Override
+    public int consumeMessages(String source, List<String> customMessageIds) {
+        String selector = jmsSelectorUtil.getSelector("MESSAGE_ID", customMessageIds) + " AND NOTIFICATION_TYPE ='MESSAGE_RECEIVED'";
+        int deleted = 0;
+        try {
+            for (InternalJMSDestination internalJmsDestination : getInternalJMSDestinations(removeJmsModule(source))) {
+                ObjectName destinationName = internalJmsDestination.getProperty(PROPERTY_OBJECT_NAME);
+                deleted += deleteMessages(destinationName, selector);
+            }
+        } catch (Exception ex) {
+            throw new InternalJMSException("Failed to consume [" + customMessageIds.size() + "] messages from source [" + source + "]", ex);
+        }
+        return deleted;
+    }
+
 
     protected InternalJmsMessage convertMessage(CompositeData messageData) throws IOException, SAXException, ParserConfigurationException {
         InternalJmsMessage message = new InternalJmsMessage();
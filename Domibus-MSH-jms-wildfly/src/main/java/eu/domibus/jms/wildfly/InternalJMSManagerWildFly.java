@@ -39,6 +39,9 @@ public class InternalJMSManagerWildFly implements InternalJMSManager {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(InternalJMSManagerWildFly.class);
 
+    //the HornetQ scheduled delivery header (Message.HDR_SCHEDULED_DELIVERY_TIME), an absolute time in milliseconds
+    private static final String SCHEDULED_DELIVERY_TIME = "_HQ_SCHED_DELIVERY";
+
     private static final String PROPERTY_OBJECT_NAME = "ObjectName";
     private static final String PROPERTY_JNDI_NAME = "Jndi";
 
@@ -195,6 +198,17 @@ public class InternalJMSManagerWildFly implements InternalJMSManager {
         jmsOperations.send(destination, new JmsMessageCreator(message));
     }
 
+    @Override
+    public boolean isDeliveryDelaySupported() {
+        return true;
+    }
+
+    @Override
+    public void sendMessage(InternalJmsMessage message, Destination destination, long deliveryDelay) {
+        message.getProperties().put(SCHEDULED_DELIVERY_TIME, System.currentTimeMillis() + deliveryDelay);
+        sendMessage(message, destination);
+    }
+
     @Override
     public void deleteMessages(String source, String[] messageIds) {
         JMSQueueControl queue = getQueueControl(source);
@@ -367,4 +381,14 @@ public class InternalJMSManagerWildFly implements InternalJMSManager {
         }
         return intJmsMsg;
     }
+
+    @Override
+    public int consumeMessages(String source, List<String> customMessageIds) {
+        String selector = jmsSelectorUtil.getSelector("MESSAGE_ID", customMessageIds) + " AND NOTIFICATION_TYPE ='MESSAGE_RECEIVED'";
+        try {
+            return getQueueControl(source).removeMessages(selector);
+        } catch (Exception ex) {
+            throw new InternalJMSException("Failed to consume [" + customMessageIds.size() + "] messages from source [" + source + "]", ex);
+        }
+    }
 }
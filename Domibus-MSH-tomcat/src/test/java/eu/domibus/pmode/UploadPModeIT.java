@@ -110,7 +110,11 @@ public class UploadPModeIT extends AbstractIT {
     @Transactional(propagation = Propagation.REQUIRED)
     private Configuration testUpdatePModes(final byte[] bytes) throws JAXBException {
         final Configuration configuration = (Configuration) this.jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(bytes));
-        configurationDAO.updateConfiguration(configuration);
+        configurationDAO.createConfiguration(configuration);
+        final ConfigurationRaw configurationRaw = new ConfigurationRaw();
+        configurationRaw.setConfigurationDate(Calendar.getInstance().getTime());
+        configurationRaw.setXml(bytes);
+        configurationDAO.activateConfiguration(configuration, configurationRaw);
         return configuration;
     }
 
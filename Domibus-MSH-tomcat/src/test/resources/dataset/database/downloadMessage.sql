@@ -17,7 +17,7 @@ INSERT INTO "TB_PARTY" VALUES (6,'http://localhost:8080/domibus/services/msh','b
 INSERT INTO "TB_PARTY" VALUES (7,'http://208.67.130.9/exchange/axwayas4','axway',NULL,NULL,1);
 INSERT INTO "TB_PARTY" VALUES (8,'https://secure.gateway.eu/as4','cefgw',NULL,NULL,1);
 
-INSERT INTO "TB_CONFIGURATION" VALUES (1,1,6);
+INSERT INTO "TB_CONFIGURATION" ("ID_PK","FK_BUSINESSPROCESSES","FK_PARTY","ACTIVE") VALUES (1,1,6,1);
 
 INSERT INTO "TB_MPC" ("ID_PK","DEFAULT_MPC","IS_ENABLED", "NAME","QUALIFIED_NAME","RETENTION_DOWNLOADED","RETENTION_UNDOWNLOADED","FK_CONFIGURATION")
 VALUES (1,1,1,'defaultMpc','http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPC',3,14400,1);
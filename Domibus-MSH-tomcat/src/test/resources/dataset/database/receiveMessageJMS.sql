@@ -12,7 +12,7 @@ INSERT INTO "TB_PARTY" VALUES (1,'http://localhost:8080/domibus/services/msh','r
 INSERT INTO "TB_PARTY" VALUES (2,'vm://localhost?broker.persistent=false','blue_gw',NULL,NULL,1);
 
 -- This is the PMODE configuration of domibus red!
-INSERT INTO "TB_CONFIGURATION" VALUES (1,1,1);
+INSERT INTO "TB_CONFIGURATION" ("ID_PK","FK_BUSINESSPROCESSES","FK_PARTY","ACTIVE") VALUES (1,1,1,1);
 
 INSERT INTO "TB_MPC" ("ID_PK","DEFAULT_MPC","IS_ENABLED", "NAME","QUALIFIED_NAME","RETENTION_DOWNLOADED","RETENTION_UNDOWNLOADED","FK_CONFIGURATION")
 VALUES (1,1,1,'defaultMpc','http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPC',3,60,1);
@@ -17,7 +17,7 @@ INSERT INTO "TB_PARTY" VALUES (6,'http://localhost:8080/domibus/services/msh','b
 INSERT INTO "TB_PARTY" VALUES (7,'http://208.67.130.9/exchange/axwayas4','axway',NULL,NULL,1);
 INSERT INTO "TB_PARTY" VALUES (8,'https://secure.gateway.eu/as4','cefgw',NULL,NULL,1);
 
-INSERT INTO "TB_CONFIGURATION" VALUES (1,1,6);
+INSERT INTO "TB_CONFIGURATION" ("ID_PK","FK_BUSINESSPROCESSES","FK_PARTY","ACTIVE") VALUES (1,1,6,1);
 
 INSERT INTO "TB_ERROR_HANDLING" VALUES (1,0x00,0x00,0x00,0x01,'demoErrorHandling',1);
 
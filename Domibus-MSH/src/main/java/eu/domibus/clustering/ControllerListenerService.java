@@ -1,6 +1,7 @@
 package eu.domibus.clustering;
 
 import eu.domibus.ebms3.common.dao.PModeProvider;
+import eu.domibus.ebms3.sender.PullRequestContextCache;
 import eu.domibus.wss4j.common.crypto.CryptoService;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
@@ -33,6 +34,9 @@ public class ControllerListenerService implements MessageListener {
     @Autowired
     private CryptoService cryptoService;
 
+    @Autowired
+    private PullRequestContextCache pullRequestContextCache;
+
     @Override
     @Transactional
     public void onMessage(Message message) {
@@ -50,6 +54,7 @@ public class ControllerListenerService implements MessageListener {
         switch (command) {
             case Command.RELOAD_PMODE:
                 pModeProvider.refresh();
+                pullRequestContextCache.clear();
                 cryptoService.refreshTrustStore();
                 break;
             case Command.EVICT_CACHES:
@@ -0,0 +1,55 @@
+package eu.domibus.common;
+
+import eu.domibus.common.dao.AttachmentDAO;
+import eu.domibus.spring.SpringContextProvider;
+
+import javax.activation.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Data source of a payload stored in the database, which reads the payload bytes only when a stream is opened.
+ *
+ * @since 3.3.3
+ */
+public class DatabasePayloadDataSource implements DataSource {
+
+    private final int partInfoId;
+
+    private final String contentType;
+
+    public DatabasePayloadDataSource(int partInfoId, String contentType) {
+        this.partInfoId = partInfoId;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        final byte[] binaryData = getAttachmentDAO().loadBinaryData(partInfoId);
+        if (binaryData == null) {
+            throw new IOException("The payload [" + partInfoId + "] has been deleted");
+        }
+        return new ByteArrayInputStream(binaryData);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("The payload [" + partInfoId + "] is read only");
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return "PartInfoData-" + partInfoId;
+    }
+
+    protected AttachmentDAO getAttachmentDAO() {
+        return SpringContextProvider.getApplicationContext().getBean(AttachmentDAO.class);
+    }
+}
@@ -1,11 +1,16 @@
 package eu.domibus.common.dao;
 
 import eu.domibus.ebms3.common.model.PartInfo;
+import eu.domibus.ebms3.common.model.PartInfoData;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * DAO to access binary payload data of a {@link PartInfo} object
@@ -20,8 +25,99 @@ public class AttachmentDAO {
     private EntityManager em;
 
     public byte[] loadBinaryData(final int entityId) {
-        final Query q = this.em.createNamedQuery("PartInfo.loadBinaryData");
+        final Query q = this.em.createNamedQuery("PartInfoData.loadBinaryData");
         q.setParameter("ENTITY_ID", entityId);
         return (byte[]) q.getSingleResult();
     }
+
+    /**
+     * Stores the binary data of the given payloads, which must have been persisted with their message. The binary data
+     * is not part of the {@link PartInfo} mapping, see {@link PartInfoData}.
+     *
+     * @param partInfos the payloads
+     */
+    public void storeBinaryData(final List<PartInfo> partInfos) {
+        final List<PartInfo> databasePayloads = new ArrayList<>();
+        for (PartInfo partInfo : partInfos) {
+            if (partInfo.getBinaryData() != null) {
+                databasePayloads.add(partInfo);
+            }
+        }
+        if (databasePayloads.isEmpty()) {
+            return;
+        }
+        // the payloads rows must exist before their binary data is set
+        em.flush();
+        final Query q = this.em.createNamedQuery("PartInfoData.setBinaryData");
+        for (PartInfo partInfo : databasePayloads) {
+            q.setParameter("BINARY_DATA", partInfo.getBinaryData());
+            q.setParameter("ENTITY_ID", partInfo.getEntityId());
+            q.executeUpdate();
+        }
+    }
+
+    /**
+     * Empties, with a single update, the binary data of the given payloads.
+     *
+     * @param partInfos the payloads stored in the database
+     */
+    public void emptyBinaryData(final List<PartInfo> partInfos) {
+        if (partInfos.isEmpty()) {
+            return;
+        }
+        final List<Integer> entityIds = new ArrayList<>();
+        for (PartInfo partInfo : partInfos) {
+            entityIds.add(partInfo.getEntityId());
+        }
+        final Query q = this.em.createNamedQuery("PartInfoData.emptyBinaryData");
+        q.setParameter("ENTITY_IDS", entityIds);
+        q.executeUpdate();
+    }
+
+    /**
+     * Detaches, with a single update, the given payloads from their payload file, so that a payload file shared with
+     * other payloads is released only once per payload.
+     *
+     * @param partInfos the payloads stored in a file
+     */
+    public void clearFileNames(final List<PartInfo> partInfos) {
+        if (partInfos.isEmpty()) {
+            return;
+        }
+        final List<Integer> entityIds = new ArrayList<>();
+        for (PartInfo partInfo : partInfos) {
+            entityIds.add(partInfo.getEntityId());
+        }
+        final Query q = this.em.createNamedQuery("PartInfo.clearFileNames");
+        q.setParameter("ENTITY_IDS", entityIds);
+        q.executeUpdate();
+    }
+
+    /**
+     * Locks the payloads stored in the given file until the transaction completes, so that they are not deleted nor
+     * detached from their file while it is moved.
+     *
+     * @param fileName the payload file
+     * @return the payloads stored in the file
+     */
+    public List<PartInfo> findByFileNameForUpdate(final String fileName) {
+        final TypedQuery<PartInfo> q = this.em.createNamedQuery("PartInfo.findByFileName", PartInfo.class);
+        q.setParameter("FILE_NAME", fileName);
+        q.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        return q.getResultList();
+    }
+
+    /**
+     * Points the payloads stored in the given file to another file.
+     *
+     * @param fileName    the current payload file
+     * @param newFileName the new payload file
+     * @return the number of payloads updated
+     */
+    public int updateFileName(final String fileName, final String newFileName) {
+        final Query q = this.em.createNamedQuery("PartInfo.updateFileName");
+        q.setParameter("FILE_NAME", fileName);
+        q.setParameter("NEW_FILE_NAME", newFileName);
+        return q.executeUpdate();
+    }
 }
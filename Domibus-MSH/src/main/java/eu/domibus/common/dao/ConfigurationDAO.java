@@ -2,13 +2,17 @@
 package eu.domibus.common.dao;
 
 
-import eu.domibus.common.model.configuration.*;
-import eu.domibus.common.model.configuration.Process;
+import eu.domibus.common.model.configuration.BusinessProcesses;
+import eu.domibus.common.model.configuration.Configuration;
+import eu.domibus.common.model.configuration.ConfigurationRaw;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.List;
 
 /**
  * @author Christian Koch, Stefan Mueller
@@ -16,6 +20,11 @@ import javax.persistence.TypedQuery;
 @Repository
 public class ConfigurationDAO extends BasicDao<Configuration> {
 
+    private static final int CONFIGURATION_INSERT_BATCH_SIZE = 50;
+
+    @Autowired
+    private ConfigurationRawDAO configurationRawDAO;
+
     public ConfigurationDAO() {
         super(Configuration.class);
     }
@@ -32,63 +41,111 @@ public class ConfigurationDAO extends BasicDao<Configuration> {
         return query.getSingleResult();
     }
 
+    /**
+     * Reads the configuration with all its associations initialized. The nested collections (party identifiers, process
+     * parties and legs, payload profiles, property sets) are each loaded with a single fetch joined query instead of one
+     * query per owning entity.
+     *
+     * @return the fully initialized configuration
+     */
     @Transactional
     public Configuration readEager() {
         final TypedQuery<Configuration> query = this.em.createNamedQuery("Configuration.getConfiguration", Configuration.class);
+        return initialize(query.getSingleResult());
+    }
 
-        final Configuration configuration = query.getSingleResult();
+    private Configuration initialize(final Configuration configuration) {
+        configuration.getMpcs().size();
 
-        for (final Mpc mpc : configuration.getMpcs()) {
-            mpc.getName(); //This is just top avoid the compiler optimizing this away
-        }
+        // the referenced entities are loaded first so that the queries below find them in the persistence context
         final BusinessProcesses businessProcesses = configuration.getBusinessProcesses();
-
-        for (final Process process : businessProcesses.getProcesses()) {
-            process.getInitiatorParties().size();
-            process.getResponderParties().size();
-            process.getLegs().size();
-        }
-
-
         businessProcesses.getRoles().size();
-
+        businessProcesses.getPartyIdTypes().size();
         businessProcesses.getProperties().size();
+        businessProcesses.getPayloads().size();
         businessProcesses.getSecurities().size();
         businessProcesses.getActions().size();
-        businessProcesses.getPayloads().size();
-        businessProcesses.getProcesses().size();
-        businessProcesses.getParties().size();
-        for (final Party p : businessProcesses.getParties()) {
-            p.getIdentifiers().size();
-        }
-
+        businessProcesses.getServices().size();
         businessProcesses.getAgreements().size();
         businessProcesses.getAs4ConfigReceptionAwareness().size();
         businessProcesses.getAs4Reliability().size();
         businessProcesses.getErrorHandlings().size();
-        businessProcesses.getLegConfigurations().size();
         businessProcesses.getMepBindings().size();
         businessProcesses.getMeps().size();
-        businessProcesses.getPartyIdTypes().size();
-        for (final PayloadProfile payloadProfile : businessProcesses.getPayloadProfiles()) {
-            payloadProfile.getPayloads().size();
-        }
-        for (final PropertySet propertySet : businessProcesses.getPropertySets()) {
-            propertySet.getProperties().size();
-        }
-        businessProcesses.getRoles().size();
-        businessProcesses.getServices().size();
+        businessProcesses.getPayloadProfiles().size();
+        businessProcesses.getPropertySets().size();
+        businessProcesses.getLegConfigurations().size();
+        businessProcesses.getParties().size();
+        businessProcesses.getProcesses().size();
+
+        fetch("Configuration.fetchPartyIdentifiers", businessProcesses);
+        fetch("Configuration.fetchProcessInitiatorParties", businessProcesses);
+        fetch("Configuration.fetchProcessResponderParties", businessProcesses);
+        fetch("Configuration.fetchProcessLegs", businessProcesses);
+        fetch("Configuration.fetchPayloadProfilePayloads", businessProcesses);
+        fetch("Configuration.fetchPropertySetProperties", businessProcesses);
         return configuration;
     }
 
-    @Transactional(propagation = Propagation.MANDATORY)
-    //FIXME: PMode update instead of wipe
-    public void updateConfiguration(final Configuration configuration) {
-        if (this.configurationExists()) {
-            this.delete(this.read());
+    private void fetch(final String queryName, final BusinessProcesses businessProcesses) {
+        final Query query = this.em.createNamedQuery(queryName);
+        query.setParameter("BUSINESS_PROCESSES", businessProcesses);
+        query.getResultList();
+    }
+
+    /**
+     * Saves a new configuration next to the active one. It is not used until activated, so its insertion does not lock
+     * the configuration rows read by the other nodes. The entity graph is flushed in JDBC batches when
+     * {@link ScopedBatchBuilder} is configured as the Hibernate batch builder.
+     *
+     * @param configuration the new configuration, already prepared and validated
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public void createConfiguration(final Configuration configuration) {
+        configuration.setActive(false);
+        ScopedBatchBuilder.startBatching(CONFIGURATION_INSERT_BATCH_SIZE);
+        try {
+            this.create(configuration);
+            this.em.flush();
+        } finally {
+            ScopedBatchBuilder.endBatching();
         }
-        this.create(configuration);
+    }
 
+    /**
+     * Switches the active configuration to the given one and saves the raw PMode it was unmarshalled from. Only the
+     * configuration rows are updated; the previous configuration is removed by {@link #deleteInactiveConfigurations()}.
+     *
+     * @param configuration    the configuration saved by {@link #createConfiguration(Configuration)}
+     * @param configurationRaw the raw PMode of the configuration
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public void activateConfiguration(final Configuration configuration, final ConfigurationRaw configurationRaw) {
+        final Query activateQuery = this.em.createNamedQuery("Configuration.activate");
+        activateQuery.setParameter("ID", configuration.getEntityId());
+        if (activateQuery.executeUpdate() != 1) {
+            throw new IllegalStateException("The configuration [" + configuration.getEntityId() + "] to activate does not exist");
+        }
+        final Query deactivateQuery = this.em.createNamedQuery("Configuration.deactivateOthers");
+        deactivateQuery.setParameter("ID", configuration.getEntityId());
+        deactivateQuery.executeUpdate();
+        configuration.setActive(true);
+        configurationRawDAO.create(configurationRaw);
+    }
 
+    /**
+     * Removes the configurations replaced by a newer one. Their graph is loaded eagerly so that the cascading removal
+     * does not load the associations one entity at a time.
+     *
+     * @return the number of configurations removed
+     */
+    @Transactional(propagation = Propagation.REQUIRED)
+    public int deleteInactiveConfigurations() {
+        final TypedQuery<Configuration> query = this.em.createNamedQuery("Configuration.findInactive", Configuration.class);
+        final List<Configuration> inactiveConfigurations = query.getResultList();
+        for (final Configuration inactiveConfiguration : inactiveConfigurations) {
+            this.delete(initialize(inactiveConfiguration));
+        }
+        return inactiveConfigurations.size();
     }
 }
@@ -1,6 +1,7 @@
 package eu.domibus.common.dao;
 
 import eu.domibus.common.MessageStatus;
+import eu.domibus.core.payload.PayloadFileDeletionService;
 import eu.domibus.ebms3.common.model.MessagePullDto;
 import eu.domibus.ebms3.common.model.Messaging;
 import eu.domibus.ebms3.common.model.PartInfo;
@@ -10,6 +11,7 @@ import eu.domibus.logging.DomibusLoggerFactory;
 import eu.domibus.logging.DomibusMessageCode;
 import eu.domibus.logging.MDCKey;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.support.DataAccessUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
@@ -18,7 +20,6 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,6 +39,34 @@ public class MessagingDao extends BasicDao<Messaging> {
     private static final String MESSAGE_STATUS = "MESSAGE_STATUS";
     private static final String MPC = "MPC";
 
+    // the messages are deleted table by table with native statements: JPQL can not delete the collections of the
+    // messages and em.remove deletes them row by row
+    private static final String USER_MESSAGE_IDS = "SELECT um.ID_PK FROM TB_USER_MESSAGE um, TB_MESSAGE_INFO mi WHERE um.messageInfo_ID_PK = mi.ID_PK AND mi.MESSAGE_ID IN (:MESSAGE_IDS)";
+    private static final String SIGNAL_MESSAGE_IDS = "SELECT sm.ID_PK FROM TB_SIGNAL_MESSAGE sm, TB_MESSAGE_INFO mi WHERE sm.messageInfo_ID_PK = mi.ID_PK AND mi.MESSAGE_ID IN (:MESSAGE_IDS)";
+    private static final String MESSAGE_INFO_IDS = "SELECT mi.ID_PK FROM TB_MESSAGE_INFO mi WHERE mi.MESSAGE_ID IN (:MESSAGE_IDS)";
+    private static final String[] DELETE_USER_MESSAGES = {
+            "DELETE FROM TB_PROPERTY WHERE PARTPROPERTIES_ID IN (SELECT pi.ID_PK FROM TB_PART_INFO pi WHERE pi.PAYLOADINFO_ID IN (" + USER_MESSAGE_IDS + "))",
+            "DELETE FROM TB_PROPERTY WHERE MESSAGEPROPERTIES_ID IN (" + USER_MESSAGE_IDS + ")",
+            "DELETE FROM TB_PART_INFO WHERE PAYLOADINFO_ID IN (" + USER_MESSAGE_IDS + ")",
+            "DELETE FROM TB_PARTY_ID WHERE FROM_ID IN (" + USER_MESSAGE_IDS + ") OR TO_ID IN (" + USER_MESSAGE_IDS + ")",
+            "DELETE FROM TB_MESSAGING WHERE USER_MESSAGE_ID IN (" + USER_MESSAGE_IDS + ")",
+            "DELETE FROM TB_USER_MESSAGE WHERE messageInfo_ID_PK IN (" + MESSAGE_INFO_IDS + ")",
+            "DELETE FROM TB_MESSAGE_INFO WHERE MESSAGE_ID IN (:MESSAGE_IDS)"};
+    private static final String FIND_SIGNAL_RECEIPT_IDS = "SELECT sm.receipt_ID_PK FROM TB_SIGNAL_MESSAGE sm, TB_MESSAGE_INFO mi WHERE sm.messageInfo_ID_PK = mi.ID_PK AND mi.MESSAGE_ID IN (:MESSAGE_IDS) AND sm.receipt_ID_PK IS NOT NULL";
+    private static final String[] DELETE_SIGNAL_MESSAGES = {
+            "DELETE FROM TB_MESSAGING WHERE SIGNAL_MESSAGE_ID IN (" + SIGNAL_MESSAGE_IDS + ")",
+            "DELETE FROM TB_ERROR WHERE SIGNALMESSAGE_ID IN (" + SIGNAL_MESSAGE_IDS + ")",
+            "DELETE FROM TB_SIGNAL_MESSAGE WHERE messageInfo_ID_PK IN (" + MESSAGE_INFO_IDS + ")",
+            "DELETE FROM TB_MESSAGE_INFO WHERE MESSAGE_ID IN (:MESSAGE_IDS)"};
+    private static final String DELETE_RECEIPT_DATA = "DELETE FROM TB_RECEIPT_DATA WHERE RECEIPT_ID IN (:RECEIPT_IDS)";
+    private static final String DELETE_RECEIPTS = "DELETE FROM TB_RECEIPT WHERE ID_PK IN (:RECEIPT_IDS)";
+
+    @Autowired
+    private PayloadFileDeletionService payloadFileDeletionService;
+
+    @Autowired
+    private AttachmentDAO attachmentDAO;
+
     public MessagingDao() {
         super(Messaging.class);
     }
@@ -61,6 +90,56 @@ public class MessagingDao extends BasicDao<Messaging> {
         }
     }
 
+    /**
+     * @param messageIds the ids of user messages
+     * @return the Messaging of the user messages
+     */
+    public List<Messaging> findMessagingsByUserMessageIds(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final TypedQuery<Messaging> query = em.createNamedQuery("Messaging.findMessagingsByUserMessageIds", Messaging.class);
+        query.setParameter("MESSAGE_IDS", messageIds);
+        return query.getResultList();
+    }
+
+    /**
+     * Deletes with set-based statements, one per table, user messages and signal messages with all their content:
+     * properties, payloads, party ids, receipts, errors, message infos and Messaging. The messages must not be loaded
+     * in the persistence context anymore or must not be modified, the statements bypassing it.
+     *
+     * @param userMessageIds   the ids of the user messages
+     * @param signalMessageIds the ids of the signal messages
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteMessages(final List<String> userMessageIds, final List<String> signalMessageIds) {
+        if (!userMessageIds.isEmpty()) {
+            for (String statement : DELETE_USER_MESSAGES) {
+                executeNativeUpdate(statement, "MESSAGE_IDS", userMessageIds);
+            }
+        }
+        if (!signalMessageIds.isEmpty()) {
+            final Query receiptIdsQuery = em.createNativeQuery(FIND_SIGNAL_RECEIPT_IDS);
+            receiptIdsQuery.setParameter("MESSAGE_IDS", signalMessageIds);
+            final List<?> receiptIds = receiptIdsQuery.getResultList();
+            for (String statement : DELETE_SIGNAL_MESSAGES) {
+                executeNativeUpdate(statement, "MESSAGE_IDS", signalMessageIds);
+            }
+            // the receipts are referenced by the signal messages, they are deleted last
+            if (!receiptIds.isEmpty()) {
+                executeNativeUpdate(DELETE_RECEIPT_DATA, "RECEIPT_IDS", receiptIds);
+                executeNativeUpdate(DELETE_RECEIPTS, "RECEIPT_IDS", receiptIds);
+            }
+        }
+        LOG.debug("Deleted [{}] user messages and [{}] signal messages", userMessageIds.size(), signalMessageIds.size());
+    }
+
+    private int executeNativeUpdate(final String statement, final String parameterName, final List<?> values) {
+        final Query query = em.createNativeQuery(statement);
+        query.setParameter(parameterName, values);
+        return query.executeUpdate();
+    }
+
     /**
      * Clears the payloads data for the message with the given messageId.
      *
@@ -80,23 +159,55 @@ public class MessagingDao extends BasicDao<Messaging> {
         if (results.isEmpty()) {
             return;
         }
+        clearPartInfos(results);
+        LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_PAYLOAD_DATA_CLEARED, messageId);
+    }
+
+    /**
+     * Deletes the payloads of several messages: the payloads stored in the database are emptied with a single update.
+     *
+     * @param messageIds the ids of the messages
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void clearPayloadData(List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        Query payloadsQuery = em.createNamedQuery("Messaging.findPartInfosForMessages");
+        payloadsQuery.setParameter("MESSAGE_IDS", messageIds);
+        List<PartInfo> results = payloadsQuery.getResultList();
+        if (results.isEmpty()) {
+            return;
+        }
+        clearPartInfos(results);
+        for (String messageId : messageIds) {
+            LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_PAYLOAD_DATA_CLEARED, messageId);
+        }
+    }
+
+    /**
+     * Empties the payloads stored in the database and journals the deletion of the payload files, which are deleted
+     * once the transaction commits. The payloads are detached from their files, which may be shared with other
+     * payloads.
+     *
+     * @param partInfos the payloads
+     */
+    protected void clearPartInfos(List<PartInfo> partInfos) {
         List<PartInfo> databasePayloads = new ArrayList<>();
+        List<PartInfo> filePayloads = new ArrayList<>();
+        List<String> fileNames = new ArrayList<>();
 
-        for (PartInfo result : results) {
+        for (PartInfo result : partInfos) {
             if (hasLength(result.getFileName())) {
-                if (!new File(result.getFileName()).delete()) {
-                    LOG.warn("Problem deleting payload data files");
-                }
+                filePayloads.add(result);
+                fileNames.add(result.getFileName());
             } else {
                 databasePayloads.add(result);
             }
         }
-        if (!databasePayloads.isEmpty()) {
-            final Query emptyQuery = em.createNamedQuery("Messaging.emptyPayloads");
-            emptyQuery.setParameter("PARTINFOS", databasePayloads);
-            emptyQuery.executeUpdate();
-        }
-        LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_PAYLOAD_DATA_CLEARED, messageId);
+        payloadFileDeletionService.scheduleDeletion(fileNames);
+        attachmentDAO.clearFileNames(filePayloads);
+        attachmentDAO.emptyBinaryData(databasePayloads);
     }
 
     /**
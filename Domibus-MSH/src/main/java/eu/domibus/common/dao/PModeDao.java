@@ -345,7 +345,8 @@ public class PModeDao extends PModeProvider {
 
     @Override
     public void refresh() {
-        //as we always query the DB pmodes never are stale, thus no refresh needed
+        //as we always query the DB pmodes never are stale, only the resolved exchange contexts need to be discarded
+        clearExchangeContextCache();
     }
 
     @Override
@@ -7,6 +7,7 @@ import eu.domibus.logging.DomibusLoggerFactory;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.NoResultException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.util.List;
 
@@ -50,5 +51,20 @@ public class RawEnvelopeLogDao extends BasicDao<RawEnvelopeLog> {
         }
     }
 
+    /**
+     * Delete with a single statement the raw entries of several UserMessages and of the signals referring to them.
+     *
+     * @param messageIds the ids of the messages.
+     * @return the number of deleted entries.
+     */
+    public int deleteRawEnvelopes(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = em.createNamedQuery("Raw.deleteByMessageIds");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        return query.executeUpdate();
+    }
+
 
 }
@@ -0,0 +1,44 @@
+package eu.domibus.common.dao;
+
+import org.hibernate.engine.jdbc.batch.internal.BatchBuilderImpl;
+import org.hibernate.engine.jdbc.batch.internal.BatchingBatch;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+
+/**
+ * Hibernate batch builder (configured with {@code hibernate.jdbc.batch.builder}) batching the JDBC statements only
+ * while a batch size is set for the current thread, i.e. while {@link ConfigurationDAO} flushes a new PMode entity
+ * graph. The other sessions keep the batch size configured for the session factory, which is not batching by default.
+ * <p>
+ * The inserts of the entities with identity generated ids (i.e. on MySQL) are executed immediately and are never
+ * batched.
+ *
+ * @since 3.3.3
+ */
+public class ScopedBatchBuilder extends BatchBuilderImpl {
+
+    private static final ThreadLocal<Integer> BATCH_SIZE = new ThreadLocal<>();
+
+    /**
+     * Batches the statements of the current thread in batches of the given size until {@link #endBatching()}.
+     *
+     * @param batchSize the JDBC batch size
+     */
+    public static void startBatching(final int batchSize) {
+        BATCH_SIZE.set(batchSize);
+    }
+
+    public static void endBatching() {
+        BATCH_SIZE.remove();
+    }
+
+    @Override
+    public Batch buildBatch(final BatchKey key, final JdbcCoordinator jdbcCoordinator) {
+        final Integer batchSize = BATCH_SIZE.get();
+        if (batchSize != null && batchSize > 1) {
+            return new BatchingBatch(key, jdbcCoordinator, batchSize);
+        }
+        return super.buildBatch(key, jdbcCoordinator);
+    }
+}
@@ -8,7 +8,9 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.NoResultException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,6 +23,11 @@ public class SignalMessageDao extends BasicDao<SignalMessage> {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(SignalMessageDao.class);
 
+    // the receipt data is an element collection which can not be deleted with a JPQL statement
+    private static final String FIND_RECEIPT_IDS_BY_REF_MESSAGE_IDS = "SELECT sm.receipt_ID_PK FROM TB_SIGNAL_MESSAGE sm, TB_MESSAGE_INFO mi WHERE sm.messageInfo_ID_PK = mi.ID_PK AND mi.REF_TO_MESSAGE_ID IN (:ORI_MESSAGE_IDS) AND sm.receipt_ID_PK IS NOT NULL";
+    private static final String DELETE_RECEIPT_DATA = "DELETE FROM TB_RECEIPT_DATA WHERE RECEIPT_ID IN (:RECEIPT_IDS)";
+    private static final String DELETE_RECEIPTS = "DELETE FROM TB_RECEIPT WHERE ID_PK IN (:RECEIPT_IDS)";
+
     public SignalMessageDao() {
         super(SignalMessage.class);
     }
@@ -62,5 +69,46 @@ public class SignalMessageDao extends BasicDao<SignalMessage> {
         LOG.debug("Xml data for signal message [" + signalMessage.getMessageInfo().getMessageId() + "] have been cleared");
     }
 
+    public List<String> findSignalMessageIdsByRefMessageIds(final List<String> originalMessageIds) {
+        if (originalMessageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final TypedQuery<String> query = em.createNamedQuery("SignalMessage.findSignalMessageIdsByRefMessageIds", String.class);
+        query.setParameter("ORI_MESSAGE_IDS", originalMessageIds);
+        return query.getResultList();
+    }
+
+    /**
+     * Clears with set-based statements the receipts of the signal messages referring to several messages: the receipts
+     * are detached from the signal messages, then deleted with their data.
+     *
+     * @param originalMessageIds the ids of the messages the signal messages refer to
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void clearReceipts(final List<String> originalMessageIds) {
+        if (originalMessageIds.isEmpty()) {
+            return;
+        }
+        final Query receiptIdsQuery = em.createNativeQuery(FIND_RECEIPT_IDS_BY_REF_MESSAGE_IDS);
+        receiptIdsQuery.setParameter("ORI_MESSAGE_IDS", originalMessageIds);
+        final List<?> receiptIds = receiptIdsQuery.getResultList();
+        if (receiptIds.isEmpty()) {
+            return;
+        }
+
+        final Query receiptQuery = em.createNamedQuery("SignalMessage.clearReceiptsByRefMessageIds");
+        receiptQuery.setParameter("ORI_MESSAGE_IDS", originalMessageIds);
+        final int cleared = receiptQuery.executeUpdate();
+
+        // the receipts are referenced by the signal messages, they are deleted once detached
+        final Query receiptDataQuery = em.createNativeQuery(DELETE_RECEIPT_DATA);
+        receiptDataQuery.setParameter("RECEIPT_IDS", receiptIds);
+        receiptDataQuery.executeUpdate();
+        final Query deleteReceiptsQuery = em.createNativeQuery(DELETE_RECEIPTS);
+        deleteReceiptsQuery.setParameter("RECEIPT_IDS", receiptIds);
+        final int deleted = deleteReceiptsQuery.executeUpdate();
+        LOG.debug("[" + deleted + "] receipts of [" + cleared + "] signal messages have been deleted");
+    }
+
 
 }
@@ -56,6 +56,21 @@ public class SignalMessageLogDao extends MessageLogDao<SignalMessageLog> {
         }
     }
 
+    /**
+     * Deletes the logs of several signal messages with a single statement.
+     *
+     * @param messageIds the ids of the signal messages
+     * @return the number of deleted logs
+     */
+    public int deleteByMessageIds(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = this.em.createNamedQuery("SignalMessageLog.deleteByMessageIds");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        return query.executeUpdate();
+    }
+
     public Long countMessages(HashMap<String, Object> filters) {
         CriteriaBuilder cb = this.em.getCriteriaBuilder();
         CriteriaQuery<Long> cq = cb.createQuery(Long.class);
@@ -0,0 +1,76 @@
+package eu.domibus.common.dao;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.model.logging.MessageLogInfo;
+import eu.domibus.common.model.logging.UserMessageArchive;
+import eu.domibus.common.model.logging.UserMessageArchiveInfoFilter;
+import eu.domibus.common.model.logging.UserMessageTiersInfoFilter;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @since 3.3.3
+ */
+@Repository
+public class UserMessageArchiveDao extends BasicDao<UserMessageArchive> {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(UserMessageArchiveDao.class);
+
+    @Autowired
+    private UserMessageArchiveInfoFilter userMessageArchiveInfoFilter;
+
+    @Autowired
+    private UserMessageTiersInfoFilter userMessageTiersInfoFilter;
+
+    public UserMessageArchiveDao() {
+        super(UserMessageArchive.class);
+    }
+
+    /**
+     * @param messageId the id of the message
+     * @param mshRole   the role of the MSH
+     * @return true if the message was archived
+     */
+    public boolean existsByMessageId(String messageId, MSHRole mshRole) {
+        TypedQuery<Long> query = em.createNamedQuery("UserMessageArchive.countByMessageIdAndRole", Long.class);
+        query.setParameter("MESSAGE_ID", messageId);
+        query.setParameter("MSH_ROLE", mshRole);
+        return query.getSingleResult() > 0;
+    }
+
+    public int countAllInfo(Map<String, Object> filters) {
+        TypedQuery<Number> countQuery = em.createQuery(userMessageArchiveInfoFilter.countUserMessageArchiveQuery(filters), Number.class);
+        countQuery = userMessageArchiveInfoFilter.applyParameters(countQuery, filters);
+        return countQuery.getSingleResult().intValue();
+    }
+
+    public List<MessageLogInfo> findAllInfoPaged(int from, int max, String column, boolean asc, Map<String, Object> filters) {
+        LOG.debug("Retrieving archived messages from [{}] max [{}] column [{}] asc [{}]", from, max, column, asc);
+        TypedQuery<MessageLogInfo> typedQuery = em.createQuery(userMessageArchiveInfoFilter.filterUserMessageArchiveQuery(column, asc, filters), MessageLogInfo.class);
+        typedQuery = userMessageArchiveInfoFilter.applyParameters(typedQuery, filters);
+        typedQuery.setFirstResult(from);
+        typedQuery.setMaxResults(max);
+        return typedQuery.getResultList();
+    }
+
+    /**
+     * Reads a page of the message log information of the user messages of the message tables and of the archive,
+     * sorted and paged by the database.
+     */
+    @SuppressWarnings("unchecked")
+    public List<MessageLogInfo> findAllTiersInfoPaged(int from, int max, String column, boolean asc, Map<String, Object> filters) {
+        LOG.debug("Retrieving current and archived messages from [{}] max [{}] column [{}] asc [{}]", from, max, column, asc);
+        Query query = em.createNativeQuery(userMessageTiersInfoFilter.filterUserMessageTiersQuery(column, asc, filters));
+        query = userMessageTiersInfoFilter.applyParameters(query, filters);
+        query.setFirstResult(from);
+        query.setMaxResults(max);
+        return userMessageTiersInfoFilter.toMessageLogInfos(query.getResultList());
+    }
+}
@@ -2,16 +2,22 @@ package eu.domibus.common.dao;
 
 import com.google.common.collect.Maps;
 import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
 import eu.domibus.common.NotificationStatus;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
 import eu.domibus.common.model.logging.MessageLogInfo;
 import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.model.logging.UserMessageLogInfoFilter;
+import eu.domibus.core.cluster.ClusterShard;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
@@ -19,6 +25,12 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.*;
 
 /**
@@ -33,33 +45,187 @@ public class UserMessageLogDao extends MessageLogDao<UserMessageLog> {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(UserMessageLogDao.class);
 
+    /**
+     * Number of messages a pull request tries to claim with conditional updates before giving up
+     */
+    protected static final int CLAIM_CANDIDATES = 10;
+
+    private volatile Boolean skipLockedSupported;
+
+    private volatile boolean oracle;
+
     public UserMessageLogDao() {
         super(UserMessageLog.class);
     }
 
-    public List<String> findRetryMessages() {
+    /**
+     * Finds the messages waiting for a retry whose next attempt is due, the most overdue first. The messages enqueued
+     * for a retry whose send lease expired are returned as well.
+     *
+     * @param maxResults the maximum number of messages to return, a value lower than 1 means no limit
+     * @return the ids of the messages to retry
+     */
+    public List<String> findRetryMessages(int maxResults) {
+        return findRetryMessages(new Date(System.currentTimeMillis()), maxResults, ClusterShard.ALL);
+    }
+
+    public List<String> findRetryMessages(final Date dueBefore, int maxResults, final ClusterShard shard) {
         TypedQuery<String> query = this.em.createNamedQuery("UserMessageLog.findRetryMessages", String.class);
-        query.setParameter("CURRENT_TIMESTAMP", new Date(System.currentTimeMillis()));
+        query.setParameter("CURRENT_TIMESTAMP", dueBefore);
+        query.setParameter("NOW", new Date(System.currentTimeMillis()));
+        setShardParameters(query, shard);
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
 
         return query.getResultList();
     }
 
+    /**
+     * Moves a message due for a retry to SEND_ENQUEUED, unless another worker already did it and its send lease is not
+     * expired yet.
+     *
+     * @param messageId the id of the message to retry
+     * @param sendLease the date after which the message is enqueued again if it has not been sent
+     * @return 1 if the message was claimed, 0 otherwise
+     */
+    public int claimRetryMessage(final String messageId, final Date sendLease) {
+        Query query = this.em.createNamedQuery("UserMessageLog.claimRetryMessage");
+        query.setParameter("MESSAGE_ID", messageId);
+        query.setParameter("SEND_LEASE", sendLease);
+        query.setParameter("NOW", new Date(System.currentTimeMillis()));
+        return query.executeUpdate();
+    }
+
+    /**
+     * Replaces the send lease of a message, provided it is still the lease its JMS message was enqueued with: the
+     * message was not claimed again since, so no other JMS message is about to send it.
+     *
+     * @param messageId    the id of the message picked up by the sender
+     * @param sendLease    the send lease carried by the JMS message
+     * @param newSendLease the lease covering the sending of the message
+     * @return 1 if the lease was renewed, 0 otherwise
+     */
+    public int renewSendLease(final String messageId, final Date sendLease, final Date newSendLease) {
+        Query query = this.em.createNamedQuery("UserMessageLog.renewSendLease");
+        query.setParameter("MESSAGE_ID", messageId);
+        query.setParameter("SEND_LEASE", sendLease);
+        query.setParameter("NEW_SEND_LEASE", newSendLease);
+        return query.executeUpdate();
+    }
+
     public List<String> findPullWaitingForReceiptMessages() {
+        return findPullWaitingForReceiptMessages(ClusterShard.ALL);
+    }
+
+    public List<String> findPullWaitingForReceiptMessages(final ClusterShard shard) {
         TypedQuery<String> query = this.em.createNamedQuery("UserMessageLog.findPullWaitingForReceiptMessages", String.class);
         query.setParameter("CURRENT_TIMESTAMP", new Date(System.currentTimeMillis()));
+        setShardParameters(query, shard);
+        return query.getResultList();
+    }
+
+    /**
+     * Sets back to READY_TO_PULL, in a single update, the given pull messages whose receipt is overdue and which have
+     * send attempts left.
+     *
+     * @param messageIds the ids of the pull messages waiting for a receipt
+     * @return the number of messages set back to READY_TO_PULL
+     */
+    public int resetPullWaitingForReceiptMessages(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = this.em.createNamedQuery("UserMessageLog.resetPullWaitingForReceiptMessages");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("CURRENT_TIMESTAMP", new Date(System.currentTimeMillis()));
+        return query.executeUpdate();
+    }
+
+    /**
+     * @param messageIds the ids of the pull messages waiting for a receipt
+     * @return the ids of the given pull messages whose receipt is overdue and which have no send attempt left
+     */
+    public List<String> findPullWaitingForReceiptMessagesWithoutAttemptLeft(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<String> query = this.em.createNamedQuery("UserMessageLog.findPullWaitingForReceiptMessagesWithoutAttemptLeft", String.class);
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("CURRENT_TIMESTAMP", new Date(System.currentTimeMillis()));
         return query.getResultList();
     }
 
     public List<String> findTimedoutMessages(int timeoutTolerance) {
+        return findTimedoutMessages(timeoutTolerance, ClusterShard.ALL);
+    }
+
+    public List<String> findTimedoutMessages(int timeoutTolerance, final ClusterShard shard) {
         TypedQuery<String> query = this.em.createNamedQuery("UserMessageLog.findTimedoutMessages", String.class);
         query.setParameter("TIMESTAMP_WITH_TOLERANCE", new Date(System.currentTimeMillis() - timeoutTolerance));
+        setShardParameters(query, shard);
 
         return query.getResultList();
     }
 
+    /**
+     * Restricts a query to the messages of a shard: the messages whose entity id modulo the shard count equals the
+     * shard index.
+     */
+    protected void setShardParameters(final Query query, final ClusterShard shard) {
+        query.setParameter("SHARD_COUNT", shard.getCount());
+        query.setParameter("SHARD_INDEX", shard.getIndex());
+    }
+
+    public List<UserMessageLog> findByMessageIds(final List<String> messageIds, final MSHRole mshRole) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<UserMessageLog> query = this.em.createNamedQuery("UserMessageLog.findByMessageIdsAndRole", UserMessageLog.class);
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("MSH_ROLE", mshRole);
+        return query.getResultList();
+    }
+
+    /**
+     * Same as {@link #findByMessageIds(List, MSHRole)}, the rows being locked until the end of the transaction so that
+     * the statuses read can not change before the messages are updated.
+     */
+    public List<UserMessageLog> findByMessageIdsForUpdate(final List<String> messageIds, final MSHRole mshRole) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<UserMessageLog> query = this.em.createNamedQuery("UserMessageLog.findByMessageIdsAndRole", UserMessageLog.class);
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("MSH_ROLE", mshRole);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        return query.getResultList();
+    }
+
+    /**
+     * Marks as SEND_FAILURE, in a single update, the given messages that are still waiting for a retry.
+     *
+     * @param messageIds the ids of the timed out messages
+     * @return the number of messages marked as failed
+     */
+    public int setTimedoutMessagesAsSendFailure(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = this.em.createNamedQuery("UserMessageLog.setTimedoutMessagesAsSendFailure");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("FAILED", new Date());
+        return query.executeUpdate();
+    }
+
     public List<String> findTimedOutPullMessages(int timeoutTolerance) {
+        return findTimedOutPullMessages(timeoutTolerance, ClusterShard.ALL);
+    }
+
+    public List<String> findTimedOutPullMessages(int timeoutTolerance, final ClusterShard shard) {
         TypedQuery<String> query = this.em.createNamedQuery("UserMessageLog.findPullTimedoutMessages", String.class);
         query.setParameter("TIMESTAMP_WITH_TOLERANCE", new Date(System.currentTimeMillis() - timeoutTolerance));
+        setShardParameters(query, shard);
         return query.getResultList();
     }
 
@@ -144,28 +310,122 @@ public class UserMessageLogDao extends MessageLogDao<UserMessageLog> {
         return query.getResultList();
     }
 
-    public List<String> getUndownloadedUserMessagesOlderThan(Date date, String mpc) {
-        TypedQuery<String> query = em.createNamedQuery("UserMessageLog.findUndownloadedUserMessagesOlderThan", String.class);
+    /**
+     * Gets the next chunk of expired not downloaded messages, in the order of their entity ids.
+     *
+     * @param date         the date before which the messages were received
+     * @param mpc          the MPC of the messages
+     * @param shard        the shard of the messages
+     * @param lastEntityId the entity id of the last message of the previous chunk, 0 for the first chunk
+     * @param maxResults   the maximum number of messages
+     * @return the expired messages
+     */
+    public List<ExpiredMessageDto> findExpiredUndownloadedUserMessages(Date date, String mpc, ClusterShard shard, int lastEntityId, int maxResults) {
+        return findExpiredUserMessages("UserMessageLog.findExpiredUndownloadedUserMessages", date, mpc, shard, lastEntityId, maxResults);
+    }
+
+    /**
+     * Gets the next chunk of expired downloaded messages, in the order of their entity ids.
+     *
+     * @param date         the date before which the messages were downloaded
+     * @param mpc          the MPC of the messages
+     * @param shard        the shard of the messages
+     * @param lastEntityId the entity id of the last message of the previous chunk, 0 for the first chunk
+     * @param maxResults   the maximum number of messages
+     * @return the expired messages
+     */
+    public List<ExpiredMessageDto> findExpiredDownloadedUserMessages(Date date, String mpc, ClusterShard shard, int lastEntityId, int maxResults) {
+        return findExpiredUserMessages("UserMessageLog.findExpiredDownloadedUserMessages", date, mpc, shard, lastEntityId, maxResults);
+    }
+
+    protected List<ExpiredMessageDto> findExpiredUserMessages(String queryName, Date date, String mpc, ClusterShard shard, int lastEntityId, int maxResults) {
+        TypedQuery<ExpiredMessageDto> query = em.createNamedQuery(queryName, ExpiredMessageDto.class);
         query.setParameter("DATE", date);
         query.setParameter("MPC", mpc);
-        try {
-            return query.getResultList();
-        } catch (NoResultException nrEx) {
-            LOG.debug("Query UserMessageLog.findUndownloadedUserMessagesOlderThan did not find any result for date [" + date + "] and MPC [" + mpc + "]");
-            return Collections.EMPTY_LIST;
-        }
+        query.setParameter("LAST_ENTITY_ID", lastEntityId);
+        setShardParameters(query, shard);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /**
+     * Counts the expired not downloaded messages, with the same criteria as {@link #findExpiredUndownloadedUserMessages}.
+     *
+     * @param date  the date before which the messages were received
+     * @param mpc   the MPC of the messages
+     * @param shard the shard of the messages
+     * @return the number of expired messages
+     */
+    public long countExpiredUndownloadedUserMessages(Date date, String mpc, ClusterShard shard) {
+        return countExpiredUserMessages("UserMessageLog.countExpiredUndownloadedUserMessages", date, mpc, shard);
+    }
+
+    /**
+     * Counts the expired downloaded messages, with the same criteria as {@link #findExpiredDownloadedUserMessages}.
+     *
+     * @param date  the date before which the messages were downloaded
+     * @param mpc   the MPC of the messages
+     * @param shard the shard of the messages
+     * @return the number of expired messages
+     */
+    public long countExpiredDownloadedUserMessages(Date date, String mpc, ClusterShard shard) {
+        return countExpiredUserMessages("UserMessageLog.countExpiredDownloadedUserMessages", date, mpc, shard);
     }
 
-    public List<String> getDownloadedUserMessagesOlderThan(Date date, String mpc) {
-        TypedQuery<String> query = em.createNamedQuery("UserMessageLog.findDownloadedUserMessagesOlderThan", String.class);
+    protected long countExpiredUserMessages(String queryName, Date date, String mpc, ClusterShard shard) {
+        TypedQuery<Long> query = em.createNamedQuery(queryName, Long.class);
         query.setParameter("DATE", date);
         query.setParameter("MPC", mpc);
-        try {
-            return query.getResultList();
-        } catch (NoResultException nrEx) {
-            LOG.debug("Query UserMessageLog.findDownloadedUserMessagesOlderThan did not find any result for date [" + date + "] and MPC [" + mpc + "]");
-            return Collections.EMPTY_LIST;
-        }
+        setShardParameters(query, shard);
+        return query.getSingleResult();
+    }
+
+    /**
+     * Gets the MPCs of the user messages received in a period.
+     *
+     * @param from the start of the period, included
+     * @param to   the end of the period, excluded
+     * @return the MPCs
+     */
+    public List<String> findMpcsReceivedBetween(Date from, Date to) {
+        TypedQuery<String> query = em.createNamedQuery("UserMessageLog.findMpcsReceivedBetween", String.class);
+        query.setParameter("FROM", from);
+        query.setParameter("TO", to);
+        return query.getResultList();
+    }
+
+    /**
+     * Counts the user messages received in a period whose status is not one of the given statuses.
+     *
+     * @param from            the start of the period, included
+     * @param to              the end of the period, excluded
+     * @param messageStatuses the statuses of the messages not counted
+     * @return the number of messages
+     */
+    public long countReceivedBetweenNotInStatuses(Date from, Date to, List<MessageStatus> messageStatuses) {
+        TypedQuery<Long> query = em.createNamedQuery("UserMessageLog.countReceivedBetweenNotInStatuses", Long.class);
+        query.setParameter("FROM", from);
+        query.setParameter("TO", to);
+        query.setParameter("MESSAGE_STATUSES", messageStatuses);
+        return query.getSingleResult();
+    }
+
+    /**
+     * Counts the user messages of a MPC received in a period and downloaded after a date.
+     *
+     * @param mpc             the MPC of the messages
+     * @param from            the start of the period, included
+     * @param to              the end of the period, excluded
+     * @param downloadedAfter the date after which the messages were downloaded
+     * @return the number of messages
+     */
+    public long countReceivedBetweenDownloadedAfter(String mpc, Date from, Date to, Date downloadedAfter) {
+        TypedQuery<Long> query = em.createNamedQuery("UserMessageLog.countReceivedBetweenDownloadedAfter", Long.class);
+        query.setParameter("MPC", mpc);
+        query.setParameter("FROM", from);
+        query.setParameter("TO", to);
+        query.setParameter("DOWNLOADED_AFTER", downloadedAfter);
+        return query.getSingleResult();
     }
 
     public String findBackendForMessageId(String messageId) {
@@ -180,6 +440,235 @@ public class UserMessageLogDao extends MessageLogDao<UserMessageLog> {
         super.update(messageLog);
     }
 
+    public void setAsNotified(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        Query query = this.em.createNamedQuery("UserMessageLog.setMessagesAsNotified");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.executeUpdate();
+    }
+
+    public List<UserMessageLog> findByMessageIds(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<UserMessageLog> query = this.em.createNamedQuery("UserMessageLog.findByMessageIds", UserMessageLog.class);
+        query.setParameter("MESSAGE_IDS", messageIds);
+        return query.getResultList();
+    }
+
+    /**
+     * Marks several messages as deleted with a single update, without notifying the plugins.
+     *
+     * @param messageIds the ids of the user or signal messages
+     * @return the number of updated messages
+     */
+    public int setMessagesAsDeleted(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = this.em.createNamedQuery("UserMessageLog.setMessagesAsDeleted");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        query.setParameter("DELETED", new Date());
+        return query.executeUpdate();
+    }
+
+    /**
+     * Gets the next chunk of user messages which can be archived, in the order of their entity ids.
+     *
+     * @param statuses     the statuses of the messages
+     * @param date         the date before which the messages were received
+     * @param shard        the shard of the messages
+     * @param lastEntityId the entity id of the last message of the previous chunk, 0 for the first chunk
+     * @param maxResults   the maximum number of messages
+     * @return the message logs
+     */
+    public List<UserMessageLog> findArchivableMessages(List<MessageStatus> statuses, Date date, ClusterShard shard, int lastEntityId, int maxResults) {
+        TypedQuery<UserMessageLog> query = em.createNamedQuery("UserMessageLog.findArchivableMessages", UserMessageLog.class);
+        query.setParameter("MESSAGE_STATUSES", statuses);
+        query.setParameter("DATE", date);
+        query.setParameter("LAST_ENTITY_ID", lastEntityId);
+        setShardParameters(query, shard);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /**
+     * Deletes the logs of several user messages with a single statement.
+     *
+     * @param messageIds the ids of the user messages
+     * @return the number of deleted logs
+     */
+    public int deleteByMessageIds(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return 0;
+        }
+        Query query = this.em.createNamedQuery("UserMessageLog.deleteByMessageIds");
+        query.setParameter("MESSAGE_IDS", messageIds);
+        return query.executeUpdate();
+    }
+
+    /**
+     * Claims the oldest message ready to be pulled by one of the receivers on the mpc, so that the concurrent pull
+     * requests of the cluster never hand out the same message. The messages leased by the prefetch buffer of a node are
+     * skipped until their lease expires. The row is locked with SELECT ... FOR UPDATE SKIP LOCKED when the database
+     * supports it, the rows locked by the other pull requests being skipped. Otherwise the status of the candidates is
+     * switched from READY_TO_PULL to BEING_PULLED with a conditional update, the first candidate updated by this
+     * transaction being claimed.
+     * The claimed log is returned with the status READY_TO_PULL, the caller changing it to BEING_PULLED in the same
+     * transaction in order to notify the plugins of the status change.
+     *
+     * @param mpc       the mpc of the messages
+     * @param receivers the party ids of the receiver, in upper case
+     * @return the log of the claimed message, null if there is no message to pull
+     */
+    public UserMessageLog claimReadyToPullMessage(final String mpc, final List<String> receivers) {
+        if (receivers.isEmpty()) {
+            return null;
+        }
+        final Date now = new Date();
+        if (isSkipLockedSupported()) {
+            final List<Integer> entityIds = lockReadyToPullMessages(mpc, receivers, now, 1);
+            return entityIds.isEmpty() ? null : em.find(UserMessageLog.class, entityIds.get(0));
+        }
+
+        for (UserMessageLog candidate : findReadyToPullMessages(mpc, receivers, now, CLAIM_CANDIDATES)) {
+            if (setBeingPulled(candidate.getEntityId())) {
+                return candidate;
+            }
+            LOG.debug("Message [{}] was claimed by another pull request", candidate.getMessageId());
+        }
+        return null;
+    }
+
+    /**
+     * Claims a message previously leased by the prefetch buffer of this node. The message is skipped if it was pulled
+     * in the meantime, for instance by another node after the expiration of the lease.
+     * The claimed log is returned with the status READY_TO_PULL, as for {@link #claimReadyToPullMessage(String, List)}.
+     *
+     * @param entityId the entity id of the leased message
+     * @return the log of the claimed message, null if the message is not ready to be pulled anymore
+     */
+    public UserMessageLog claimLeasedMessage(final int entityId) {
+        final UserMessageLog userMessageLog = em.find(UserMessageLog.class, entityId);
+        if (userMessageLog == null || userMessageLog.getMessageStatus() != MessageStatus.READY_TO_PULL) {
+            return null;
+        }
+        return setBeingPulled(entityId) ? userMessageLog : null;
+    }
+
+    /**
+     * Leases the oldest messages ready to be pulled by one of the receivers on the mpc, which are not leased yet, for
+     * the prefetch buffer of this node. The leased messages keep the status READY_TO_PULL: they are skipped by the
+     * other nodes until the lease expires, so that they are pulled from another node if this one stops.
+     *
+     * @param mpc         the mpc of the messages
+     * @param receivers   the party ids of the receiver, in upper case
+     * @param leaseExpiry the end of the lease
+     * @param maxResults  the maximum number of messages to lease
+     * @return the entity ids of the leased messages, the oldest first
+     */
+    public List<Integer> leaseReadyToPullMessages(final String mpc, final List<String> receivers, final Date leaseExpiry, final int maxResults) {
+        final List<Integer> leased = new ArrayList<>();
+        if (receivers.isEmpty()) {
+            return leased;
+        }
+        final Date now = new Date();
+        if (isSkipLockedSupported()) {
+            leased.addAll(lockReadyToPullMessages(mpc, receivers, now, maxResults));
+            if (!leased.isEmpty()) {
+                Query query = em.createNamedQuery("UserMessageLog.setPullLease");
+                query.setParameter("ENTITY_IDS", leased);
+                query.setParameter("PULL_LEASE", leaseExpiry);
+                query.executeUpdate();
+            }
+            return leased;
+        }
+
+        for (UserMessageLog candidate : findReadyToPullMessages(mpc, receivers, now, maxResults)) {
+            Query query = em.createNamedQuery("UserMessageLog.leaseReadyToPullMessage");
+            query.setParameter("ENTITY_ID", candidate.getEntityId());
+            query.setParameter("PULL_LEASE", leaseExpiry);
+            query.setParameter("NOW", now);
+            if (query.executeUpdate() == 1) {
+                leased.add(candidate.getEntityId());
+            }
+        }
+        return leased;
+    }
+
+    protected List<UserMessageLog> findReadyToPullMessages(final String mpc, final List<String> receivers, final Date now, final int maxResults) {
+        TypedQuery<UserMessageLog> query = em.createNamedQuery("UserMessageLog.findReadyToPullMessagesForReceivers", UserMessageLog.class);
+        query.setParameter("MPC", mpc);
+        query.setParameter("RECEIVERS", receivers);
+        query.setParameter("NOW", now);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    protected boolean setBeingPulled(final int entityId) {
+        Query query = em.createNamedQuery("UserMessageLog.claimReadyToPullMessage");
+        query.setParameter("ENTITY_ID", entityId);
+        return query.executeUpdate() == 1;
+    }
+
+    protected List<Integer> lockReadyToPullMessages(final String mpc, final List<String> receivers, final Date now, final int maxResults) {
+        final StringBuilder sql = new StringBuilder("SELECT ID_PK FROM TB_MESSAGE_LOG WHERE MESSAGE_STATUS = '")
+                .append(MessageStatus.READY_TO_PULL.name()).append("' AND MPC = ? AND RECEIVER IN (");
+        for (int i = 0; i < receivers.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") AND (PULL_LEASE IS NULL OR PULL_LEASE < ?) ORDER BY RECEIVED");
+        if (!oracle) {
+            sql.append(" LIMIT ").append(maxResults);
+        }
+        sql.append(" FOR UPDATE SKIP LOCKED");
+
+        final List<Integer> entityIds = new ArrayList<>();
+        em.unwrap(Session.class).doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    // Oracle locks the rows when they are fetched
+                    statement.setMaxRows(maxResults);
+                    statement.setFetchSize(maxResults);
+                    int index = 1;
+                    statement.setString(index++, mpc);
+                    for (String receiver : receivers) {
+                        statement.setString(index++, receiver);
+                    }
+                    statement.setTimestamp(index, new Timestamp(now.getTime()));
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            entityIds.add(resultSet.getInt(1));
+                        }
+                    }
+                }
+            }
+        });
+        return entityIds;
+    }
+
+    /**
+     * SKIP LOCKED is supported by Oracle and by MySQL from the version 8.
+     */
+    protected boolean isSkipLockedSupported() {
+        if (skipLockedSupported == null) {
+            em.unwrap(Session.class).doWork(new Work() {
+                @Override
+                public void execute(Connection connection) throws SQLException {
+                    final DatabaseMetaData metaData = connection.getMetaData();
+                    oracle = StringUtils.containsIgnoreCase(metaData.getDatabaseProductName(), "oracle");
+                    final boolean mysql8 = StringUtils.containsIgnoreCase(metaData.getDatabaseProductName(), "mysql") && metaData.getDatabaseMajorVersion() >= 8;
+                    skipLockedSupported = oracle || mysql8;
+                    LOG.info("Pull requests claim the messages with [{}]", skipLockedSupported ? "SELECT ... FOR UPDATE SKIP LOCKED" : "conditional status updates");
+                }
+            });
+        }
+        return skipLockedSupported;
+    }
+
     public int countAllInfo(boolean asc, HashMap<String, Object> filters) {
         LOG.debug("Count all");
         final Map<String, Object> filteredEntries = Maps.filterEntries(filters, new com.google.common.base.Predicate<Map.Entry<String, Object>>() {
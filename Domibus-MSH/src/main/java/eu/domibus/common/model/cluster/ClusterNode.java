@@ -0,0 +1,47 @@
+package eu.domibus.common.model.cluster;
+
+import eu.domibus.ebms3.common.model.AbstractBaseEntity;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A Domibus node of the cluster, kept alive by its periodical heartbeat.
+ *
+ * @since 3.3.3
+ */
+@Entity
+@Table(name = "TB_CLUSTER_NODE")
+@NamedQueries({
+        @NamedQuery(name = "ClusterNode.findByNodeId", query = "FROM ClusterNode c where c.nodeId=:NODE_ID"),
+        @NamedQuery(name = "ClusterNode.findActiveNodeIds", query = "select c.nodeId FROM ClusterNode c where c.heartbeat>=:SINCE order by c.nodeId"),
+        @NamedQuery(name = "ClusterNode.deleteInactive", query = "delete FROM ClusterNode c where c.heartbeat<:BEFORE")
+})
+public class ClusterNode extends AbstractBaseEntity {
+
+    @Column(name = "NODE_ID")
+    @NotNull
+    private String nodeId;
+
+    @Column(name = "HEARTBEAT")
+    @NotNull
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date heartbeat;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Date getHeartbeat() {
+        return heartbeat;
+    }
+
+    public void setHeartbeat(Date heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+}
@@ -31,7 +31,7 @@ import javax.xml.bind.annotation.XmlType;
 @XmlType(name = "")
 @Entity
 @Table(name = "TB_ACTION")
-@NamedQueries({@NamedQuery(name = "Action.findByAction", query = "select a.name from Action a where a.value = :ACTION"), @NamedQuery(name = "Action.findByName", query = "select a from Action a where a.name=:NAME")})
+@NamedQueries({@NamedQuery(name = "Action.findByAction", query = "select a.name from Configuration c join c.businessProcesses bp join bp.actions a where c.active = true and a.value = :ACTION"), @NamedQuery(name = "Action.findByName", query = "select a from Configuration c join c.businessProcesses bp join bp.actions a where c.active = true and a.name=:NAME")})
 public class Action extends AbstractBaseEntity {
 
     @XmlAttribute(name = "name", required = true)
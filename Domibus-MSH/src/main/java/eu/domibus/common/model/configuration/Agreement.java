@@ -31,8 +31,8 @@ import javax.xml.bind.annotation.XmlType;
 @XmlType(name = "")
 @Entity
 @Table(name = "TB_AGREEMENT")
-@NamedQueries({@NamedQuery(name = "Agreement.findByValueAndType", query = "select a.name from Agreement a where a.value=:VALUE and a.type=:TYPE"),
-        @NamedQuery(name = "Agreement.findByName", query = "select a from Agreement a where a.name=:NAME")})
+@NamedQueries({@NamedQuery(name = "Agreement.findByValueAndType", query = "select a.name from Configuration c join c.businessProcesses bp join bp.agreements a where c.active = true and a.value=:VALUE and a.type=:TYPE"),
+        @NamedQuery(name = "Agreement.findByName", query = "select a from Configuration c join c.businessProcesses bp join bp.agreements a where c.active = true and a.name=:NAME")})
 public class Agreement extends AbstractBaseEntity {
 
     @XmlAttribute(name = "name", required = true)
@@ -17,7 +17,16 @@ import java.util.Set;
 @Entity
 @Table(name = "TB_CONFIGURATION")
 @XmlRootElement(name = "configuration")
-@NamedQueries({@NamedQuery(name = "Configuration.count", query = "SELECT COUNT(c.entityId) FROM Configuration c"), @NamedQuery(name = "Configuration.getConfiguration", query = "select conf from Configuration conf")})
+@NamedQueries({@NamedQuery(name = "Configuration.count", query = "SELECT COUNT(c.entityId) FROM Configuration c where c.active = true"), @NamedQuery(name = "Configuration.getConfiguration", query = "select conf from Configuration conf where conf.active = true"),
+        @NamedQuery(name = "Configuration.findInactive", query = "select conf from Configuration conf where conf.active = false"),
+        @NamedQuery(name = "Configuration.activate", query = "update Configuration conf set conf.active = true where conf.entityId = :ID"),
+        @NamedQuery(name = "Configuration.deactivateOthers", query = "update Configuration conf set conf.active = false where conf.active = true and conf.entityId <> :ID"),
+        @NamedQuery(name = "Configuration.fetchPartyIdentifiers", query = "select distinct p from BusinessProcesses bp join bp.parties p left join fetch p.identifiers where bp = :BUSINESS_PROCESSES"),
+        @NamedQuery(name = "Configuration.fetchProcessInitiatorParties", query = "select distinct p from BusinessProcesses bp join bp.processes p left join fetch p.initiatorParties where bp = :BUSINESS_PROCESSES"),
+        @NamedQuery(name = "Configuration.fetchProcessResponderParties", query = "select distinct p from BusinessProcesses bp join bp.processes p left join fetch p.responderParties where bp = :BUSINESS_PROCESSES"),
+        @NamedQuery(name = "Configuration.fetchProcessLegs", query = "select distinct p from BusinessProcesses bp join bp.processes p left join fetch p.legs where bp = :BUSINESS_PROCESSES"),
+        @NamedQuery(name = "Configuration.fetchPayloadProfilePayloads", query = "select distinct pp from BusinessProcesses bp join bp.payloadProfiles pp left join fetch pp.payloads where bp = :BUSINESS_PROCESSES"),
+        @NamedQuery(name = "Configuration.fetchPropertySetProperties", query = "select distinct ps from BusinessProcesses bp join bp.propertySets ps left join fetch ps.properties where bp = :BUSINESS_PROCESSES")})
 public class Configuration extends AbstractBaseEntity {
 
     @XmlElement(required = true, name = "businessProcesses")
@@ -35,9 +44,16 @@ public class Configuration extends AbstractBaseEntity {
     @Transient
     private String partyXml;
     @XmlTransient
+    @Transient
+    private boolean prepared;
+    @XmlTransient
     @JoinColumn(name = "FK_PARTY")
     @OneToOne
     private Party party;
+    //only the active configuration is used, the others are being replaced or removed
+    @XmlTransient
+    @Column(name = "ACTIVE")
+    private boolean active;
 
     private void initMpcs() {
         if (this.mpcs == null) {
@@ -82,12 +98,28 @@ public class Configuration extends AbstractBaseEntity {
         this.mpcs = mpcs;
     }
 
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(final boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * Resolves the references between the unmarshalled elements. It can be invoked before persisting, i.e. to validate
+     * the configuration outside of the transaction that saves it, in which case it is not repeated on persist.
+     */
     @PrePersist
-    private void preparePersist() {
+    public void preparePersist() {
+        if (this.prepared) {
+            return;
+        }
         this.initMpcs();
         this.businessProcesses.init(this);
 
         this.initParty();
+        this.prepared = true;
     }
 
 
@@ -31,7 +31,7 @@ import javax.xml.bind.annotation.*;
 @XmlType(name = "")
 @Entity
 @Table(name = "TB_PARTY_IDENTIFIER")
-@NamedQuery(name = "Identifier.findByTypeAndPartyId", query = "select i from Identifier i where i.partyId = :PARTY_ID and ((:PARTY_ID_TYPE is null and i.partyIdType.value is null) or i.partyIdType.value  = :PARTY_ID_TYPE)")
+@NamedQuery(name = "Identifier.findByTypeAndPartyId", query = "select i from Configuration c join c.businessProcesses bp join bp.parties p join p.identifiers i where c.active = true and i.partyId = :PARTY_ID and ((:PARTY_ID_TYPE is null and i.partyIdType.value is null) or i.partyIdType.value  = :PARTY_ID_TYPE)")
 public class Identifier extends AbstractBaseEntity {
 
     @XmlAttribute(name = "partyId", required = true)
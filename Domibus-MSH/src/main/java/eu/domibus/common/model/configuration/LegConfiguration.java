@@ -18,15 +18,15 @@ import java.util.Map;
 @Table(name = "TB_LEG")
 @NamedQueries({
         @NamedQuery(name = "LegConfiguration.findForPartiesAndAgreements",
-                query = "select p.legs from Process p where :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and (p.agreement.name=:AGREEMENT and p.agreement is not null)"),
+                query = "select l from Configuration c join c.businessProcesses bp join bp.processes p join p.legs l where c.active = true and :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and (p.agreement.name=:AGREEMENT and p.agreement is not null)"),
         @NamedQuery(name = "LegConfiguration.findForPartiesAndAgreementsOAE",
-                query = "select p.legs from Process p where :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and p.agreement is null"),
+                query = "select l from Configuration c join c.businessProcesses bp join bp.processes p join p.legs l where c.active = true and :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and p.agreement is null"),
         @NamedQuery(name = "LegConfiguration.findForPartiesAndAgreementEmpty",
-                query = "select p.legs from Process p where :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and (p.agreement.name='agreementEmpty')"),
+                query = "select l from Configuration c join c.businessProcesses bp join bp.processes p join p.legs l where c.active = true and :SENDER_PARTY in (select party.name from p.initiatorParties party) and :RECEIVER_PARTY in (select party.name from p.responderParties party) and (p.agreement.name='agreementEmpty')"),
         @NamedQuery(name = "LegConfiguration.findForPMode",
-                query = "select l.name from LegConfiguration l where l.service.name=:SERVICE and l.action.name=:ACTION and l.name in :CANDIDATES"),
+                query = "select l.name from Configuration c join c.businessProcesses bp join bp.legConfigurations l where c.active = true and l.service.name=:SERVICE and l.action.name=:ACTION and l.name in :CANDIDATES"),
         @NamedQuery(name = "LegConfiguration.findByName",
-                query = "select l from LegConfiguration l where l.name=:NAME")})
+                query = "select l from Configuration c join c.businessProcesses bp join bp.legConfigurations l where c.active = true and l.name=:NAME")})
 
 public class LegConfiguration extends AbstractBaseEntity {
 
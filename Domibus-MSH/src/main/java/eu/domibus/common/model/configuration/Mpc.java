@@ -16,11 +16,11 @@ import java.math.BigInteger;
 @XmlType(name = "")
 @Entity
 @Table(name = "TB_MPC")
-@NamedQueries({@NamedQuery(name = "Mpc.countForQualifiedName", query = "select count(mpc) from Mpc mpc where mpc.qualifiedName=:QUALIFIED_NAME"),
-        @NamedQuery(name = "Mpc.findByName", query = "select mpc from Mpc mpc where mpc.name=:NAME"),
-        @NamedQuery(name = "Mpc.findByQualifiedName", query = "select mpc from Mpc mpc where mpc.qualifiedName=:QUALIFIED_NAME"),
-        @NamedQuery(name = "Mpc.getAllNames", query = "select mpc.name from Mpc mpc"),
-        @NamedQuery(name = "Mpc.getAllURIs", query = "select mpc.qualifiedName from Mpc mpc")})
+@NamedQueries({@NamedQuery(name = "Mpc.countForQualifiedName", query = "select count(mpc) from Configuration c join c.mpcs mpc where c.active = true and mpc.qualifiedName=:QUALIFIED_NAME"),
+        @NamedQuery(name = "Mpc.findByName", query = "select mpc from Configuration c join c.mpcs mpc where c.active = true and mpc.name=:NAME"),
+        @NamedQuery(name = "Mpc.findByQualifiedName", query = "select mpc from Configuration c join c.mpcs mpc where c.active = true and mpc.qualifiedName=:QUALIFIED_NAME"),
+        @NamedQuery(name = "Mpc.getAllNames", query = "select mpc.name from Configuration c join c.mpcs mpc where c.active = true"),
+        @NamedQuery(name = "Mpc.getAllURIs", query = "select mpc.qualifiedName from Configuration c join c.mpcs mpc where c.active = true")})
 
 
 public class Mpc extends AbstractBaseEntity {
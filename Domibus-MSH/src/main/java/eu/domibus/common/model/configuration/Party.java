@@ -46,9 +46,9 @@ import java.util.Set;
 @XmlType(name = "", propOrder = "identifiers")
 @Entity
 @Table(name = "TB_PARTY")
-@NamedQueries({@NamedQuery(name = "Party.findPartyByIdentifier", query = "select p.name from Party p where :PARTY_IDENTIFIER member of p.identifiers"),
-        @NamedQuery(name = "Party.findByName", query = "select p from Party p where p.name = :NAME"),
-        @NamedQuery(name = "Party.findPartyIdentifiersByEndpoint", query = "select p.identifiers from Party p where p.endpoint = :ENDPOINT")})
+@NamedQueries({@NamedQuery(name = "Party.findPartyByIdentifier", query = "select p.name from Configuration c join c.businessProcesses bp join bp.parties p where c.active = true and :PARTY_IDENTIFIER member of p.identifiers"),
+        @NamedQuery(name = "Party.findByName", query = "select p from Configuration c join c.businessProcesses bp join bp.parties p where c.active = true and p.name = :NAME"),
+        @NamedQuery(name = "Party.findPartyIdentifiersByEndpoint", query = "select i from Configuration c join c.businessProcesses bp join bp.parties p join p.identifiers i where c.active = true and p.endpoint = :ENDPOINT")})
 public class Party extends AbstractBaseEntity {
 
     @XmlElement(required = true, name = "identifier")
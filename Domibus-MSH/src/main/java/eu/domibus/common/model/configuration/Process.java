@@ -21,10 +21,10 @@ import static eu.domibus.common.model.configuration.Process.*;
 @Entity
 @Table(name = "TB_PROCESS")
 @NamedQueries({
-        @NamedQuery(name = RETRIEVE_PULL_PROCESS_FROM_MESSAGE_CONTEXT, query = "SELECT p FROM Process as p left join p.legs as l left join p.initiatorParties init left join p.responderParties resp  where p.mepBinding.value=:mepBinding and l.name=:leg and init.name=:initiatorName and resp.name=:responderName"),
-        @NamedQuery(name = FIND_PULL_PROCESS_TO_INITIATE, query = "SELECT p FROM Process as p join p.initiatorParties as resp WHERE p.mepBinding.value=:mepBinding and resp in(:initiator)"),
-        @NamedQuery(name = FIND_PULL_PROCESS_FROM_MPC, query = "SELECT p FROM Process as p left join p.legs as l where p.mepBinding.value=:mepBinding and l.defaultMpc.qualifiedName=:mpcName"),
-        @NamedQuery(name = FIND_PULL_PROCESS_FROM_LEG_NAME, query = "SELECT p FROM Process as p left join p.legs as l where p.mepBinding.value=:mepBinding and l.name=:legName")})
+        @NamedQuery(name = RETRIEVE_PULL_PROCESS_FROM_MESSAGE_CONTEXT, query = "SELECT p FROM Configuration c join c.businessProcesses bp join bp.processes p left join p.legs as l left join p.initiatorParties init left join p.responderParties resp where c.active = true and p.mepBinding.value=:mepBinding and l.name=:leg and init.name=:initiatorName and resp.name=:responderName"),
+        @NamedQuery(name = FIND_PULL_PROCESS_TO_INITIATE, query = "SELECT p FROM Configuration c join c.businessProcesses bp join bp.processes p join p.initiatorParties as resp WHERE c.active = true and p.mepBinding.value=:mepBinding and resp in(:initiator)"),
+        @NamedQuery(name = FIND_PULL_PROCESS_FROM_MPC, query = "SELECT p FROM Configuration c join c.businessProcesses bp join bp.processes p left join p.legs as l where c.active = true and p.mepBinding.value=:mepBinding and l.defaultMpc.qualifiedName=:mpcName"),
+        @NamedQuery(name = FIND_PULL_PROCESS_FROM_LEG_NAME, query = "SELECT p FROM Configuration c join c.businessProcesses bp join bp.processes p left join p.legs as l where c.active = true and p.mepBinding.value=:mepBinding and l.name=:legName")})
 public class Process extends AbstractBaseEntity {
     @Transient
     @XmlTransient
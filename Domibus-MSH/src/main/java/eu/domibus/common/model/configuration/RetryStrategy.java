@@ -3,13 +3,22 @@ package eu.domibus.common.model.configuration;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author Christian Koch, Stefan Mueller
  */
 public enum RetryStrategy {
 
-    CONSTANT("CONSTANT", RetryStrategy.ConstantAttemptAlgorithm.ALGORITHM), SEND_ONCE("SEND_ONCE", RetryStrategy.SendOnceAttemptAlgorithm.ALGORITHM);
+    CONSTANT("CONSTANT", RetryStrategy.ConstantAttemptAlgorithm.ALGORITHM), SEND_ONCE("SEND_ONCE", RetryStrategy.SendOnceAttemptAlgorithm.ALGORITHM),
+    EXPONENTIAL("EXPONENTIAL", RetryStrategy.ExponentialAttemptAlgorithm.ALGORITHM), EXPONENTIAL_JITTER("EXPONENTIAL_JITTER", RetryStrategy.ExponentialJitterAttemptAlgorithm.ALGORITHM);
+
+    private static final int MULTIPLIER_MINUTES_TO_MILLIS = 60000;
+
+    /**
+     * Beyond 2^30 times the base the delay always exceeds any sensible retry timeout
+     */
+    private static final int MAX_EXPONENT = 30;
 
     private final String name;
     private final RetryStrategy.AttemptAlgorithm algorithm;
@@ -65,10 +74,126 @@ public enum RetryStrategy {
         }
     }
 
+    /**
+     * Doubles the delay after each attempt: base, 2 * base, 4 * base... bounded by the cap.
+     */
+    public enum ExponentialAttemptAlgorithm implements RetryStrategy.ProgressiveAttemptAlgorithm {
+
+        ALGORITHM {
+            @Override
+            public Date compute(final Date received, final int maxAttempts, final int timeoutInMinutes) {
+                return compute(received, 1, maxAttempts, timeoutInMinutes, Backoff.DEFAULT);
+            }
+
+            @Override
+            public Date compute(final Date scheduledStart, final int sendAttempts, final int maxAttempts, final int timeoutInMinutes, final Backoff backoff) {
+                if (maxAttempts < 0 || timeoutInMinutes < 0 || scheduledStart == null) {
+                    return null;
+                }
+                return getNextAttempt(scheduledStart, timeoutInMinutes, getExponentialDelay(sendAttempts, maxAttempts, timeoutInMinutes, backoff));
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with full jitter: the delay is drawn uniformly between 0 and the exponential delay so that
+     * the messages which failed together do not retry together.
+     */
+    public enum ExponentialJitterAttemptAlgorithm implements RetryStrategy.ProgressiveAttemptAlgorithm {
+
+        ALGORITHM {
+            @Override
+            public Date compute(final Date received, final int maxAttempts, final int timeoutInMinutes) {
+                return compute(received, 1, maxAttempts, timeoutInMinutes, Backoff.DEFAULT);
+            }
+
+            @Override
+            public Date compute(final Date scheduledStart, final int sendAttempts, final int maxAttempts, final int timeoutInMinutes, final Backoff backoff) {
+                if (maxAttempts < 0 || timeoutInMinutes < 0 || scheduledStart == null) {
+                    return null;
+                }
+                final long delay = getExponentialDelay(sendAttempts, maxAttempts, timeoutInMinutes, backoff);
+                return getNextAttempt(scheduledStart, timeoutInMinutes, ThreadLocalRandom.current().nextLong(delay + 1));
+            }
+        }
+    }
+
+    /**
+     * Gets the delay before the attempt following the given number of attempts: the base delay doubled after each
+     * attempt and bounded by the cap. Without a configured base, the base is chosen so that the maximum number of
+     * attempts fits in the retry timeout; without a configured cap, the delay is bounded by the retry timeout.
+     */
+    static long getExponentialDelay(final int sendAttempts, final int maxAttempts, final int timeoutInMinutes, final Backoff backoff) {
+        final long timeout = (long) timeoutInMinutes * MULTIPLIER_MINUTES_TO_MILLIS;
+        long base = backoff.getBaseMillis();
+        if (base <= 0) {
+            final int attemptsExponent = Math.min(Math.max(maxAttempts, 1), MAX_EXPONENT);
+            base = Math.max(1, timeout / ((1L << attemptsExponent) - 1));
+        }
+        final int exponent = Math.min(Math.max(sendAttempts - 1, 0), MAX_EXPONENT);
+        final long delay = base > (Long.MAX_VALUE >> exponent) ? Long.MAX_VALUE : base << exponent;
+        final long cap = backoff.getCapMillis() > 0 ? backoff.getCapMillis() : timeout;
+        return Math.min(delay, cap);
+    }
+
+    /**
+     * Gets the date of the next attempt, the last attempt being made when the retry timeout is reached.
+     */
+    static Date getNextAttempt(final Date scheduledStart, final int timeoutInMinutes, final long delay) {
+        final long now = System.currentTimeMillis();
+        final long stopTime = scheduledStart.getTime() + (long) timeoutInMinutes * MULTIPLIER_MINUTES_TO_MILLIS;
+        if (now >= stopTime + 5000) { // We grant 5 extra seconds to avoid not sending the last attempt
+            return null;
+        }
+        return new Date(Math.max(now, Math.min(now + delay, stopTime)));
+    }
+
     /**
      * NOT FINISHED *
      */
     public interface AttemptAlgorithm extends Serializable {
         Date compute(Date received, int maxAttempts, int timeoutInMinutes);
     }
+
+    /**
+     * Algorithm computing the next attempt from the number of attempts already made
+     */
+    public interface ProgressiveAttemptAlgorithm extends AttemptAlgorithm {
+
+        /**
+         * @param scheduledStart   the date the sending of the message started (received or restored)
+         * @param sendAttempts     the number of attempts already made
+         * @param maxAttempts      the maximum number of attempts
+         * @param timeoutInMinutes the retry timeout
+         * @param backoff          the bounds of the delay between two attempts
+         * @return the date of the next attempt or null if the retry timeout is reached
+         */
+        Date compute(Date scheduledStart, int sendAttempts, int maxAttempts, int timeoutInMinutes, Backoff backoff);
+    }
+
+    /**
+     * Base and cap, in milliseconds, of the delay between two attempts. A value lower than 1 means the base or the cap
+     * is derived from the retry timeout.
+     */
+    public static final class Backoff implements Serializable {
+
+        public static final Backoff DEFAULT = new Backoff(0, 0);
+
+        private final long baseMillis;
+
+        private final long capMillis;
+
+        public Backoff(final long baseMillis, final long capMillis) {
+            this.baseMillis = baseMillis;
+            this.capMillis = capMillis;
+        }
+
+        public long getBaseMillis() {
+            return baseMillis;
+        }
+
+        public long getCapMillis() {
+            return capMillis;
+        }
+    }
 }
@@ -18,8 +18,8 @@ import javax.xml.bind.annotation.XmlType;
 @Entity
 @Table(name = "TB_ROLE")
 @NamedQueries({
-        @NamedQuery(name = "Role.findByValue", query = "select role from Role role where role.value=:VALUE"),
-        @NamedQuery(name = "Role.findByName", query = "select role from Role role where role.name=:NAME")
+        @NamedQuery(name = "Role.findByValue", query = "select role from Configuration c join c.businessProcesses bp join bp.roles role where c.active = true and role.value=:VALUE"),
+        @NamedQuery(name = "Role.findByName", query = "select role from Configuration c join c.businessProcesses bp join bp.roles role where c.active = true and role.name=:NAME")
 })
 public class Role extends AbstractBaseEntity {
 
@@ -31,9 +31,9 @@ import javax.xml.bind.annotation.XmlType;
 @XmlType(name = "")
 @Entity
 @Table(name = "TB_SERVICE")
-@NamedQueries({@NamedQuery(name = "Service.findByServiceAndType", query = "select s.name from Service s where s.value = :SERVICE and s.serviceType= :TYPE"),
-        @NamedQuery(name = "Service.findByName", query = "select s from Service s where s.name=:NAME"),
-        @NamedQuery(name = "Service.findWithoutType", query = "select s.name from Service s where s.value = :SERVICE and (s.serviceType='' or s.serviceType is null)")})
+@NamedQueries({@NamedQuery(name = "Service.findByServiceAndType", query = "select s.name from Configuration c join c.businessProcesses bp join bp.services s where c.active = true and s.value = :SERVICE and s.serviceType= :TYPE"),
+        @NamedQuery(name = "Service.findByName", query = "select s from Configuration c join c.businessProcesses bp join bp.services s where c.active = true and s.name=:NAME"),
+        @NamedQuery(name = "Service.findWithoutType", query = "select s.name from Configuration c join c.businessProcesses bp join bp.services s where c.active = true and s.value = :SERVICE and (s.serviceType='' or s.serviceType is null)")})
 public class Service extends AbstractBaseEntity {
 
     @XmlAttribute(name = "name", required = true)
@@ -0,0 +1,24 @@
+package eu.domibus.common.model.logging;
+
+/**
+ * Key of an expired message selected by the retention: the entity id is used to read the expired messages in chunks.
+ *
+ * @since 3.3.3
+ */
+public class ExpiredMessageDto {
+    final int entityId;
+    final String messageId;
+
+    public ExpiredMessageDto(int entityId, String messageId) {
+        this.entityId = entityId;
+        this.messageId = messageId;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+}
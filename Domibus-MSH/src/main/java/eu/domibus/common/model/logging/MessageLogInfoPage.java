@@ -0,0 +1,26 @@
+package eu.domibus.common.model.logging;
+
+import java.util.List;
+
+/**
+ * Page of message log information together with the number of messages matching the filters on all the pages.
+ *
+ * @since 3.3.3
+ */
+public class MessageLogInfoPage {
+    final int count;
+    final List<MessageLogInfo> messageLogInfos;
+
+    public MessageLogInfoPage(int count, List<MessageLogInfo> messageLogInfos) {
+        this.count = count;
+        this.messageLogInfos = messageLogInfos;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public List<MessageLogInfo> getMessageLogInfos() {
+        return messageLogInfos;
+    }
+}
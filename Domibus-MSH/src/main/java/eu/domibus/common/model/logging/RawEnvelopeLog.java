@@ -17,7 +17,8 @@ import javax.persistence.*;
 @Table(name = "TB_RAWENVELOPE_LOG")
 @NamedQueries({
         @NamedQuery(name = "RawDto.findByMessageId", query = "SELECT new eu.domibus.common.model.logging.RawEnvelopeDto(l.entityId,l.rawXML) FROM RawEnvelopeLog l where l.userMessage.messageInfo.messageId=:MESSAGE_ID"),
-        @NamedQuery(name = "Raw.findByMessageId", query = "SELECT l FROM RawEnvelopeLog l where l.userMessage.messageInfo.messageId=:MESSAGE_ID")
+        @NamedQuery(name = "Raw.findByMessageId", query = "SELECT l FROM RawEnvelopeLog l where l.userMessage.messageInfo.messageId=:MESSAGE_ID"),
+        @NamedQuery(name = "Raw.deleteByMessageIds", query = "DELETE FROM RawEnvelopeLog l where l.userMessage.entityId in (SELECT um.entityId FROM UserMessage um where um.messageInfo.messageId in :MESSAGE_IDS) or l.signalMessage.entityId in (SELECT sm.entityId FROM SignalMessage sm where sm.messageInfo.refToMessageId in :MESSAGE_IDS)")
 })
 public class RawEnvelopeLog extends AbstractBaseEntity {
     @OneToOne
@@ -16,7 +16,8 @@ import java.util.Date;
 @DiscriminatorValue("SIGNAL_MESSAGE")
 @NamedQueries({
         @NamedQuery(name = "SignalMessageLog.findByMessageId", query = "select signalMessageLog from SignalMessageLog signalMessageLog where signalMessageLog.messageId=:MESSAGE_ID"),
-        @NamedQuery(name = "SignalMessageLog.findByMessageIdAndRole", query = "select signalMessageLog from SignalMessageLog signalMessageLog where signalMessageLog.messageId=:MESSAGE_ID and signalMessageLog.mshRole=:MSH_ROLE")
+        @NamedQuery(name = "SignalMessageLog.findByMessageIdAndRole", query = "select signalMessageLog from SignalMessageLog signalMessageLog where signalMessageLog.messageId=:MESSAGE_ID and signalMessageLog.mshRole=:MSH_ROLE"),
+        @NamedQuery(name = "SignalMessageLog.deleteByMessageIds", query = "delete from SignalMessageLog signalMessageLog where signalMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.SIGNAL_MESSAGE and signalMessageLog.messageId in :MESSAGE_IDS")
 })
 public class SignalMessageLog extends MessageLog {
 
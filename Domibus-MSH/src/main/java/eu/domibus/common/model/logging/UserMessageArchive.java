@@ -0,0 +1,270 @@
+package eu.domibus.common.model.logging;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.NotificationStatus;
+import eu.domibus.ebms3.common.model.AbstractBaseEntity;
+import eu.domibus.ebms3.common.model.MessageType;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A user message moved to the archive tier: the message log information shown in the administration console, kept
+ * after the message itself was removed from the message tables.
+ *
+ * @since 3.3.3
+ */
+@Entity
+@Table(name = "TB_USER_MESSAGE_ARCHIVE")
+@NamedQueries({
+        @NamedQuery(name = "UserMessageArchive.countByMessageIdAndRole", query = "select count(archive.entityId) from UserMessageArchive archive where archive.messageId=:MESSAGE_ID and archive.mshRole=:MSH_ROLE")
+})
+public class UserMessageArchive extends AbstractBaseEntity {
+
+
+    @Column(name = "MESSAGE_ID")
+    @NotNull
+    private String messageId;
+
+    @Column(name = "MESSAGE_STATUS")
+    @Enumerated(EnumType.STRING)
+    private MessageStatus messageStatus;
+
+    @Column(name = "NOTIFICATION_STATUS")
+    @Enumerated(EnumType.STRING)
+    private NotificationStatus notificationStatus;
+
+    @Column(name = "MSH_ROLE")
+    @Enumerated(EnumType.STRING)
+    private MSHRole mshRole;
+
+    @Column(name = "MESSAGE_TYPE")
+    @Enumerated(EnumType.STRING)
+    private MessageType messageType;
+
+    @Column(name = "MPC")
+    private String mpc;
+
+    @Column(name = "RECEIVED")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date received;
+
+    @Column(name = "DOWNLOADED")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date downloaded;
+
+    @Column(name = "DELETED")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date deleted;
+
+    @Column(name = "FAILED")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date failed;
+
+    @Column(name = "RESTORED")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date restored;
+
+    @Column(name = "NEXT_ATTEMPT")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttempt;
+
+    @Column(name = "SEND_ATTEMPTS")
+    private int sendAttempts;
+
+    @Column(name = "SEND_ATTEMPTS_MAX")
+    private int sendAttemptsMax;
+
+    @Column(name = "CONVERSATION_ID")
+    private String conversationId;
+
+    @Column(name = "FROM_PARTY_ID")
+    private String fromPartyId;
+
+    @Column(name = "TO_PARTY_ID")
+    private String toPartyId;
+
+    @Column(name = "ORIGINAL_SENDER")
+    private String originalSender;
+
+    @Column(name = "FINAL_RECIPIENT")
+    private String finalRecipient;
+
+    @Column(name = "REF_TO_MESSAGE_ID")
+    private String refToMessageId;
+
+    @Column(name = "ARCHIVED")
+    @NotNull
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date archived;
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public MessageStatus getMessageStatus() {
+        return messageStatus;
+    }
+
+    public void setMessageStatus(MessageStatus messageStatus) {
+        this.messageStatus = messageStatus;
+    }
+
+    public NotificationStatus getNotificationStatus() {
+        return notificationStatus;
+    }
+
+    public void setNotificationStatus(NotificationStatus notificationStatus) {
+        this.notificationStatus = notificationStatus;
+    }
+
+    public MSHRole getMshRole() {
+        return mshRole;
+    }
+
+    public void setMshRole(MSHRole mshRole) {
+        this.mshRole = mshRole;
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(MessageType messageType) {
+        this.messageType = messageType;
+    }
+
+    public String getMpc() {
+        return mpc;
+    }
+
+    public void setMpc(String mpc) {
+        this.mpc = mpc;
+    }
+
+    public Date getReceived() {
+        return received;
+    }
+
+    public void setReceived(Date received) {
+        this.received = received;
+    }
+
+    public Date getDownloaded() {
+        return downloaded;
+    }
+
+    public void setDownloaded(Date downloaded) {
+        this.downloaded = downloaded;
+    }
+
+    public Date getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(Date deleted) {
+        this.deleted = deleted;
+    }
+
+    public Date getFailed() {
+        return failed;
+    }
+
+    public void setFailed(Date failed) {
+        this.failed = failed;
+    }
+
+    public Date getRestored() {
+        return restored;
+    }
+
+    public void setRestored(Date restored) {
+        this.restored = restored;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public int getSendAttempts() {
+        return sendAttempts;
+    }
+
+    public void setSendAttempts(int sendAttempts) {
+        this.sendAttempts = sendAttempts;
+    }
+
+    public int getSendAttemptsMax() {
+        return sendAttemptsMax;
+    }
+
+    public void setSendAttemptsMax(int sendAttemptsMax) {
+        this.sendAttemptsMax = sendAttemptsMax;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getFromPartyId() {
+        return fromPartyId;
+    }
+
+    public void setFromPartyId(String fromPartyId) {
+        this.fromPartyId = fromPartyId;
+    }
+
+    public String getToPartyId() {
+        return toPartyId;
+    }
+
+    public void setToPartyId(String toPartyId) {
+        this.toPartyId = toPartyId;
+    }
+
+    public String getOriginalSender() {
+        return originalSender;
+    }
+
+    public void setOriginalSender(String originalSender) {
+        this.originalSender = originalSender;
+    }
+
+    public String getFinalRecipient() {
+        return finalRecipient;
+    }
+
+    public void setFinalRecipient(String finalRecipient) {
+        this.finalRecipient = finalRecipient;
+    }
+
+    public String getRefToMessageId() {
+        return refToMessageId;
+    }
+
+    public void setRefToMessageId(String refToMessageId) {
+        this.refToMessageId = refToMessageId;
+    }
+
+    public Date getArchived() {
+        return archived;
+    }
+
+    public void setArchived(Date archived) {
+        this.archived = archived;
+    }
+}
@@ -0,0 +1,64 @@
+package eu.domibus.common.model.logging;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Builds the message log queries of the archived user messages, which keep the party and property values of the
+ * message in their own columns.
+ *
+ * @since 3.3.3
+ */
+@Service(value = "userMessageArchiveInfoFilter")
+public class UserMessageArchiveInfoFilter extends MessageLogInfoFilter {
+
+    private static final String QUERY_BODY = " from UserMessageArchive log where log.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE";
+
+    @Override
+    protected String getHQLKey(String originalColumn) {
+        switch (originalColumn) {
+            case "fromPartyId":
+            case "toPartyId":
+            case "refToMessageId":
+            case "originalSender":
+            case "finalRecipient":
+            case "conversationId":
+                return "log." + originalColumn;
+            default:
+                return super.getHQLKey(originalColumn);
+        }
+    }
+
+    public String filterUserMessageArchiveQuery(String column, boolean asc, Map<String, Object> filters) {
+        String query = "select new eu.domibus.common.model.logging.MessageLogInfo(" +
+                "log.messageId," +
+                "log.messageStatus," +
+                "log.notificationStatus," +
+                "log.mshRole," +
+                "log.messageType," +
+                "log.deleted," +
+                "log.received," +
+                "log.sendAttempts," +
+                "log.sendAttemptsMax," +
+                "log.nextAttempt," +
+                "log.conversationId," +
+                "log.fromPartyId," +
+                "log.toPartyId," +
+                "log.originalSender," +
+                "log.finalRecipient," +
+                "log.refToMessageId," +
+                "log.failed," +
+                "log.restored" +
+                ")" + QUERY_BODY;
+        StringBuilder result = filterQuery(query, column, asc, filters);
+        return result.toString();
+    }
+
+    public String countUserMessageArchiveQuery(Map<String, Object> filters) {
+        String query = "select count(log.entityId)" + QUERY_BODY;
+
+        StringBuilder result = filterQuery(query, null, true, filters);
+        return result.toString();
+    }
+}
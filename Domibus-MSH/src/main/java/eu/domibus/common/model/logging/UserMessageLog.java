@@ -14,22 +14,42 @@ import java.util.Date;
 @Table(name = "TB_MESSAGE_LOG")
 @DiscriminatorValue("USER_MESSAGE")
 @NamedQueries({
-        @NamedQuery(name = "UserMessageLog.findRetryMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and 1 <= userMessageLog.sendAttempts and userMessageLog.sendAttempts <= userMessageLog.sendAttemptsMax"),
-        @NamedQuery(name = "UserMessageLog.findPullWaitingForReceiptMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and 1 <= userMessageLog.sendAttempts and userMessageLog.sendAttempts <= userMessageLog.sendAttemptsMax"),
+        @NamedQuery(name = "UserMessageLog.findRetryMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where ((userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY and (userMessageLog.sendLease is null or userMessageLog.sendLease < :NOW)) or (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.SEND_ENQUEUED and userMessageLog.sendLease < :NOW)) and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and 1 <= userMessageLog.sendAttempts and userMessageLog.sendAttempts <= userMessageLog.sendAttemptsMax  and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX order by userMessageLog.nextAttempt"),
+        @NamedQuery(name = "UserMessageLog.findPullWaitingForReceiptMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and 1 <= userMessageLog.sendAttempts and userMessageLog.sendAttempts <= userMessageLog.sendAttemptsMax and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX"),
+        @NamedQuery(name = "UserMessageLog.resetPullWaitingForReceiptMessages", query = "update UserMessageLog userMessageLog set userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL where userMessageLog.messageId in :MESSAGE_IDS and userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and userMessageLog.sendAttempts < userMessageLog.sendAttemptsMax"),
+        @NamedQuery(name = "UserMessageLog.findPullWaitingForReceiptMessagesWithoutAttemptLeft", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageId in :MESSAGE_IDS and userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT and userMessageLog.nextAttempt < :CURRENT_TIMESTAMP and userMessageLog.sendAttempts >= userMessageLog.sendAttemptsMax"),
         @NamedQuery(name = "UserMessageLog.findReadyToPullMessages", query = "SELECT mi.messageId,mi.timestamp FROM UserMessageLog as um ,MessageInfo mi where um.messageStatus=eu.domibus.common.MessageStatus.READY_TO_PULL and um.messageId=mi.messageId order by mi.timestamp desc"),
-        @NamedQuery(name = "UserMessageLog.findTimedoutMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY and userMessageLog.nextAttempt < :TIMESTAMP_WITH_TOLERANCE"),
-        @NamedQuery(name = "UserMessageLog.findPullTimedoutMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.BEING_PULLED or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL)and userMessageLog.nextAttempt < :TIMESTAMP_WITH_TOLERANCE"),
+        @NamedQuery(name = "UserMessageLog.findTimedoutMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY and userMessageLog.nextAttempt < :TIMESTAMP_WITH_TOLERANCE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX"),
+        @NamedQuery(name = "UserMessageLog.findPullTimedoutMessages", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.BEING_PULLED or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RECEIPT or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL)and userMessageLog.nextAttempt < :TIMESTAMP_WITH_TOLERANCE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX"),
         @NamedQuery(name = "UserMessageLog.findByMessageId", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageId=:MESSAGE_ID"),
+        @NamedQuery(name = "UserMessageLog.findByMessageIdsAndRole", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageId in :MESSAGE_IDS and userMessageLog.mshRole=:MSH_ROLE"),
+        @NamedQuery(name = "UserMessageLog.setTimedoutMessagesAsSendFailure", query = "update UserMessageLog userMessageLog set userMessageLog.messageStatus=eu.domibus.common.MessageStatus.SEND_FAILURE, userMessageLog.failed=:FAILED, userMessageLog.nextAttempt=null where userMessageLog.messageId in :MESSAGE_IDS and userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY"),
+        @NamedQuery(name = "UserMessageLog.setMessagesAsNotified", query = "update UserMessageLog userMessageLog set userMessageLog.notificationStatus=eu.domibus.common.NotificationStatus.NOTIFIED where userMessageLog.messageId in :MESSAGE_IDS"),
         @NamedQuery(name = "UserMessageLog.findByMessageIdAndRole", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageId=:MESSAGE_ID and userMessageLog.mshRole=:MSH_ROLE"),
         @NamedQuery(name = "UserMessageLog.findBackendForMessage", query = "select userMessageLog.backend from UserMessageLog userMessageLog where userMessageLog.messageId=:MESSAGE_ID"),
         @NamedQuery(name = "UserMessageLog.findEntries", query = "select userMessageLog from UserMessageLog userMessageLog"),
-        @NamedQuery(name = "UserMessageLog.findUndownloadedUserMessagesOlderThan", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED_WITH_WARNINGS) and userMessageLog.deleted is null and userMessageLog.mpc = :MPC and userMessageLog.received < :DATE"),
-        @NamedQuery(name = "UserMessageLog.findDownloadedUserMessagesOlderThan", query = "select userMessageLog.messageId from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.DOWNLOADED) and userMessageLog.mpc = :MPC and userMessageLog.downloaded is not null and userMessageLog.downloaded < :DATE"),
+        @NamedQuery(name = "UserMessageLog.findExpiredUndownloadedUserMessages", query = "select new eu.domibus.common.model.logging.ExpiredMessageDto(userMessageLog.entityId, userMessageLog.messageId) from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED_WITH_WARNINGS) and userMessageLog.deleted is null and userMessageLog.mpc = :MPC and userMessageLog.received < :DATE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX and userMessageLog.entityId > :LAST_ENTITY_ID order by userMessageLog.entityId"),
+        @NamedQuery(name = "UserMessageLog.findExpiredDownloadedUserMessages", query = "select new eu.domibus.common.model.logging.ExpiredMessageDto(userMessageLog.entityId, userMessageLog.messageId) from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.DOWNLOADED) and userMessageLog.mpc = :MPC and userMessageLog.downloaded is not null and userMessageLog.downloaded < :DATE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX and userMessageLog.entityId > :LAST_ENTITY_ID order by userMessageLog.entityId"),
+        @NamedQuery(name = "UserMessageLog.countExpiredUndownloadedUserMessages", query = "select count(userMessageLog.entityId) from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED or userMessageLog.messageStatus = eu.domibus.common.MessageStatus.RECEIVED_WITH_WARNINGS) and userMessageLog.deleted is null and userMessageLog.mpc = :MPC and userMessageLog.received < :DATE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX"),
+        @NamedQuery(name = "UserMessageLog.countExpiredDownloadedUserMessages", query = "select count(userMessageLog.entityId) from UserMessageLog userMessageLog where (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.DOWNLOADED) and userMessageLog.mpc = :MPC and userMessageLog.downloaded is not null and userMessageLog.downloaded < :DATE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX"),
+        @NamedQuery(name = "UserMessageLog.findByMessageIds", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageId in :MESSAGE_IDS"),
+        @NamedQuery(name = "UserMessageLog.findMpcsReceivedBetween", query = "select distinct userMessageLog.mpc from UserMessageLog userMessageLog where userMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE and userMessageLog.received >= :FROM and userMessageLog.received < :TO"),
+        @NamedQuery(name = "UserMessageLog.countReceivedBetweenNotInStatuses", query = "select count(userMessageLog.entityId) from UserMessageLog userMessageLog where userMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE and userMessageLog.received >= :FROM and userMessageLog.received < :TO and userMessageLog.messageStatus not in :MESSAGE_STATUSES"),
+        @NamedQuery(name = "UserMessageLog.countReceivedBetweenDownloadedAfter", query = "select count(userMessageLog.entityId) from UserMessageLog userMessageLog where userMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE and userMessageLog.mpc = :MPC and userMessageLog.received >= :FROM and userMessageLog.received < :TO and userMessageLog.downloaded >= :DOWNLOADED_AFTER"),
+        @NamedQuery(name = "UserMessageLog.findArchivableMessages", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE and userMessageLog.messageStatus in :MESSAGE_STATUSES and userMessageLog.received < :DATE and mod(userMessageLog.entityId, :SHARD_COUNT) = :SHARD_INDEX and userMessageLog.entityId > :LAST_ENTITY_ID order by userMessageLog.entityId"),
+        @NamedQuery(name = "UserMessageLog.deleteByMessageIds", query = "delete from UserMessageLog userMessageLog where userMessageLog.messageType = eu.domibus.ebms3.common.model.MessageType.USER_MESSAGE and userMessageLog.messageId in :MESSAGE_IDS"),
+        @NamedQuery(name = "UserMessageLog.setMessagesAsDeleted", query = "update UserMessageLog userMessageLog set userMessageLog.messageStatus=eu.domibus.common.MessageStatus.DELETED, userMessageLog.deleted=:DELETED, userMessageLog.nextAttempt=null where userMessageLog.messageId in :MESSAGE_IDS"),
         @NamedQuery(name = "UserMessageLog.setNotificationStatus", query = "update UserMessageLog userMessageLog set userMessageLog.notificationStatus=:NOTIFICATION_STATUS where userMessageLog.messageId=:MESSAGE_ID"),
         @NamedQuery(name = "UserMessageLog.countEntries", query = "select count(userMessageLog.messageId) from UserMessageLog userMessageLog"),
         @NamedQuery(name = "UserMessageLog.setMessageStatusAndNotificationStatus",
                 query = "update UserMessageLog userMessageLog set userMessageLog.deleted=:TIMESTAMP, userMessageLog.messageStatus=:MESSAGE_STATUS, userMessageLog.notificationStatus=:NOTIFICATION_STATUS where userMessageLog.messageId=:MESSAGE_ID"),
-        @NamedQuery(name = "UserMessageLog.findAllInfo", query = "select userMessageLog from UserMessageLog userMessageLog")
+        @NamedQuery(name = "UserMessageLog.findAllInfo", query = "select userMessageLog from UserMessageLog userMessageLog"),
+        @NamedQuery(name = "UserMessageLog.findReadyToPullMessagesForReceivers", query = "select userMessageLog from UserMessageLog userMessageLog where userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL and userMessageLog.mpc = :MPC and userMessageLog.receiver in :RECEIVERS and (userMessageLog.pullLease is null or userMessageLog.pullLease < :NOW) order by userMessageLog.received"),
+        @NamedQuery(name = "UserMessageLog.claimReadyToPullMessage", query = "update UserMessageLog userMessageLog set userMessageLog.messageStatus = eu.domibus.common.MessageStatus.BEING_PULLED where userMessageLog.entityId = :ENTITY_ID and userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL"),
+        @NamedQuery(name = "UserMessageLog.leaseReadyToPullMessage", query = "update UserMessageLog userMessageLog set userMessageLog.pullLease = :PULL_LEASE where userMessageLog.entityId = :ENTITY_ID and userMessageLog.messageStatus = eu.domibus.common.MessageStatus.READY_TO_PULL and (userMessageLog.pullLease is null or userMessageLog.pullLease < :NOW)"),
+        @NamedQuery(name = "UserMessageLog.setPullLease", query = "update UserMessageLog userMessageLog set userMessageLog.pullLease = :PULL_LEASE where userMessageLog.entityId in :ENTITY_IDS"),
+        @NamedQuery(name = "UserMessageLog.claimRetryMessage", query = "update UserMessageLog userMessageLog set userMessageLog.messageStatus = eu.domibus.common.MessageStatus.SEND_ENQUEUED, userMessageLog.sendLease = :SEND_LEASE where userMessageLog.messageId = :MESSAGE_ID and ((userMessageLog.messageStatus = eu.domibus.common.MessageStatus.WAITING_FOR_RETRY and (userMessageLog.sendLease is null or userMessageLog.sendLease < :NOW)) or (userMessageLog.messageStatus = eu.domibus.common.MessageStatus.SEND_ENQUEUED and userMessageLog.sendLease < :NOW))"),
+        @NamedQuery(name = "UserMessageLog.renewSendLease", query = "update UserMessageLog userMessageLog set userMessageLog.sendLease = :NEW_SEND_LEASE where userMessageLog.messageId = :MESSAGE_ID and userMessageLog.sendLease = :SEND_LEASE and userMessageLog.messageStatus in (eu.domibus.common.MessageStatus.SEND_ENQUEUED, eu.domibus.common.MessageStatus.WAITING_FOR_RETRY)")
 })
 public class UserMessageLog extends MessageLog {
 
@@ -37,6 +57,27 @@ public class UserMessageLog extends MessageLog {
     @JoinColumn(name = "MESSAGE_ID", referencedColumnName = "MESSAGE_ID", updatable = false, insertable = false)
     protected MessageInfo messageInfo;
 
+    /**
+     * The party id of the receiver in upper case, selected by DatabaseMessageHandler.getReceiver, used to select the messages to pull
+     */
+    @Column(name = "RECEIVER")
+    private String receiver;
+
+    /**
+     * The end of the lease of the message by the prefetch buffer of a node, while it is ready to be pulled
+     */
+    @Column(name = "PULL_LEASE")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date pullLease;
+
+    /**
+     * The end of the lease of a retried message by the send queue: once expired the retry worker enqueues the message
+     * again, its JMS message being considered lost
+     */
+    @Column(name = "SEND_LEASE")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date sendLease;
+
     public UserMessageLog() {
 
         setMessageType(MessageType.USER_MESSAGE);
@@ -45,4 +86,28 @@ public class UserMessageLog extends MessageLog {
         setSendAttempts(0);
     }
 
+    public String getReceiver() {
+        return receiver;
+    }
+
+    public void setReceiver(String receiver) {
+        this.receiver = receiver;
+    }
+
+    public Date getPullLease() {
+        return pullLease;
+    }
+
+    public void setPullLease(Date pullLease) {
+        this.pullLease = pullLease;
+    }
+
+    public Date getSendLease() {
+        return sendLease;
+    }
+
+    public void setSendLease(Date sendLease) {
+        this.sendLease = sendLease;
+    }
+
 }
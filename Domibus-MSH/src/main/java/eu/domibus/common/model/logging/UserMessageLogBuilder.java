@@ -63,4 +63,9 @@ public class UserMessageLogBuilder {
         userMessageLog.setEndpoint(endpoint);
         return this;
     }
+
+    public UserMessageLogBuilder setReceiver(String receiver) {
+        userMessageLog.setReceiver(receiver);
+        return this;
+    }
 }
@@ -0,0 +1,168 @@
+package eu.domibus.common.model.logging;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.NotificationStatus;
+import eu.domibus.ebms3.common.model.MessageType;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the native query reading the message log information of the user messages of the message tables and of the
+ * archive at once: both tiers are read with UNION ALL and the database sorts and pages the result, with its own
+ * collation and null ordering, as it does for the pages of a single tier. On equal values the messages of the message
+ * tables come first, in the order of their entity ids.
+ *
+ * @since 3.3.3
+ */
+@Service(value = "userMessageTiersInfoFilter")
+public class UserMessageTiersInfoFilter {
+
+    private static final String CURRENT_TIER_FROM = " FROM TB_MESSAGE_LOG log" +
+            " JOIN TB_MESSAGE_INFO info ON info.MESSAGE_ID = log.MESSAGE_ID" +
+            " JOIN TB_USER_MESSAGE message ON message.messageInfo_ID_PK = info.ID_PK" +
+            " JOIN TB_PROPERTY propsFrom ON propsFrom.MESSAGEPROPERTIES_ID = message.ID_PK AND propsFrom.NAME = 'originalSender'" +
+            " JOIN TB_PROPERTY propsTo ON propsTo.MESSAGEPROPERTIES_ID = message.ID_PK AND propsTo.NAME = 'finalRecipient'" +
+            " LEFT JOIN TB_PARTY_ID partyFrom ON partyFrom.FROM_ID = message.ID_PK" +
+            " LEFT JOIN TB_PARTY_ID partyTo ON partyTo.TO_ID = message.ID_PK" +
+            " WHERE log.MESSAGE_TYPE = 'USER_MESSAGE'";
+
+    private static final String ARCHIVE_TIER_FROM = " FROM TB_USER_MESSAGE_ARCHIVE log WHERE log.MESSAGE_TYPE = 'USER_MESSAGE'";
+
+    /**
+     * The columns of the union, in the order of the MessageLogInfo constructor: property, alias, expression in the
+     * message tables and expression in the archive
+     */
+    private static final String[][] COLUMNS = {
+            {"messageId", "MESSAGE_ID", "log.MESSAGE_ID", "log.MESSAGE_ID"},
+            {"messageStatus", "MESSAGE_STATUS", "log.MESSAGE_STATUS", "log.MESSAGE_STATUS"},
+            {"notificationStatus", "NOTIFICATION_STATUS", "log.NOTIFICATION_STATUS", "log.NOTIFICATION_STATUS"},
+            {"mshRole", "MSH_ROLE", "log.MSH_ROLE", "log.MSH_ROLE"},
+            {"messageType", "MESSAGE_TYPE", "log.MESSAGE_TYPE", "log.MESSAGE_TYPE"},
+            {"deleted", "DELETED", "log.DELETED", "log.DELETED"},
+            {"received", "RECEIVED", "log.RECEIVED", "log.RECEIVED"},
+            {"sendAttempts", "SEND_ATTEMPTS", "log.SEND_ATTEMPTS", "log.SEND_ATTEMPTS"},
+            {"sendAttemptsMax", "SEND_ATTEMPTS_MAX", "log.SEND_ATTEMPTS_MAX", "log.SEND_ATTEMPTS_MAX"},
+            {"nextAttempt", "NEXT_ATTEMPT", "log.NEXT_ATTEMPT", "log.NEXT_ATTEMPT"},
+            {"conversationId", "CONVERSATION_ID", "message.COLL_INFO_CONVERS_ID", "log.CONVERSATION_ID"},
+            {"fromPartyId", "FROM_PARTY_ID", "partyFrom.VALUE", "log.FROM_PARTY_ID"},
+            {"toPartyId", "TO_PARTY_ID", "partyTo.VALUE", "log.TO_PARTY_ID"},
+            {"originalSender", "ORIGINAL_SENDER", "propsFrom.VALUE", "log.ORIGINAL_SENDER"},
+            {"finalRecipient", "FINAL_RECIPIENT", "propsTo.VALUE", "log.FINAL_RECIPIENT"},
+            {"refToMessageId", "REF_TO_MESSAGE_ID", "info.REF_TO_MESSAGE_ID", "log.REF_TO_MESSAGE_ID"},
+            {"failed", "FAILED", "log.FAILED", "log.FAILED"},
+            {"restored", "RESTORED", "log.RESTORED", "log.RESTORED"}};
+
+    private static final int CURRENT_TIER = 2;
+
+    private static final int ARCHIVE_TIER = 3;
+
+    public String filterUserMessageTiersQuery(String column, boolean asc, Map<String, Object> filters) {
+        final StringBuilder result = new StringBuilder("SELECT * FROM (");
+        appendTier(result, CURRENT_TIER, 0, CURRENT_TIER_FROM, filters);
+        result.append(" UNION ALL ");
+        appendTier(result, ARCHIVE_TIER, 1, ARCHIVE_TIER_FROM, filters);
+        result.append(") tiers ORDER BY ");
+        final String[] sortColumn = getColumn(column);
+        if (sortColumn != null) {
+            result.append(sortColumn[1]).append(asc ? " ASC, " : " DESC, ");
+        }
+        result.append("TIER, ENTITY_ID");
+        return result.toString();
+    }
+
+    private void appendTier(StringBuilder result, int tier, int tierOrder, String from, Map<String, Object> filters) {
+        result.append("SELECT log.ID_PK AS ENTITY_ID, ").append(tierOrder).append(" AS TIER");
+        for (String[] column : COLUMNS) {
+            result.append(", ").append(column[tier]).append(" AS ").append(column[1]);
+        }
+        result.append(from);
+        for (Map.Entry<String, Object> filter : filters.entrySet()) {
+            if (filter.getValue() == null || filter.getValue().toString().isEmpty()) {
+                continue;
+            }
+            if ("receivedFrom".equals(filter.getKey())) {
+                result.append(" AND log.RECEIVED >= :receivedFrom");
+            } else if ("receivedTo".equals(filter.getKey())) {
+                result.append(" AND log.RECEIVED <= :receivedTo");
+            } else if (getColumn(filter.getKey()) != null) {
+                result.append(" AND ").append(getColumn(filter.getKey())[tier]).append(" = :").append(filter.getKey());
+            }
+        }
+    }
+
+    public Query applyParameters(Query query, Map<String, Object> filters) {
+        for (Map.Entry<String, Object> filter : filters.entrySet()) {
+            final Object value = filter.getValue();
+            if (value == null || value.toString().isEmpty()) {
+                continue;
+            }
+            if (value instanceof Date) {
+                query.setParameter(filter.getKey(), (Date) value, TemporalType.TIMESTAMP);
+            } else if (value instanceof Enum) {
+                // the enums are stored with their names
+                query.setParameter(filter.getKey(), ((Enum<?>) value).name());
+            } else {
+                query.setParameter(filter.getKey(), value);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * @param rows the rows of the query built by {@link #filterUserMessageTiersQuery(String, boolean, Map)}
+     * @return the message log information of the rows
+     */
+    public List<MessageLogInfo> toMessageLogInfos(List<Object[]> rows) {
+        final List<MessageLogInfo> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            // the entity id and the tier come first
+            result.add(new MessageLogInfo(
+                    (String) row[2],
+                    toEnum(MessageStatus.class, row[3]),
+                    toEnum(NotificationStatus.class, row[4]),
+                    toEnum(MSHRole.class, row[5]),
+                    toEnum(MessageType.class, row[6]),
+                    (Date) row[7],
+                    (Date) row[8],
+                    toInt(row[9]),
+                    toInt(row[10]),
+                    (Date) row[11],
+                    (String) row[12],
+                    (String) row[13],
+                    (String) row[14],
+                    (String) row[15],
+                    (String) row[16],
+                    (String) row[17],
+                    (Date) row[18],
+                    (Date) row[19]));
+        }
+        return result;
+    }
+
+    private <E extends Enum<E>> E toEnum(Class<E> enumType, Object value) {
+        return value == null ? null : Enum.valueOf(enumType, value.toString());
+    }
+
+    private int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private String[] getColumn(String property) {
+        if (property == null) {
+            return null;
+        }
+        for (String[] column : COLUMNS) {
+            if (column[0].equals(property)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package eu.domibus.common.model.payload;
+
+import eu.domibus.ebms3.common.model.AbstractBaseEntity;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A payload file shared by the payloads with the same content, identified by the SHA-256 digest of the content. The
+ * file is deleted when the last payload referencing it is cleared.
+ *
+ * @since 3.3.3
+ */
+@Entity
+@Table(name = "TB_PAYLOAD_CONTENT")
+@NamedQueries({
+        @NamedQuery(name = "PayloadContent.findByDigest", query = "FROM PayloadContent c where c.digest=:DIGEST and c.compressed=:COMPRESSED order by c.entityId"),
+        @NamedQuery(name = "PayloadContent.findByFileNames", query = "FROM PayloadContent c where c.fileName in :FILE_NAMES order by c.entityId"),
+        @NamedQuery(name = "PayloadContent.updateFilePath", query = "update PayloadContent c set c.filePath=:NEW_FILE_PATH where c.filePath=:FILE_PATH")
+})
+public class PayloadContent extends AbstractBaseEntity {
+
+    @Column(name = "DIGEST")
+    @NotNull
+    private String digest;
+
+    @Column(name = "COMPRESSED")
+    private boolean compressed;
+
+    /**
+     * The name of the payload file, unique
+     */
+    @Column(name = "FILE_NAME")
+    @NotNull
+    private String fileName;
+
+    /**
+     * The path of the payload file, as referenced by the payloads
+     */
+    @Column(name = "FILE_PATH")
+    @NotNull
+    private String filePath;
+
+    @Column(name = "CONTENT_LENGTH")
+    private long length;
+
+    @Column(name = "REFERENCE_COUNT")
+    private int referenceCount;
+
+    @Column(name = "CREATION_TIME")
+    @NotNull
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creationTime;
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(int referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Date creationTime) {
+        this.creationTime = creationTime;
+    }
+}
@@ -0,0 +1,71 @@
+package eu.domibus.common.model.payload;
+
+import eu.domibus.ebms3.common.model.AbstractBaseEntity;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * A payload file to delete, journaled in the transaction clearing the payload and removed once the file is deleted.
+ *
+ * @since 3.3.3
+ */
+@Entity
+@Table(name = "TB_PAYLOAD_FILE_DELETION")
+@NamedQueries({
+        @NamedQuery(name = "PayloadFileDeletion.findDue", query = "FROM PayloadFileDeletion d where d.nextAttempt<:NOW and mod(d.entityId, :SHARD_COUNT) = :SHARD_INDEX order by d.nextAttempt"),
+        @NamedQuery(name = "PayloadFileDeletion.deleteByIds", query = "delete FROM PayloadFileDeletion d where d.entityId in :IDS"),
+        @NamedQuery(name = "PayloadFileDeletion.reschedule", query = "update PayloadFileDeletion d set d.attempts=d.attempts+1, d.nextAttempt=:NEXT_ATTEMPT where d.entityId in :IDS")
+})
+public class PayloadFileDeletion extends AbstractBaseEntity {
+
+    @Column(name = "FILE_NAME")
+    @NotNull
+    private String fileName;
+
+    @Column(name = "CREATION_TIME")
+    @NotNull
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creationTime;
+
+    @Column(name = "NEXT_ATTEMPT")
+    @NotNull
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date nextAttempt;
+
+    @Column(name = "ATTEMPTS")
+    private int attempts;
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Date getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Date creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
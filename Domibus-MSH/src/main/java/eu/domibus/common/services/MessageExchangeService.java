@@ -38,6 +38,17 @@ public interface MessageExchangeService {
      */
     void initiatePullRequest();
 
+    /**
+     * Queues pull requests for the mpc.
+     *
+     * @param mpc                   the qualified name of the mpc to pull.
+     * @param responder             the name of the responder party.
+     * @param pModeKey              the PMode key of the pull requests.
+     * @param notifyBusinessOnError whether the backend is notified when a pulled message fails.
+     * @param count                 the number of pull requests to queue.
+     */
+    void sendPullRequests(String mpc, String responder, String pModeKey, boolean notifyBusinessOnError, int count);
+
     /**
      * Check if a message exist for the association mpc/responder. If it does it returns the first one that arrived.
      *
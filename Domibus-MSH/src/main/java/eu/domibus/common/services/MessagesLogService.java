@@ -1,6 +1,7 @@
 package eu.domibus.common.services;
 
 import eu.domibus.common.model.logging.MessageLog;
+import eu.domibus.common.model.logging.MessageLogInfoPage;
 
 import java.util.HashMap;
 import java.util.List;
@@ -15,4 +16,10 @@ public interface MessagesLogService {
 
     Long countMessages(int size, HashMap<String, Object> filters);
 
+    /**
+     * Gets a page of the user messages matching the filters, read from the message tables and from the archive as if
+     * they were a single table, with the number of matching messages of both.
+     */
+    MessageLogInfoPage findUserMessageInfos(int from, int max, String column, boolean asc, HashMap<String, Object> filters);
+
 }
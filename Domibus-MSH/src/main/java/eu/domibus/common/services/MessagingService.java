@@ -3,6 +3,7 @@ package eu.domibus.common.services;
 
 import eu.domibus.common.MSHRole;
 import eu.domibus.common.exception.CompressionException;
+import eu.domibus.common.services.impl.PayloadCompressor;
 import eu.domibus.configuration.Storage;
 import eu.domibus.ebms3.common.model.Messaging;
 
@@ -15,4 +16,6 @@ public interface MessagingService {
     void storeMessage(Messaging messaging, MSHRole mshRole) throws CompressionException;
 
     void setStorage(Storage storage);
+
+    void setPayloadCompressor(PayloadCompressor payloadCompressor);
 }
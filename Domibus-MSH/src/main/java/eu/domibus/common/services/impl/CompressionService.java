@@ -35,6 +35,9 @@ public class CompressionService {
     @Autowired
     private CompressionMimeTypeBlacklist blacklist;
 
+    @Autowired
+    private PayloadCompressor payloadCompressor;
+
 
     /**
      * This method is responsible for compression of payloads in a ebMS3 AS4 comformant way in case of {@link eu.domibus.common.MSHRole#SENDING}
@@ -78,7 +81,7 @@ public class CompressionService {
             }
 
             //if mimetype of payload is not considered to be compressed, skip
-            if (this.blacklist.getEntries().contains(mimeType)) {
+            if (this.blacklist.getEntries().contains(mimeType) || payloadCompressor.isSkippedMimeType(mimeType)) {
                 continue;
             }
 
@@ -18,11 +18,13 @@ import eu.domibus.common.model.configuration.Party;
 import eu.domibus.common.model.configuration.Process;
 import eu.domibus.common.model.logging.RawEnvelopeDto;
 import eu.domibus.common.model.logging.RawEnvelopeLog;
+import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.services.MessageExchangeService;
 import eu.domibus.common.validators.ProcessValidator;
+import eu.domibus.core.pull.PullFrequencyService;
+import eu.domibus.core.pull.PullMessagePrefetchService;
 import eu.domibus.ebms3.common.context.MessageExchangeConfiguration;
 import eu.domibus.ebms3.common.dao.PModeProvider;
-import eu.domibus.ebms3.common.model.MessagePullDto;
 import eu.domibus.ebms3.common.model.UserMessage;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
@@ -30,6 +32,7 @@ import eu.domibus.pki.CertificateService;
 import eu.domibus.pki.DomibusCertificateException;
 import eu.domibus.pki.PolicyService;
 import eu.domibus.wss4j.common.crypto.CryptoService;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.neethi.Policy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -83,6 +86,12 @@ public class MessageExchangeServiceImpl implements MessageExchangeService {
     @Autowired
     private RawEnvelopeLogDao rawEnvelopeLogDao;
 
+    @Autowired
+    private PullMessagePrefetchService pullMessagePrefetchService;
+
+    @Autowired
+    private PullFrequencyService pullFrequencyService;
+
     @Autowired
     private ProcessValidator processValidator;
 
@@ -156,6 +165,10 @@ public class MessageExchangeServiceImpl implements MessageExchangeService {
                 for (LegConfiguration legConfiguration : pullProcess.getLegs()) {
                     for (Party initiatorParty : pullProcess.getResponderParties()) {
                         String mpcQualifiedName = legConfiguration.getDefaultMpc().getQualifiedName();
+                        final int pullRequests = pullFrequencyService.getPullRequestsDue(mpcQualifiedName, initiatorParty.getName());
+                        if (pullRequests == 0) {
+                            continue;
+                        }
                         //@thom remove the pullcontext from here.
                         PullContext pullContext = new PullContext(pullProcess,
                                 initiatorParty,
@@ -169,20 +182,8 @@ public class MessageExchangeServiceImpl implements MessageExchangeService {
                         if (LOG.isDebugEnabled()) {
                             LOG.debug(messageExchangeConfiguration.toString());
                         }
-                        final Map<String, String> map = Maps.newHashMap();
-                        map.put(MPC, mpcQualifiedName);
-                        map.put(PMODE_KEY, messageExchangeConfiguration.getReversePmodeKey());
-                        map.put(PullContext.NOTIFY_BUSINNES_ON_ERROR, String.valueOf(legConfiguration.getErrorHandling().isBusinessErrorNotifyConsumer()));
-                        MessagePostProcessor postProcessor = new MessagePostProcessor() {
-                            public Message postProcessMessage(Message message) throws JMSException {
-                                message.setStringProperty(MPC, map.get(MPC));
-                                message.setStringProperty(PMODE_KEY, map.get(PMODE_KEY));
-                                message.setStringProperty(NOTIFY_BUSINNES_ON_ERROR, map.get(NOTIFY_BUSINNES_ON_ERROR));
-                                return message;
-                            }
-                        };
-                        jmsPullTemplate.convertAndSend(pullMessageQueue, map, postProcessor);
-
+                        sendPullRequests(mpcQualifiedName, initiatorParty.getName(), messageExchangeConfiguration.getReversePmodeKey(),
+                                legConfiguration.getErrorHandling().isBusinessErrorNotifyConsumer(), pullRequests);
                     }
                 }
             } catch (PModeException e) {
@@ -192,22 +193,50 @@ public class MessageExchangeServiceImpl implements MessageExchangeService {
 
     }
 
-    //TODO change this mechanism.
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sendPullRequests(String mpc, String responder, String pModeKey, boolean notifyBusinessOnError, int count) {
+        final Map<String, String> map = Maps.newHashMap();
+        map.put(MPC, mpc);
+        map.put(RESPONDER, responder);
+        map.put(PMODE_KEY, pModeKey);
+        map.put(NOTIFY_BUSINNES_ON_ERROR, String.valueOf(notifyBusinessOnError));
+        MessagePostProcessor postProcessor = new MessagePostProcessor() {
+            public Message postProcessMessage(Message message) throws JMSException {
+                message.setStringProperty(MPC, map.get(MPC));
+                message.setStringProperty(PMODE_KEY, map.get(PMODE_KEY));
+                message.setStringProperty(NOTIFY_BUSINNES_ON_ERROR, map.get(NOTIFY_BUSINNES_ON_ERROR));
+                return message;
+            }
+        };
+        for (int i = 0; i < count; i++) {
+            jmsPullTemplate.convertAndSend(pullMessageQueue, map, postProcessor);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The message is claimed in the database so that the concurrent pull requests, on this node or on the other nodes
+     * of the cluster, never retrieve the same message.
+     */
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public synchronized String retrieveReadyToPullUserMessageId(final String mpc, final Party initiator) {
+    public String retrieveReadyToPullUserMessageId(final String mpc, final Party initiator) {
         Set<Identifier> identifiers = initiator.getIdentifiers();
-        List<MessagePullDto> messagingOnStatusReceiverAndMpc = new ArrayList<>();
+        List<String> receivers = new ArrayList<>();
         for (Identifier identifier : identifiers) {
-            messagingOnStatusReceiverAndMpc.addAll(messagingDao.findMessagingOnStatusReceiverAndMpc(identifier.getPartyId(), MessageStatus.READY_TO_PULL, mpc));
+            receivers.add(StringUtils.upperCase(identifier.getPartyId()));
         }
 
-        if (!messagingOnStatusReceiverAndMpc.isEmpty()) {
-            MessagePullDto messagePullDto = messagingOnStatusReceiverAndMpc.get(0);
-            userMessageLogService.setIntermediaryPullStatus(messagePullDto.getMessageId());
-            return messagePullDto.getMessageId();
+        final UserMessageLog userMessageLog = pullMessagePrefetchService.claimReadyToPullMessage(mpc, receivers);
+        if (userMessageLog == null) {
+            return null;
         }
-        return null;
+        userMessageLogService.setIntermediaryPullStatus(userMessageLog.getMessageId());
+        return userMessageLog.getMessageId();
     }
 
     /**
@@ -1,8 +1,12 @@
 package eu.domibus.common.services.impl;
 
-import eu.domibus.api.usermessage.UserMessageService;
-import eu.domibus.api.util.CollectionUtil;
 import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.core.retention.ExpiredMessageDeleter;
+import eu.domibus.core.retention.RetentionMetricsService;
+import eu.domibus.core.retention.RetentionMpcPlan;
 import eu.domibus.ebms3.common.dao.PModeProvider;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
@@ -11,8 +15,10 @@ import org.apache.commons.lang.time.DateUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
@@ -20,6 +26,11 @@ import java.util.Properties;
 /**
  * This service class is responsible for the retention and clean up of Domibus messages, including signal messages.
  * Notice that only payloads data are really deleted.
+ * The expired messages are read and deleted in chunks, each chunk with set-based statements and in its own
+ * transaction (see {@link ExpiredMessageDeleter}): the retention itself runs outside of any transaction.
+ * In a cluster every node deletes the expired messages of its own shard.
+ * The metrics of each cycle are recorded by the {@link RetentionMetricsService} and the next cycles can be planned
+ * without deleting anything with {@link #planRetention()}.
  *
  * @author Christian Koch, Stefan Mueller, Federico Martini, Cosmin Baciu
  * @since 3.0
@@ -29,13 +40,12 @@ public class MessageRetentionService {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(MessageRetentionService.class);
 
-    public static final Integer DEFAULT_DOWNLOADED_MESSAGES_DELETE_LIMIT = 50;
-    public static final Integer DEFAULT_NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT = 50;
+    public static final Integer DEFAULT_DOWNLOADED_MESSAGES_DELETE_LIMIT = 5000;
+    public static final Integer DEFAULT_NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT = 5000;
+    public static final Integer DEFAULT_BATCH_SIZE = 500;
     public static final String DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY = "message.retention.downloaded.max.delete";
     public static final String NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY = "message.retention.not_downloaded.max.delete";
-
-    @Autowired
-    private CollectionUtil collectionUtil;
+    public static final String BATCH_SIZE_PROPERTY = "message.retention.batch.size";
 
     @Autowired
     @Qualifier("domibusProperties")
@@ -48,26 +58,81 @@ public class MessageRetentionService {
     private UserMessageLogDao userMessageLogDao;
 
     @Autowired
-    private UserMessageService userMessageService;
+    private ExpiredMessageDeleter expiredMessageDeleter;
 
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    @Autowired
+    private RetentionMetricsService retentionMetricsService;
 
     /**
      * Deletes the expired messages(downloaded or not) using the configured limits
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void deleteExpiredMessages() {
         final List<String> mpcs = pModeProvider.getMpcURIList();
         final Integer expiredDownloadedMessagesLimit = getRetentionValue(DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, DEFAULT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
         final Integer expiredNotDownloadedMessagesLimit = getRetentionValue(NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, DEFAULT_NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
-        for (final String mpc : mpcs) {
-            deleteExpiredMessages(mpc, expiredDownloadedMessagesLimit, expiredNotDownloadedMessagesLimit);
+        retentionMetricsService.startCycle();
+        try {
+            for (final String mpc : mpcs) {
+                deleteExpiredMessages(mpc, expiredDownloadedMessagesLimit, expiredNotDownloadedMessagesLimit);
+            }
+        } finally {
+            retentionMetricsService.endCycle();
         }
     }
 
+    /**
+     * Computes what the next retention cycles would delete for each MPC, with the queries of the retention but
+     * without deleting anything. The expired messages of all the cluster nodes are counted.
+     *
+     * @return the plan of each MPC
+     */
+    public List<RetentionMpcPlan> planRetention() {
+        final Integer expiredDownloadedMessagesLimit = getRetentionValue(DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, DEFAULT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
+        final Integer expiredNotDownloadedMessagesLimit = getRetentionValue(NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, DEFAULT_NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
+        // every node deletes up to the limits in its own shard; reading the shard does not write the heartbeat
+        final int nodes = clusterNodeService.getShard().getCount();
+        final double deletionRate = retentionMetricsService.getDeletionRate();
+
+        final List<RetentionMpcPlan> plans = new ArrayList<>();
+        for (final String mpc : pModeProvider.getMpcURIList()) {
+            final RetentionMpcPlan plan = new RetentionMpcPlan();
+            plan.setMpc(mpc);
+            plan.setRetentionDownloaded(pModeProvider.getRetentionDownloadedByMpcURI(mpc));
+            plan.setRetentionUndownloaded(pModeProvider.getRetentionUndownloadedByMpcURI(mpc));
+            final Date downloadedExpiry = getDownloadedExpiryDate(mpc);
+            if (downloadedExpiry != null) {
+                plan.setExpiredDownloaded(userMessageLogDao.countExpiredDownloadedUserMessages(downloadedExpiry, mpc, ClusterShard.ALL));
+            }
+            final Date notDownloadedExpiry = getNotDownloadedExpiryDate(mpc);
+            if (notDownloadedExpiry != null) {
+                plan.setExpiredUndownloaded(userMessageLogDao.countExpiredUndownloadedUserMessages(notDownloadedExpiry, mpc, ClusterShard.ALL));
+            }
+            final long downloadedPerCycle = (long) expiredDownloadedMessagesLimit * nodes;
+            final long notDownloadedPerCycle = (long) expiredNotDownloadedMessagesLimit * nodes;
+            plan.setDeletedPerCycle(Math.min(plan.getExpiredDownloaded(), downloadedPerCycle) + Math.min(plan.getExpiredUndownloaded(), notDownloadedPerCycle));
+            plan.setCyclesToCatchUp(Math.max(cycles(plan.getExpiredDownloaded(), downloadedPerCycle), cycles(plan.getExpiredUndownloaded(), notDownloadedPerCycle)));
+            // the nodes delete their shards in parallel
+            plan.setEstimatedCycleDuration(deletionRate > 0 ? (long) (plan.getDeletedPerCycle() / nodes * 1000 / deletionRate) : -1);
+            plans.add(plan);
+        }
+        return plans;
+    }
+
+    protected long cycles(long expired, long perCycle) {
+        if (perCycle <= 0) {
+            return expired > 0 ? -1 : 0;
+        }
+        return (expired + perCycle - 1) / perCycle;
+    }
+
     /**
      * Deletes all expired messages
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void deleteAllExpiredMessages() {
         final List<String> mpcs = pModeProvider.getMpcURIList();
         final Integer expiredDownloadedMessagesLimit = Integer.MAX_VALUE;
@@ -78,7 +143,7 @@ public class MessageRetentionService {
         }
     }
 
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void deleteExpiredMessages(String mpc, Integer expiredDownloadedMessagesLimit, Integer expiredNotDownloadedMessagesLimit) {
         LOG.debug("Deleting expired messages for MPC [" + mpc + "] using expiredDownloadedMessagesLimit [" + expiredDownloadedMessagesLimit + "]" +
                 " and expiredNotDownloadedMessagesLimit [" + expiredNotDownloadedMessagesLimit + "]");
@@ -88,30 +153,100 @@ public class MessageRetentionService {
 
     protected void deleteExpiredDownloadedMessages(String mpc, Integer expiredDownloadedMessagesLimit) {
         LOG.debug("Deleting expired downloaded messages for MPC [" + mpc + "] using expiredDownloadedMessagesLimit [" + expiredDownloadedMessagesLimit + "]");
+        final Date expiryDate = getDownloadedExpiryDate(mpc);
+        if (expiryDate != null) {
+            final Integer deleted = deleteExpiredMessages(mpc, expiryDate, true, expiredDownloadedMessagesLimit);
+            LOG.debug("Deleted [" + deleted + "] downloaded messages");
+        }
+    }
+
+    protected void deleteExpiredNotDownloadedMessages(String mpc, Integer expiredNotDownloadedMessagesLimit) {
+        LOG.debug("Deleting expired not-downloaded messages for MPC [" + mpc + "] using expiredNotDownloadedMessagesLimit [" + expiredNotDownloadedMessagesLimit + "]");
+        final Date expiryDate = getNotDownloadedExpiryDate(mpc);
+        if (expiryDate != null) {
+            final Integer deleted = deleteExpiredMessages(mpc, expiryDate, false, expiredNotDownloadedMessagesLimit);
+            LOG.debug("Deleted [" + deleted + "] not-downloaded messages");
+        }
+    }
+
+    /**
+     * @param mpc the MPC of the messages
+     * @return the date before which the downloaded messages expire, null if they are not deleted by the retention
+     */
+    protected Date getDownloadedExpiryDate(String mpc) {
         final int messageRetentionDownloaded = pModeProvider.getRetentionDownloadedByMpcURI(mpc);
         String fileLocation = domibusProperties.getProperty("domibus.attachment.storage.location");
         // If messageRetentionDownloaded is equal to -1, the messages will be kept indefinitely and, if 0 and no file system storage was used, they have already been deleted during download operation.
         if (messageRetentionDownloaded > 0 || (StringUtils.isNotEmpty(fileLocation) && messageRetentionDownloaded >= 0)) {
-            List<String> downloadedMessageIds = userMessageLogDao.getDownloadedUserMessagesOlderThan(DateUtils.addMinutes(new Date(), messageRetentionDownloaded * -1), mpc);
-            if (downloadedMessageIds != null && downloadedMessageIds.size() > 0) {
-                LOG.debug("Found [" + downloadedMessageIds.size() + "] downloaded messages to delete");
-                final Integer deleted = delete(downloadedMessageIds, expiredDownloadedMessagesLimit);
-                LOG.debug("Deleted [" + deleted + "] downloaded messages");
-            }
+            return DateUtils.addMinutes(new Date(), messageRetentionDownloaded * -1);
         }
+        return null;
     }
 
-    protected void deleteExpiredNotDownloadedMessages(String mpc, Integer expiredNotDownloadedMessagesLimit) {
-        LOG.debug("Deleting expired not-downloaded messages for MPC [" + mpc + "] using expiredNotDownloadedMessagesLimit [" + expiredNotDownloadedMessagesLimit + "]");
+    /**
+     * @param mpc the MPC of the messages
+     * @return the date before which the not downloaded messages expire, null if they are kept indefinitely
+     */
+    protected Date getNotDownloadedExpiryDate(String mpc) {
         final int messageRetentionNotDownloaded = pModeProvider.getRetentionUndownloadedByMpcURI(mpc);
         if (messageRetentionNotDownloaded > -1) { // if -1 the messages will be kept indefinetely and if 0, although it makes no sense, is legal
-            final List<String> notDownloadedMessageIds = userMessageLogDao.getUndownloadedUserMessagesOlderThan(DateUtils.addMinutes(new Date(), messageRetentionNotDownloaded * -1), mpc);
-            if (notDownloadedMessageIds != null && notDownloadedMessageIds.size() > 0) {
-                LOG.debug("Found [" + notDownloadedMessageIds.size() + "] not-downloaded messages to delete");
-                final Integer deleted = delete(notDownloadedMessageIds, expiredNotDownloadedMessagesLimit);
-                LOG.debug("Deleted [" + deleted + "] not-downloaded messages");
+            return DateUtils.addMinutes(new Date(), messageRetentionNotDownloaded * -1);
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the expired messages of a MPC chunk by chunk: each chunk is read after the last message of the previous
+     * one in the order of the entity ids and is deleted with set-based statements in its own transaction. The chunk
+     * reaching the limit reads one more message to know whether expired messages are left for the next cycles; only
+     * then are the messages left counted, up to {@link RetentionMetricsService#MAX_COUNTED_EXPIRED_LEFT}. They are fully
+     * counted on request by {@link #planRetention()}.
+     *
+     * @param mpc        the MPC of the messages
+     * @param olderThan  the date before which the messages expire
+     * @param downloaded whether the downloaded or the not downloaded messages are deleted
+     * @param limit      the maximum number of messages to delete
+     * @return the number of deleted messages
+     */
+    protected Integer deleteExpiredMessages(String mpc, Date olderThan, boolean downloaded, Integer limit) {
+        final ClusterShard shard = clusterNodeService.getShard();
+        final int batchSize = Math.max(1, getRetentionValue(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+        int deleted = 0;
+        int lastEntityId = 0;
+        while (deleted < limit) {
+            final int maxResults = Math.min(batchSize, limit - deleted);
+            final boolean lastChunk = maxResults == limit - deleted;
+            final int readResults = lastChunk ? maxResults + 1 : maxResults;
+            List<ExpiredMessageDto> expiredMessages = expiredMessageDeleter.deleteChunk(mpc, olderThan, downloaded, shard, lastEntityId, maxResults, readResults);
+            if (expiredMessages.isEmpty()) {
+                break;
+            }
+            if (expiredMessages.size() > maxResults) {
+                expiredMessages = expiredMessages.subList(0, maxResults);
+                final int expiredLeft = countExpiredLeft(mpc, olderThan, downloaded, shard, expiredMessages.get(maxResults - 1).getEntityId());
+                LOG.debug("[{}] expired messages of MPC [{}] left for the next cycles", expiredLeft, mpc);
+                retentionMetricsService.addLimitReached(mpc, expiredLeft);
+            }
+            retentionMetricsService.addSelected(expiredMessages.size());
+            retentionMetricsService.addDeleted(expiredMessages.size());
+            deleted += expiredMessages.size();
+            lastEntityId = expiredMessages.get(expiredMessages.size() - 1).getEntityId();
+            if (expiredMessages.size() < maxResults) {
+                break;
             }
         }
+        return deleted;
+    }
+
+    /**
+     * Counts the expired messages left after the last deleted one, reading at most
+     * {@link RetentionMetricsService#MAX_COUNTED_EXPIRED_LEFT} of them with the chunk query.
+     */
+    protected int countExpiredLeft(String mpc, Date olderThan, boolean downloaded, ClusterShard shard, int lastEntityId) {
+        final int maxResults = RetentionMetricsService.MAX_COUNTED_EXPIRED_LEFT;
+        return downloaded
+                ? userMessageLogDao.findExpiredDownloadedUserMessages(olderThan, mpc, shard, lastEntityId, maxResults).size()
+                : userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, mpc, shard, lastEntityId, maxResults).size();
     }
 
     protected Integer getRetentionValue(String propertyName, Integer defaultValue) {
@@ -127,17 +262,4 @@ public class MessageRetentionService {
         }
         return defaultValue;
     }
-
-    protected Integer delete(List<String> messageIds, Integer limit) {
-        List<String> toDelete = messageIds;
-        if (messageIds.size() > limit) {
-            LOG.debug("Only the first [" + limit + "] will be deleted");
-            toDelete = collectionUtil.safeSubList(messageIds, 0, limit);
-        }
-        userMessageService.delete(toDelete);
-        return toDelete.size();
-    }
-
-
-
 }
@@ -1,13 +1,17 @@
 package eu.domibus.common.services.impl;
 
 import eu.domibus.common.dao.SignalMessageLogDao;
+import eu.domibus.common.dao.UserMessageArchiveDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.MessageLog;
+import eu.domibus.common.model.logging.MessageLogInfo;
+import eu.domibus.common.model.logging.MessageLogInfoPage;
 import eu.domibus.common.services.MessagesLogService;
 import eu.domibus.ebms3.common.model.MessageType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -24,6 +28,9 @@ public class MessagesLogServiceImpl implements MessagesLogService {
     @Autowired
     private SignalMessageLogDao signalMessageLogDao;
 
+    @Autowired
+    private UserMessageArchiveDao userMessageArchiveDao;
+
     @Override
     public List<? extends MessageLog> findMessageLogs(int page, int size, String column, boolean asc, HashMap<String, Object> filters) {
 
@@ -70,4 +77,24 @@ public class MessagesLogServiceImpl implements MessagesLogService {
         return pages;
     }
 
+    /**
+     * Each tier is counted once. The archive is only queried when it has matching messages; when both tiers have
+     * matching messages, the page is read from both at once and sorted by the database.
+     */
+    @Override
+    public MessageLogInfoPage findUserMessageInfos(int from, int max, String column, boolean asc, HashMap<String, Object> filters) {
+        final int archived = userMessageArchiveDao.countAllInfo(filters);
+        final int current = userMessageLogDao.countAllInfo(asc, filters);
+        final int count = current + archived;
+        if (archived == 0) {
+            return new MessageLogInfoPage(count, userMessageLogDao.findAllInfoPaged(from, max, column, asc, filters));
+        }
+        if (current == 0) {
+            return new MessageLogInfoPage(count, userMessageArchiveDao.findAllInfoPaged(from, max, column, asc, filters));
+        }
+        if (from >= count) {
+            return new MessageLogInfoPage(count, new ArrayList<MessageLogInfo>());
+        }
+        return new MessageLogInfoPage(count, userMessageArchiveDao.findAllTiersInfoPaged(from, max, column, asc, filters));
+    }
 }
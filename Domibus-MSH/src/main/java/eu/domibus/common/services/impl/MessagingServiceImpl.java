@@ -1,23 +1,26 @@
 package eu.domibus.common.services.impl;
 
 import eu.domibus.common.MSHRole;
+import eu.domibus.common.dao.AttachmentDAO;
 import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.exception.CompressionException;
 import eu.domibus.common.services.MessagingService;
+import eu.domibus.common.model.payload.PayloadContent;
 import eu.domibus.configuration.Storage;
+import eu.domibus.core.payload.PayloadContentService;
 import eu.domibus.ebms3.common.model.Messaging;
 import eu.domibus.ebms3.common.model.PartInfo;
 import eu.domibus.ebms3.common.model.Property;
 import eu.domibus.logging.DomibusMessageCode;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.util.UUID;
-import java.util.zip.GZIPOutputStream;
+import java.util.ArrayList;
 
 /**
  * @author Ioana Dragusanu
@@ -34,6 +37,19 @@ public class MessagingServiceImpl implements MessagingService {
     @Autowired
     Storage storage;
 
+    @Autowired
+    AttachmentDAO attachmentDAO;
+
+    @Autowired
+    PayloadContentService payloadContentService;
+
+    @Autowired
+    PayloadCompressor payloadCompressor;
+
+    public void setPayloadCompressor(PayloadCompressor payloadCompressor) {
+        this.payloadCompressor = payloadCompressor;
+    }
+
     public void setStorage(Storage storage) {
         this.storage = storage;
     }
@@ -55,6 +71,9 @@ public class MessagingServiceImpl implements MessagingService {
         }
 
         messagingDao.create(messaging);
+        if (messaging.getUserMessage().getPayloadInfo() != null) {
+            attachmentDAO.storeBinaryData(new ArrayList<>(messaging.getUserMessage().getPayloadInfo().getPartInfo()));
+        }
     }
 
     protected void storeBinary(PartInfo partInfo, String messageId, MSHRole mshRole) throws IOException {
@@ -63,17 +82,38 @@ public class MessagingServiceImpl implements MessagingService {
             partInfo.setMime("application/unknown");
         }
         InputStream is = partInfo.getPayloadDatahandler().getInputStream();
-        final boolean compressed = isCompressed(partInfo);
+        boolean compressed = isCompressed(partInfo);
+        if (compressed && MSHRole.SENDING.equals(mshRole)) {
+            is = new BufferedInputStream(is, PayloadCompressor.ENTROPY_SAMPLE_SIZE + 1);
+            if (!payloadCompressor.isCompressible(is)) {
+                LOG.debug("Payload [{}] already compressed, it will not be compressed again", partInfo.getHref());
+                removeCompression(partInfo);
+                compressed = false;
+            }
+        }
+
+        boolean databaseStorage = storage.getStorageDirectory() == null || storage.getStorageDirectory().getName() == null;
+        final int databaseMaxSize = databaseStorage ? 0 : storage.getDatabaseMaxSize();
+        if (databaseMaxSize > 0) {
+            // the payload is stored in the database if it ends within the maximum size
+            final byte[] head = IOUtils.toByteArray(new BoundedInputStream(is, databaseMaxSize + 1L));
+            databaseStorage = head.length <= databaseMaxSize;
+            is = databaseStorage ? new ByteArrayInputStream(head) : new SequenceInputStream(new ByteArrayInputStream(head), is);
+        }
 
-        if (storage.getStorageDirectory() == null || storage.getStorageDirectory().getName() == null) {
+        if (databaseStorage) {
             byte[] binaryData = getBinaryData(is, compressed);
             partInfo.setBinaryData(binaryData);
             partInfo.setLength(binaryData.length);
             partInfo.setFileName(null);
+        } else if (payloadContentService.isEnabled()) {
+            final PayloadContent content = payloadContentService.store(is, compressed);
+            partInfo.setFileName(content.getFilePath());
+            partInfo.setLength(content.getLength());
         } else {
-            final File attachmentStore = new File(storage.getStorageDirectory(), UUID.randomUUID().toString() + ".payload");
+            final File attachmentStore = storage.createPayloadFile();
             partInfo.setFileName(attachmentStore.getAbsolutePath());
-            final long fileLength = saveFileToDisk(attachmentStore, is, compressed);
+            final long fileLength = storage.storePayload(attachmentStore, is, compressed);
             partInfo.setLength(fileLength);
         }
 
@@ -90,39 +130,19 @@ public class MessagingServiceImpl implements MessagingService {
     }
 
     protected byte[] getBinaryData(InputStream is, boolean isCompressed) throws IOException{
-        byte[] binaryData  = IOUtils.toByteArray(is);
-        if (isCompressed) {
-            binaryData = compress(binaryData);
-        }
-        return binaryData;
-    }
-
-    protected long saveFileToDisk(File file, InputStream is, boolean isCompressed) throws IOException{
-        OutputStream fileOutputStream = new FileOutputStream(file);
-        if (isCompressed) {
-            fileOutputStream = new GZIPOutputStream(fileOutputStream);
+        if (!isCompressed) {
+            return IOUtils.toByteArray(is);
         }
-        final long total = IOUtils.copyLarge(is, fileOutputStream);
-        fileOutputStream.flush();
-        IOUtils.closeQuietly(fileOutputStream);
-        LOG.debug("Done writing file [{}]. Written [{}] bytes.", file.getName(), total);
-        return total;
+        final ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
+        payloadCompressor.compress(is, compressedContent);
+        return compressedContent.toByteArray();
     }
 
-    protected byte[] compress(byte[] binaryData) throws IOException{
-        final byte[] buffer = new byte[1024];
-        InputStream sourceStream = new ByteArrayInputStream(binaryData);
-        ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
-        GZIPOutputStream targetStream = new GZIPOutputStream(compressedContent);
-        int i;
-        while ((i = sourceStream.read(buffer)) > 0) {
-            targetStream.write(buffer, 0, i);
-        }
-        sourceStream.close();
-        targetStream.finish();
-        targetStream.close();
-
-        return compressedContent.toByteArray();
+    protected void removeCompression(PartInfo partInfo) {
+        final Property compressionProperty = new Property();
+        compressionProperty.setName(CompressionService.COMPRESSION_PROPERTY_KEY);
+        compressionProperty.setValue(CompressionService.COMPRESSION_PROPERTY_VALUE);
+        partInfo.getPartProperties().getProperties().remove(compressionProperty);
     }
 
     protected boolean isCompressed(PartInfo partInfo) {
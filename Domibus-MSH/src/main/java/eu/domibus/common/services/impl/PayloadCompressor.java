@@ -0,0 +1,346 @@
+package eu.domibus.common.services.impl;
+
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of the payloads, streamed from the payload content with a configurable level and buffer size.
+ * <p>
+ * The large payloads may be compressed in parallel: the content is split in blocks deflated by the task executor,
+ * each block using the end of the previous one as dictionary, and the blocks are written in order as a single
+ * standard gzip stream. The payloads fitting in one block are compressed in the calling thread.
+ * <p>
+ * The payloads which are already compressed are detected by their mime type or by the entropy of the beginning of
+ * their content, and are not compressed again.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PayloadCompressor {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PayloadCompressor.class);
+
+    public static final String COMPRESSION_LEVEL = "domibus.compression.level";
+    public static final String COMPRESSION_BUFFER_SIZE = "domibus.compression.buffer.size";
+    public static final String COMPRESSION_PARALLEL_THREADS = "domibus.compression.parallel.threads";
+    public static final String COMPRESSION_PARALLEL_BLOCK_SIZE = "domibus.compression.parallel.block.size";
+    public static final String COMPRESSION_SKIP_MIME_TYPES = "domibus.compression.skip.mimeTypes";
+    public static final String COMPRESSION_ENTROPY_THRESHOLD = "domibus.compression.entropy.threshold";
+
+    private static final String DEFAULT_LEVEL = String.valueOf(Deflater.DEFAULT_COMPRESSION);
+    private static final String DEFAULT_BUFFER_SIZE = "65536";
+    private static final String DEFAULT_PARALLEL_THREADS = "1";
+    private static final String DEFAULT_PARALLEL_BLOCK_SIZE = "1048576";
+    private static final String DEFAULT_SKIP_MIME_TYPES = "application/zip,application/gzip,application/x-gzip,application/x-bzip2,"
+            + "application/x-xz,application/x-7z-compressed,application/x-rar-compressed,image/jpeg,image/png,image/gif,image/webp,audio/*,video/*";
+    private static final String DEFAULT_ENTROPY_THRESHOLD = "7.5";
+
+    /**
+     * Size of the deflate window: the dictionary of a block is the end of the previous block
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int MIN_BLOCK_SIZE = 2 * DICTIONARY_SIZE;
+
+    /**
+     * Number of bytes sampled at the beginning of the content to compute its entropy
+     */
+    protected static final int ENTROPY_SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * Below this number of bytes the entropy is not significant and the payload is compressed
+     */
+    private static final int MIN_ENTROPY_SAMPLE_SIZE = 4 * 1024;
+
+    /**
+     * Header of a gzip member without optional fields, as written by {@link GZIPOutputStream}
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Not available when the compressor is created outside of Spring, in which case the payloads are compressed
+     * sequentially
+     */
+    @Autowired(required = false)
+    @Qualifier("taskExecutor")
+    private TaskExecutor taskExecutor;
+
+    @Autowired(required = false)
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    /**
+     * Compresses the content in the gzip format. The output stream is not closed.
+     *
+     * @param is the content
+     * @param os the stream receiving the compressed content
+     * @return the number of bytes of the content
+     * @throws IOException if the content could not be read or the compressed content could not be written
+     */
+    public long compress(InputStream is, OutputStream os) throws IOException {
+        if (getParallelThreads() > 1 && taskExecutor != null) {
+            return compressParallel(is, os);
+        }
+        final LevelGZIPOutputStream gzipOutputStream = new LevelGZIPOutputStream(os, getBufferSize(), getLevel());
+        try {
+            final long total = IOUtils.copyLarge(is, gzipOutputStream, new byte[getBufferSize()]);
+            gzipOutputStream.finish();
+            return total;
+        } finally {
+            gzipOutputStream.end();
+        }
+    }
+
+    protected long compressParallel(InputStream is, OutputStream os) throws IOException {
+        final int blockSize = Math.max(getParallelBlockSize(), MIN_BLOCK_SIZE);
+        final int maxPendingBlocks = getParallelThreads();
+        final int level = getLevel();
+        final CRC32 crc = new CRC32();
+        final Deque<FutureTask<byte[]>> pendingBlocks = new ArrayDeque<>();
+        long total = 0;
+
+        os.write(GZIP_HEADER);
+        byte[] dictionary = null;
+        byte[] block = readBlock(is, blockSize);
+        while (true) {
+            final byte[] nextBlock = block.length < blockSize ? new byte[0] : readBlock(is, blockSize);
+            final boolean last = nextBlock.length == 0;
+            crc.update(block);
+            total += block.length;
+            final FutureTask<byte[]> task = new FutureTask<>(new DeflateBlock(block, dictionary, last, level, getBufferSize()));
+            if (last && pendingBlocks.isEmpty()) {
+                // the payload fits in one block
+                task.run();
+            } else {
+                execute(task);
+            }
+            pendingBlocks.add(task);
+            while (pendingBlocks.size() >= maxPendingBlocks) {
+                os.write(getDeflatedBlock(pendingBlocks.poll()));
+            }
+            if (last) {
+                break;
+            }
+            dictionary = Arrays.copyOfRange(block, block.length - DICTIONARY_SIZE, block.length);
+            block = nextBlock;
+        }
+        while (!pendingBlocks.isEmpty()) {
+            os.write(getDeflatedBlock(pendingBlocks.poll()));
+        }
+        writeIntLE(os, (int) crc.getValue());
+        writeIntLE(os, (int) total);
+        LOG.debug("Compressed [{}] bytes in blocks of [{}] bytes", total, blockSize);
+        return total;
+    }
+
+    protected void execute(FutureTask<byte[]> task) {
+        try {
+            taskExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            LOG.debug("Task executor busy, compressing the block in the current thread");
+            task.run();
+        }
+    }
+
+    protected byte[] readBlock(InputStream is, int blockSize) throws IOException {
+        return IOUtils.toByteArray(new BoundedInputStream(is, blockSize));
+    }
+
+    protected byte[] getDeflatedBlock(FutureTask<byte[]> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the payload", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error compressing the payload", e.getCause());
+        }
+    }
+
+    private static void writeIntLE(OutputStream os, int value) throws IOException {
+        os.write(value & 0xff);
+        os.write((value >> 8) & 0xff);
+        os.write((value >> 16) & 0xff);
+        os.write((value >> 24) & 0xff);
+    }
+
+    /**
+     * @param mimeType the mime type of a payload
+     * @return whether the payloads of this mime type are already compressed
+     */
+    public boolean isSkippedMimeType(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.trim().toLowerCase();
+        if (type.contains(";")) {
+            type = type.substring(0, type.indexOf(';')).trim();
+        }
+        for (String skipped : getProperty(COMPRESSION_SKIP_MIME_TYPES, DEFAULT_SKIP_MIME_TYPES).split(",")) {
+            skipped = skipped.trim().toLowerCase();
+            if (skipped.isEmpty()) {
+                continue;
+            }
+            if (skipped.endsWith("/*") ? type.startsWith(skipped.substring(0, skipped.length() - 1)) : type.equals(skipped)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Samples the beginning of the content: a content whose bytes are close to uniformly distributed is already
+     * compressed or encrypted and would not get smaller. The stream is reset to the beginning of the content.
+     *
+     * @param is the content, supporting mark
+     * @return whether the content is worth compressing
+     * @throws IOException if the content could not be read
+     */
+    public boolean isCompressible(InputStream is) throws IOException {
+        is.mark(ENTROPY_SAMPLE_SIZE);
+        final byte[] sample = new byte[ENTROPY_SAMPLE_SIZE];
+        final int length;
+        try {
+            length = IOUtils.read(is, sample);
+        } finally {
+            is.reset();
+        }
+        if (length < MIN_ENTROPY_SAMPLE_SIZE) {
+            return true;
+        }
+        final double entropy = getEntropy(sample, length);
+        LOG.debug("Entropy of the payload sample: [{}] bits per byte", entropy);
+        return entropy < Double.parseDouble(getProperty(COMPRESSION_ENTROPY_THRESHOLD, DEFAULT_ENTROPY_THRESHOLD));
+    }
+
+    /**
+     * @return the Shannon entropy of the bytes, in bits per byte
+     */
+    protected double getEntropy(byte[] bytes, int length) {
+        final int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[bytes[i] & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                final double probability = (double) count / length;
+                entropy -= probability * Math.log(probability) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    protected int getLevel() {
+        return Integer.parseInt(getProperty(COMPRESSION_LEVEL, DEFAULT_LEVEL));
+    }
+
+    protected int getBufferSize() {
+        return Integer.parseInt(getProperty(COMPRESSION_BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+    }
+
+    protected int getParallelThreads() {
+        return Integer.parseInt(getProperty(COMPRESSION_PARALLEL_THREADS, DEFAULT_PARALLEL_THREADS));
+    }
+
+    protected int getParallelBlockSize() {
+        return Integer.parseInt(getProperty(COMPRESSION_PARALLEL_BLOCK_SIZE, DEFAULT_PARALLEL_BLOCK_SIZE));
+    }
+
+    private String getProperty(String name, String defaultValue) {
+        if (domibusProperties == null) {
+            return defaultValue;
+        }
+        return domibusProperties.getProperty(name, defaultValue);
+    }
+
+    /**
+     * Deflates a block of the content as raw deflate data. The blocks but the last end with a sync flush, so that
+     * their concatenation is a single deflate stream.
+     */
+    protected static class DeflateBlock implements Callable<byte[]> {
+
+        private final byte[] block;
+
+        private final byte[] dictionary;
+
+        private final boolean last;
+
+        private final int level;
+
+        private final int bufferSize;
+
+        protected DeflateBlock(byte[] block, byte[] dictionary, boolean last, int level, int bufferSize) {
+            this.block = block;
+            this.dictionary = dictionary;
+            this.last = last;
+            this.level = level;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public byte[] call() {
+            final Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary != null) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(block);
+                final ByteArrayOutputStream deflated = new ByteArrayOutputStream(block.length / 2 + 64);
+                final byte[] buffer = new byte[bufferSize];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflated.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                } else {
+                    int length;
+                    do {
+                        length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        deflated.write(buffer, 0, length);
+                    } while (length == buffer.length);
+                }
+                return deflated.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Gzip stream with a configurable compression level
+     */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+
+        private LevelGZIPOutputStream(OutputStream out, int size, int level) throws IOException {
+            super(out, size);
+            def.setLevel(level);
+        }
+
+        private void end() {
+            def.end();
+        }
+    }
+}
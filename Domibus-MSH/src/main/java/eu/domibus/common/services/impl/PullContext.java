@@ -23,6 +23,7 @@ public class PullContext {
     public static final String MPC = "mpc";
     public static final String PMODE_KEY = "pmodKey";
     public static final String NOTIFY_BUSINNES_ON_ERROR = "NOTIFY_BUSINNES_ON_ERROR";
+    public static final String RESPONDER = "responder";
 
     public PullContext(final Process process, final Party responder, final String mpcQualifiedName) {
         Validate.notNull(process);
@@ -2,6 +2,7 @@ package eu.domibus.common.services.impl;
 
 import eu.domibus.common.dao.ConfigurationDAO;
 import eu.domibus.api.security.AuthUtils;
+import eu.domibus.core.retention.MessagePartitionService;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import org.quartz.DisallowConcurrentExecution;
@@ -24,6 +25,9 @@ public class RetentionWorker extends QuartzJobBean {
     @Autowired
     private MessageRetentionService messageRetentionService;
 
+    @Autowired
+    private MessagePartitionService messagePartitionService;
+
     @Autowired
     private ConfigurationDAO configurationDAO;
 
@@ -38,6 +42,11 @@ public class RetentionWorker extends QuartzJobBean {
         }
 
         if (configurationDAO.configurationExists()) {
+            try {
+                messagePartitionService.maintainPartitions();
+            } catch (RuntimeException e) {
+                LOG.error("Error maintaining the message partitions", e);
+            }
             messageRetentionService.deleteExpiredMessages();
         }
     }
@@ -8,6 +8,7 @@ import eu.domibus.common.*;
 import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.dao.SignalMessageDao;
 import eu.domibus.common.dao.SignalMessageLogDao;
+import eu.domibus.common.dao.UserMessageArchiveDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.exception.CompressionException;
 import eu.domibus.common.exception.EbMS3Exception;
@@ -116,6 +117,9 @@ public class UserMessageHandlerService {
     @Autowired
     private SignalMessageLogDao signalMessageLogDao;
 
+    @Autowired
+    private UserMessageArchiveDao userMessageArchiveDao;
+
     @Qualifier("jaxbContextEBMS")
     @Autowired
     protected JAXBContext jaxbContext;
@@ -276,7 +280,8 @@ public class UserMessageHandlerService {
                 0,
                 StringUtils.isEmpty(userMessage.getMpc()) ? Ebms3Constants.DEFAULT_MPC : userMessage.getMpc(),
                 backendName,
-                to.getEndpoint());
+                to.getEndpoint(),
+                null);
 
         LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_PERSISTED);
 
@@ -286,14 +291,16 @@ public class UserMessageHandlerService {
     }
 
     /**
-     * If message with same messageId is already in the database return <code>true</code> else <code>false</code>
+     * If message with same messageId is already in the database or in the archive return <code>true</code> else <code>false</code>
      *
      * @param messaging the message
      * @return result of duplicate handle
      */
     Boolean checkDuplicate(final Messaging messaging) {
         LOG.debug("Checking for duplicate messages");
-        return userMessageLogDao.findByMessageId(messaging.getUserMessage().getMessageInfo().getMessageId(), MSHRole.RECEIVING) != null;
+        final String messageId = messaging.getUserMessage().getMessageInfo().getMessageId();
+        return userMessageLogDao.findByMessageId(messageId, MSHRole.RECEIVING) != null
+                || userMessageArchiveDao.existsByMessageId(messageId, MSHRole.RECEIVING);
     }
 
     void handlePayloads(SOAPMessage request, UserMessage userMessage) throws EbMS3Exception, SOAPException, TransformerException {
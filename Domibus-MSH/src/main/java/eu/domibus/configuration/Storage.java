@@ -1,7 +1,11 @@
 package eu.domibus.configuration;
 
+import eu.domibus.common.services.impl.PayloadCompressor;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
@@ -9,14 +13,28 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.persistence.Transient;
 import javax.xml.bind.annotation.XmlTransient;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Properties;
+import java.util.UUID;
 
 /**
+ * File system storage of the payloads. The payload files are spread over hashed subdirectories of the storage
+ * location, so that no directory holds millions of files, and are written to a temporary file renamed once complete,
+ * so that a payload file is never seen truncated.
+ *
  * @version 2.0
  * @Author Ioana Dragusanu
  * @Author Martini Federico
@@ -25,6 +43,26 @@ import java.util.Properties;
 public class Storage {
 
     public static final String ATTACHMENT_STORAGE_LOCATION = "domibus.attachment.storage.location";
+    public static final String ATTACHMENT_STORAGE_LEVELS = "domibus.attachment.storage.levels";
+    public static final String ATTACHMENT_STORAGE_FSYNC_FILE = "domibus.attachment.storage.fsync.file";
+    public static final String ATTACHMENT_STORAGE_FSYNC_DIRECTORY = "domibus.attachment.storage.fsync.directory";
+    public static final String ATTACHMENT_STORAGE_DATABASE_MAX_SIZE = "domibus.attachment.storage.database.maxSize";
+
+    public static final String PAYLOAD_FILE_EXTENSION = ".payload";
+
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String DEFAULT_LEVELS = "2";
+    private static final String DEFAULT_FSYNC_FILE = "true";
+    private static final String DEFAULT_FSYNC_DIRECTORY = "false";
+    private static final String DEFAULT_DATABASE_MAX_SIZE = "0";
+
+    /**
+     * Each level of subdirectories uses two hexadecimal characters of the hash of the file name, i.e. 256 directories
+     */
+    private static final int MAX_LEVELS = 4;
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(Storage.class);
 
@@ -36,12 +74,18 @@ public class Storage {
     @Qualifier("domibusProperties")
     private Properties domibusProperties;
 
+    @Transient
+    @XmlTransient
+    @Autowired
+    private PayloadCompressor payloadCompressor;
+
     public Storage() {
         storageDirectory = null;
     }
 
     public Storage(File storageDirectory) {
         this.storageDirectory = storageDirectory;
+        this.payloadCompressor = new PayloadCompressor();
     }
 
     public void setStorageDirectory(File storageDirectory) {
@@ -96,4 +140,184 @@ public class Storage {
         return null;
     }
 
+    /**
+     * Creates the name of a new payload file, in the subdirectory its hash belongs to. The file itself is not created.
+     *
+     * @return the new payload file
+     */
+    public File createPayloadFile() {
+        return getPayloadFile(UUID.randomUUID().toString() + PAYLOAD_FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the payload file with the given name, in the subdirectory its hash belongs to.
+     *
+     * @param name the name of the payload file
+     * @return the payload file
+     */
+    public File getPayloadFile(String name) {
+        final String hash = DigestUtils.md5Hex(name);
+        File directory = storageDirectory;
+        for (int level = 0; level < getLevels(); level++) {
+            directory = new File(directory, hash.substring(level * 2, level * 2 + 2));
+        }
+        return new File(directory, name);
+    }
+
+    /**
+     * Writes the payload to a temporary file, synchronized to the disk if {@value #ATTACHMENT_STORAGE_FSYNC_FILE} is
+     * set, then renames it atomically to the given payload file.
+     *
+     * @param file       the payload file
+     * @param is         the content of the payload
+     * @param compressed whether the payload is compressed in the file
+     * @return the number of bytes read from the content
+     * @throws IOException if the payload could not be written; the temporary file is deleted
+     */
+    public long storePayload(File file, InputStream is, boolean compressed) throws IOException {
+        createDirectories(file.getParentFile());
+        final File temporaryFile = new File(file.getParentFile(), file.getName() + TEMPORARY_FILE_EXTENSION);
+        try {
+            final long total = writeFile(temporaryFile, is, compressed);
+            move(temporaryFile, file);
+            LOG.debug("Done writing file [{}]. Written [{}] bytes.", file.getName(), total);
+            return total;
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(temporaryFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes a payload file available under another name, keeping the source file: the file is hard linked or, if the
+     * file system does not support it, copied then renamed atomically.
+     *
+     * @param source the payload file
+     * @param target the new payload file
+     * @throws IOException if the payload file could not be linked nor copied
+     */
+    public void linkPayload(File source, File target) throws IOException {
+        createDirectories(target.getParentFile());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            if (isFsyncDirectory()) {
+                syncDirectory(target.getParentFile());
+            }
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.debug("Could not link [{}] to [{}], copying it", source, target, e);
+        }
+        final File temporaryFile = new File(target.getParentFile(), target.getName() + TEMPORARY_FILE_EXTENSION);
+        try {
+            Files.copy(source.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (isFsyncFile()) {
+                syncFile(temporaryFile);
+            }
+            move(temporaryFile, target);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(temporaryFile);
+            throw e;
+        }
+    }
+
+    protected long writeFile(File file, InputStream is, boolean compressed) throws IOException {
+        final FileOutputStream fileOutputStream = new FileOutputStream(file);
+        try {
+            final OutputStream outputStream = new BufferedOutputStream(fileOutputStream, BUFFER_SIZE);
+            final long total = compressed ? payloadCompressor.compress(is, outputStream) : IOUtils.copyLarge(is, outputStream, new byte[BUFFER_SIZE]);
+            outputStream.flush();
+            if (isFsyncFile()) {
+                fileOutputStream.getFD().sync();
+            }
+            return total;
+        } finally {
+            IOUtils.closeQuietly(fileOutputStream);
+        }
+    }
+
+    protected void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.debug("Atomic move not supported, moving [{}] to [{}]", source, target);
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (isFsyncDirectory()) {
+            syncDirectory(target.getParentFile());
+        }
+    }
+
+    /**
+     * Creates the missing subdirectories of the storage location, each created directory being synchronized in its
+     * parent if {@value #ATTACHMENT_STORAGE_FSYNC_DIRECTORY} is set. Concurrent creations of the same directory are
+     * tolerated.
+     */
+    protected void createDirectories(File directory) throws IOException {
+        if (directory.isDirectory()) {
+            return;
+        }
+        createDirectories(directory.getParentFile());
+        try {
+            Files.createDirectory(directory.toPath());
+        } catch (FileAlreadyExistsException e) {
+            LOG.trace("Directory [{}] already created", directory);
+            return;
+        }
+        if (isFsyncDirectory()) {
+            syncDirectory(directory.getParentFile());
+        }
+    }
+
+    protected void syncFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Makes the creations and renames of the files of a directory durable. Not every platform supports opening a
+     * directory, in which case the directory is not synchronized.
+     */
+    protected void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.debug("Could not synchronize the directory [{}]", directory, e);
+        }
+    }
+
+    /**
+     * The payloads up to this size are stored in the database even when the file system storage is defined, sparing
+     * the creation and deletion of a file for the small payloads.
+     *
+     * @return the maximum size in bytes of the payloads stored in the database, 0 if all the payloads are stored on
+     * the file system
+     */
+    public int getDatabaseMaxSize() {
+        return Integer.parseInt(getProperty(ATTACHMENT_STORAGE_DATABASE_MAX_SIZE, DEFAULT_DATABASE_MAX_SIZE));
+    }
+
+    protected int getLevels() {
+        final int levels = Integer.parseInt(getProperty(ATTACHMENT_STORAGE_LEVELS, DEFAULT_LEVELS));
+        return Math.max(0, Math.min(levels, MAX_LEVELS));
+    }
+
+    protected boolean isFsyncFile() {
+        return Boolean.parseBoolean(getProperty(ATTACHMENT_STORAGE_FSYNC_FILE, DEFAULT_FSYNC_FILE));
+    }
+
+    protected boolean isFsyncDirectory() {
+        return Boolean.parseBoolean(getProperty(ATTACHMENT_STORAGE_FSYNC_DIRECTORY, DEFAULT_FSYNC_DIRECTORY));
+    }
+
+    /**
+     * The storage may be created without the Domibus properties, in which case the defaults apply.
+     */
+    private String getProperty(String name, String defaultValue) {
+        if (domibusProperties == null) {
+            return defaultValue;
+        }
+        return domibusProperties.getProperty(name, defaultValue);
+    }
+
 }
@@ -0,0 +1,24 @@
+package eu.domibus.core.archive;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * Quartz job moving the completed messages to the archive tier, executed on every node by the node scheduler.
+ *
+ * @since 3.3.3
+ */
+@DisallowConcurrentExecution
+public class MessageArchiveJob extends QuartzJobBean {
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
+        messageArchiveService.archiveMessages();
+    }
+}
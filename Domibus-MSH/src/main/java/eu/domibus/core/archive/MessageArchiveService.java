@@ -0,0 +1,93 @@
+package eu.domibus.core.archive;
+
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.lang.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Moves the completed user messages older than the configured age to the archive tier: the message log information
+ * shown in the administration console is copied to TB_USER_MESSAGE_ARCHIVE and the messages, their payloads and their
+ * signals are then removed from the message tables, chunk by chunk with set-based statements, each chunk being
+ * committed on its own by the {@link MessageArchiver}. Only the acknowledged
+ * and the deleted messages are archived: the received messages are deleted by the retention first and the failed
+ * messages can still be restored. In a cluster every node archives the messages of its own shard.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class MessageArchiveService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(MessageArchiveService.class);
+
+    public static final String ARCHIVE_ENABLED = "domibus.archive.enabled";
+    public static final String ARCHIVE_AFTER_DAYS = "domibus.archive.after.days";
+    public static final String ARCHIVE_BATCH_SIZE = "domibus.archive.batch.size";
+    public static final String ARCHIVE_MAX = "domibus.archive.max";
+
+    private static final String DEFAULT_ARCHIVE_ENABLED = "false";
+    private static final String DEFAULT_ARCHIVE_AFTER_DAYS = "30";
+    private static final String DEFAULT_ARCHIVE_BATCH_SIZE = "500";
+    private static final String DEFAULT_ARCHIVE_MAX = "5000";
+
+    @Autowired
+    private MessageArchiver messageArchiver;
+
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    /**
+     * Archives the completed messages older than the configured age, up to the configured maximum. It runs outside of
+     * any transaction: every chunk is committed on its own, so a failure only rolls back the current chunk.
+     *
+     * @return the number of archived messages
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int archiveMessages() {
+        if (!Boolean.parseBoolean(domibusProperties.getProperty(ARCHIVE_ENABLED, DEFAULT_ARCHIVE_ENABLED))) {
+            return 0;
+        }
+        final Date olderThan = DateUtils.addDays(new Date(), -getIntProperty(ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS));
+        final int batchSize = Math.max(1, getIntProperty(ARCHIVE_BATCH_SIZE, DEFAULT_ARCHIVE_BATCH_SIZE));
+        final int limit = getIntProperty(ARCHIVE_MAX, DEFAULT_ARCHIVE_MAX);
+        final ClusterShard shard = clusterNodeService.getShard();
+
+        int archived = 0;
+        int lastEntityId = 0;
+        while (archived < limit) {
+            final int maxResults = Math.min(batchSize, limit - archived);
+            final List<UserMessageLog> messageLogs = messageArchiver.archiveChunk(olderThan, shard, lastEntityId, maxResults);
+            if (messageLogs.isEmpty()) {
+                break;
+            }
+            archived += messageLogs.size();
+            lastEntityId = messageLogs.get(messageLogs.size() - 1).getEntityId();
+            if (messageLogs.size() < maxResults) {
+                break;
+            }
+        }
+        if (archived > 0) {
+            LOG.info("Archived [{}] messages received before [{}]", archived, olderThan);
+        }
+        return archived;
+    }
+
+    protected int getIntProperty(String propertyName, String defaultValue) {
+        return Integer.parseInt(domibusProperties.getProperty(propertyName, defaultValue));
+    }
+}
@@ -0,0 +1,182 @@
+package eu.domibus.core.archive;
+
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.dao.MessagingDao;
+import eu.domibus.common.dao.RawEnvelopeLogDao;
+import eu.domibus.common.dao.SignalMessageDao;
+import eu.domibus.common.dao.SignalMessageLogDao;
+import eu.domibus.common.dao.UserMessageArchiveDao;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.UserMessageArchive;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.core.payload.PayloadFileDeletionService;
+import eu.domibus.ebms3.common.model.Messaging;
+import eu.domibus.ebms3.common.model.PartInfo;
+import eu.domibus.ebms3.common.model.PartyId;
+import eu.domibus.ebms3.common.model.Property;
+import eu.domibus.ebms3.common.model.UserMessage;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import eu.domibus.messaging.MessageConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.StringUtils.hasLength;
+
+/**
+ * Archives the completed user messages chunk by chunk for the {@link MessageArchiveService}, each chunk in its own
+ * transaction: the message log information is copied to TB_USER_MESSAGE_ARCHIVE and the messages, their payloads and
+ * their signals are removed from the message tables with set-based statements.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class MessageArchiver {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(MessageArchiver.class);
+
+    protected static final List<MessageStatus> ARCHIVABLE_STATUSES = Arrays.asList(
+            MessageStatus.ACKNOWLEDGED, MessageStatus.ACKNOWLEDGED_WITH_WARNING, MessageStatus.DELETED);
+
+    @Autowired
+    private UserMessageLogDao userMessageLogDao;
+
+    @Autowired
+    private UserMessageArchiveDao userMessageArchiveDao;
+
+    @Autowired
+    private MessagingDao messagingDao;
+
+    @Autowired
+    private SignalMessageDao signalMessageDao;
+
+    @Autowired
+    private SignalMessageLogDao signalMessageLogDao;
+
+    @Autowired
+    private RawEnvelopeLogDao rawEnvelopeLogDao;
+
+    @Autowired
+    private PayloadFileDeletionService payloadFileDeletionService;
+
+    /**
+     * Archives, in a new transaction, the next chunk of completed messages of a shard.
+     *
+     * @param olderThan    the date before which the messages were received
+     * @param shard        the shard of the messages
+     * @param lastEntityId the entity id of the last message archived by the previous chunk
+     * @param maxResults   the maximum number of messages to archive
+     * @return the logs of the archived messages, in the order of their entity ids
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<UserMessageLog> archiveChunk(Date olderThan, ClusterShard shard, int lastEntityId, int maxResults) {
+        final List<UserMessageLog> messageLogs = userMessageLogDao.findArchivableMessages(ARCHIVABLE_STATUSES, olderThan, shard, lastEntityId, maxResults);
+        if (!messageLogs.isEmpty()) {
+            archive(messageLogs);
+        }
+        return messageLogs;
+    }
+
+    /**
+     * Archives a chunk of messages and removes them, with their signals, from the message tables. The payload files are
+     * deleted once the transaction commits.
+     *
+     * @param messageLogs the logs of the messages
+     */
+    protected void archive(List<UserMessageLog> messageLogs) {
+        final List<String> messageIds = new ArrayList<>(messageLogs.size());
+        for (UserMessageLog messageLog : messageLogs) {
+            messageIds.add(messageLog.getMessageId());
+        }
+        final Map<String, UserMessage> userMessages = new HashMap<>();
+        final List<String> fileNames = new ArrayList<>();
+        for (Messaging messaging : messagingDao.findMessagingsByUserMessageIds(messageIds)) {
+            final UserMessage userMessage = messaging.getUserMessage();
+            userMessages.put(userMessage.getMessageInfo().getMessageId(), userMessage);
+            if (userMessage.getPayloadInfo() == null) {
+                continue;
+            }
+            for (PartInfo partInfo : userMessage.getPayloadInfo().getPartInfo()) {
+                if (hasLength(partInfo.getFileName())) {
+                    fileNames.add(partInfo.getFileName());
+                }
+            }
+        }
+
+        final Date archived = new Date();
+        for (UserMessageLog messageLog : messageLogs) {
+            userMessageArchiveDao.create(createArchive(messageLog, userMessages.get(messageLog.getMessageId()), archived));
+        }
+
+        final List<String> signalMessageIds = signalMessageDao.findSignalMessageIdsByRefMessageIds(messageIds);
+        payloadFileDeletionService.scheduleDeletion(fileNames);
+        rawEnvelopeLogDao.deleteRawEnvelopes(messageIds);
+        userMessageLogDao.deleteByMessageIds(messageIds);
+        signalMessageLogDao.deleteByMessageIds(signalMessageIds);
+        messagingDao.deleteMessages(messageIds, signalMessageIds);
+        LOG.debug("Archived [{}] messages and removed [{}] signal messages", messageIds.size(), signalMessageIds.size());
+    }
+
+    protected UserMessageArchive createArchive(UserMessageLog messageLog, UserMessage userMessage, Date archived) {
+        UserMessageArchive archive = new UserMessageArchive();
+        archive.setMessageId(messageLog.getMessageId());
+        archive.setMessageStatus(messageLog.getMessageStatus());
+        archive.setNotificationStatus(messageLog.getNotificationStatus());
+        archive.setMshRole(messageLog.getMshRole());
+        archive.setMessageType(messageLog.getMessageType());
+        archive.setMpc(messageLog.getMpc());
+        archive.setReceived(messageLog.getReceived());
+        archive.setDownloaded(messageLog.getDownloaded());
+        archive.setDeleted(messageLog.getDeleted());
+        archive.setFailed(messageLog.getFailed());
+        archive.setRestored(messageLog.getRestored());
+        archive.setNextAttempt(messageLog.getNextAttempt());
+        archive.setSendAttempts(messageLog.getSendAttempts());
+        archive.setSendAttemptsMax(messageLog.getSendAttemptsMax());
+        archive.setArchived(archived);
+        if (userMessage == null) {
+            LOG.warn("Message [{}] is archived without its content, which was not found", messageLog.getMessageId());
+            return archive;
+        }
+        archive.setRefToMessageId(userMessage.getMessageInfo().getRefToMessageId());
+        if (userMessage.getCollaborationInfo() != null) {
+            archive.setConversationId(userMessage.getCollaborationInfo().getConversationId());
+        }
+        if (userMessage.getPartyInfo() != null) {
+            if (userMessage.getPartyInfo().getFrom() != null) {
+                archive.setFromPartyId(getFirstPartyId(userMessage.getPartyInfo().getFrom().getPartyId()));
+            }
+            if (userMessage.getPartyInfo().getTo() != null) {
+                archive.setToPartyId(getFirstPartyId(userMessage.getPartyInfo().getTo().getPartyId()));
+            }
+        }
+        if (userMessage.getMessageProperties() != null) {
+            for (Property property : userMessage.getMessageProperties().getProperty()) {
+                if (MessageConstants.ORIGINAL_SENDER.equals(property.getName())) {
+                    archive.setOriginalSender(property.getValue());
+                } else if (MessageConstants.FINAL_RECIPIENT.equals(property.getName())) {
+                    archive.setFinalRecipient(property.getValue());
+                }
+            }
+        }
+        return archive;
+    }
+
+    protected String getFirstPartyId(Collection<PartyId> partyIds) {
+        if (partyIds == null || partyIds.isEmpty()) {
+            return null;
+        }
+        return partyIds.iterator().next().getValue();
+    }
+}
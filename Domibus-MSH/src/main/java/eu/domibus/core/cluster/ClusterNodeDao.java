@@ -0,0 +1,16 @@
+package eu.domibus.core.cluster;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+public interface ClusterNodeDao {
+
+    void heartbeat(String nodeId, Date heartbeat);
+
+    List<String> findActiveNodeIds(Date since);
+
+    int deleteInactiveNodes(Date before);
+}
@@ -0,0 +1,55 @@
+package eu.domibus.core.cluster;
+
+import eu.domibus.common.dao.BasicDao;
+import eu.domibus.common.model.cluster.ClusterNode;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+@Repository
+public class ClusterNodeDaoImpl extends BasicDao<ClusterNode> implements ClusterNodeDao {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(ClusterNodeDaoImpl.class);
+
+    public ClusterNodeDaoImpl() {
+        super(ClusterNode.class);
+    }
+
+    @Override
+    public void heartbeat(final String nodeId, final Date heartbeat) {
+        TypedQuery<ClusterNode> query = em.createNamedQuery("ClusterNode.findByNodeId", ClusterNode.class);
+        query.setParameter("NODE_ID", nodeId);
+        final List<ClusterNode> clusterNodes = query.getResultList();
+        if (clusterNodes.isEmpty()) {
+            LOG.info("Registering the cluster node [{}]", nodeId);
+            ClusterNode clusterNode = new ClusterNode();
+            clusterNode.setNodeId(nodeId);
+            clusterNode.setHeartbeat(heartbeat);
+            em.persist(clusterNode);
+            return;
+        }
+        clusterNodes.get(0).setHeartbeat(heartbeat);
+    }
+
+    @Override
+    public List<String> findActiveNodeIds(final Date since) {
+        TypedQuery<String> query = em.createNamedQuery("ClusterNode.findActiveNodeIds", String.class);
+        query.setParameter("SINCE", since);
+        return query.getResultList();
+    }
+
+    @Override
+    public int deleteInactiveNodes(final Date before) {
+        Query query = em.createNamedQuery("ClusterNode.deleteInactive");
+        query.setParameter("BEFORE", before);
+        return query.executeUpdate();
+    }
+}
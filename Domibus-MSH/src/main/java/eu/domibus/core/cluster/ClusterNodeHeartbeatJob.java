@@ -0,0 +1,24 @@
+package eu.domibus.core.cluster;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * Quartz job writing the heartbeat of this node, executed on every node by the node scheduler.
+ *
+ * @since 3.3.3
+ */
+@DisallowConcurrentExecution
+public class ClusterNodeHeartbeatJob extends QuartzJobBean {
+
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
+        clusterNodeService.heartbeat();
+    }
+}
@@ -0,0 +1,127 @@
+package eu.domibus.core.cluster;
+
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps track of the live nodes of the cluster through the heartbeat they periodically write in the database and
+ * computes the shard of the messages this node is responsible for when scanning for retries and expired messages.
+ * The active nodes are ordered by their id and each node handles the messages whose entity id modulo the number of
+ * active nodes equals its position. When a node stops sending heartbeats its slice is taken over once the node timeout
+ * has elapsed.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class ClusterNodeService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(ClusterNodeService.class);
+
+    public static final String CLUSTERED = "domibus.deployment.clustered";
+    public static final String NODE_ID = "domibus.cluster.node.id";
+    public static final String NODE_TIMEOUT = "domibus.cluster.node.timeout";
+    private static final String DEFAULT_NODE_TIMEOUT = "60000";
+
+    @Autowired
+    private ClusterNodeDao clusterNodeDao;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private String nodeId;
+
+    private volatile ClusterShard shard;
+
+    private volatile long shardComputed;
+
+    @PostConstruct
+    public void init() {
+        nodeId = domibusProperties.getProperty(NODE_ID);
+        if (StringUtils.isBlank(nodeId)) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        LOG.info("Cluster node id [{}]", nodeId);
+    }
+
+    /**
+     * Writes the heartbeat of this node, forgets the nodes which timed out and recomputes the shard of this node.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void heartbeat() {
+        updateShard();
+    }
+
+    /**
+     * Gets the shard of the messages this node is responsible for, without writing anything: the heartbeat is only
+     * written by {@link #heartbeat()}. When the last heartbeat is older than the node timeout the shard is read again
+     * from the active nodes, so that a node which lost its heartbeat never keeps working on a slice the other nodes
+     * already took over: such a node gets the empty shard until its next heartbeat.
+     *
+     * @return the shard of this node
+     */
+    @Transactional(readOnly = true)
+    public ClusterShard getShard() {
+        if (!isClustered()) {
+            return ClusterShard.ALL;
+        }
+        final ClusterShard currentShard = shard;
+        final long now = System.currentTimeMillis();
+        final long nodeTimeout = getNodeTimeout();
+        if (currentShard != null && now - shardComputed <= nodeTimeout) {
+            return currentShard;
+        }
+        final List<String> activeNodeIds = clusterNodeDao.findActiveNodeIds(new Date(now - nodeTimeout));
+        if (!activeNodeIds.contains(nodeId)) {
+            LOG.warn("Cluster node [{}] has no heartbeat for [{}] ms, it handles no shard until its next heartbeat", nodeId, nodeTimeout);
+            return ClusterShard.NONE;
+        }
+        return new ClusterShard(activeNodeIds.indexOf(nodeId), activeNodeIds.size());
+    }
+
+    protected ClusterShard updateShard() {
+        if (!isClustered()) {
+            shard = ClusterShard.ALL;
+            return shard;
+        }
+        final long now = System.currentTimeMillis();
+        final long nodeTimeout = getNodeTimeout();
+        clusterNodeDao.heartbeat(nodeId, new Date(now));
+        final int deleted = clusterNodeDao.deleteInactiveNodes(new Date(now - nodeTimeout));
+        if (deleted > 0) {
+            LOG.info("Removed [{}] cluster nodes without heartbeat for [{}] ms", deleted, nodeTimeout);
+        }
+        final List<String> activeNodeIds = clusterNodeDao.findActiveNodeIds(new Date(now - nodeTimeout));
+        final ClusterShard newShard = new ClusterShard(activeNodeIds.indexOf(nodeId), activeNodeIds.size());
+        if (!newShard.equals(shard)) {
+            LOG.info("Cluster node [{}] handles the shard [{}] of the active nodes {}", nodeId, newShard, activeNodeIds);
+        }
+        shard = newShard;
+        shardComputed = now;
+        return newShard;
+    }
+
+    protected boolean isClustered() {
+        return Boolean.parseBoolean(domibusProperties.getProperty(CLUSTERED, "false"));
+    }
+
+    protected long getNodeTimeout() {
+        return Long.parseLong(domibusProperties.getProperty(NODE_TIMEOUT, DEFAULT_NODE_TIMEOUT));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
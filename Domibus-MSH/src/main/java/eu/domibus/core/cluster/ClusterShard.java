@@ -0,0 +1,63 @@
+package eu.domibus.core.cluster;
+
+/**
+ * The slice of the messages handled by a node: the messages whose entity id modulo {@link #getCount()} equals
+ * {@link #getIndex()}.
+ *
+ * @since 3.3.3
+ */
+public class ClusterShard {
+
+    /**
+     * The shard containing all the messages, used when Domibus is not clustered
+     */
+    public static final ClusterShard ALL = new ClusterShard(0, 1);
+
+    /**
+     * The empty shard, used by a node whose heartbeat timed out: its messages are handled by the other nodes
+     */
+    public static final ClusterShard NONE = new ClusterShard(-1, 1, false);
+
+    private final int index;
+
+    private final int count;
+
+    public ClusterShard(int index, int count) {
+        this(index, count, true);
+    }
+
+    private ClusterShard(int index, int count, boolean validate) {
+        if (validate && (count < 1 || index < 0 || index >= count)) {
+            throw new IllegalArgumentException("Invalid shard [" + index + "] of [" + count + "]");
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ClusterShard that = (ClusterShard) o;
+        return index == that.index && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * index + count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -1,5 +1,6 @@
 package eu.domibus.core.message;
 
+import com.google.common.collect.Lists;
 import eu.domibus.api.exceptions.DomibusCoreErrorCode;
 import eu.domibus.api.exceptions.DomibusCoreException;
 import eu.domibus.api.jms.JMSManager;
@@ -12,11 +13,13 @@ import eu.domibus.api.pmode.domain.LegConfiguration;
 import eu.domibus.api.usermessage.UserMessageService;
 import eu.domibus.common.MessageStatus;
 import eu.domibus.common.dao.MessagingDao;
+import eu.domibus.common.dao.RawEnvelopeLogDao;
 import eu.domibus.common.dao.SignalMessageDao;
 import eu.domibus.common.dao.SignalMessageLogDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.services.MessageExchangeService;
+import eu.domibus.core.retention.RetentionMetricsService;
 import eu.domibus.ebms3.common.UserMessageServiceHelper;
 import eu.domibus.ebms3.common.model.SignalMessage;
 import eu.domibus.ebms3.common.model.UserMessage;
@@ -26,7 +29,6 @@ import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import eu.domibus.logging.DomibusMessageCode;
 import eu.domibus.logging.MDCKey;
-import eu.domibus.messaging.DelayedDispatchMessageCreator;
 import eu.domibus.messaging.DispatchMessageCreator;
 import eu.domibus.plugin.NotificationListener;
 import org.apache.commons.lang3.StringUtils;
@@ -50,6 +52,11 @@ public class UserMessageDefaultService implements UserMessageService {
 
     public static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(UserMessageDefaultService.class);
 
+    /**
+     * Number of messages deleted together, kept below the 1000 expressions Oracle accepts in an IN list
+     */
+    protected static final int DELETE_BATCH_SIZE = 500;
+
     @Autowired
     @Qualifier("sendMessageQueue")
     private Queue sendMessageQueue;
@@ -72,6 +79,9 @@ public class UserMessageDefaultService implements UserMessageService {
     @Autowired
     private SignalMessageLogDao signalMessageLogDao;
 
+    @Autowired
+    private RawEnvelopeLogDao rawEnvelopeLogDao;
+
     @Autowired
     private BackendNotificationService backendNotificationService;
 
@@ -90,6 +100,9 @@ public class UserMessageDefaultService implements UserMessageService {
     @Autowired
     private DomainExtConverter domainExtConverter;
 
+    @Autowired
+    private RetentionMetricsService retentionMetricsService;
+
     @Override
     public String getFinalRecipient(String messageId) {
         final UserMessage userMessage = messagingDao.findUserMessageByMessageId(messageId);
@@ -133,6 +146,7 @@ public class UserMessageDefaultService implements UserMessageService {
         userMessageLog.setRestored(currentDate);
         userMessageLog.setFailed(null);
         userMessageLog.setNextAttempt(currentDate);
+        userMessageLog.setSendLease(null);
 
         Integer newMaxAttempts = computeNewMaxAttempts(userMessageLog, messageId);
         LOG.debug("Increasing the max attempts for message [{}] from [{}] to [{}]", messageId, userMessageLog.getSendAttemptsMax(), newMaxAttempts);
@@ -168,7 +182,17 @@ public class UserMessageDefaultService implements UserMessageService {
 
     @Override
     public void scheduleSending(String messageId, Long delay) {
-        jmsManager.sendMessageToQueue(new DelayedDispatchMessageCreator(messageId, delay).createMessage(), sendMessageQueue);
+        jmsManager.sendMessageToQueue(new DispatchMessageCreator(messageId).createMessage(), sendMessageQueue, delay);
+    }
+
+    @Override
+    public void scheduleSending(String messageId, Long delay, Date sendLease) {
+        final JmsMessage jmsMessage = new DispatchMessageCreator(messageId, sendLease).createMessage();
+        if (delay == null) {
+            jmsManager.sendMessageToQueue(jmsMessage, sendMessageQueue);
+        } else {
+            jmsManager.sendMessageToQueue(jmsMessage, sendMessageQueue, delay);
+        }
     }
 
     @Override
@@ -228,11 +252,58 @@ public class UserMessageDefaultService implements UserMessageService {
         }
 
         LOG.debug("Deleting [" + messageIds.size() + "] messages");
-        for (final String messageId : messageIds) {
-            deleteMessage(messageId);
+        for (List<String> batch : Lists.partition(messageIds, DELETE_BATCH_SIZE)) {
+            deleteMessages(batch);
         }
     }
 
+    /**
+     * Deletes several messages with set-based statements: the notifications of the messages are consumed from each
+     * plugin queue with one selector, then the payloads, the receipts, the raw envelopes and the statuses of the
+     * messages and of their signals are updated with one statement each. The time spent with JMS and with the
+     * database is reported to the retention cycle in progress.
+     *
+     * @param messageIds the ids of the messages, no more than {@link #DELETE_BATCH_SIZE}
+     */
+    protected void deleteMessages(List<String> messageIds) {
+        long start = System.currentTimeMillis();
+        if (backendNotificationService.getNotificationListenerServices() != null) {
+            for (NotificationListener notificationListener : backendNotificationService.getNotificationListenerServices()) {
+                try {
+                    String queueName = notificationListener.getBackendNotificationQueue().getQueueName();
+                    int consumed = jmsManager.consumeMessages(queueName, messageIds);
+                    LOG.debug("Consumed [{}] messages from queue [{}]", consumed, queueName);
+                } catch (JMSException jmsEx) {
+                    LOG.error("Error trying to get the queue name", jmsEx);
+                    throw new DomibusCoreException(DomibusCoreErrorCode.DOM_001, "Could not get the queue name", jmsEx.getCause());
+                }
+            }
+        }
+        long jmsCleanupTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        messagingDao.clearPayloadData(messageIds);
+        long databaseDeletionTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        backendNotificationService.notifyOfMessageStatusChange(messageIds, MessageStatus.DELETED, new Timestamp(System.currentTimeMillis()));
+        jmsCleanupTime += System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+
+        final List<String> signalMessageIds = signalMessageDao.findSignalMessageIdsByRefMessageIds(messageIds);
+        signalMessageDao.clearReceipts(messageIds);
+        final int rawEnvelopes = rawEnvelopeLogDao.deleteRawEnvelopes(messageIds);
+
+        final List<String> deletedMessageIds = new ArrayList<>(messageIds);
+        deletedMessageIds.addAll(signalMessageIds);
+        final int deleted = userMessageLogDao.setMessagesAsDeleted(deletedMessageIds);
+        databaseDeletionTime += System.currentTimeMillis() - start;
+        LOG.debug("Deleted [{}] messages and signal messages, [{}] raw envelopes", deleted, rawEnvelopes);
+        retentionMetricsService.addJmsCleanupTime(jmsCleanupTime);
+        retentionMetricsService.addDatabaseDeletionTime(databaseDeletionTime);
+    }
+
     @Override
     @MDCKey(DomibusLogger.MDC_MESSAGE_ID)
     public void deleteMessage(String messageId) {
@@ -9,6 +9,7 @@ import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.model.logging.UserMessageLogBuilder;
 import eu.domibus.ebms3.common.model.MessageType;
 import eu.domibus.ebms3.receiver.BackendNotificationService;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -28,7 +29,7 @@ public class UserMessageLogDefaultService implements UserMessageLogService {
     BackendNotificationService backendNotificationService;
 
     @Override
-    public void save(String messageId, String messageStatus, String notificationStatus, String mshRole, Integer maxAttempts, String mpc, String backendName, String endpoint) {
+    public void save(String messageId, String messageStatus, String notificationStatus, String mshRole, Integer maxAttempts, String mpc, String backendName, String endpoint, String receiver) {
         // Builds the user message log
         final MessageStatus status = MessageStatus.valueOf(messageStatus);
         UserMessageLogBuilder umlBuilder = UserMessageLogBuilder.create()
@@ -38,7 +39,9 @@ public class UserMessageLogDefaultService implements UserMessageLogService {
                 .setMpc(mpc)
                 .setSendAttemptsMax(maxAttempts)
                 .setBackendName(backendName)
-                .setEndpoint(endpoint);
+                .setEndpoint(endpoint)
+                // the pull requests match the party ids case insensitively
+                .setReceiver(StringUtils.upperCase(receiver));
 
         final UserMessageLog userMessageLog = umlBuilder.build();
         backendNotificationService.notifyOfMessageStatusChange(userMessageLog, status, new Timestamp(System.currentTimeMillis()));
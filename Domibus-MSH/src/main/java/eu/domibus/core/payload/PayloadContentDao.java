@@ -0,0 +1,23 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.model.payload.PayloadContent;
+
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+public interface PayloadContentDao {
+
+    void create(PayloadContent content);
+
+    void update(PayloadContent content);
+
+    void delete(PayloadContent content);
+
+    PayloadContent findByDigestForUpdate(String digest, boolean compressed);
+
+    List<PayloadContent> findByFileNamesForUpdate(List<String> fileNames);
+
+    int updateFilePath(String filePath, String newFilePath);
+}
@@ -0,0 +1,61 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.dao.BasicDao;
+import eu.domibus.common.model.payload.PayloadContent;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+@Repository
+public class PayloadContentDaoImpl extends BasicDao<PayloadContent> implements PayloadContentDao {
+
+    public PayloadContentDaoImpl() {
+        super(PayloadContent.class);
+    }
+
+    /**
+     * Locks the shared payload files with the given content until the transaction storing or clearing a payload
+     * completes, so that a file is not deleted while a new payload references it. The same content may be shared
+     * through several files, when it was first stored concurrently: the oldest one is returned.
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public PayloadContent findByDigestForUpdate(final String digest, final boolean compressed) {
+        TypedQuery<PayloadContent> query = em.createNamedQuery("PayloadContent.findByDigest", PayloadContent.class);
+        query.setParameter("DIGEST", digest);
+        query.setParameter("COMPRESSED", compressed);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        final List<PayloadContent> contents = query.getResultList();
+        return contents.isEmpty() ? null : contents.get(0);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<PayloadContent> findByFileNamesForUpdate(final List<String> fileNames) {
+        if (fileNames.isEmpty()) {
+            return new ArrayList<>();
+        }
+        TypedQuery<PayloadContent> query = em.createNamedQuery("PayloadContent.findByFileNames", PayloadContent.class);
+        query.setParameter("FILE_NAMES", fileNames);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int updateFilePath(final String filePath, final String newFilePath) {
+        Query query = em.createNamedQuery("PayloadContent.updateFilePath");
+        query.setParameter("FILE_PATH", filePath);
+        query.setParameter("NEW_FILE_PATH", newFilePath);
+        return query.executeUpdate();
+    }
+}
@@ -0,0 +1,136 @@
+package eu.domibus.core.payload;
+
+import com.google.common.collect.Lists;
+import eu.domibus.common.model.payload.PayloadContent;
+import eu.domibus.configuration.Storage;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Stores the payload files once per content: the payloads with the same content, e.g. an attachment sent to many
+ * receivers, reference the same file, identified by the SHA-256 digest of the content computed while the file is
+ * written. The references are counted and the file is deleted when the last payload referencing it is cleared.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PayloadContentService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PayloadContentService.class);
+
+    public static final String DEDUPLICATION = "domibus.attachment.storage.deduplication";
+
+    private static final String DEFAULT_DEDUPLICATION = "false";
+
+    /**
+     * Maximum number of files looked up at once, below the 1000 expressions Oracle accepts in an IN list
+     */
+    protected static final int MAX_LOOKUP_SIZE = 500;
+
+    @Autowired
+    private PayloadContentDao payloadContentDao;
+
+    @Autowired
+    private Storage storage;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(domibusProperties.getProperty(DEDUPLICATION, DEFAULT_DEDUPLICATION));
+    }
+
+    /**
+     * Stores the content of a payload in a new file, then references the file already storing the same content if
+     * there is one, in which case the new file is deleted.
+     *
+     * @param is         the content of the payload
+     * @param compressed whether the payload is compressed in the file
+     * @return the payload file storing the content
+     * @throws IOException if the content could not be written
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public PayloadContent store(InputStream is, boolean compressed) throws IOException {
+        final MessageDigest messageDigest = DigestUtils.getSha256Digest();
+        final File payloadFile = storage.createPayloadFile();
+        final long length = storage.storePayload(payloadFile, new DigestInputStream(is, messageDigest), compressed);
+        final String digest = Hex.encodeHexString(messageDigest.digest());
+
+        PayloadContent content = payloadContentDao.findByDigestForUpdate(digest, compressed);
+        if (content != null) {
+            content.setReferenceCount(content.getReferenceCount() + 1);
+            payloadContentDao.update(content);
+            FileUtils.deleteQuietly(payloadFile);
+            LOG.debug("Payload content [{}] already stored in [{}], now referenced [{}] times", digest, content.getFilePath(), content.getReferenceCount());
+            return content;
+        }
+        content = new PayloadContent();
+        content.setDigest(digest);
+        content.setCompressed(compressed);
+        content.setFileName(payloadFile.getName());
+        content.setFilePath(payloadFile.getAbsolutePath());
+        content.setLength(length);
+        content.setReferenceCount(1);
+        content.setCreationTime(new Date());
+        payloadContentDao.create(content);
+        return content;
+    }
+
+    /**
+     * Releases a reference to the given payload files for each time they are listed. The files shared by the
+     * payloads are kept as long as other payloads reference them.
+     *
+     * @param fileNames the payload files of the cleared payloads
+     * @return the payload files which are not referenced anymore and can be deleted
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> release(final List<String> fileNames) {
+        final Map<String, List<String>> filesByName = new HashMap<>();
+        for (String fileName : fileNames) {
+            final String name = new File(fileName).getName();
+            List<String> files = filesByName.get(name);
+            if (files == null) {
+                files = new ArrayList<>();
+                filesByName.put(name, files);
+            }
+            files.add(fileName);
+        }
+        final List<String> unreferenced = new ArrayList<>(fileNames);
+        for (List<String> names : Lists.partition(new ArrayList<>(filesByName.keySet()), MAX_LOOKUP_SIZE)) {
+            for (PayloadContent content : payloadContentDao.findByFileNamesForUpdate(names)) {
+                final List<String> files = filesByName.get(content.getFileName());
+                final int referenceCount = content.getReferenceCount() - files.size();
+                if (referenceCount > 0) {
+                    content.setReferenceCount(referenceCount);
+                    payloadContentDao.update(content);
+                    unreferenced.removeAll(files);
+                    LOG.debug("Payload file [{}] still referenced [{}] times", content.getFilePath(), referenceCount);
+                } else {
+                    payloadContentDao.delete(content);
+                }
+            }
+        }
+        return unreferenced;
+    }
+}
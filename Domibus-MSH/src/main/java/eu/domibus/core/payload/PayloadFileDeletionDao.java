@@ -0,0 +1,21 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.model.payload.PayloadFileDeletion;
+import eu.domibus.core.cluster.ClusterShard;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+public interface PayloadFileDeletionDao {
+
+    List<PayloadFileDeletion> create(List<String> fileNames, Date nextAttempt);
+
+    List<PayloadFileDeletion> findDue(Date now, ClusterShard shard, int maxResults);
+
+    int deleteByIds(List<Integer> ids);
+
+    int reschedule(List<Integer> ids, Date nextAttempt);
+}
@@ -0,0 +1,79 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.dao.BasicDao;
+import eu.domibus.common.model.payload.PayloadFileDeletion;
+import eu.domibus.core.cluster.ClusterShard;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+@Repository
+public class PayloadFileDeletionDaoImpl extends BasicDao<PayloadFileDeletion> implements PayloadFileDeletionDao {
+
+    public PayloadFileDeletionDaoImpl() {
+        super(PayloadFileDeletion.class);
+    }
+
+    /**
+     * Journals the files in the transaction clearing the payloads, so that they are deleted only if it commits.
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<PayloadFileDeletion> create(final List<String> fileNames, final Date nextAttempt) {
+        final Date now = new Date();
+        final List<PayloadFileDeletion> deletions = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            PayloadFileDeletion deletion = new PayloadFileDeletion();
+            deletion.setFileName(fileName);
+            deletion.setCreationTime(now);
+            deletion.setNextAttempt(nextAttempt);
+            em.persist(deletion);
+            deletions.add(deletion);
+        }
+        em.flush();
+        return deletions;
+    }
+
+    @Override
+    @Transactional
+    public List<PayloadFileDeletion> findDue(final Date now, final ClusterShard shard, final int maxResults) {
+        TypedQuery<PayloadFileDeletion> query = em.createNamedQuery("PayloadFileDeletion.findDue", PayloadFileDeletion.class);
+        query.setParameter("NOW", now);
+        query.setParameter("SHARD_COUNT", shard.getCount());
+        query.setParameter("SHARD_INDEX", shard.getIndex());
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    @Transactional
+    public int deleteByIds(final List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Query query = em.createNamedQuery("PayloadFileDeletion.deleteByIds");
+        query.setParameter("IDS", ids);
+        return query.executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    public int reschedule(final List<Integer> ids, final Date nextAttempt) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Query query = em.createNamedQuery("PayloadFileDeletion.reschedule");
+        query.setParameter("IDS", ids);
+        query.setParameter("NEXT_ATTEMPT", nextAttempt);
+        return query.executeUpdate();
+    }
+}
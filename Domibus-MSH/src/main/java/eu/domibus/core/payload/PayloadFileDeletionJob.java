@@ -0,0 +1,25 @@
+package eu.domibus.core.payload;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * Quartz job reclaiming the payload files whose deletion failed or was lost, executed on every node by the node
+ * scheduler.
+ *
+ * @since 3.3.3
+ */
+@DisallowConcurrentExecution
+public class PayloadFileDeletionJob extends QuartzJobBean {
+
+    @Autowired
+    private PayloadFileDeletionService payloadFileDeletionService;
+
+    @Override
+    protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
+        payloadFileDeletionService.reclaimOrphanedFiles();
+    }
+}
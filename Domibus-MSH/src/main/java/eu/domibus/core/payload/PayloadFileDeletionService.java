@@ -0,0 +1,258 @@
+package eu.domibus.core.payload;
+
+import com.google.common.collect.Lists;
+import eu.domibus.common.model.payload.PayloadFileDeletion;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes the payload files outside of the transactions clearing the payloads. The files are first journaled in the
+ * clearing transaction; once it commits, a bounded pool of workers deletes them and removes them from the journal.
+ * The files which could not be deleted, or whose deletion was lost because the node stopped, are reclaimed by the
+ * {@link PayloadFileDeletionJob} after the retry delay.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PayloadFileDeletionService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PayloadFileDeletionService.class);
+
+    public static final String DELETION_WORKERS = "domibus.payload.deletion.workers";
+    public static final String DELETION_RETRY_DELAY = "domibus.payload.deletion.retry.delay";
+    public static final String DELETION_BATCH_SIZE = "domibus.payload.deletion.batch.size";
+
+    private static final String DEFAULT_DELETION_WORKERS = "4";
+    private static final String DEFAULT_DELETION_RETRY_DELAY = "60000";
+    private static final String DEFAULT_DELETION_BATCH_SIZE = "1000";
+
+    /**
+     * Maximum number of files deleted by one task, keeping the journal updates below the 1000 expressions Oracle
+     * accepts in an IN list
+     */
+    protected static final int MAX_TASK_SIZE = 500;
+
+    @Autowired
+    private PayloadFileDeletionDao payloadFileDeletionDao;
+
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    @Autowired
+    private PayloadContentService payloadContentService;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private Semaphore workers;
+
+    private final AtomicLong deletedFiles = new AtomicLong();
+
+    private final AtomicLong reclaimedFiles = new AtomicLong();
+
+    private final AtomicLong failedDeletions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        workers = new Semaphore(getWorkers());
+    }
+
+    /**
+     * Journals the deletion of payload files in the current transaction, or in a new one. The files are deleted once
+     * the transaction commits and are kept if it rolls back. The files shared with other payloads are only released,
+     * see {@link PayloadContentService}.
+     *
+     * @param fileNames the names of the payload files
+     */
+    @Transactional
+    public void scheduleDeletion(final List<String> fileNames) {
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        final List<String> unreferencedFileNames = payloadContentService.release(fileNames);
+        if (unreferencedFileNames.isEmpty()) {
+            return;
+        }
+        final List<PayloadFileDeletion> deletions = payloadFileDeletionDao.create(unreferencedFileNames, new Date(System.currentTimeMillis() + getRetryDelay()));
+        LOG.debug("Journaled the deletion of [{}] payload files", deletions.size());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            LOG.debug("No transaction synchronization: the payload files are left to the deletion job");
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                deleteFilesAsync(deletions);
+            }
+        });
+    }
+
+    /**
+     * Hands the deletion of the files over to the free workers without waiting for them. The files no worker is free
+     * for stay in the journal and are deleted by the deletion job.
+     */
+    protected void deleteFilesAsync(final List<PayloadFileDeletion> deletions) {
+        for (final List<PayloadFileDeletion> task : Lists.partition(deletions, getTaskSize(deletions.size()))) {
+            if (!workers.tryAcquire()) {
+                LOG.debug("No payload deletion worker available: [{}] payload files left to the deletion job", task.size());
+                continue;
+            }
+            try {
+                taskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            deleteFiles(task);
+                        } catch (RuntimeException e) {
+                            LOG.error("Error deleting [" + task.size() + "] payload files", e);
+                        } finally {
+                            workers.release();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                workers.release();
+                LOG.warn("Could not start the deletion of [" + task.size() + "] payload files, left to the deletion job", e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the journaled files whose deletion is due: the files whose deletion failed or was lost when a node
+     * stopped. The files are deleted in parallel by the workers.
+     *
+     * @return the number of reclaimed files
+     */
+    public int reclaimOrphanedFiles() {
+        final List<PayloadFileDeletion> deletions = payloadFileDeletionDao.findDue(new Date(), clusterNodeService.getShard(), getBatchSize());
+        if (deletions.isEmpty()) {
+            return 0;
+        }
+        final List<List<PayloadFileDeletion>> tasks = Lists.partition(deletions, getTaskSize(deletions.size()));
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        final AtomicInteger reclaimed = new AtomicInteger();
+        try {
+            for (final List<PayloadFileDeletion> task : tasks) {
+                workers.acquire();
+                final Runnable runnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            reclaimed.addAndGet(deleteFiles(task));
+                        } catch (RuntimeException e) {
+                            LOG.error("Error deleting [" + task.size() + "] payload files", e);
+                        } finally {
+                            workers.release();
+                            done.countDown();
+                        }
+                    }
+                };
+                try {
+                    taskExecutor.execute(runnable);
+                } catch (RuntimeException e) {
+                    LOG.debug("Could not start a payload deletion worker, deleting the files in the current thread", e);
+                    runnable.run();
+                }
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while reclaiming orphaned payload files");
+        }
+        reclaimedFiles.addAndGet(reclaimed.get());
+        LOG.info("Reclaimed [{}] orphaned payload files out of [{}] due deletions", reclaimed.get(), deletions.size());
+        return reclaimed.get();
+    }
+
+    /**
+     * Deletes the files and updates the journal: the deleted or already missing files are removed from it and the
+     * others are retried after the retry delay.
+     *
+     * @return the number of deleted files
+     */
+    protected int deleteFiles(final List<PayloadFileDeletion> deletions) {
+        final List<Integer> completed = new ArrayList<>();
+        final List<Integer> failed = new ArrayList<>();
+        int deleted = 0;
+        for (PayloadFileDeletion deletion : deletions) {
+            final File file = new File(deletion.getFileName());
+            if (file.delete()) {
+                deleted++;
+                completed.add(deletion.getEntityId());
+            } else if (!file.exists()) {
+                LOG.debug("Payload file [{}] already deleted", deletion.getFileName());
+                completed.add(deletion.getEntityId());
+            } else {
+                LOG.warn("Problem deleting payload file [{}], attempt [{}]", deletion.getFileName(), deletion.getAttempts() + 1);
+                failed.add(deletion.getEntityId());
+            }
+        }
+        payloadFileDeletionDao.deleteByIds(completed);
+        payloadFileDeletionDao.reschedule(failed, new Date(System.currentTimeMillis() + getRetryDelay()));
+        deletedFiles.addAndGet(deleted);
+        failedDeletions.addAndGet(failed.size());
+        return deleted;
+    }
+
+    protected int getTaskSize(final int deletions) {
+        final int workerCount = getWorkers();
+        return Math.max(1, Math.min(MAX_TASK_SIZE, (deletions + workerCount - 1) / workerCount));
+    }
+
+    protected int getWorkers() {
+        return Math.max(1, Integer.parseInt(domibusProperties.getProperty(DELETION_WORKERS, DEFAULT_DELETION_WORKERS)));
+    }
+
+    protected long getRetryDelay() {
+        return Long.parseLong(domibusProperties.getProperty(DELETION_RETRY_DELAY, DEFAULT_DELETION_RETRY_DELAY));
+    }
+
+    protected int getBatchSize() {
+        return Integer.parseInt(domibusProperties.getProperty(DELETION_BATCH_SIZE, DEFAULT_DELETION_BATCH_SIZE));
+    }
+
+    /**
+     * @return the number of payload files deleted since the start
+     */
+    public long getDeletedFiles() {
+        return deletedFiles.get();
+    }
+
+    /**
+     * @return the number of payload files reclaimed by the deletion job since the start
+     */
+    public long getReclaimedFiles() {
+        return reclaimedFiles.get();
+    }
+
+    /**
+     * @return the number of failed deletions since the start, each failed deletion being retried
+     */
+    public long getFailedDeletions() {
+        return failedDeletions.get();
+    }
+}
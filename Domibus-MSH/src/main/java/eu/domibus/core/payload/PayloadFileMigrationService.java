@@ -0,0 +1,138 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.dao.AttachmentDAO;
+import eu.domibus.configuration.Storage;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the payload files stored flat in the storage location, as written before the payload files were spread over
+ * hashed subdirectories, to their subdirectory. A payload file is first made available under its new name, then the
+ * payloads are pointed to it and the flat file is deleted once the transaction commits; the payloads can be read
+ * during the whole migration.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PayloadFileMigrationService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PayloadFileMigrationService.class);
+
+    @Autowired
+    private Storage storage;
+
+    @Autowired
+    private AttachmentDAO attachmentDAO;
+
+    @Autowired
+    private PayloadContentDao payloadContentDao;
+
+    /**
+     * Migrates at most the given number of flat payload files. The files which are not referenced by any payload,
+     * e.g. whose deletion is pending, are left in place.
+     *
+     * @param maxFiles the maximum number of files to migrate
+     * @return the number of migrated files
+     */
+    @Transactional
+    public int migrateFlatPayloadFiles(final int maxFiles) {
+        final File storageDirectory = storage.getStorageDirectory();
+        if (storageDirectory == null) {
+            LOG.info("No file system storage defined, no payload file to migrate");
+            return 0;
+        }
+        final List<File> flatFiles = new ArrayList<>();
+        final List<File> payloadFiles = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(storageDirectory.toPath(), "*" + Storage.PAYLOAD_FILE_EXTENSION)) {
+            for (Path path : directoryStream) {
+                if (flatFiles.size() >= maxFiles) {
+                    break;
+                }
+                final File flatFile = path.toFile();
+                final File payloadFile = storage.getPayloadFile(flatFile.getName());
+                if (!flatFile.isFile() || payloadFile.equals(flatFile)) {
+                    continue;
+                }
+                if (migrateFile(flatFile, payloadFile)) {
+                    flatFiles.add(flatFile);
+                    payloadFiles.add(payloadFile);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Error listing the payload files of [" + storageDirectory + "]", e);
+        }
+        completeMigration(flatFiles, payloadFiles);
+        LOG.info("Migrated [{}] flat payload files", flatFiles.size());
+        return flatFiles.size();
+    }
+
+    /**
+     * Locks the payloads stored in the flat file, points them, and the shared payload file if the file is shared, to the
+     * new file and makes it available; the payloads are only pointed to it once the transaction commits.
+     *
+     * @return whether the file has been migrated
+     */
+    protected boolean migrateFile(final File flatFile, final File payloadFile) {
+        final String fileName = flatFile.getAbsolutePath();
+        final String newFileName = payloadFile.getAbsolutePath();
+        if (attachmentDAO.findByFileNameForUpdate(fileName).isEmpty()) {
+            LOG.debug("Payload file [{}] not referenced by any payload, left in place", fileName);
+            return false;
+        }
+        attachmentDAO.updateFileName(fileName, newFileName);
+        payloadContentDao.updateFilePath(fileName, newFileName);
+        try {
+            storage.linkPayload(flatFile, payloadFile);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not migrate the payload file [" + fileName + "]", e);
+            attachmentDAO.updateFileName(newFileName, fileName);
+            payloadContentDao.updateFilePath(newFileName, fileName);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the flat files once the transaction commits, or the new files if it rolls back.
+     */
+    protected void completeMigration(final List<File> flatFiles, final List<File> payloadFiles) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            deleteFiles(flatFiles);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    deleteFiles(flatFiles);
+                } else {
+                    LOG.warn("The migration of [{}] payload files has been rolled back", payloadFiles.size());
+                    deleteFiles(payloadFiles);
+                }
+            }
+        });
+    }
+
+    protected void deleteFiles(final List<File> files) {
+        for (File file : files) {
+            if (!FileUtils.deleteQuietly(file)) {
+                LOG.warn("Could not delete the payload file [{}]", file);
+            }
+        }
+    }
+}
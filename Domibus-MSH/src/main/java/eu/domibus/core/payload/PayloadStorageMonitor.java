@@ -0,0 +1,29 @@
+package eu.domibus.core.payload;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the maintenance of the payload file storage through JMX.
+ *
+ * @since 3.3.3
+ */
+@Component
+@ManagedResource(objectName = "eu.domibus:type=Payload,name=PayloadStorageMonitor", description = "Storage of the payload files")
+public class PayloadStorageMonitor {
+
+    @Autowired
+    private PayloadFileMigrationService payloadFileMigrationService;
+
+    @ManagedOperation(description = "Moves the payload files stored flat in the storage location to their hashed subdirectory; returns the number of migrated files")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "maxFiles", description = "Maximum number of files migrated in one transaction")
+    })
+    public int migrateFlatPayloadFiles(int maxFiles) {
+        return payloadFileMigrationService.migrateFlatPayloadFiles(maxFiles);
+    }
+}
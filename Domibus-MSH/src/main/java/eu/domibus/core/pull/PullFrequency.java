@@ -0,0 +1,169 @@
+package eu.domibus.core.pull;
+
+/**
+ * The pull frequency of a mpc from a responder: the interval between the pull requests, adapted to the answers of
+ * the responder, and the rates measured over the last minute.
+ *
+ * @since 3.3.3
+ */
+public class PullFrequency {
+
+    private String mpc;
+
+    private String responder;
+
+    /**
+     * Interval in milliseconds between the pull requests
+     */
+    private long interval;
+
+    /**
+     * Time in milliseconds at which the next pull requests are due
+     */
+    private long nextPull;
+
+    private boolean lastPullReturnedMessage;
+
+    /**
+     * Number of pull requests of the mpc in progress
+     */
+    private int inProgress;
+
+    /**
+     * Whether an answer without message stopped the pipelined pull requests
+     */
+    private boolean pipelineStopped;
+
+    /**
+     * Start in milliseconds of the current rate window
+     */
+    private long windowStart;
+
+    private int windowRequests;
+
+    private int windowMessages;
+
+    /**
+     * Pull requests sent per minute over the last complete window
+     */
+    private double requestRate;
+
+    /**
+     * Messages pulled per minute over the last complete window
+     */
+    private double messageRate;
+
+    public PullFrequency() {
+    }
+
+    public PullFrequency(PullFrequency other) {
+        this.mpc = other.mpc;
+        this.responder = other.responder;
+        this.interval = other.interval;
+        this.nextPull = other.nextPull;
+        this.lastPullReturnedMessage = other.lastPullReturnedMessage;
+        this.inProgress = other.inProgress;
+        this.pipelineStopped = other.pipelineStopped;
+        this.windowStart = other.windowStart;
+        this.windowRequests = other.windowRequests;
+        this.windowMessages = other.windowMessages;
+        this.requestRate = other.requestRate;
+        this.messageRate = other.messageRate;
+    }
+
+    public String getMpc() {
+        return mpc;
+    }
+
+    public void setMpc(String mpc) {
+        this.mpc = mpc;
+    }
+
+    public String getResponder() {
+        return responder;
+    }
+
+    public void setResponder(String responder) {
+        this.responder = responder;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    public long getNextPull() {
+        return nextPull;
+    }
+
+    public void setNextPull(long nextPull) {
+        this.nextPull = nextPull;
+    }
+
+    public boolean isLastPullReturnedMessage() {
+        return lastPullReturnedMessage;
+    }
+
+    public void setLastPullReturnedMessage(boolean lastPullReturnedMessage) {
+        this.lastPullReturnedMessage = lastPullReturnedMessage;
+    }
+
+    public int getInProgress() {
+        return inProgress;
+    }
+
+    public void setInProgress(int inProgress) {
+        this.inProgress = inProgress;
+    }
+
+    public boolean isPipelineStopped() {
+        return pipelineStopped;
+    }
+
+    public void setPipelineStopped(boolean pipelineStopped) {
+        this.pipelineStopped = pipelineStopped;
+    }
+
+    public long getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(long windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public int getWindowRequests() {
+        return windowRequests;
+    }
+
+    public void setWindowRequests(int windowRequests) {
+        this.windowRequests = windowRequests;
+    }
+
+    public int getWindowMessages() {
+        return windowMessages;
+    }
+
+    public void setWindowMessages(int windowMessages) {
+        this.windowMessages = windowMessages;
+    }
+
+    public double getRequestRate() {
+        return requestRate;
+    }
+
+    public void setRequestRate(double requestRate) {
+        this.requestRate = requestRate;
+    }
+
+    public double getMessageRate() {
+        return messageRate;
+    }
+
+    public void setMessageRate(double messageRate) {
+        this.messageRate = messageRate;
+    }
+}
@@ -0,0 +1,34 @@
+package eu.domibus.core.pull;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Exposes the pull frequency of each mpc and responder of this node through JMX.
+ *
+ * @since 3.3.3
+ */
+@Component
+@ManagedResource(objectName = "eu.domibus:type=Pull,name=PullFrequencyMonitor", description = "Frequency of the pull requests sent by Domibus")
+public class PullFrequencyMonitor {
+
+    @Autowired
+    private PullFrequencyService pullFrequencyService;
+
+    @ManagedAttribute(description = "Pull interval and rates of each mpc and responder")
+    public String[] getFrequencies() {
+        final List<PullFrequency> frequencies = pullFrequencyService.getFrequencies();
+        final String[] result = new String[frequencies.size()];
+        for (int i = 0; i < frequencies.size(); i++) {
+            final PullFrequency frequency = frequencies.get(i);
+            result[i] = "MPC [" + frequency.getMpc() + "] from [" + frequency.getResponder() + "]: interval ["
+                    + frequency.getInterval() + "] ms, [" + frequency.getRequestRate() + "] pull requests and ["
+                    + frequency.getMessageRate() + "] messages per minute";
+        }
+        return result;
+    }
+}
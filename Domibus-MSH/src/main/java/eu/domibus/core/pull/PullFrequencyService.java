@@ -0,0 +1,238 @@
+package eu.domibus.core.pull;
+
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Adapts the frequency of the pull requests of each mpc and responder to the answers of the responder. The interval
+ * between the pull requests is halved each time a pull request returns a message, down to the minimum interval, and
+ * several pull requests are then sent at once. It is doubled each time the responder has no message (EBMS:0006) or the
+ * pull request fails, up to the maximum interval. The number of pull requests in progress is capped for each responder.
+ * While the pull requests return messages they are pipelined: each answer carrying a message is followed at once by new
+ * pull requests, up to the maximum number of pull requests in progress for the mpc, until the responder has no message.
+ * The pull requests in progress are counted by the node which dispatches them: a pull request takes its slot when it is
+ * picked up from the pull queue and releases it once answered, on the same node, whichever node queued it. The scheduler
+ * and the pipeline only queue as many pull requests as there are free slots; a pull request picked up when no slot is
+ * free anymore is dropped. In a cluster the caps therefore apply to each node. The slots are held per pull request, so
+ * that a pull request redelivered by the broker is never counted or released twice. The schedules are kept in memory:
+ * the pull trigger is therefore executed by the scheduler of each node and not by the clustered scheduler.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PullFrequencyService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PullFrequencyService.class);
+
+    public static final String PULL_INTERVAL_MIN = "domibus.pull.interval.min";
+    public static final String PULL_INTERVAL_MAX = "domibus.pull.interval.max";
+    public static final String PULL_CONCURRENT_MAX = "domibus.pull.concurrent.max";
+    public static final String PULL_MPC_CONCURRENT_MAX = "domibus.pull.mpc.concurrent.max";
+
+    private static final String DEFAULT_PULL_INTERVAL_MIN = "1000";
+    private static final String DEFAULT_PULL_INTERVAL_MAX = "120000";
+    private static final String DEFAULT_PULL_CONCURRENT_MAX = "5";
+    private static final String DEFAULT_PULL_MPC_CONCURRENT_MAX = "3";
+
+    /**
+     * Duration in milliseconds of the window over which the rates are measured
+     */
+    protected static final long RATE_WINDOW = 60000;
+
+    /**
+     * The answer of the responder to a pull request
+     */
+    public enum Outcome {
+        MESSAGE, EMPTY, FAILURE
+    }
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private final Map<String, PullFrequency> frequencies = new HashMap<>();
+
+    private final Map<String, ResponderPulls> responderPulls = new HashMap<>();
+
+    private final Set<String> startedPullRequests = new HashSet<>();
+
+    /**
+     * Gets the number of pull requests to queue now for the mpc to the responder. They are counted as in progress once
+     * dispatched, by {@link #startPullRequest(String, String, String)}.
+     *
+     * @param mpc       the qualified name of the mpc
+     * @param responder the name of the responder party
+     * @return the number of pull requests to send, 0 if the next pull requests are not due yet
+     */
+    public synchronized int getPullRequestsDue(String mpc, String responder) {
+        final long now = System.currentTimeMillis();
+        final PullFrequency frequency = getFrequency(mpc, responder, now);
+        if (now < frequency.getNextPull()) {
+            return 0;
+        }
+        final int available = getAvailablePullRequests(frequency, getResponderPulls(responder));
+        if (available <= 0) {
+            LOG.debug("Maximum number of pull requests in progress reached for mpc [{}] and responder [{}]", mpc, responder);
+            return 0;
+        }
+        final int requests = frequency.isLastPullReturnedMessage() ? available : 1;
+        frequency.setNextPull(now + frequency.getInterval());
+        frequency.setPipelineStopped(false);
+        return requests;
+    }
+
+    /**
+     * Counts a pull request picked up from the pull queue as in progress, if the caps of the mpc and of the responder
+     * allow it. The pull request must then be completed with {@link #pullCompleted(String, String, String, Outcome)}.
+     *
+     * @param mpc           the qualified name of the mpc
+     * @param responder     the name of the responder party
+     * @param pullRequestId the id of the JMS message of the pull request
+     * @return false if the pull request must not be dispatched, the caps being reached
+     */
+    public synchronized boolean startPullRequest(String mpc, String responder, String pullRequestId) {
+        if (startedPullRequests.contains(pullRequestId)) {
+            LOG.debug("Pull request [{}] already holds its slot", pullRequestId);
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final PullFrequency frequency = getFrequency(mpc, responder, now);
+        final ResponderPulls pulls = getResponderPulls(responder);
+        if (getAvailablePullRequests(frequency, pulls) <= 0) {
+            LOG.debug("Pull request with mpc [{}] to responder [{}] dropped, the maximum number of pull requests in progress is reached", mpc, responder);
+            return false;
+        }
+        startedPullRequests.add(pullRequestId);
+        pulls.inProgress++;
+        frequency.setInProgress(frequency.getInProgress() + 1);
+        frequency.setWindowRequests(frequency.getWindowRequests() + 1);
+        return true;
+    }
+
+    /**
+     * Releases a pull request started by {@link #startPullRequest(String, String, String)} and adapts the pull frequency
+     * of the mpc to the answer of the responder. When the answer carries a message, gets the number of pull requests to
+     * queue at once to keep the pipeline full. The pipeline stops at the first answer without message, until the next
+     * pull requests are due. A pull request which does not hold a slot anymore is ignored.
+     *
+     * @param mpc           the qualified name of the mpc
+     * @param responder     the name of the responder party
+     * @param pullRequestId the id of the JMS message of the pull request
+     * @param outcome       the answer of the responder
+     * @return the number of pull requests to send at once
+     */
+    public synchronized int pullCompleted(String mpc, String responder, String pullRequestId, Outcome outcome) {
+        if (!startedPullRequests.remove(pullRequestId)) {
+            LOG.debug("Pull request [{}] already released its slot", pullRequestId);
+            return 0;
+        }
+        final long now = System.currentTimeMillis();
+        final PullFrequency frequency = getFrequency(mpc, responder, now);
+        final ResponderPulls pulls = getResponderPulls(responder);
+        pulls.inProgress = Math.max(0, pulls.inProgress - 1);
+        frequency.setInProgress(Math.max(0, frequency.getInProgress() - 1));
+
+        final long previousInterval = frequency.getInterval();
+        if (outcome == Outcome.MESSAGE) {
+            frequency.setInterval(Math.max(getLongProperty(PULL_INTERVAL_MIN, DEFAULT_PULL_INTERVAL_MIN), previousInterval / 2));
+            frequency.setNextPull(Math.min(frequency.getNextPull(), now + frequency.getInterval()));
+            frequency.setWindowMessages(frequency.getWindowMessages() + 1);
+        } else {
+            frequency.setInterval(Math.min(getLongProperty(PULL_INTERVAL_MAX, DEFAULT_PULL_INTERVAL_MAX), previousInterval * 2));
+        }
+        frequency.setLastPullReturnedMessage(outcome == Outcome.MESSAGE);
+        if (previousInterval != frequency.getInterval()) {
+            LOG.debug("Pull interval of mpc [{}] from responder [{}] changed from [{}] to [{}] ms", mpc, responder, previousInterval, frequency.getInterval());
+        }
+        if (outcome != Outcome.MESSAGE) {
+            frequency.setPipelineStopped(true);
+            return 0;
+        }
+        if (frequency.isPipelineStopped()) {
+            return 0;
+        }
+        return Math.max(0, getAvailablePullRequests(frequency, pulls));
+    }
+
+    /**
+     * @return a copy of the pull frequencies of the mpcs
+     */
+    public synchronized List<PullFrequency> getFrequencies() {
+        final long now = System.currentTimeMillis();
+        final List<PullFrequency> result = new ArrayList<>();
+        for (PullFrequency frequency : frequencies.values()) {
+            updateRates(frequency, now);
+            result.add(new PullFrequency(frequency));
+        }
+        return result;
+    }
+
+    protected int getAvailablePullRequests(PullFrequency frequency, ResponderPulls pulls) {
+        final int responderAvailable = getIntProperty(PULL_CONCURRENT_MAX, DEFAULT_PULL_CONCURRENT_MAX) - pulls.inProgress;
+        final int mpcAvailable = getIntProperty(PULL_MPC_CONCURRENT_MAX, DEFAULT_PULL_MPC_CONCURRENT_MAX) - frequency.getInProgress();
+        return Math.min(responderAvailable, mpcAvailable);
+    }
+
+    protected PullFrequency getFrequency(String mpc, String responder, long now) {
+        final String key = mpc + "|" + responder;
+        PullFrequency frequency = frequencies.get(key);
+        if (frequency == null) {
+            frequency = new PullFrequency();
+            frequency.setMpc(mpc);
+            frequency.setResponder(responder);
+            frequency.setInterval(getLongProperty(PULL_INTERVAL_MIN, DEFAULT_PULL_INTERVAL_MIN));
+            frequency.setWindowStart(now);
+            frequencies.put(key, frequency);
+        }
+        updateRates(frequency, now);
+        return frequency;
+    }
+
+    protected ResponderPulls getResponderPulls(String responder) {
+        ResponderPulls pulls = responderPulls.get(responder);
+        if (pulls == null) {
+            pulls = new ResponderPulls();
+            responderPulls.put(responder, pulls);
+        }
+        return pulls;
+    }
+
+    protected void updateRates(PullFrequency frequency, long now) {
+        final long elapsed = now - frequency.getWindowStart();
+        if (elapsed < RATE_WINDOW) {
+            return;
+        }
+        frequency.setRequestRate(frequency.getWindowRequests() * 60000d / elapsed);
+        frequency.setMessageRate(frequency.getWindowMessages() * 60000d / elapsed);
+        frequency.setWindowRequests(0);
+        frequency.setWindowMessages(0);
+        frequency.setWindowStart(now);
+    }
+
+    protected int getIntProperty(String propertyName, String defaultValue) {
+        return Integer.parseInt(domibusProperties.getProperty(propertyName, defaultValue));
+    }
+
+    protected long getLongProperty(String propertyName, String defaultValue) {
+        return Long.parseLong(domibusProperties.getProperty(propertyName, defaultValue));
+    }
+
+    /**
+     * The pull requests in progress to a responder.
+     */
+    protected static class ResponderPulls {
+
+        protected int inProgress;
+    }
+}
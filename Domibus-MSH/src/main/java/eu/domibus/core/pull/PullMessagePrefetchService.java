@@ -0,0 +1,188 @@
+package eu.domibus.core.pull;
+
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps in memory, for each mpc and initiator, a buffer of messages ready to be pulled, so that most pull requests
+ * do not search the database for a message. The messages are leased in the database by batches, in the background
+ * when a buffer runs low: the leased messages keep the status READY_TO_PULL and are skipped by the other nodes until
+ * the lease expires, so that they are pulled from another node if this one stops. The refills run on the task executor,
+ * outside of any transaction: each batch is leased in its own transaction, which holds the row locks taken by the lease
+ * until the lease is committed. A buffered message is claimed by the pull request taking it out of the buffer, with a
+ * conditional update of its status.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class PullMessagePrefetchService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PullMessagePrefetchService.class);
+
+    public static final String PULL_PREFETCH_ENABLED = "domibus.pull.prefetch.enabled";
+    public static final String PULL_PREFETCH_BATCH_SIZE = "domibus.pull.prefetch.batch.size";
+    public static final String PULL_PREFETCH_LEASE_SECONDS = "domibus.pull.prefetch.lease.seconds";
+
+    private static final String DEFAULT_PULL_PREFETCH_ENABLED = "true";
+    private static final String DEFAULT_PULL_PREFETCH_BATCH_SIZE = "20";
+    private static final String DEFAULT_PULL_PREFETCH_LEASE_SECONDS = "60";
+
+    /**
+     * Time in milliseconds during which an empty buffer is not refilled again after a refill which found no message
+     */
+    protected static final long EMPTY_REFILL_BACKOFF = 1000;
+
+    @Autowired
+    private UserMessageLogDao userMessageLogDao;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private TaskExecutor taskExecutor;
+
+    @Autowired
+    @Qualifier("transactionManager")
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private final ConcurrentMap<String, PrefetchBuffer> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the oldest message ready to be pulled by the initiator on the mpc, taking it from the buffer when
+     * possible. When the buffer is empty the message is searched in the database, unless the last refill of the
+     * buffer found no message.
+     * The claimed log is returned with the status READY_TO_PULL, as for {@link UserMessageLogDao#claimReadyToPullMessage(String, List)}.
+     *
+     * @param mpc       the mpc of the messages
+     * @param receivers the party ids of the initiator, in upper case
+     * @return the log of the claimed message, null if there is no message to pull
+     */
+    public UserMessageLog claimReadyToPullMessage(final String mpc, final List<String> receivers) {
+        if (!Boolean.parseBoolean(domibusProperties.getProperty(PULL_PREFETCH_ENABLED, DEFAULT_PULL_PREFETCH_ENABLED))) {
+            return userMessageLogDao.claimReadyToPullMessage(mpc, receivers);
+        }
+        final PrefetchBuffer buffer = getBuffer(mpc, receivers);
+        Integer entityId;
+        while ((entityId = buffer.entityIds.poll()) != null) {
+            scheduleRefillIfLow(buffer);
+            final UserMessageLog userMessageLog = userMessageLogDao.claimLeasedMessage(entityId);
+            if (userMessageLog != null) {
+                return userMessageLog;
+            }
+            LOG.debug("Buffered message [{}] is not ready to be pulled anymore", entityId);
+        }
+        scheduleRefillIfLow(buffer);
+        if (buffer.isEmptyBackoff()) {
+            return null;
+        }
+        return userMessageLogDao.claimReadyToPullMessage(mpc, receivers);
+    }
+
+    protected PrefetchBuffer getBuffer(final String mpc, final List<String> receivers) {
+        final String key = mpc + new TreeSet<>(receivers);
+        PrefetchBuffer buffer = buffers.get(key);
+        if (buffer == null) {
+            buffers.putIfAbsent(key, new PrefetchBuffer(mpc, receivers));
+            buffer = buffers.get(key);
+        }
+        return buffer;
+    }
+
+    protected void scheduleRefillIfLow(final PrefetchBuffer buffer) {
+        if (buffer.entityIds.size() >= getBatchSize() / 2 || buffer.isEmptyBackoff()) {
+            return;
+        }
+        if (!buffer.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refill(buffer);
+                    } finally {
+                        buffer.refilling.set(false);
+                    }
+                }
+            });
+        } catch (TaskRejectedException e) {
+            buffer.refilling.set(false);
+            LOG.warn("Could not schedule the refill of the pull buffer of mpc [{}]: {}", buffer.mpc, e.getMessage());
+        }
+    }
+
+    protected void refill(final PrefetchBuffer buffer) {
+        final int leaseSeconds = Integer.parseInt(domibusProperties.getProperty(PULL_PREFETCH_LEASE_SECONDS, DEFAULT_PULL_PREFETCH_LEASE_SECONDS));
+        final Date leaseExpiry = new Date(System.currentTimeMillis() + leaseSeconds * 1000L);
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            final List<Integer> leased = transactionTemplate.execute(new TransactionCallback<List<Integer>>() {
+                @Override
+                public List<Integer> doInTransaction(TransactionStatus status) {
+                    return userMessageLogDao.leaseReadyToPullMessages(buffer.mpc, buffer.receivers, leaseExpiry, getBatchSize());
+                }
+            });
+            buffer.entityIds.addAll(leased);
+            buffer.emptyUntil = leased.isEmpty() ? System.currentTimeMillis() + EMPTY_REFILL_BACKOFF : 0;
+            LOG.debug("Leased [{}] messages ready to be pulled on mpc [{}]", leased.size(), buffer.mpc);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not refill the pull buffer of mpc [" + buffer.mpc + "]", e);
+        }
+    }
+
+    protected int getBatchSize() {
+        return Math.max(1, Integer.parseInt(domibusProperties.getProperty(PULL_PREFETCH_BATCH_SIZE, DEFAULT_PULL_PREFETCH_BATCH_SIZE)));
+    }
+
+    /**
+     * The messages buffered for an initiator on a mpc.
+     */
+    protected static class PrefetchBuffer {
+
+        protected final String mpc;
+
+        protected final List<String> receivers;
+
+        protected final BlockingQueue<Integer> entityIds = new LinkedBlockingQueue<>();
+
+        protected final AtomicBoolean refilling = new AtomicBoolean(false);
+
+        protected volatile long emptyUntil;
+
+        protected PrefetchBuffer(String mpc, List<String> receivers) {
+            this.mpc = mpc;
+            this.receivers = new ArrayList<>(receivers);
+        }
+
+        protected boolean isEmptyBackoff() {
+            return entityIds.isEmpty() && System.currentTimeMillis() < emptyUntil;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package eu.domibus.core.retention;
+
+import eu.domibus.api.usermessage.UserMessageService;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Deletes the expired messages chunk by chunk for the retention, each chunk in its own transaction so that the locks
+ * and the undo of a chunk are released as soon as it is deleted.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class ExpiredMessageDeleter {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(ExpiredMessageDeleter.class);
+
+    @Autowired
+    private UserMessageLogDao userMessageLogDao;
+
+    @Autowired
+    private UserMessageService userMessageService;
+
+    /**
+     * Deletes, in a new transaction, the next chunk of expired messages of a MPC in a shard.
+     *
+     * @param mpc          the MPC of the messages
+     * @param olderThan    the date before which the messages expire
+     * @param downloaded   whether the downloaded or the not downloaded messages are deleted
+     * @param shard        the shard of the messages
+     * @param lastEntityId the entity id of the last message deleted by the previous chunk
+     * @param maxResults   the maximum number of messages to delete
+     * @param readResults  the number of expired messages to read, more than maxResults to know whether messages are left
+     * @return the expired messages read, in the order of their entity ids: only the first maxResults ones are deleted
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<ExpiredMessageDto> deleteChunk(String mpc, Date olderThan, boolean downloaded, ClusterShard shard, int lastEntityId, int maxResults, int readResults) {
+        final List<ExpiredMessageDto> expiredMessages = downloaded
+                ? userMessageLogDao.findExpiredDownloadedUserMessages(olderThan, mpc, shard, lastEntityId, readResults)
+                : userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, mpc, shard, lastEntityId, readResults);
+        final int toDelete = Math.min(expiredMessages.size(), maxResults);
+        if (toDelete == 0) {
+            return expiredMessages;
+        }
+        final List<String> messageIds = new ArrayList<>(toDelete);
+        for (ExpiredMessageDto expiredMessage : expiredMessages.subList(0, toDelete)) {
+            messageIds.add(expiredMessage.getMessageId());
+        }
+        LOG.debug("Found [" + messageIds.size() + "] expired messages to delete");
+        userMessageService.delete(messageIds);
+        return expiredMessages;
+    }
+}
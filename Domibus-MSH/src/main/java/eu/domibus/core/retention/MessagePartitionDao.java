@@ -0,0 +1,217 @@
+package eu.domibus.core.retention;
+
+import com.google.common.collect.Lists;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Manages the daily partitions of the message tables created by changelog-3.3.3-partitioning.xml. The statements are
+ * executed on the non XA data source because MySQL and Oracle commit the partition changes implicitly.
+ *
+ * @since 3.3.3
+ */
+@Repository
+public class MessagePartitionDao {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(MessagePartitionDao.class);
+
+    protected static final String DIALECT_PROPERTY = "domibus.entityManagerFactory.jpaProperty.hibernate.dialect";
+
+    /**
+     * The partition receiving the rows after the last daily partition, split when a daily partition is created
+     */
+    protected static final String MAX_PARTITION = "P_MAX";
+
+    private static final String PARTITION_BOUND_FORMAT = "yyyy-MM-dd";
+
+    /**
+     * Number of ids in the lists of the purge statements, below the 1000 expressions allowed by Oracle
+     */
+    protected static final int PURGE_CHUNK_SIZE = 500;
+
+    protected static final int PAYLOAD_FILE_NAMES_PAGE_SIZE = 1000;
+
+    @Autowired
+    @Qualifier("domibusJDBC-nonXADataSource")
+    private DataSource dataSource;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the names of the partitions of the table in the order of their bounds, empty if it is not partitioned
+     */
+    public List<String> findPartitionNames(String tableName) {
+        if (isOracle()) {
+            return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM USER_TAB_PARTITIONS WHERE TABLE_NAME = ? ORDER BY PARTITION_POSITION", String.class, tableName);
+        }
+        return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM INFORMATION_SCHEMA.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION", String.class, tableName);
+    }
+
+    /**
+     * Creates a partition by splitting the last partition of the table, which is empty when the partitions are created
+     * in advance.
+     *
+     * @param tableName     the name of the table
+     * @param partitionName the name of the new partition
+     * @param upperBound    the received date before which the rows are stored in the new partition
+     */
+    public void createPartition(String tableName, String partitionName, Date upperBound) {
+        final String bound = new SimpleDateFormat(PARTITION_BOUND_FORMAT).format(upperBound);
+        final String statement;
+        if (isOracle()) {
+            statement = "ALTER TABLE " + tableName + " SPLIT PARTITION " + MAX_PARTITION + " AT (TO_DATE('" + bound + "', 'YYYY-MM-DD'))"
+                    + " INTO (PARTITION " + partitionName + ", PARTITION " + MAX_PARTITION + ") UPDATE INDEXES";
+        } else {
+            statement = "ALTER TABLE " + tableName + " REORGANIZE PARTITION " + MAX_PARTITION
+                    + " INTO (PARTITION " + partitionName + " VALUES LESS THAN ('" + bound + " 00:00:00'), PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))";
+        }
+        LOG.debug("Creating partition [{}] of table [{}]", partitionName, tableName);
+        jdbcTemplate.execute(statement);
+    }
+
+    /**
+     * Drops a partition and all its rows.
+     *
+     * @param tableName     the name of the table
+     * @param partitionName the name of the partition
+     */
+    public void dropPartition(String tableName, String partitionName) {
+        String statement = "ALTER TABLE " + tableName + " DROP PARTITION " + partitionName;
+        if (isOracle()) {
+            statement += " UPDATE GLOBAL INDEXES";
+        }
+        LOG.debug("Dropping partition [{}] of table [{}]", partitionName, tableName);
+        jdbcTemplate.execute(statement);
+    }
+
+    /**
+     * Deletes the rows of the tables which are not partitioned belonging to the user messages of a partition of
+     * TB_USER_MESSAGE: their party ids, messaging and message infos, and their signal messages with their messaging,
+     * receipts, errors and message infos. Their foreign keys to the partitioned tables are dropped, so the drop of the
+     * partition would leave them behind. Each chunk of user messages is deleted in its own transaction.
+     *
+     * @param partitionName the name of a partition of TB_USER_MESSAGE
+     * @return the number of user messages whose rows were deleted
+     */
+    public int deleteUnpartitionedRows(String partitionName) {
+        final List<Long> userMessageIds = new ArrayList<>();
+        final List<Long> messageInfoIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT ID_PK, messageInfo_ID_PK FROM TB_USER_MESSAGE PARTITION (" + partitionName + ")", new RowCallbackHandler() {
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                userMessageIds.add(rs.getLong(1));
+                messageInfoIds.add(rs.getLong(2));
+            }
+        });
+        for (int from = 0; from < userMessageIds.size(); from += PURGE_CHUNK_SIZE) {
+            final int to = Math.min(from + PURGE_CHUNK_SIZE, userMessageIds.size());
+            deleteUnpartitionedRows(userMessageIds.subList(from, to), messageInfoIds.subList(from, to));
+        }
+        LOG.debug("Deleted the rows of [{}] user messages of partition [{}] from the tables which are not partitioned", userMessageIds.size(), partitionName);
+        return userMessageIds.size();
+    }
+
+    protected void deleteUnpartitionedRows(final List<Long> userMessageIds, final List<Long> messageInfoIds) {
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                final List<Long> signalMessageIds = new ArrayList<>();
+                final List<Long> signalMessageInfoIds = new ArrayList<>();
+                final List<Long> receiptIds = new ArrayList<>();
+                jdbcTemplate.query("SELECT SM.ID_PK, SM.messageInfo_ID_PK, SM.receipt_ID_PK FROM TB_SIGNAL_MESSAGE SM JOIN TB_MESSAGE_INFO MI ON SM.messageInfo_ID_PK = MI.ID_PK"
+                        + " WHERE MI.REF_TO_MESSAGE_ID IN (SELECT UMI.MESSAGE_ID FROM TB_MESSAGE_INFO UMI WHERE UMI.ID_PK IN (" + StringUtils.join(messageInfoIds, ',') + "))", new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        signalMessageIds.add(rs.getLong(1));
+                        signalMessageInfoIds.add(rs.getLong(2));
+                        final long receiptId = rs.getLong(3);
+                        if (!rs.wasNull()) {
+                            receiptIds.add(receiptId);
+                        }
+                    }
+                });
+                deleteWhereIn("DELETE FROM TB_PARTY_ID WHERE FROM_ID IN (%1$s) OR TO_ID IN (%1$s)", userMessageIds);
+                deleteWhereIn("DELETE FROM TB_MESSAGING WHERE USER_MESSAGE_ID IN (%1$s)", userMessageIds);
+                deleteWhereIn("DELETE FROM TB_MESSAGING WHERE SIGNAL_MESSAGE_ID IN (%1$s)", signalMessageIds);
+                deleteWhereIn("DELETE FROM TB_ERROR WHERE SIGNALMESSAGE_ID IN (%1$s)", signalMessageIds);
+                deleteWhereIn("DELETE FROM TB_SIGNAL_MESSAGE WHERE ID_PK IN (%1$s)", signalMessageIds);
+                deleteWhereIn("DELETE FROM TB_RECEIPT_DATA WHERE RECEIPT_ID IN (%1$s)", receiptIds);
+                deleteWhereIn("DELETE FROM TB_RECEIPT WHERE ID_PK IN (%1$s)", receiptIds);
+                deleteWhereIn("DELETE FROM TB_MESSAGE_INFO WHERE ID_PK IN (%1$s)", signalMessageInfoIds);
+                deleteWhereIn("DELETE FROM TB_MESSAGE_INFO WHERE ID_PK IN (%1$s)", messageInfoIds);
+            }
+        });
+    }
+
+    /**
+     * Executes a delete statement for each chunk of ids, the ids being formatted in the statement as its first argument.
+     */
+    protected void deleteWhereIn(String statement, List<Long> ids) {
+        for (List<Long> chunk : Lists.partition(ids, PURGE_CHUNK_SIZE)) {
+            jdbcTemplate.update(String.format(statement, StringUtils.join(chunk, ',')));
+        }
+    }
+
+    /**
+     * Reads the names of the payload files of a partition page by page, ordered by id.
+     *
+     * @param partitionName the name of a partition of TB_PART_INFO
+     * @return the names of the payload files of the partition
+     */
+    public List<String> findPayloadFileNames(String partitionName) {
+        final List<String> fileNames = new ArrayList<>();
+        final long[] lastId = {-1L};
+        int pageSize;
+        do {
+            final int fileNamesBefore = fileNames.size();
+            String query = "SELECT ID_PK, FILENAME FROM TB_PART_INFO PARTITION (" + partitionName + ") WHERE FILENAME IS NOT NULL AND ID_PK > ? ORDER BY ID_PK";
+            query += isOracle() ? " FETCH FIRST " + PAYLOAD_FILE_NAMES_PAGE_SIZE + " ROWS ONLY" : " LIMIT " + PAYLOAD_FILE_NAMES_PAGE_SIZE;
+            jdbcTemplate.query(query, new RowCallbackHandler() {
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    lastId[0] = rs.getLong(1);
+                    fileNames.add(rs.getString(2));
+                }
+            }, lastId[0]);
+            pageSize = fileNames.size() - fileNamesBefore;
+        } while (pageSize == PAYLOAD_FILE_NAMES_PAGE_SIZE);
+        return fileNames;
+    }
+
+    protected boolean isOracle() {
+        return StringUtils.containsIgnoreCase(domibusProperties.getProperty(DIALECT_PROPERTY), "oracle");
+    }
+}
@@ -0,0 +1,256 @@
+package eu.domibus.core.retention;
+
+import com.google.common.collect.Lists;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.payload.PayloadFileDeletionService;
+import eu.domibus.ebms3.common.dao.PModeProvider;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.apache.commons.lang.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Retention by partition: the message tables partitioned by received date (see changelog-3.3.3-partitioning.xml) have
+ * one partition per day, named P followed by the day. The daily partitions are created in advance and a partition is
+ * dropped from all the tables once every message received that day is in a final status and past the retention of its
+ * MPC, after the rows of its messages in the tables which are not partitioned have been deleted. The messages of
+ * the partitions which can not be dropped yet are still deleted one by one by the {@link eu.domibus.common.services.impl.MessageRetentionService}.
+ * In a cluster the partitions are maintained by the first node only.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class MessagePartitionService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(MessagePartitionService.class);
+
+    public static final String PARTITIONS_ENABLED = "domibus.retention.partitions.enabled";
+    public static final String PARTITIONS_PRECREATED_DAYS = "domibus.retention.partitions.precreated.days";
+
+    private static final String DEFAULT_PARTITIONS_ENABLED = "false";
+    private static final String DEFAULT_PARTITIONS_PRECREATED_DAYS = "7";
+
+    protected static final String MESSAGE_LOG_TABLE = "TB_MESSAGE_LOG";
+
+    protected static final String USER_MESSAGE_TABLE = "TB_USER_MESSAGE";
+
+    protected static final String PART_INFO_TABLE = "TB_PART_INFO";
+
+    /**
+     * The partitioned tables, in the order their partitions are dropped: the message log last, so that a partition
+     * whose drop was interrupted is found and dropped again at the next run
+     */
+    protected static final List<String> PARTITIONED_TABLES = Arrays.asList("TB_PROPERTY", PART_INFO_TABLE, "TB_RAWENVELOPE_LOG", USER_MESSAGE_TABLE, MESSAGE_LOG_TABLE);
+
+    /**
+     * Number of payload files journaled for deletion at once
+     */
+    protected static final int PAYLOAD_DELETION_CHUNK_SIZE = 1000;
+
+    protected static final String PARTITION_PREFIX = "P";
+
+    private static final String PARTITION_DAY_FORMAT = "yyyyMMdd";
+
+    /**
+     * Tolerance between the received date of a message, set by Domibus, and the received date of its other rows, set
+     * by the database when they are inserted
+     */
+    protected static final long RECEIVED_TOLERANCE = 60 * 60 * 1000L;
+
+    /**
+     * The final statuses of the received and of the sent messages: a partition holding messages in any other status,
+     * e.g. a sent message waiting for a retry, is kept. The messages in these statuses are dropped once past the
+     * retention of their MPC, the sent messages having no download date as the not downloaded received messages.
+     */
+    protected static final List<MessageStatus> FINAL_STATUSES = Arrays.asList(
+            MessageStatus.RECEIVED, MessageStatus.RECEIVED_WITH_WARNINGS, MessageStatus.DOWNLOADED, MessageStatus.DELETED,
+            MessageStatus.ACKNOWLEDGED, MessageStatus.ACKNOWLEDGED_WITH_WARNING, MessageStatus.SEND_FAILURE);
+
+    @Autowired
+    private MessagePartitionDao messagePartitionDao;
+
+    @Autowired
+    private UserMessageLogDao userMessageLogDao;
+
+    @Autowired
+    private PModeProvider pModeProvider;
+
+    @Autowired
+    private PayloadFileDeletionService payloadFileDeletionService;
+
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    /**
+     * Creates the daily partitions of the coming days and drops the expired ones. Must not be called in a transaction
+     * using the message tables: the partition changes wait for it on MySQL.
+     */
+    public void maintainPartitions() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (clusterNodeService.getShard().getIndex() != 0) {
+            LOG.debug("The partitions are maintained by the first cluster node");
+            return;
+        }
+        final Date now = new Date();
+        createPartitions(now);
+        dropExpiredPartitions(now);
+    }
+
+    /**
+     * Creates the missing daily partitions until the configured number of days after today.
+     */
+    protected void createPartitions(Date now) {
+        final Date lastDay = DateUtils.addDays(DateUtils.truncate(now, Calendar.DATE), getPrecreatedDays());
+        for (String tableName : PARTITIONED_TABLES) {
+            final List<Date> days = getPartitionDays(tableName);
+            if (days.isEmpty()) {
+                LOG.warn("Table [{}] has no daily partition: apply changelog-3.3.3-partitioning.xml or disable [{}]", tableName, PARTITIONS_ENABLED);
+                continue;
+            }
+            for (Date day = DateUtils.addDays(days.get(days.size() - 1), 1); !day.after(lastDay); day = DateUtils.addDays(day, 1)) {
+                messagePartitionDao.createPartition(tableName, getPartitionName(day), DateUtils.addDays(day, 1));
+            }
+        }
+    }
+
+    /**
+     * Drops the expired daily partitions, from the oldest until the first one which is not expired.
+     *
+     * @return the number of dropped partitions
+     */
+    protected int dropExpiredPartitions(Date now) {
+        int dropped = 0;
+        for (Date day : getPartitionDays(MESSAGE_LOG_TABLE)) {
+            if (!isExpired(day, DateUtils.addDays(day, 1), now)) {
+                break;
+            }
+            dropPartition(getPartitionName(day));
+            dropped++;
+        }
+        if (dropped > 0) {
+            LOG.info("Dropped [{}] expired message partitions", dropped);
+        }
+        return dropped;
+    }
+
+    /**
+     * Checks whether all the messages received in a period, extended by the received date tolerance, are in a final
+     * status and past the retention of their MPC: the not downloaded retention applies to all of them and the downloaded
+     * retention to the downloaded ones.
+     *
+     * @param from the start of the period, included
+     * @param to   the end of the period, excluded
+     * @param now  the current date
+     * @return true if the partition of the period can be dropped
+     */
+    protected boolean isExpired(Date from, Date to, Date now) {
+        final Date windowStart = new Date(from.getTime() - RECEIVED_TOLERANCE);
+        final Date windowEnd = new Date(to.getTime() + RECEIVED_TOLERANCE);
+        if (windowEnd.after(now)) {
+            return false;
+        }
+        if (userMessageLogDao.countReceivedBetweenNotInStatuses(windowStart, windowEnd, FINAL_STATUSES) > 0) {
+            LOG.debug("Messages received between [{}] and [{}] are still processed", windowStart, windowEnd);
+            return false;
+        }
+        for (String mpc : userMessageLogDao.findMpcsReceivedBetween(windowStart, windowEnd)) {
+            final int retentionUndownloaded = pModeProvider.getRetentionUndownloadedByMpcURI(mpc);
+            final int retentionDownloaded = pModeProvider.getRetentionDownloadedByMpcURI(mpc);
+            // -1 keeps the messages indefinitely
+            if (retentionUndownloaded < 0 || retentionDownloaded < 0) {
+                LOG.debug("Messages of MPC [{}] are kept indefinitely", mpc);
+                return false;
+            }
+            if (windowEnd.after(DateUtils.addMinutes(now, -retentionUndownloaded))) {
+                return false;
+            }
+            if (userMessageLogDao.countReceivedBetweenDownloadedAfter(mpc, windowStart, windowEnd, DateUtils.addMinutes(now, -retentionDownloaded)) > 0) {
+                LOG.debug("Messages of MPC [{}] received between [{}] and [{}] were downloaded recently", mpc, windowStart, windowEnd);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops a daily partition from all the tables. The rows of the messages of the partition in the tables which are
+     * not partitioned are deleted first and the payload files of the partition are deleted as well.
+     *
+     * @param partitionName the name of the partition
+     */
+    protected void dropPartition(String partitionName) {
+        LOG.debug("Dropping expired message partition [{}]", partitionName);
+        if (messagePartitionDao.findPartitionNames(USER_MESSAGE_TABLE).contains(partitionName)) {
+            messagePartitionDao.deleteUnpartitionedRows(partitionName);
+        }
+        for (String tableName : PARTITIONED_TABLES) {
+            if (!messagePartitionDao.findPartitionNames(tableName).contains(partitionName)) {
+                continue;
+            }
+            if (!PART_INFO_TABLE.equals(tableName)) {
+                messagePartitionDao.dropPartition(tableName, partitionName);
+                continue;
+            }
+            final List<String> payloadFileNames = messagePartitionDao.findPayloadFileNames(partitionName);
+            messagePartitionDao.dropPartition(tableName, partitionName);
+            // the files are only deleted once their rows are gone: a failed drop keeps them
+            for (List<String> fileNames : Lists.partition(payloadFileNames, PAYLOAD_DELETION_CHUNK_SIZE)) {
+                payloadFileDeletionService.scheduleDeletion(fileNames);
+            }
+        }
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the days of the daily partitions of the table, in chronological order
+     */
+    protected List<Date> getPartitionDays(String tableName) {
+        final List<Date> days = new ArrayList<>();
+        final SimpleDateFormat dayFormat = new SimpleDateFormat(PARTITION_DAY_FORMAT);
+        dayFormat.setLenient(false);
+        for (String partitionName : messagePartitionDao.findPartitionNames(tableName)) {
+            if (!partitionName.matches(PARTITION_PREFIX + "\\d{8}")) {
+                continue;
+            }
+            try {
+                days.add(dayFormat.parse(partitionName.substring(PARTITION_PREFIX.length())));
+            } catch (ParseException e) {
+                LOG.warn("Ignoring partition [{}] of table [{}]", partitionName, tableName);
+            }
+        }
+        Collections.sort(days);
+        return days;
+    }
+
+    protected String getPartitionName(Date day) {
+        return PARTITION_PREFIX + new SimpleDateFormat(PARTITION_DAY_FORMAT).format(day);
+    }
+
+    protected boolean isEnabled() {
+        return Boolean.parseBoolean(domibusProperties.getProperty(PARTITIONS_ENABLED, DEFAULT_PARTITIONS_ENABLED));
+    }
+
+    protected int getPrecreatedDays() {
+        return Integer.parseInt(domibusProperties.getProperty(PARTITIONS_PRECREATED_DAYS, DEFAULT_PARTITIONS_PRECREATED_DAYS));
+    }
+}
@@ -0,0 +1,116 @@
+package eu.domibus.core.retention;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metrics of one execution of the retention on this node.
+ *
+ * @since 3.3.3
+ */
+public class RetentionCycle {
+
+    private Date start;
+
+    /**
+     * Time spent by the cycle, in milliseconds
+     */
+    private long duration;
+
+    /**
+     * Number of expired messages selected for deletion
+     */
+    private int selected;
+
+    /**
+     * Number of deleted messages
+     */
+    private int deleted;
+
+    /**
+     * Time spent consuming the notifications of the deleted messages from the plugin queues, in milliseconds
+     */
+    private long jmsCleanupTime;
+
+    /**
+     * Time spent deleting the payloads, the receipts and the statuses of the messages, in milliseconds
+     */
+    private long databaseDeletionTime;
+
+    /**
+     * Number of deletions of the expired messages of a MPC stopped by the deletion limits with expired messages left
+     * for the next cycles
+     */
+    private int limitReached;
+
+    /**
+     * Number of expired messages left for the next cycles by the deletion limits, per MPC, each deletion counting at
+     * most {@link RetentionMetricsService#MAX_COUNTED_EXPIRED_LEFT} of them
+     */
+    private Map<String, Integer> expiredLeft = new LinkedHashMap<>();
+
+    public Date getStart() {
+        return start;
+    }
+
+    public void setStart(Date start) {
+        this.start = start;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public int getSelected() {
+        return selected;
+    }
+
+    public void setSelected(int selected) {
+        this.selected = selected;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(int deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getJmsCleanupTime() {
+        return jmsCleanupTime;
+    }
+
+    public void setJmsCleanupTime(long jmsCleanupTime) {
+        this.jmsCleanupTime = jmsCleanupTime;
+    }
+
+    public long getDatabaseDeletionTime() {
+        return databaseDeletionTime;
+    }
+
+    public void setDatabaseDeletionTime(long databaseDeletionTime) {
+        this.databaseDeletionTime = databaseDeletionTime;
+    }
+
+    public int getLimitReached() {
+        return limitReached;
+    }
+
+    public void setLimitReached(int limitReached) {
+        this.limitReached = limitReached;
+    }
+
+    public Map<String, Integer> getExpiredLeft() {
+        return expiredLeft;
+    }
+
+    public void setExpiredLeft(Map<String, Integer> expiredLeft) {
+        this.expiredLeft = expiredLeft;
+    }
+}
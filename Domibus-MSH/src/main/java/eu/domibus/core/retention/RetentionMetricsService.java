@@ -0,0 +1,126 @@
+package eu.domibus.core.retention;
+
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Records the metrics of the last retention cycles executed on this node. The deletion of the messages reports the
+ * time spent in the JMS cleanup and in the database to the cycle in progress, if any.
+ *
+ * @since 3.3.3
+ */
+@Service
+public class RetentionMetricsService {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(RetentionMetricsService.class);
+
+    /**
+     * Number of cycles kept in memory
+     */
+    protected static final int MAX_CYCLES = 20;
+
+    /**
+     * Maximum number of expired messages left for the next cycles counted when a deletion limit is reached
+     */
+    public static final int MAX_COUNTED_EXPIRED_LEFT = 10000;
+
+    private final LinkedList<RetentionCycle> cycles = new LinkedList<>();
+
+    private RetentionCycle currentCycle;
+
+    public synchronized void startCycle() {
+        currentCycle = new RetentionCycle();
+        currentCycle.setStart(new Date());
+    }
+
+    public synchronized void endCycle() {
+        if (currentCycle == null) {
+            return;
+        }
+        currentCycle.setDuration(System.currentTimeMillis() - currentCycle.getStart().getTime());
+        LOG.info("Retention cycle selected [{}] and deleted [{}] messages in [{}] ms (JMS cleanup [{}] ms, database deletion [{}] ms), [{}] deletion limits reached, expired messages left per MPC {}",
+                currentCycle.getSelected(), currentCycle.getDeleted(), currentCycle.getDuration(),
+                currentCycle.getJmsCleanupTime(), currentCycle.getDatabaseDeletionTime(), currentCycle.getLimitReached(), currentCycle.getExpiredLeft());
+        cycles.addFirst(currentCycle);
+        if (cycles.size() > MAX_CYCLES) {
+            cycles.removeLast();
+        }
+        currentCycle = null;
+    }
+
+    public synchronized void addSelected(int selected) {
+        if (currentCycle != null) {
+            currentCycle.setSelected(currentCycle.getSelected() + selected);
+        }
+    }
+
+    public synchronized void addDeleted(int deleted) {
+        if (currentCycle != null) {
+            currentCycle.setDeleted(currentCycle.getDeleted() + deleted);
+        }
+    }
+
+    /**
+     * Records a deletion of the expired messages of a MPC stopped by its limit.
+     *
+     * @param mpc         the MPC of the messages
+     * @param expiredLeft the number of expired messages left for the next cycles, at most {@link #MAX_COUNTED_EXPIRED_LEFT}
+     */
+    public synchronized void addLimitReached(String mpc, int expiredLeft) {
+        if (currentCycle != null) {
+            currentCycle.setLimitReached(currentCycle.getLimitReached() + 1);
+            final Integer previous = currentCycle.getExpiredLeft().get(mpc);
+            currentCycle.getExpiredLeft().put(mpc, (previous == null ? 0 : previous) + expiredLeft);
+        }
+    }
+
+    public synchronized void addJmsCleanupTime(long time) {
+        if (currentCycle != null) {
+            currentCycle.setJmsCleanupTime(currentCycle.getJmsCleanupTime() + time);
+        }
+    }
+
+    public synchronized void addDatabaseDeletionTime(long time) {
+        if (currentCycle != null) {
+            currentCycle.setDatabaseDeletionTime(currentCycle.getDatabaseDeletionTime() + time);
+        }
+    }
+
+    /**
+     * @return the last recorded cycles, the most recent first
+     */
+    public synchronized List<RetentionCycle> getCycles() {
+        return new ArrayList<>(cycles);
+    }
+
+    /**
+     * @return the last recorded cycle, null if none
+     */
+    public synchronized RetentionCycle getLastCycle() {
+        return cycles.peekFirst();
+    }
+
+    /**
+     * @return the number of messages deleted per second over the recorded cycles which deleted messages, 0 if none
+     */
+    public synchronized double getDeletionRate() {
+        long deleted = 0;
+        long duration = 0;
+        for (RetentionCycle cycle : cycles) {
+            if (cycle.getDeleted() > 0) {
+                deleted += cycle.getDeleted();
+                duration += cycle.getDuration();
+            }
+        }
+        if (deleted == 0) {
+            return 0;
+        }
+        return deleted * 1000d / Math.max(1, duration);
+    }
+}
@@ -0,0 +1,96 @@
+package eu.domibus.core.retention;
+
+import eu.domibus.common.services.impl.MessageRetentionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the metrics of the last retention cycle of this node and the retention planner through JMX.
+ *
+ * @since 3.3.3
+ */
+@Component
+@ManagedResource(objectName = "eu.domibus:type=Retention,name=RetentionMonitor", description = "Retention of the Domibus messages")
+public class RetentionMonitor {
+
+    @Autowired
+    private RetentionMetricsService retentionMetricsService;
+
+    @Autowired
+    private MessageRetentionService messageRetentionService;
+
+    @ManagedAttribute(description = "Number of messages selected by the last retention cycle")
+    public int getLastCycleSelected() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getSelected();
+    }
+
+    @ManagedAttribute(description = "Number of messages deleted by the last retention cycle")
+    public int getLastCycleDeleted() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getDeleted();
+    }
+
+    @ManagedAttribute(description = "Duration of the last retention cycle in milliseconds")
+    public long getLastCycleDuration() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getDuration();
+    }
+
+    @ManagedAttribute(description = "Time spent by the last retention cycle in the JMS cleanup, in milliseconds")
+    public long getLastCycleJmsCleanupTime() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getJmsCleanupTime();
+    }
+
+    @ManagedAttribute(description = "Time spent by the last retention cycle in the database deletion, in milliseconds")
+    public long getLastCycleDatabaseDeletionTime() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getDatabaseDeletionTime();
+    }
+
+    @ManagedAttribute(description = "Number of MPCs whose expired messages were left for the next cycles by the deletion limits of the last retention cycle, see LastCycleExpiredLeft")
+    public int getLastCycleLimitReached() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        return cycle == null ? 0 : cycle.getLimitReached();
+    }
+
+    @ManagedAttribute(description = "Number of expired messages left for the next cycles by the deletion limits of the last retention cycle, per MPC and shard deletion counted up to " + RetentionMetricsService.MAX_COUNTED_EXPIRED_LEFT)
+    public String[] getLastCycleExpiredLeft() {
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        if (cycle == null) {
+            return new String[0];
+        }
+        final List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Integer> expiredLeft : cycle.getExpiredLeft().entrySet()) {
+            result.add("MPC [" + expiredLeft.getKey() + "]: [" + expiredLeft.getValue() + "] expired messages left");
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @ManagedAttribute(description = "Number of messages deleted per second over the last retention cycles")
+    public double getDeletionRate() {
+        return retentionMetricsService.getDeletionRate();
+    }
+
+    @ManagedOperation(description = "Computes what the next retention cycles would delete for each MPC, without deleting anything")
+    public String[] planRetention() {
+        final List<RetentionMpcPlan> plans = messageRetentionService.planRetention();
+        final String[] result = new String[plans.size()];
+        for (int i = 0; i < plans.size(); i++) {
+            final RetentionMpcPlan plan = plans.get(i);
+            result[i] = "MPC [" + plan.getMpc() + "]: [" + plan.getExpiredDownloaded() + "] expired downloaded and ["
+                    + plan.getExpiredUndownloaded() + "] expired not downloaded messages, [" + plan.getDeletedPerCycle()
+                    + "] deleted per cycle, [" + plan.getCyclesToCatchUp() + "] cycles to catch up, estimated cycle duration ["
+                    + plan.getEstimatedCycleDuration() + "] ms";
+        }
+        return result;
+    }
+}
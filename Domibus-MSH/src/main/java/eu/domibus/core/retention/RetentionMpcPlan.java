@@ -0,0 +1,110 @@
+package eu.domibus.core.retention;
+
+/**
+ * Dry run of the retention of one MPC: what the next cycles would delete, computed with the queries of the retention.
+ *
+ * @since 3.3.3
+ */
+public class RetentionMpcPlan {
+
+    private String mpc;
+
+    /**
+     * Retention of the downloaded messages in minutes, -1 when they are kept indefinitely
+     */
+    private int retentionDownloaded;
+
+    /**
+     * Retention of the not downloaded messages in minutes, -1 when they are kept indefinitely
+     */
+    private int retentionUndownloaded;
+
+    /**
+     * Number of downloaded messages past their retention
+     */
+    private long expiredDownloaded;
+
+    /**
+     * Number of not downloaded messages past their retention
+     */
+    private long expiredUndownloaded;
+
+    /**
+     * Number of messages deleted by the next cycle on all the nodes, given the deletion limits
+     */
+    private long deletedPerCycle;
+
+    /**
+     * Number of cycles needed to delete all the expired messages
+     */
+    private long cyclesToCatchUp;
+
+    /**
+     * Estimated duration of the next cycle in milliseconds from the recorded deletion rate, -1 when no cycle was recorded
+     */
+    private long estimatedCycleDuration;
+
+    public String getMpc() {
+        return mpc;
+    }
+
+    public void setMpc(String mpc) {
+        this.mpc = mpc;
+    }
+
+    public int getRetentionDownloaded() {
+        return retentionDownloaded;
+    }
+
+    public void setRetentionDownloaded(int retentionDownloaded) {
+        this.retentionDownloaded = retentionDownloaded;
+    }
+
+    public int getRetentionUndownloaded() {
+        return retentionUndownloaded;
+    }
+
+    public void setRetentionUndownloaded(int retentionUndownloaded) {
+        this.retentionUndownloaded = retentionUndownloaded;
+    }
+
+    public long getExpiredDownloaded() {
+        return expiredDownloaded;
+    }
+
+    public void setExpiredDownloaded(long expiredDownloaded) {
+        this.expiredDownloaded = expiredDownloaded;
+    }
+
+    public long getExpiredUndownloaded() {
+        return expiredUndownloaded;
+    }
+
+    public void setExpiredUndownloaded(long expiredUndownloaded) {
+        this.expiredUndownloaded = expiredUndownloaded;
+    }
+
+    public long getDeletedPerCycle() {
+        return deletedPerCycle;
+    }
+
+    public void setDeletedPerCycle(long deletedPerCycle) {
+        this.deletedPerCycle = deletedPerCycle;
+    }
+
+    public long getCyclesToCatchUp() {
+        return cyclesToCatchUp;
+    }
+
+    public void setCyclesToCatchUp(long cyclesToCatchUp) {
+        this.cyclesToCatchUp = cyclesToCatchUp;
+    }
+
+    public long getEstimatedCycleDuration() {
+        return estimatedCycleDuration;
+    }
+
+    public void setEstimatedCycleDuration(long estimatedCycleDuration) {
+        this.estimatedCycleDuration = estimatedCycleDuration;
+    }
+}
@@ -14,6 +14,7 @@ import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import eu.domibus.logging.DomibusMessageCode;
 import eu.domibus.messaging.XmlProcessingException;
+import eu.domibus.plugin.BackendConnector;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Propagation;
@@ -21,6 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -35,12 +37,14 @@ public class CachingPModeProvider extends PModeProvider {
 
     @Autowired
     private ProcessPartyExtractorProvider processPartyExtractorProvider;
-    //pull processes cache.
-    private Map<Party, List<Process>> pullProcessesByInitiatorCache = new HashMap<>();
-
-    private Map<String, List<Process>> pullProcessByMpcCache = new HashMap<>();
+    //pull processes and mpcs indexed on PMode load
+    private volatile PullTopology pullTopology;
 
+    //parties indexed by lower cased name
+    private volatile Map<String, Party> partyByNameIndex;
 
+    //party names indexed by the lower cased party id type and party id of their identifiers
+    private volatile Map<String, String> partyNameByIdentifierIndex;
 
     protected synchronized Configuration getConfiguration() {
         if (this.configuration == null) {
@@ -60,26 +64,204 @@ public class CachingPModeProvider extends PModeProvider {
         if (!this.configurationDAO.configurationExists()) {
             throw new IllegalStateException("No processing modes found. To exchange messages, upload configuration file through the web gui.");
         }
+        final long start = System.currentTimeMillis();
+        clearExchangeContextCache();
         this.configuration = this.configurationDAO.readEager();
-        initPullProcessesCache();
+        final long configurationLoaded = System.currentTimeMillis();
+        initPartyIndexes(this.configuration);
+        final long indexesBuilt = System.currentTimeMillis();
+        initPullProcessesCache(this.configuration);
+        final long end = System.currentTimeMillis();
+        LOG.info("PMode loaded in [{}] ms: configuration read [{}] ms, party indexes [{}] ms, pull processes cache [{}] ms",
+                end - start, configurationLoaded - start, indexesBuilt - configurationLoaded, end - indexesBuilt);
+    }
+
+    private void initPartyIndexes(final Configuration configuration) {
+        final Map<String, Party> partyByName = new ConcurrentHashMap<>();
+        final Map<String, String> partyNameByIdentifier = new ConcurrentHashMap<>();
+        for (final Party party : configuration.getBusinessProcesses().getParties()) {
+            indexParty(party, partyByName, partyNameByIdentifier);
+        }
+        this.partyByNameIndex = partyByName;
+        this.partyNameByIdentifierIndex = partyNameByIdentifier;
+        LOG.debug("Indexed [{}] parties and [{}] party identifiers", partyByName.size(), partyNameByIdentifier.size());
+    }
+
+    private void indexParty(final Party party, final Map<String, Party> partyByName, final Map<String, String> partyNameByIdentifier) {
+        if (party.getName() == null) {
+            return;
+        }
+        if (!partyByName.containsKey(toIndexKey(party.getName()))) {
+            partyByName.put(toIndexKey(party.getName()), party);
+        }
+        for (final Identifier identifier : party.getIdentifiers()) {
+            String identifierPartyIdType = "";
+            if (identifier.getPartyIdType() != null) {
+                identifierPartyIdType = identifier.getPartyIdType().getValue();
+            }
+            final String identifierKey = getIdentifierIndexKey(identifierPartyIdType, identifier.getPartyId());
+            if (!partyNameByIdentifier.containsKey(identifierKey)) {
+                partyNameByIdentifier.put(identifierKey, party.getName());
+            }
+        }
+    }
+
+    /**
+     * Adds a party added at runtime (i.e. by the dynamic discovery) to the party indexes, replacing the entries of the
+     * party having the same name.
+     *
+     * @param removedParty the party replaced by the new one, may be {@code null}
+     * @param party        the party added to the configuration
+     */
+    protected void updatePartyIndexes(final Party removedParty, final Party party) {
+        final Map<String, Party> partyByName = getPartyByNameIndex();
+        final Map<String, String> partyNameByIdentifier = getPartyNameByIdentifierIndex();
+        if (removedParty != null && removedParty.getName() != null) {
+            partyByName.remove(toIndexKey(removedParty.getName()));
+            partyNameByIdentifier.values().removeAll(Collections.singleton(removedParty.getName()));
+        }
+        indexParty(party, partyByName, partyNameByIdentifier);
+    }
+
+    protected Map<String, Party> getPartyByNameIndex() {
+        if (partyByNameIndex == null) {
+            initPartyIndexes(getConfiguration());
+        }
+        return partyByNameIndex;
+    }
+
+    protected Map<String, String> getPartyNameByIdentifierIndex() {
+        if (partyNameByIdentifierIndex == null) {
+            initPartyIndexes(getConfiguration());
+        }
+        return partyNameByIdentifierIndex;
+    }
+
+    private void clearPartyIndexes() {
+        this.partyByNameIndex = null;
+        this.partyNameByIdentifierIndex = null;
+    }
+
+    private String getIdentifierIndexKey(final String partyIdType, final String partyId) {
+        return toIndexKey(partyIdType) + "|" + toIndexKey(partyId);
+    }
+
+    private String toIndexKey(final String value) {
+        return StringUtils.defaultString(value).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Builds the pull topology from the loaded configuration so that the pull request handling and the retention
+     * worker do not need to query the database nor scan the mpcs and processes.
+     */
+    private PullTopology initPullProcessesCache(final Configuration configuration) {
+        final Map<String, Mpc> mpcByName = new HashMap<>();
+        final Map<String, Mpc> mpcByQualifiedName = new HashMap<>();
+        for (final Mpc mpc : configuration.getMpcs()) {
+            putIfAbsent(mpcByName, toIndexKey(mpc.getName()), mpc);
+            putIfAbsent(mpcByQualifiedName, toIndexKey(mpc.getQualifiedName()), mpc);
+        }
+
+        final Map<String, Set<Process>> processesByInitiator = new HashMap<>();
+        final Map<String, Set<Process>> processesByMpc = new HashMap<>();
+        final Map<String, Set<Process>> processesByMessageContext = new HashMap<>();
+        for (final Process process : configuration.getBusinessProcesses().getProcesses()) {
+            if (!isPullProcess(process)) {
+                continue;
+            }
+            for (final Party initiator : process.getInitiatorParties()) {
+                addToIndex(processesByInitiator, toIndexKey(initiator.getName()), process);
+            }
+            for (final LegConfiguration leg : process.getLegs()) {
+                if (leg.getDefaultMpc() != null) {
+                    addToIndex(processesByMpc, leg.getDefaultMpc().getQualifiedName(), process);
+                }
+                for (final Party initiator : process.getInitiatorParties()) {
+                    for (final Party responder : process.getResponderParties()) {
+                        addToIndex(processesByMessageContext, getPullMessageContextKey(leg.getName(), initiator.getName(), responder.getName()), process);
+                    }
+                }
+            }
+        }
+
+        final PullTopology topology = new PullTopology(mpcByName, mpcByQualifiedName, toLists(processesByInitiator),
+                toLists(processesByMpc), toLists(processesByMessageContext));
+        this.pullTopology = topology;
+        LOG.debug("Indexed [{}] mpcs, pull processes for [{}] initiators and [{}] mpcs", mpcByName.size(), processesByInitiator.size(), processesByMpc.size());
+        return topology;
+    }
+
+    private boolean isPullProcess(final Process process) {
+        return process.getMepBinding() != null && BackendConnector.Mode.PULL.getFileMapping().equals(process.getMepBinding().getValue());
+    }
+
+    private <T> void putIfAbsent(final Map<String, T> index, final String key, final T value) {
+        if (!index.containsKey(key)) {
+            index.put(key, value);
+        }
     }
 
-    private void initPullProcessesCache() {
-        final Set<Mpc> mpcs = this.configuration.getMpcs();
-        for (Mpc mpc : mpcs) {
-            final String qualifiedName = mpc.getQualifiedName();
-            final List<Process> pullProcessByMpc = processDao.findPullProcessByMpc(qualifiedName);
-            pullProcessByMpcCache.put(qualifiedName, pullProcessByMpc);
+    private <T> void addToIndex(final Map<String, Set<T>> index, final String key, final T value) {
+        Set<T> values = index.get(key);
+        if (values == null) {
+            values = new LinkedHashSet<>();
+            index.put(key, values);
         }
-        final Set<Process> processes = this.configuration.getBusinessProcesses().getProcesses();
-        Set<Party> initiators = new HashSet<>();
-        for (Process process : processes) {
-            initiators.addAll(process.getInitiatorParties());
+        values.add(value);
+    }
+
+    private <T> Map<String, List<T>> toLists(final Map<String, Set<T>> index) {
+        final Map<String, List<T>> result = new HashMap<>();
+        for (final Map.Entry<String, Set<T>> entry : index.entrySet()) {
+            result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
         }
-        for (Party initiator : initiators) {
-            final List<Process> pullProcessesByInitiator = processDao.findPullProcessesByInitiator(initiator);
-            pullProcessesByInitiatorCache.put(initiator, pullProcessesByInitiator);
+        return result;
+    }
+
+    private String getPullMessageContextKey(final String leg, final String initiator, final String responder) {
+        return toIndexKey(leg) + "|" + toIndexKey(initiator) + "|" + toIndexKey(responder);
+    }
+
+    /**
+     * Drops the pull topology, i.e. after processes have been updated at runtime by the dynamic discovery. It is rebuilt
+     * from the current configuration on the next lookup.
+     */
+    protected synchronized void clearPullProcessesCache() {
+        this.pullTopology = null;
+    }
+
+    /**
+     * Returns the published topology without locking. The configuration lock is only taken when the topology has to
+     * be rebuilt, so that it can not be built from a configuration being replaced.
+     */
+    private PullTopology getPullTopology() {
+        final PullTopology topology = this.pullTopology;
+        if (topology != null) {
+            return topology;
+        }
+        synchronized (this) {
+            final Configuration currentConfiguration = getConfiguration();
+            if (this.pullTopology == null) {
+                return initPullProcessesCache(currentConfiguration);
+            }
+            return this.pullTopology;
+        }
+    }
+
+    private Mpc findMpcByName(final String mpcName) {
+        return getPullTopology().mpcByName.get(toIndexKey(mpcName));
+    }
+
+    private Mpc findMpcByQualifiedName(final String mpcURI) {
+        return getPullTopology().mpcByQualifiedName.get(toIndexKey(mpcURI));
+    }
+
+    private <T> List<T> getIndexed(final Map<String, List<T>> index, final String key) {
+        final List<T> values = index.get(key);
+        if (values == null) {
+            return Lists.newArrayList();
         }
+        return new ArrayList<>(values);
     }
 
 
@@ -146,30 +328,23 @@ public class CachingPModeProvider extends PModeProvider {
     @Override
     //@Transactional(propagation = Propagation.SUPPORTS, noRollbackFor = IllegalStateException.class)
     protected String findPartyName(final Collection<PartyId> partyId) throws EbMS3Exception {
+        final Map<String, String> partyNameByIdentifier = getPartyNameByIdentifierIndex();
         String partyIdType = "";
-        for (final Party party : this.getConfiguration().getBusinessProcesses().getParties()) {
-            for (final PartyId id : partyId) {
-                for (final Identifier identifier : party.getIdentifiers()) {
-                    if (id.getType() != null) {
-                        partyIdType = id.getType();
-                        try {
-                            URI.create(partyIdType);
-                        } catch (final IllegalArgumentException e) {
-                            final EbMS3Exception ex = new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0003, "no matching party found", null, e);
-                            ex.setErrorDetail("PartyId " + id.getValue() + " is not a valid URI [CORE]");
-                            throw ex;
-                        }
-                    }
-                    String identifierPartyIdType = "";
-                    if (identifier.getPartyIdType() != null) {
-                        identifierPartyIdType = identifier.getPartyIdType().getValue();
-                    }
-
-                    if (StringUtils.equalsIgnoreCase(partyIdType, identifierPartyIdType) && StringUtils.equalsIgnoreCase(id.getValue(), identifier.getPartyId())) {
-                        return party.getName();
-                    }
+        for (final PartyId id : partyId) {
+            if (id.getType() != null) {
+                partyIdType = id.getType();
+                try {
+                    URI.create(partyIdType);
+                } catch (final IllegalArgumentException e) {
+                    final EbMS3Exception ex = new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0003, "no matching party found", null, e);
+                    ex.setErrorDetail("PartyId " + id.getValue() + " is not a valid URI [CORE]");
+                    throw ex;
                 }
             }
+            final String partyName = partyNameByIdentifier.get(getIdentifierIndexKey(partyIdType, id.getValue()));
+            if (partyName != null) {
+                return partyName;
+            }
         }
         throw new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0003, "No matching party found", null, null);
     }
@@ -192,10 +367,9 @@ public class CachingPModeProvider extends PModeProvider {
     @Override
     public Party getSenderParty(final String pModeKey) {
         final String partyKey = this.getSenderPartyNameFromPModeKey(pModeKey);
-        for (final Party party : this.getConfiguration().getBusinessProcesses().getParties()) {
-            if (StringUtils.equalsIgnoreCase(party.getName(), partyKey)) {
-                return party;
-            }
+        final Party party = getPartyByNameIndex().get(toIndexKey(partyKey));
+        if (party != null) {
+            return party;
         }
         throw new ConfigurationException("no matching sender party found with name: " + partyKey);
     }
@@ -203,10 +377,9 @@ public class CachingPModeProvider extends PModeProvider {
     @Override
     public Party getReceiverParty(final String pModeKey) {
         final String partyKey = this.getReceiverPartyNameFromPModeKey(pModeKey);
-        for (final Party party : this.getConfiguration().getBusinessProcesses().getParties()) {
-            if (StringUtils.equalsIgnoreCase(party.getName(), partyKey)) {
-                return party;
-            }
+        final Party party = getPartyByNameIndex().get(toIndexKey(partyKey));
+        if (party != null) {
+            return party;
         }
         throw new ConfigurationException("no matching receiver party found with name: " + partyKey);
     }
@@ -257,20 +430,14 @@ public class CachingPModeProvider extends PModeProvider {
 
     @Override
     public boolean isMpcExistant(final String mpc) {
-        for (final Mpc mpc1 : this.getConfiguration().getMpcs()) {
-            if (StringUtils.equalsIgnoreCase(mpc1.getName(), mpc)) {
-                return true;
-            }
-        }
-        return false;
+        return findMpcByName(mpc) != null;
     }
 
     @Override
     public int getRetentionDownloadedByMpcName(final String mpcName) {
-        for (final Mpc mpc1 : this.getConfiguration().getMpcs()) {
-            if (StringUtils.equalsIgnoreCase(mpc1.getName(), mpcName)) {
-                return mpc1.getRetentionDownloaded();
-            }
+        final Mpc mpc1 = findMpcByName(mpcName);
+        if (mpc1 != null) {
+            return mpc1.getRetentionDownloaded();
         }
 
         CachingPModeProvider.LOG.error("No MPC with name: " + mpcName + " found. Assuming message retention of 0 for downloaded messages.");
@@ -280,10 +447,9 @@ public class CachingPModeProvider extends PModeProvider {
 
     @Override
     public int getRetentionDownloadedByMpcURI(final String mpcURI) {
-        for (final Mpc mpc1 : this.getConfiguration().getMpcs()) {
-            if (StringUtils.equalsIgnoreCase(mpc1.getQualifiedName(), mpcURI)) {
-                return mpc1.getRetentionDownloaded();
-            }
+        final Mpc mpc1 = findMpcByQualifiedName(mpcURI);
+        if (mpc1 != null) {
+            return mpc1.getRetentionDownloaded();
         }
 
         CachingPModeProvider.LOG.error("No MPC with name: " + mpcURI + " found. Assuming message retention of 0 for downloaded messages.");
@@ -293,10 +459,9 @@ public class CachingPModeProvider extends PModeProvider {
 
     @Override
     public int getRetentionUndownloadedByMpcName(final String mpcName) {
-        for (final Mpc mpc1 : this.getConfiguration().getMpcs()) {
-            if (StringUtils.equalsIgnoreCase(mpc1.getName(), mpcName)) {
-                return mpc1.getRetentionUndownloaded();
-            }
+        final Mpc mpc1 = findMpcByName(mpcName);
+        if (mpc1 != null) {
+            return mpc1.getRetentionUndownloaded();
         }
 
         CachingPModeProvider.LOG.error("No MPC with name: " + mpcName + " found. Assuming message retention of -1 for undownloaded messages.");
@@ -306,10 +471,9 @@ public class CachingPModeProvider extends PModeProvider {
 
     @Override
     public int getRetentionUndownloadedByMpcURI(final String mpcURI) {
-        for (final Mpc mpc1 : this.getConfiguration().getMpcs()) {
-            if (StringUtils.equalsIgnoreCase(mpc1.getQualifiedName(), mpcURI)) {
-                return mpc1.getRetentionUndownloaded();
-            }
+        final Mpc mpc1 = findMpcByQualifiedName(mpcURI);
+        if (mpc1 != null) {
+            return mpc1.getRetentionUndownloaded();
         }
 
         CachingPModeProvider.LOG.error("No MPC with name: " + mpcURI + " found. Assuming message retention of -1 for undownloaded messages.");
@@ -347,8 +511,11 @@ public class CachingPModeProvider extends PModeProvider {
     }
 
     @Override
-    public void refresh() {
+    public synchronized void refresh() {
         this.configuration = null;
+        clearPartyIndexes();
+        clearPullProcessesCache();
+        clearExchangeContextCache();
         this.getConfiguration(); //reloads the config
     }
 
@@ -358,35 +525,55 @@ public class CachingPModeProvider extends PModeProvider {
     }
 
     @Override
-    @Transactional(propagation = Propagation.REQUIRED)
     public List<String> updatePModes(final byte[] bytes) throws XmlProcessingException {
         List<String> messages = super.updatePModes(bytes);
-        this.configuration = null;
-        this.pullProcessByMpcCache.clear();
-        this.pullProcessesByInitiatorCache.clear();
+        synchronized (this) {
+            this.configuration = null;
+            clearPartyIndexes();
+            clearPullProcessesCache();
+        }
         return messages;
     }
 
     @Override
     public List<Process> findPullProcessesByMessageContext(final MessageExchangeConfiguration messageExchangeConfiguration) {
-        return processDao.findPullProcessesByMessageContext(messageExchangeConfiguration);
+        //the receiver of the pulled message initiates the pull process
+        final String key = getPullMessageContextKey(messageExchangeConfiguration.getLeg(), messageExchangeConfiguration.getReceiverParty(), messageExchangeConfiguration.getSenderParty());
+        return getIndexed(getPullTopology().processesByMessageContext, key);
     }
 
     @Override
     public List<Process> findPullProcessesByInitiator(final Party party) {
-        final List<Process> processes = pullProcessesByInitiatorCache.get(party);
-        if (processes == null) {
-            return Lists.newArrayList();
-        }
-        return processes;
+        return getIndexed(getPullTopology().processesByInitiator, toIndexKey(party.getName()));
     }
 
     @Override
     public List<Process> findPullProcessByMpc(final String mpc) {
-        List<Process> processes = pullProcessByMpcCache.get(mpc);
-        if (processes == null) {
-            return Lists.newArrayList();
+        return getIndexed(getPullTopology().processesByMpc, mpc);
+    }
+
+    /**
+     * Immutable snapshot of the pull processes and mpcs of a configuration, swapped as a whole on reload.
+     */
+    private static final class PullTopology {
+        //mpcs indexed by lower cased name
+        private final Map<String, Mpc> mpcByName;
+        //mpcs indexed by lower cased qualified name
+        private final Map<String, Mpc> mpcByQualifiedName;
+        //pull processes indexed by the lower cased name of their initiator parties
+        private final Map<String, List<Process>> processesByInitiator;
+        //pull processes indexed by the qualified name of the default mpc of their legs
+        private final Map<String, List<Process>> processesByMpc;
+        //pull processes indexed by the lower cased leg, initiator and responder names
+        private final Map<String, List<Process>> processesByMessageContext;
+
+        private PullTopology(final Map<String, Mpc> mpcByName, final Map<String, Mpc> mpcByQualifiedName, final Map<String, List<Process>> processesByInitiator,
+                             final Map<String, List<Process>> processesByMpc, final Map<String, List<Process>> processesByMessageContext) {
+            this.mpcByName = mpcByName;
+            this.mpcByQualifiedName = mpcByQualifiedName;
+            this.processesByInitiator = processesByInitiator;
+            this.processesByMpc = processesByMpc;
+            this.processesByMessageContext = processesByMessageContext;
         }
-        return processes;
     }
 }
@@ -52,10 +52,6 @@ public class DynamicDiscoveryPModeProvider extends CachingPModeProvider {
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(DynamicDiscoveryPModeProvider.class);
     @Autowired
     protected CryptoService cryptoService;
-    @Autowired
-    @Qualifier("domibusProperties")
-    private java.util.Properties domibusProperties;
-
     @Autowired
     @Qualifier("dynamicDiscoveryServiceOASIS")
     private DynamicDiscoveryService dynamicDiscoveryServiceOASIS;
@@ -133,6 +129,9 @@ public class DynamicDiscoveryPModeProvider extends CachingPModeProvider {
         } catch (final EbMS3Exception e) {
             LOG.info("PmodeKey not found, starting the dynamic discovery process");
             doDynamicDiscovery(userMessage, mshRole);
+            // the PMode has been updated so the cached (failed) matching and pull topology are no longer relevant
+            clearExchangeContextCache();
+            clearPullProcessesCache();
 
         }
         LOG.debug("Recalling findUserMessageExchangeContext after the dynamic discovery");
@@ -229,6 +228,7 @@ public class DynamicDiscoveryPModeProvider extends CachingPModeProvider {
         Party newConfigurationParty = buildNewConfigurationParty(name, configurationType, newEndpoint);
         LOG.debug("Add new configuration party: " + newConfigurationParty.getName());
         getConfiguration().getBusinessProcesses().getParties().add(newConfigurationParty);
+        updatePartyIndexes(configurationParty, newConfigurationParty);
 
         return newConfigurationParty;
     }
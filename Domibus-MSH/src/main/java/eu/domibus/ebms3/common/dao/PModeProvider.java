@@ -44,10 +44,8 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * @author Christian Koch, Stefan Mueller
@@ -61,6 +59,10 @@ public abstract class PModeProvider {
 
     protected static final String OPTIONAL_AND_EMPTY = "OAE";
 
+    protected static final String EXCHANGE_CONTEXT_CACHE_SIZE = "domibus.pmode.exchangeContext.cache.size";
+
+    private static final int DEFAULT_EXCHANGE_CONTEXT_CACHE_SIZE = 1000;
+
     @Autowired
     protected ConfigurationDAO configurationDAO;
 
@@ -78,6 +80,10 @@ public abstract class PModeProvider {
     @Autowired
     private JmsOperations jmsOperations;
 
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor executor;
+
     @Autowired
     XMLUtil xmlUtil;
 
@@ -87,6 +93,13 @@ public abstract class PModeProvider {
     @Autowired
     protected ProcessDao processDao;
 
+    @Autowired
+    @Qualifier("domibusProperties")
+    protected java.util.Properties domibusProperties;
+
+    //resolved exchange contexts (or matching failures) indexed by the message header tuple; replaced as a whole when the PMode changes
+    private volatile Map<List<String>, ExchangeContextCacheEntry> exchangeContextCache;
+
     public abstract void init();
 
     public abstract void refresh();
@@ -98,7 +111,15 @@ public abstract class PModeProvider {
         return (latest != null) ? latest.getXml() : new byte[0];
     }
 
-    @Transactional(propagation = Propagation.REQUIRED)
+    /**
+     * Unmarshalls, prepares and validates the new PMode without any transaction. The new configuration is then saved
+     * next to the current one, made active in a short transaction and the replaced configuration is removed
+     * asynchronously, so that the configuration read by the other nodes is not locked while the PMode is written.
+     *
+     * @param bytes the PMode file content
+     * @return the issues found in the PMode that did not prevent it from being saved
+     * @throws XmlProcessingException if the PMode could not be unmarshalled
+     */
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public List<String> updatePModes(byte[] bytes) throws XmlProcessingException {
         LOG.debug("Updating the PMode");
@@ -123,17 +144,21 @@ public abstract class PModeProvider {
         }
 
         Configuration configuration = unmarshalledConfiguration.getResult();
-        configurationDAO.updateConfiguration(configuration);
+        //resolve the references between the PMode elements before validating them
+        configuration.preparePersist();
 
         for (ConfigurationValidator validator : configurationValidators) {
             resultMessage.addAll(validator.validate(configuration));
         }
 
-        //save the raw configuration
         final ConfigurationRaw configurationRaw = new ConfigurationRaw();
         configurationRaw.setConfigurationDate(Calendar.getInstance().getTime());
         configurationRaw.setXml(bytes);
-        configurationRawDAO.create(configurationRaw);
+        configurationDAO.createConfiguration(configuration);
+        configurationDAO.activateConfiguration(configuration, configurationRaw);
+        scheduleInactiveConfigurationsDeletion();
+
+        clearExchangeContextCache();
 
         LOG.info("Configuration successfully updated");
         // Sends a message into the topic queue in order to refresh all the singleton instances of the PModeProvider.
@@ -143,6 +168,20 @@ public abstract class PModeProvider {
     }
 
 
+    protected void scheduleInactiveConfigurationsDeletion() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final int deleted = configurationDAO.deleteInactiveConfigurations();
+                    LOG.debug("Deleted [{}] replaced configuration(s)", deleted);
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not delete the replaced configurations, they will be deleted after the next PMode upload", e);
+                }
+            }
+        });
+    }
+
     protected UnmarshallerResult unmarshall(byte[] bytes, boolean ignoreWhitespaces) throws XmlProcessingException {
         Configuration configuration = null;
         UnmarshallerResult unmarshallerResult = null;
@@ -167,12 +206,12 @@ public abstract class PModeProvider {
     @MDCKey(DomibusLogger.MDC_MESSAGE_ID)
     public MessageExchangeConfiguration findUserMessageExchangeContext(final UserMessage userMessage, final MSHRole mshRole) throws EbMS3Exception {
 
-        final String agreementName;
-        final String senderParty;
-        final String receiverParty;
-        final String service;
-        final String action;
-        final String leg;
+        String agreementName = null;
+        String senderParty = null;
+        String receiverParty = null;
+        String service = null;
+        String action = null;
+        String leg = null;
 
         final String messageId =  userMessage.getMessageInfo().getMessageId();
         //add messageId to MDC map
@@ -181,6 +220,15 @@ public abstract class PModeProvider {
         }
 
 
+        final List<String> cacheKey = getExchangeContextCacheKey(userMessage);
+        final Map<List<String>, ExchangeContextCacheEntry> cache = getExchangeContextCache();
+        final ExchangeContextCacheEntry cacheEntry = cache.get(cacheKey);
+        if (cacheEntry != null) {
+            LOG.debug("Exchange context for message [{}] found in the cache", messageId);
+            logCachedExchangeContext(cacheEntry, userMessage);
+            return cacheEntry.getMessageExchangeConfiguration(messageId);
+        }
+
         try {
             agreementName = findAgreement(userMessage.getCollaborationInfo().getAgreementRef());
             LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_AGREEMENT_FOUND, agreementName, userMessage.getCollaborationInfo().getAgreementRef());
@@ -201,14 +249,172 @@ public abstract class PModeProvider {
 
             MessageExchangeConfiguration messageExchangeConfiguration = new MessageExchangeConfiguration(agreementName, senderParty, receiverParty, service, action, leg);
             LOG.debug("Found pmodeKey [{}] for message [{}]", messageExchangeConfiguration.getPmodeKey(), userMessage);
+            cache.put(cacheKey, new ExchangeContextCacheEntry(messageExchangeConfiguration));
             return messageExchangeConfiguration;
 
+        } catch (EbMS3Exception e) {
+            cache.put(cacheKey, new ExchangeContextCacheEntry(e, agreementName, senderParty, receiverParty, service, action, leg));
+            throw e;
         } catch (IllegalStateException ise) {
             // It can happen if DB is clean and no pmodes are configured yet!
             throw new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0010, "PMode could not be found. Are PModes configured in the database?", messageId, ise);
         }
     }
 
+    /**
+     * Emits the business log of the PMode matching as if the exchange context had been resolved for this message: the
+     * values found before the matching error and, when the leg could not be matched, the leg error.
+     */
+    protected void logCachedExchangeContext(final ExchangeContextCacheEntry cacheEntry, final UserMessage userMessage) {
+        if (cacheEntry.agreementName == null) {
+            return;
+        }
+        LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_AGREEMENT_FOUND, cacheEntry.agreementName, userMessage.getCollaborationInfo().getAgreementRef());
+        if (cacheEntry.senderParty == null) {
+            return;
+        }
+        LOG.businessInfo(DomibusMessageCode.BUS_PARTY_ID_FOUND, cacheEntry.senderParty, userMessage.getPartyInfo().getFrom().getPartyId());
+        if (cacheEntry.receiverParty == null) {
+            return;
+        }
+        LOG.businessInfo(DomibusMessageCode.BUS_PARTY_ID_FOUND, cacheEntry.receiverParty, userMessage.getPartyInfo().getTo().getPartyId());
+        if (cacheEntry.service == null) {
+            return;
+        }
+        LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_SERVICE_FOUND, cacheEntry.service, userMessage.getCollaborationInfo().getService());
+        if (cacheEntry.action == null) {
+            return;
+        }
+        LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_ACTION_FOUND, cacheEntry.action, userMessage.getCollaborationInfo().getAction());
+        if (cacheEntry.leg != null) {
+            LOG.businessInfo(DomibusMessageCode.BUS_LEG_NAME_FOUND, cacheEntry.leg, cacheEntry.agreementName, cacheEntry.senderParty, cacheEntry.receiverParty, cacheEntry.service, cacheEntry.action);
+        } else if (ErrorCode.EbMS3ErrorCode.EBMS_0001 == cacheEntry.errorCode) {
+            LOG.businessError(DomibusMessageCode.BUS_LEG_NAME_NOT_FOUND, cacheEntry.agreementName, cacheEntry.senderParty, cacheEntry.receiverParty, cacheEntry.service, cacheEntry.action);
+        }
+    }
+
+    /**
+     * Builds the key of the exchange context cache from the message header values taking part in the PMode matching.
+     */
+    protected List<String> getExchangeContextCacheKey(final UserMessage userMessage) {
+        final List<String> key = new ArrayList<>();
+        key.add(getPartyIdsCacheKey(userMessage.getPartyInfo().getFrom().getPartyId()));
+        key.add(getPartyIdsCacheKey(userMessage.getPartyInfo().getTo().getPartyId()));
+        final eu.domibus.ebms3.common.model.Service service = userMessage.getCollaborationInfo().getService();
+        key.add(service == null ? "" : StringUtils.defaultString(service.getType()));
+        key.add(service == null ? "" : StringUtils.defaultString(service.getValue()));
+        key.add(StringUtils.defaultString(userMessage.getCollaborationInfo().getAction()));
+        final AgreementRef agreementRef = userMessage.getCollaborationInfo().getAgreementRef();
+        key.add(agreementRef == null ? "" : StringUtils.defaultString(agreementRef.getType()));
+        key.add(agreementRef == null ? "" : StringUtils.defaultString(agreementRef.getValue()));
+        key.add(StringUtils.defaultString(userMessage.getMpc()));
+        return key;
+    }
+
+    private String getPartyIdsCacheKey(final Collection<PartyId> partyIds) {
+        final StringBuilder key = new StringBuilder();
+        for (final PartyId partyId : partyIds) {
+            key.append(StringUtils.defaultString(partyId.getType())).append('\u0000').append(StringUtils.defaultString(partyId.getValue())).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    protected Map<List<String>, ExchangeContextCacheEntry> getExchangeContextCache() {
+        Map<List<String>, ExchangeContextCacheEntry> cache = exchangeContextCache;
+        if (cache == null) {
+            cache = createExchangeContextCache();
+            exchangeContextCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Discards all the cached exchange contexts. Lookups in progress keep writing into the discarded cache.
+     */
+    protected void clearExchangeContextCache() {
+        LOG.debug("Clearing the exchange context cache");
+        exchangeContextCache = createExchangeContextCache();
+    }
+
+    private Map<List<String>, ExchangeContextCacheEntry> createExchangeContextCache() {
+        int maxSize = DEFAULT_EXCHANGE_CONTEXT_CACHE_SIZE;
+        final String maxSizeValue = domibusProperties == null ? null : domibusProperties.getProperty(EXCHANGE_CONTEXT_CACHE_SIZE);
+        if (StringUtils.isNotBlank(maxSizeValue)) {
+            try {
+                maxSize = Integer.parseInt(maxSizeValue.trim());
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid value [{}] for property [{}], using the default [{}]", maxSizeValue, EXCHANGE_CONTEXT_CACHE_SIZE, DEFAULT_EXCHANGE_CONTEXT_CACHE_SIZE);
+            }
+        }
+        final int cacheMaxSize = maxSize;
+        return Collections.synchronizedMap(new LinkedHashMap<List<String>, ExchangeContextCacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, ExchangeContextCacheEntry> eldest) {
+                return size() > cacheMaxSize;
+            }
+        });
+    }
+
+    /**
+     * The outcome of the PMode matching for a message header tuple: either the exchange context or the matching error,
+     * together with the values resolved before the error so that the business log can be replayed on cache hits.
+     */
+    protected static class ExchangeContextCacheEntry {
+
+        private final MessageExchangeConfiguration messageExchangeConfiguration;
+
+        private final String agreementName;
+
+        private final String senderParty;
+
+        private final String receiverParty;
+
+        private final String service;
+
+        private final String action;
+
+        private final String leg;
+
+        private final ErrorCode.EbMS3ErrorCode errorCode;
+
+        private final String errorDetail;
+
+        private final boolean errorReferencesMessage;
+
+        ExchangeContextCacheEntry(final MessageExchangeConfiguration messageExchangeConfiguration) {
+            this.messageExchangeConfiguration = messageExchangeConfiguration;
+            this.agreementName = messageExchangeConfiguration.getAgreementName();
+            this.senderParty = messageExchangeConfiguration.getSenderParty();
+            this.receiverParty = messageExchangeConfiguration.getReceiverParty();
+            this.service = messageExchangeConfiguration.getService();
+            this.action = messageExchangeConfiguration.getAction();
+            this.leg = messageExchangeConfiguration.getLeg();
+            this.errorCode = null;
+            this.errorDetail = null;
+            this.errorReferencesMessage = false;
+        }
+
+        ExchangeContextCacheEntry(final EbMS3Exception exception, final String agreementName, final String senderParty, final String receiverParty, final String service, final String action, final String leg) {
+            this.messageExchangeConfiguration = null;
+            this.agreementName = agreementName;
+            this.senderParty = senderParty;
+            this.receiverParty = receiverParty;
+            this.service = service;
+            this.action = action;
+            this.leg = leg;
+            this.errorCode = exception.getErrorCode();
+            this.errorDetail = exception.getErrorDetail();
+            this.errorReferencesMessage = exception.getRefToMessageId() != null;
+        }
+
+        MessageExchangeConfiguration getMessageExchangeConfiguration(final String messageId) throws EbMS3Exception {
+            if (messageExchangeConfiguration == null) {
+                throw new EbMS3Exception(errorCode, errorDetail, errorReferencesMessage ? messageId : null, null);
+            }
+            return messageExchangeConfiguration;
+        }
+    }
+
 
     class ReloadPmodeMessageCreator implements MessageCreator {
         @Override
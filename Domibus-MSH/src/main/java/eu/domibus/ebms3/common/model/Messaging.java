@@ -39,7 +39,8 @@ import java.util.Map;
 
         @NamedQuery(name = "Messaging.findPartInfosForMessage", query = "select m.userMessage.payloadInfo.partInfo from Messaging m where m.userMessage.messageInfo.messageId = :MESSAGE_ID"),
 
-        @NamedQuery(name = "Messaging.emptyPayloads", query = "update PartInfo p set p.binaryData = null where p in :PARTINFOS"),
+        @NamedQuery(name = "Messaging.findPartInfosForMessages", query = "select m.userMessage.payloadInfo.partInfo from Messaging m where m.userMessage.messageInfo.messageId in :MESSAGE_IDS"),
+        @NamedQuery(name = "Messaging.findMessagingsByUserMessageIds", query = "select m from Messaging m where m.userMessage.messageInfo.messageId in :MESSAGE_IDS"),
 })
 public class Messaging extends AbstractBaseEntity {
 
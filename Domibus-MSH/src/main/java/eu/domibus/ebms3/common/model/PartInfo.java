@@ -1,14 +1,15 @@
 package eu.domibus.ebms3.common.model;
 
 import eu.domibus.common.AutoCloseFileDataSource;
+import eu.domibus.common.DatabasePayloadDataSource;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.hibernate.annotations.Formula;
 
 import javax.activation.DataHandler;
-import javax.mail.util.ByteArrayDataSource;
 import javax.persistence.*;
 import javax.xml.bind.annotation.*;
 import javax.xml.bind.annotation.adapters.CollapsedStringAdapter;
@@ -30,9 +31,13 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "PartInfo", propOrder = {"schema", "description", "partProperties"})
-@NamedQueries(@NamedQuery(name = "PartInfo.loadBinaryData", query = "select pi.binaryData from PartInfo pi where pi.entityId=:ENTITY_ID"))
 @Entity
 @Table(name = "TB_PART_INFO")
+@NamedQueries({
+        @NamedQuery(name = "PartInfo.findByFileName", query = "select partInfo from PartInfo partInfo where partInfo.fileName = :FILE_NAME"),
+        @NamedQuery(name = "PartInfo.updateFileName", query = "update PartInfo partInfo set partInfo.fileName = :NEW_FILE_NAME where partInfo.fileName = :FILE_NAME"),
+        @NamedQuery(name = "PartInfo.clearFileNames", query = "update PartInfo partInfo set partInfo.fileName = null where partInfo.entityId in :ENTITY_IDS")
+})
 public class PartInfo extends AbstractBaseEntity implements Comparable<PartInfo> {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PartInfo.class);
@@ -55,12 +60,17 @@ public class PartInfo extends AbstractBaseEntity implements Comparable<PartInfo>
     @Column(name = "HREF")
     protected String href;
 
+    /**
+     * The binary data of a payload to store in the database. It is not loaded with the payload, see {@link PartInfoData}.
+     */
     @XmlTransient
-    @Lob
-    @Column(name = "BINARY_DATA")
-    @Basic(fetch = FetchType.EAGER)
+    @Transient
     protected byte[] binaryData;
 
+    @XmlTransient
+    @Formula("CASE WHEN BINARY_DATA IS NULL THEN 0 ELSE 1 END")
+    protected boolean binaryDataStored;
+
     @XmlTransient
     @Column(name = "FILENAME")
     protected String fileName;
@@ -126,12 +136,12 @@ public class PartInfo extends AbstractBaseEntity implements Comparable<PartInfo>
             payloadDatahandler = new DataHandler(new AutoCloseFileDataSource(fileName));
             return;
         }
-        /* Create payload data handler from binaryData (byte[]) */
-        if(binaryData == null) {
+        /* Create payload data handler reading the binary data from the database when the payload is read */
+        if (!binaryDataStored) {
             LOG.info("Payload is empty!");
             payloadDatahandler = null;
         } else {
-            payloadDatahandler = new DataHandler(new ByteArrayDataSource(binaryData, mime));
+            payloadDatahandler = new DataHandler(new DatabasePayloadDataSource(getEntityId(), mime));
         }
 
     }
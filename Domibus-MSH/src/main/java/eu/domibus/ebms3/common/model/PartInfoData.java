@@ -0,0 +1,36 @@
+package eu.domibus.ebms3.common.model;
+
+import javax.persistence.*;
+
+/**
+ * The binary data of a payload stored in the database. It is mapped apart from {@link PartInfo}, on the same table,
+ * so that loading a message does not load the payload bytes: they are read only when the payload is actually read.
+ *
+ * @since 3.3.3
+ */
+@Entity
+@Table(name = "TB_PART_INFO")
+@NamedQueries({
+        @NamedQuery(name = "PartInfoData.loadBinaryData", query = "select partInfoData.binaryData from PartInfoData partInfoData where partInfoData.entityId = :ENTITY_ID"),
+        @NamedQuery(name = "PartInfoData.setBinaryData", query = "update PartInfoData partInfoData set partInfoData.binaryData = :BINARY_DATA where partInfoData.entityId = :ENTITY_ID"),
+        @NamedQuery(name = "PartInfoData.emptyBinaryData", query = "update PartInfoData partInfoData set partInfoData.binaryData = null where partInfoData.entityId in :ENTITY_IDS")
+})
+public class PartInfoData {
+
+    @Id
+    @Column(name = "ID_PK")
+    private int entityId;
+
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "BINARY_DATA")
+    private byte[] binaryData;
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public byte[] getBinaryData() {
+        return binaryData;
+    }
+}
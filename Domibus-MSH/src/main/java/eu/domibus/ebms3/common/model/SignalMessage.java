@@ -31,6 +31,10 @@ import java.util.Set;
                 query = "select signalMessage.messageInfo.messageId from SignalMessage signalMessage where signalMessage.messageInfo.refToMessageId = :ORI_MESSAGE_ID"),
         @NamedQuery(name = "SignalMessage.findSignalMessageByRefMessageId",
                 query = "select signalMessage from SignalMessage signalMessage where signalMessage.messageInfo.refToMessageId = :ORI_MESSAGE_ID"),
+        @NamedQuery(name = "SignalMessage.findSignalMessageIdsByRefMessageIds",
+                query = "select signalMessage.messageInfo.messageId from SignalMessage signalMessage where signalMessage.messageInfo.refToMessageId in :ORI_MESSAGE_IDS"),
+        @NamedQuery(name = "SignalMessage.clearReceiptsByRefMessageIds",
+                query = "update SignalMessage signalMessage set signalMessage.receipt = null where signalMessage.messageInfo.entityId in (select messageInfo.entityId from MessageInfo messageInfo where messageInfo.refToMessageId in :ORI_MESSAGE_IDS)"),
 })
 public class SignalMessage extends AbstractBaseEntity {
 
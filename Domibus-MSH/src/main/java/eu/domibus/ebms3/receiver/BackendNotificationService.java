@@ -10,7 +10,9 @@ import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.exception.ConfigurationException;
 import eu.domibus.common.model.logging.MessageLog;
+import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.core.converter.DomainCoreConverter;
+import eu.domibus.ebms3.common.model.MessageType;
 import eu.domibus.ebms3.common.model.Property;
 import eu.domibus.ebms3.common.model.UserMessage;
 import eu.domibus.logging.DomibusLogger;
@@ -283,6 +285,23 @@ public class BackendNotificationService {
         userMessageLogDao.setAsNotified(messageId);
     }
 
+    /**
+     * Notifies the plugins of the send failure of several messages, marking them as notified with a single update.
+     *
+     * @param messageLogs the logs of the failed messages
+     */
+    public void notifyOfSendFailure(final List<? extends MessageLog> messageLogs) {
+        if (isPluginNotificationDisabled() || messageLogs.isEmpty()) {
+            return;
+        }
+        final List<String> messageIds = new ArrayList<>();
+        for (MessageLog messageLog : messageLogs) {
+            notify(messageLog.getMessageId(), messageLog.getBackend(), NotificationType.MESSAGE_SEND_FAILURE);
+            messageIds.add(messageLog.getMessageId());
+        }
+        userMessageLogDao.setAsNotified(messageIds);
+    }
+
     public void notifyOfSendSuccess(final String messageId) {
         if (isPluginNotificationDisabled()) {
             return;
@@ -311,6 +330,24 @@ public class BackendNotificationService {
         notify(messageLog.getMessageId(), messageLog.getBackend(), NotificationType.MESSAGE_STATUS_CHANGE, messageProperties);
     }
 
+    /**
+     * Notifies the plugins of the status change of several user messages, loading their logs with a single query.
+     *
+     * @param messageIds      the ids of the messages
+     * @param newStatus       the new status of the messages
+     * @param changeTimestamp the time of the change
+     */
+    public void notifyOfMessageStatusChange(List<String> messageIds, MessageStatus newStatus, Timestamp changeTimestamp) {
+        if (isPluginNotificationDisabled() || messageIds.isEmpty()) {
+            return;
+        }
+        for (UserMessageLog userMessageLog : userMessageLogDao.findByMessageIds(messageIds)) {
+            if (MessageType.USER_MESSAGE == userMessageLog.getMessageType()) {
+                notifyOfMessageStatusChange(userMessageLog, newStatus, changeTimestamp);
+            }
+        }
+    }
+
     protected Map<String, Object> getMessageProperties(MessageLog messageLog, MessageStatus newStatus, Timestamp changeTimestamp) {
         Map<String, Object> properties = new HashMap<>();
         if (messageLog.getMessageStatus() != null) {
@@ -38,6 +38,7 @@ import javax.jms.MessageListener;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.ws.soap.SOAPFaultException;
 import java.sql.Timestamp;
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.Set;
 
@@ -95,12 +96,16 @@ public class MessageSender implements MessageListener {
     UserMessageLogDao userMessageLogDao;
 
 
-    private void sendUserMessage(final String messageId) {
+    private void sendUserMessage(final String messageId, final Date sendLease) {
         final MessageStatus messageStatus = userMessageLogDao.getMessageStatus(messageId);
         if (!ALLOWED_STATUSES_FOR_SENDING.contains(messageStatus)) {
             LOG.warn("Message [{}] has a status [{}] which is not allowed for sending. Only the statuses [{}] are allowed", messageId, messageStatus, ALLOWED_STATUSES_FOR_SENDING);
             return;
         }
+        if (sendLease != null && !retryService.renewSendLease(messageId, sendLease)) {
+            LOG.info("Message [{}] skipped: it has been enqueued again since its send lease [{}] expired", messageId, sendLease);
+            return;
+        }
 
 
         LOG.businessInfo(DomibusMessageCode.BUS_MESSAGE_SEND_INITIATION);
@@ -206,12 +211,16 @@ public class MessageSender implements MessageListener {
         LOG.debug("Processing message [{}]", message);
         Long delay;
         String messageId = null;
+        Date sendLease = null;
         try {
             messageId = message.getStringProperty(MessageConstants.MESSAGE_ID);
             LOG.putMDC(DomibusLogger.MDC_MESSAGE_ID, messageId);
+            if (message.propertyExists(MessageConstants.SEND_LEASE)) {
+                sendLease = new Date(message.getLongProperty(MessageConstants.SEND_LEASE));
+            }
             delay = message.getLongProperty(MessageConstants.DELAY);
             if (delay > 0) {
-                userMessageService.scheduleSending(messageId, delay);
+                userMessageService.scheduleSending(messageId, delay, sendLease);
                 return;
             }
         } catch (final NumberFormatException nfe) {
@@ -219,7 +228,7 @@ public class MessageSender implements MessageListener {
         } catch (final JMSException e) {
             LOG.error("Error processing message", e);
         }
-        sendUserMessage(messageId);
+        sendUserMessage(messageId, sendLease);
     }
 
 }
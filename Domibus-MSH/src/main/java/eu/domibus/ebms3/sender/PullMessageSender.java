@@ -3,14 +3,12 @@ package eu.domibus.ebms3.sender;
 import eu.domibus.api.exceptions.DomibusCoreErrorCode;
 import eu.domibus.api.message.UserMessageException;
 import eu.domibus.common.ErrorCode;
-import eu.domibus.common.MSHRole;
-import eu.domibus.common.exception.ConfigurationException;
 import eu.domibus.common.exception.EbMS3Exception;
-import eu.domibus.common.model.configuration.LegConfiguration;
 import eu.domibus.common.model.configuration.Party;
+import eu.domibus.common.services.MessageExchangeService;
 import eu.domibus.common.services.impl.PullContext;
 import eu.domibus.common.services.impl.UserMessageHandlerService;
-import eu.domibus.ebms3.common.dao.PModeProvider;
+import eu.domibus.core.pull.PullFrequencyService;
 import eu.domibus.ebms3.common.model.Error;
 import eu.domibus.ebms3.common.model.Messaging;
 import eu.domibus.ebms3.common.model.PullRequest;
@@ -20,15 +18,17 @@ import eu.domibus.ebms3.receiver.UserMessageHandlerContext;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import eu.domibus.logging.DomibusMessageCode;
-import eu.domibus.pki.PolicyService;
 import eu.domibus.util.MessageUtil;
-import org.apache.neethi.Policy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.jms.JMSException;
 import javax.jms.MapMessage;
@@ -63,9 +63,14 @@ public class PullMessageSender {
     @Autowired
     private BackendNotificationService backendNotificationService;
     @Autowired
-    private PModeProvider pModeProvider;
+    private PullRequestContextCache pullRequestContextCache;
     @Autowired
-    private PolicyService policyService;
+    private PullFrequencyService pullFrequencyService;
+    @Autowired
+    private MessageExchangeService messageExchangeService;
+    @Autowired
+    @Qualifier("taskExecutor")
+    private TaskExecutor taskExecutor;
 
     @SuppressWarnings("squid:S2583") //TODO: SONAR version updated!
     @JmsListener(destination = "${domibus.jms.queue.pull}", containerFactory = "internalJmsListenerContainerFactory")
@@ -74,44 +79,49 @@ public class PullMessageSender {
         boolean notifiyBusinessOnError = false;
         Messaging messaging = null;
         String messageId = null;
+        String mpc = null;
+        String pMode = null;
+        String responder = null;
+        String pullRequestId = null;
+        boolean pullStarted = false;
+        PullFrequencyService.Outcome outcome = PullFrequencyService.Outcome.FAILURE;
         try {
-            final String mpc = map.getString(PullContext.MPC);
-            final String pMode = map.getString(PullContext.PMODE_KEY);
+            mpc = map.getString(PullContext.MPC);
+            pMode = map.getString(PullContext.PMODE_KEY);
+            responder = map.getString(PullContext.RESPONDER);
             notifiyBusinessOnError = Boolean.valueOf(map.getString(PullContext.NOTIFY_BUSINNES_ON_ERROR));
+            // the slot is taken on the node dispatching the pull request, before anything else can fail
+            if (responder != null) {
+                pullRequestId = map.getJMSMessageID();
+                if (!pullFrequencyService.startPullRequest(mpc, responder, pullRequestId)) {
+                    return;
+                }
+                pullStarted = true;
+            }
             SignalMessage signalMessage = new SignalMessage();
             PullRequest pullRequest = new PullRequest();
             pullRequest.setMpc(mpc);
             signalMessage.setPullRequest(pullRequest);
             LOG.debug("Sending pull request with mpc "+mpc);
-            LegConfiguration legConfiguration = pModeProvider.getLegConfiguration(pMode);
-            Party receiverParty = pModeProvider.getReceiverParty(pMode);
-            Policy policy;
-            try {
-                policy = policyService.parsePolicy("policies/" + legConfiguration.getSecurity().getPolicy());
-            } catch (final ConfigurationException e) {
-
-                EbMS3Exception ex = new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0010, "Policy configuration invalid", null, e);
-                ex.setMshRole(MSHRole.SENDING);
-                throw ex;
-            }
+            final PullRequestContextCache.PullRequestContext pullRequestContext = pullRequestContextCache.getContext(pMode);
+            final Party receiverParty = pullRequestContext.getReceiverParty();
             SOAPMessage soapMessage = messageBuilder.buildSOAPMessage(signalMessage, null);
-            final SOAPMessage response = mshDispatcher.dispatch(soapMessage,receiverParty.getEndpoint(),policy,legConfiguration, pMode);
+            final SOAPMessage response = mshDispatcher.dispatch(soapMessage, receiverParty.getEndpoint(), pullRequestContext.getPolicy(), pullRequestContext.getLegConfiguration(), pMode);
             messaging = MessageUtil.getMessage(response, jaxbContext);
             if(messaging.getUserMessage()==null && messaging.getSignalMessage()!=null){
-                Set<Error> error = signalMessage.getError();
-                //@thom why do not I have the error inside the message??
+                Set<Error> error = messaging.getSignalMessage().getError();
                 LOG.debug("No message for sent pull request with mpc "+mpc);
                 for (Error error1 : error) {
                     LOG.info(error1.getErrorCode()+" "+error1.getShortDescription());
                 }
+                outcome = isEmptyMpc(error) ? PullFrequencyService.Outcome.EMPTY : PullFrequencyService.Outcome.FAILURE;
                 return;
             }
             messageId = messaging.getUserMessage().getMessageInfo().getMessageId();
             UserMessageHandlerContext userMessageHandlerContext = new UserMessageHandlerContext();
             SOAPMessage acknowlegement = userMessageHandlerService.handleNewUserMessage(pMode, response, messaging, userMessageHandlerContext);
-            //send receipt
-
-            mshDispatcher.dispatch(acknowlegement,receiverParty.getEndpoint(),policy,legConfiguration, pMode);
+            outcome = PullFrequencyService.Outcome.MESSAGE;
+            sendReceiptAfterCommit(acknowlegement, pullRequestContext, pMode, messageId);
 
         } catch (TransformerException | SOAPException | IOException | JAXBException | JMSException e) {
             LOG.error(e.getMessage(), e);
@@ -125,7 +135,89 @@ public class PullMessageSender {
                 LOG.businessError(DomibusMessageCode.BUS_BACKEND_NOTIFICATION_FAILED, ex, messageId);
             }
             checkConnectionProblem(e);
+        } finally {
+            if (pullStarted) {
+                completePullRequestAfterCompletion(mpc, responder, pullRequestId, pMode, notifiyBusinessOnError, outcome);
+            }
+        }
+    }
+
+    /**
+     * Releases the slot of the pull request and queues the next pull requests of the pipeline once the transaction of
+     * the pulled message completes, so that the next pull requests never run before the message is committed. A pulled
+     * message rolled back counts as a failure.
+     */
+    protected void completePullRequestAfterCompletion(final String mpc, final String responder, final String pullRequestId,
+                                                      final String pMode, final boolean notifyBusinessOnError, final PullFrequencyService.Outcome outcome) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            completePullRequest(mpc, responder, pullRequestId, pMode, notifyBusinessOnError, outcome);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                completePullRequest(mpc, responder, pullRequestId, pMode, notifyBusinessOnError,
+                        status == STATUS_COMMITTED ? outcome : PullFrequencyService.Outcome.FAILURE);
+            }
+        });
+    }
+
+    protected void completePullRequest(String mpc, String responder, String pullRequestId, String pMode, boolean notifyBusinessOnError, PullFrequencyService.Outcome outcome) {
+        final int pullRequests = pullFrequencyService.pullCompleted(mpc, responder, pullRequestId, outcome);
+        if (pullRequests > 0) {
+            LOG.debug("Pipelining [{}] pull requests with mpc [{}]", pullRequests, mpc);
+            try {
+                messageExchangeService.sendPullRequests(mpc, responder, pMode, notifyBusinessOnError, pullRequests);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not queue the next pull requests with mpc [" + mpc + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Sends the receipt of a pulled message in the background once the message is committed, so that the next pull
+     * request does not wait for it. If the receipt is lost, the responder sends the message again and the duplicate
+     * is detected.
+     */
+    protected void sendReceiptAfterCommit(final SOAPMessage receipt, final PullRequestContextCache.PullRequestContext pullRequestContext, final String pMode, final String messageId) {
+        final Runnable sendReceipt = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mshDispatcher.dispatch(receipt, pullRequestContext.getReceiverParty().getEndpoint(), pullRequestContext.getPolicy(), pullRequestContext.getLegConfiguration(), pMode);
+                } catch (EbMS3Exception | RuntimeException e) {
+                    LOG.warn("Could not send the receipt of pulled message [" + messageId + "]", e);
+                }
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            execute(sendReceipt);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                execute(sendReceipt);
+            }
+        });
+    }
+
+    private void execute(Runnable task) {
+        try {
+            taskExecutor.execute(task);
+        } catch (TaskRejectedException e) {
+            LOG.debug("Sending the receipt in the listener thread: {}", e.getMessage());
+            task.run();
+        }
+    }
+
+    private boolean isEmptyMpc(Set<Error> errors) {
+        for (Error error : errors) {
+            if (ErrorCode.EBMS_0006.getErrorCodeName().equals(error.getErrorCode())) {
+                return true;
+            }
         }
+        return false;
     }
 
     private void checkConnectionProblem(EbMS3Exception e) {
@@ -0,0 +1,101 @@
+package eu.domibus.ebms3.sender;
+
+import eu.domibus.common.ErrorCode;
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.exception.ConfigurationException;
+import eu.domibus.common.exception.EbMS3Exception;
+import eu.domibus.common.model.configuration.LegConfiguration;
+import eu.domibus.common.model.configuration.Party;
+import eu.domibus.ebms3.common.dao.PModeProvider;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import eu.domibus.pki.PolicyService;
+import org.apache.neethi.Policy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches, for each pull PMode key, the leg, the responder party and the security policy used to send the pull requests,
+ * so that they are not resolved again for each pull request. The cache is cleared when the PMode is reloaded.
+ *
+ * @since 3.3.3
+ */
+@Component
+public class PullRequestContextCache {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(PullRequestContextCache.class);
+
+    @Autowired
+    private PModeProvider pModeProvider;
+
+    @Autowired
+    private PolicyService policyService;
+
+    private final ConcurrentMap<String, PullRequestContext> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * @param pModeKey the PMode key of the pull requests
+     * @return the leg, responder party and security policy of the pull requests
+     * @throws EbMS3Exception if the security policy of the leg is invalid
+     */
+    public PullRequestContext getContext(final String pModeKey) throws EbMS3Exception {
+        PullRequestContext context = contexts.get(pModeKey);
+        if (context == null) {
+            context = createContext(pModeKey);
+            contexts.putIfAbsent(pModeKey, context);
+        }
+        return context;
+    }
+
+    public void clear() {
+        LOG.debug("Clearing the pull request context cache");
+        contexts.clear();
+    }
+
+    protected PullRequestContext createContext(final String pModeKey) throws EbMS3Exception {
+        final LegConfiguration legConfiguration = pModeProvider.getLegConfiguration(pModeKey);
+        final Party receiverParty = pModeProvider.getReceiverParty(pModeKey);
+        final Policy policy;
+        try {
+            policy = policyService.parsePolicy("policies/" + legConfiguration.getSecurity().getPolicy());
+        } catch (final ConfigurationException e) {
+            EbMS3Exception ex = new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0010, "Policy configuration invalid", null, e);
+            ex.setMshRole(MSHRole.SENDING);
+            throw ex;
+        }
+        return new PullRequestContext(legConfiguration, receiverParty, policy);
+    }
+
+    /**
+     * The leg, responder party and security policy of the pull requests of a PMode key.
+     */
+    public static class PullRequestContext {
+
+        private final LegConfiguration legConfiguration;
+
+        private final Party receiverParty;
+
+        private final Policy policy;
+
+        public PullRequestContext(LegConfiguration legConfiguration, Party receiverParty, Policy policy) {
+            this.legConfiguration = legConfiguration;
+            this.receiverParty = receiverParty;
+            this.policy = policy;
+        }
+
+        public LegConfiguration getLegConfiguration() {
+            return legConfiguration;
+        }
+
+        public Party getReceiverParty() {
+            return receiverParty;
+        }
+
+        public Policy getPolicy() {
+            return policy;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package eu.domibus.ebms3.sender;
 
-import eu.domibus.api.jms.DomibusJMSException;
+import com.google.common.collect.Lists;
 import eu.domibus.api.jms.JMSManager;
-import eu.domibus.api.jms.JmsMessage;
 import eu.domibus.api.message.UserMessageLogService;
 import eu.domibus.api.usermessage.UserMessageService;
 import eu.domibus.common.MSHRole;
@@ -12,20 +11,20 @@ import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.MessageLog;
 import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
 import eu.domibus.ebms3.receiver.BackendNotificationService;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
-import eu.domibus.messaging.MessageConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jms.core.JmsOperations;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.jms.JMSException;
-import javax.jms.Queue;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 
@@ -35,6 +34,17 @@ import java.util.Properties;
 @Service
 public class RetryService {
     public static final String TIMEOUT_TOLERANCE = "domibus.msh.retry.tolerance";
+    public static final String RETRY_BATCH_SIZE = "domibus.msh.retry.batch.size";
+    private static final String DEFAULT_RETRY_BATCH_SIZE = "1000";
+    public static final String PURGE_BATCH_SIZE = "domibus.msh.retry.purge.batch.size";
+    private static final String DEFAULT_PURGE_BATCH_SIZE = "500";
+    public static final String RETRY_SCHEDULING = "domibus.msh.retry.scheduling";
+    public static final String RETRY_SCHEDULING_BROKER = "BROKER";
+    private static final String DEFAULT_RETRY_SCHEDULING = "DATABASE";
+    public static final String RETRY_BROKER_TOLERANCE = "domibus.msh.retry.broker.tolerance";
+    private static final String DEFAULT_RETRY_BROKER_TOLERANCE = "300000";
+    public static final String RETRY_ENQUEUED_TIMEOUT = "domibus.msh.retry.enqueued.timeout";
+    private static final String DEFAULT_RETRY_ENQUEUED_TIMEOUT = "600000";
     private static final String DELETE_PAYLOAD_ON_SEND_FAILURE = "domibus.sendMessage.failure.delete.payload";
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(RetryService.class);
     @Autowired
@@ -44,14 +54,6 @@ public class RetryService {
     @Qualifier("domibusProperties")
     private Properties domibusProperties;
 
-    @Autowired
-    @Qualifier("jmsTemplateDispatch")
-    private JmsOperations jmsOperations;
-
-    @Autowired
-    @Qualifier("sendMessageQueue")
-    private Queue dispatchQueue;
-
     @Autowired
     UserMessageService userMessageService;
 
@@ -67,76 +69,205 @@ public class RetryService {
     @Autowired
     private JMSManager jmsManager;
 
+    @Autowired
+    private ClusterNodeService clusterNodeService;
+
+    /**
+     * Purges the timed out messages and enqueues the messages to retry. In a cluster every node runs it on its own
+     * shard of the messages.
+     */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void enqueueMessages() {
-        final List<String> messageIdsToPurge = userMessageLogDao.findTimedoutMessages(Integer.parseInt(domibusProperties.getProperty(RetryService.TIMEOUT_TOLERANCE)));
-        for (final String messageIdToPurge : messageIdsToPurge) {
-            purgeTimedoutMessage(messageIdToPurge);
-        }
+        final ClusterShard shard = clusterNodeService.getShard();
+        LOG.debug("Enqueuing the messages of the shard [{}]", shard);
+        final List<String> messageIdsToPurge = userMessageLogDao.findTimedoutMessages(Integer.parseInt(domibusProperties.getProperty(RetryService.TIMEOUT_TOLERANCE)), shard);
         LOG.debug(messageIdsToPurge.size() + " messages to purge found");
+        purgeTimedoutMessages(messageIdsToPurge);
 
-        final List<String> messagesNotAlreadyQueued = getMessagesNotAlreadyQueued();
-        for (final String messageId : messagesNotAlreadyQueued) {
-            userMessageService.scheduleSending(messageId);
+        final List<String> messagesToRetry = getMessagesToRetry(shard);
+        for (final String messageId : messagesToRetry) {
+            enqueueRetry(messageId);
         }
 
-        purgePullMessage();
-        resetWaitingForReceiptPullMessages();
+        purgePullMessage(shard);
+        resetWaitingForReceiptPullMessages(shard);
     }
 
-    protected List<String> getMessagesNotAlreadyQueued() {
-        List<String> result = new ArrayList<>();
-
-        final List<String> messageIdsToSend = userMessageLogDao.findRetryMessages();
-        if (messageIdsToSend.isEmpty()) {
-            return result;
+    /**
+     * Gets the messages whose next attempt is due. Once enqueued, a retried message is moved to the SEND_ENQUEUED
+     * status until the sending outcome is known so it is not selected again while it waits in the queue, unless its
+     * send lease expires before, i.e. its JMS message got lost.
+     * The messages whose retry is scheduled on the broker are skipped the same way until their send lease expires.
+     */
+    protected List<String> getMessagesToRetry(final ClusterShard shard) {
+        final List<String> messageIdsToSend = userMessageLogDao.findRetryMessages(new Date(System.currentTimeMillis()), getRetryBatchSize(), shard);
+        if (!messageIdsToSend.isEmpty()) {
+            LOG.debug("Messages to be retried [{}]", messageIdsToSend);
         }
-        LOG.debug("Messages to be retried [{}]", messageIdsToSend);
-        final List<String> queuedMessages = getQueuedMessages();
-        messageIdsToSend.removeAll(queuedMessages);
         return messageIdsToSend;
     }
 
-    protected List<String> getQueuedMessages() {
-        List<String> result = new ArrayList<>();
-        try {
-            final List<JmsMessage> jmsMessages = jmsManager.browseMessages(dispatchQueue.getQueueName());
-            if (jmsMessages == null) {
-                return result;
+    /**
+     * Enqueues a message to retry once it has been claimed in the message log, so that a message is enqueued only once
+     * even when the retry worker runs concurrently on several nodes. The JMS message carries the send lease of the claim:
+     * should the message be claimed again before the sender picks it up, the sender skips it.
+     */
+    protected void enqueueRetry(final String messageId) {
+        final UserMessageLog userMessageLog = userMessageLogDao.findByMessageId(messageId, MSHRole.SENDING);
+        final Date sendLease = toSendLease(System.currentTimeMillis() + getEnqueuedTimeout());
+        if (userMessageLogDao.claimRetryMessage(messageId, sendLease) == 0) {
+            LOG.debug("Message [{}] already enqueued for a retry", messageId);
+            return;
+        }
+        // not notified when the message is enqueued again after its lease expired, its status is unchanged
+        backendNotificationService.notifyOfMessageStatusChange(userMessageLog, MessageStatus.SEND_ENQUEUED, new Timestamp(System.currentTimeMillis()));
+        userMessageService.scheduleSending(messageId, null, sendLease);
+    }
+
+    /**
+     * Takes over the send lease of a message picked up by the sender, so that the retry worker does not enqueue it again
+     * while it is being sent. The lease is renewed in its own transaction to be visible to the other nodes right away.
+     *
+     * @param messageId the id of the message to send
+     * @param sendLease the send lease carried by the JMS message
+     * @return false if the message has been claimed again since it was enqueued, i.e. another JMS message sends it
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean renewSendLease(final String messageId, final Date sendLease) {
+        final Date newSendLease = toSendLease(System.currentTimeMillis() + getEnqueuedTimeout());
+        return userMessageLogDao.renewSendLease(messageId, sendLease, newSendLease) > 0;
+    }
+
+    /**
+     * Truncates a send lease to the second: the lease is compared for equality once stored in a DATETIME column.
+     */
+    protected Date toSendLease(final long time) {
+        return new Date(time / 1000 * 1000);
+    }
+
+    protected long getEnqueuedTimeout() {
+        return Long.parseLong(domibusProperties.getProperty(RETRY_ENQUEUED_TIMEOUT, DEFAULT_RETRY_ENQUEUED_TIMEOUT));
+    }
+
+    /**
+     * Schedules the next attempt of a message waiting for retry directly on the JMS broker, when configured and
+     * supported by the broker. The message stays in WAITING_FOR_RETRY with a send lease ending the broker tolerance
+     * after the next attempt: the retry worker skips it until then and picks it up afterwards should the delayed
+     * delivery get lost.
+     *
+     * @param userMessageLog the log of the message waiting for retry
+     */
+    public void scheduleRetry(final UserMessageLog userMessageLog) {
+        final Date nextAttempt = userMessageLog.getNextAttempt();
+        if (nextAttempt == null || !isBrokerRetryScheduling()) {
+            return;
+        }
+        final String messageId = userMessageLog.getMessageId();
+        final Date sendLease = toSendLease(nextAttempt.getTime() + getBrokerTolerance());
+        userMessageLog.setSendLease(sendLease);
+        userMessageLogDao.update(userMessageLog);
+        final long delay = Math.max(0, nextAttempt.getTime() - System.currentTimeMillis());
+        LOG.debug("Scheduling the retry of message [{}] on the broker in [{}] ms", messageId, delay);
+        userMessageService.scheduleSending(messageId, delay, sendLease);
+    }
+
+    protected boolean isBrokerRetryScheduling() {
+        return RETRY_SCHEDULING_BROKER.equalsIgnoreCase(domibusProperties.getProperty(RETRY_SCHEDULING, DEFAULT_RETRY_SCHEDULING))
+                && jmsManager.isDeliveryDelaySupported();
+    }
+
+    protected long getBrokerTolerance() {
+        return Long.parseLong(domibusProperties.getProperty(RETRY_BROKER_TOLERANCE, DEFAULT_RETRY_BROKER_TOLERANCE));
+    }
+
+    protected int getRetryBatchSize() {
+        return Integer.parseInt(domibusProperties.getProperty(RETRY_BATCH_SIZE, DEFAULT_RETRY_BATCH_SIZE));
+    }
+
+    /**
+     * Marks the timed out messages as failed chunk by chunk: the statuses, the notification statuses and the payloads
+     * of a chunk are each updated with a single statement instead of a few statements per message.
+     *
+     * @param messageIds the ids of the expired messages
+     */
+    protected void purgeTimedoutMessages(final List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        for (final List<String> chunk : Lists.partition(messageIds, getPurgeBatchSize())) {
+            purgeTimedoutMessagesChunk(chunk);
+        }
+    }
+
+    /**
+     * Marks a chunk of timed out messages as failed. Their logs are locked first, so the messages found waiting for a
+     * retry are exactly the ones the status guarded update marks as failed, and only these are notified.
+     */
+    protected void purgeTimedoutMessagesChunk(final List<String> messageIds) {
+        final List<UserMessageLog> expiredMessageLogs = new ArrayList<>();
+        final List<UserMessageLog> messageLogsToNotify = new ArrayList<>();
+        for (final UserMessageLog userMessageLog : userMessageLogDao.findByMessageIdsForUpdate(messageIds, MSHRole.SENDING)) {
+            // the message might have been sent or restored in the meantime
+            if (MessageStatus.WAITING_FOR_RETRY != userMessageLog.getMessageStatus()) {
+                continue;
             }
-            for (JmsMessage jmsMessage : jmsMessages) {
-                result.add(jmsMessage.getStringProperty(MessageConstants.MESSAGE_ID));
+            expiredMessageLogs.add(userMessageLog);
+            if (NotificationStatus.REQUIRED.equals(userMessageLog.getNotificationStatus())) {
+                messageLogsToNotify.add(userMessageLog);
             }
-            return result;
-        } catch (JMSException e) {
-            throw new DomibusJMSException(e);
         }
+        if (expiredMessageLogs.isEmpty()) {
+            return;
+        }
+
+        final List<String> expiredMessageIds = new ArrayList<>();
+        for (final UserMessageLog userMessageLog : expiredMessageLogs) {
+            expiredMessageIds.add(userMessageLog.getMessageId());
+        }
+        final int failed = userMessageLogDao.setTimedoutMessagesAsSendFailure(expiredMessageIds);
+        LOG.debug("[{}] timed out messages marked as send failure", failed);
+
+        // the logs keep the status read before the update, reported as the previous status
+        backendNotificationService.notifyOfSendFailure(messageLogsToNotify);
+        final Timestamp changeTimestamp = new Timestamp(System.currentTimeMillis());
+        for (final UserMessageLog userMessageLog : expiredMessageLogs) {
+            backendNotificationService.notifyOfMessageStatusChange(userMessageLog, MessageStatus.SEND_FAILURE, changeTimestamp);
+        }
+
+        if ("true".equals(domibusProperties.getProperty(DELETE_PAYLOAD_ON_SEND_FAILURE, "false"))) {
+            messagingDao.clearPayloadData(expiredMessageIds);
+        }
+    }
+
+    protected int getPurgeBatchSize() {
+        return Integer.parseInt(domibusProperties.getProperty(PURGE_BATCH_SIZE, DEFAULT_PURGE_BATCH_SIZE));
     }
 
     //@thom test this
-    protected void purgePullMessage() {
-        List<String> timedoutPullMessages = userMessageLogDao.findTimedOutPullMessages(Integer.parseInt(domibusProperties.getProperty(RetryService.TIMEOUT_TOLERANCE)));
+    protected void purgePullMessage(final ClusterShard shard) {
+        List<String> timedoutPullMessages = userMessageLogDao.findTimedOutPullMessages(Integer.parseInt(domibusProperties.getProperty(RetryService.TIMEOUT_TOLERANCE)), shard);
         for (final String timedoutPullMessage : timedoutPullMessages) {
             purgeTimedoutMessage(timedoutPullMessage);
         }
     }
 
-    protected void resetWaitingForReceiptPullMessages() {
-        final List<String> messagesToReset = userMessageLogDao.findPullWaitingForReceiptMessages();
-        for (String messagedId : messagesToReset) {
-            final UserMessageLog userMessageLog = userMessageLogDao.findByMessageId(messagedId);
-            if (userMessageLog.getSendAttempts() < userMessageLog.getSendAttemptsMax()) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Message " + messagedId + " set back in READY_TO_PULL state.");
-                }
-                userMessageLog.setMessageStatus(MessageStatus.READY_TO_PULL);
-            } else {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Pull Message with " + messagedId + " marked as send failure after max retry attempt reached");
-                }
-                userMessageLog.setMessageStatus(MessageStatus.SEND_FAILURE);
+    /**
+     * Handles the pull messages whose receipt is overdue chunk by chunk: the messages of a chunk with send attempts
+     * left are set back to READY_TO_PULL with a single statement, the attempts being compared in the database. Only
+     * the messages without attempt left are loaded, to be marked as failed and notified one by one.
+     */
+    protected void resetWaitingForReceiptPullMessages(final ClusterShard shard) {
+        final List<String> messagesToReset = userMessageLogDao.findPullWaitingForReceiptMessages(shard);
+        if (messagesToReset.isEmpty()) {
+            return;
+        }
+        for (final List<String> chunk : Lists.partition(messagesToReset, getPurgeBatchSize())) {
+            final int reset = userMessageLogDao.resetPullWaitingForReceiptMessages(chunk);
+            LOG.debug("[{}] pull messages set back in READY_TO_PULL state", reset);
+            for (final String messageId : userMessageLogDao.findPullWaitingForReceiptMessagesWithoutAttemptLeft(chunk)) {
+                LOG.debug("Pull message [{}] marked as send failure after max retry attempt reached", messageId);
+                purgeTimedoutMessage(messageId);
             }
-            userMessageLogDao.update(userMessageLog);
         }
     }
 
@@ -15,7 +15,7 @@ import org.springframework.scheduling.quartz.QuartzJobBean;
  * @since 3.0
  */
 
-@DisallowConcurrentExecution //Only one SenderWorker runs at any time
+@DisallowConcurrentExecution //Only one SenderWorker runs at any time on a node, each node working on its own shard of the messages
 public class SendRetryWorker extends QuartzJobBean {
 
     @Autowired
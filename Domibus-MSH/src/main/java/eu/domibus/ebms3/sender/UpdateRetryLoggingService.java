@@ -7,7 +7,10 @@ import eu.domibus.common.NotificationStatus;
 import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.configuration.LegConfiguration;
+import eu.domibus.common.model.configuration.ReceptionAwareness;
+import eu.domibus.common.model.configuration.RetryStrategy;
 import eu.domibus.common.model.logging.MessageLog;
+import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.ebms3.receiver.BackendNotificationService;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
@@ -26,6 +29,8 @@ import java.util.Properties;
 public class UpdateRetryLoggingService {
 
     private static final String DELETE_PAYLOAD_ON_SEND_FAILURE = "domibus.sendMessage.failure.delete.payload";
+    public static final String RETRY_BACKOFF_BASE = "domibus.msh.retry.backoff.base";
+    public static final String RETRY_BACKOFF_CAP = "domibus.msh.retry.backoff.cap";
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(UpdateRetryLoggingService.class);
 
     @Autowired
@@ -44,17 +49,24 @@ public class UpdateRetryLoggingService {
     @Qualifier("domibusProperties")
     private Properties domibusProperties;
 
+    @Autowired
+    private RetryService retryService;
+
     /**
      * This method is responsible for the handling of retries for a given sent message.
      * In case of failure the message will be put back in waiting_for_retry status, after a certain amount of retry/time
-     * it will be marked as failed.
+     * it will be marked as failed. The next attempt is scheduled on the broker when retries are configured to be
+     * scheduled there.
      *
      * @param messageId        id of the message that needs to be retried
      * @param legConfiguration processing information for the message
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void updatePushedMessageRetryLogging(final String messageId, final LegConfiguration legConfiguration) {
-        updateRetryLogging(messageId, legConfiguration, MessageStatus.WAITING_FOR_RETRY);
+        final UserMessageLog userMessageLog = updateRetryLogging(messageId, legConfiguration, MessageStatus.WAITING_FOR_RETRY);
+        if (MessageStatus.WAITING_FOR_RETRY == userMessageLog.getMessageStatus()) {
+            retryService.scheduleRetry(userMessageLog);
+        }
     }
 
     /**
@@ -71,10 +83,12 @@ public class UpdateRetryLoggingService {
         updateRetryLogging(messageId, legConfiguration, MessageStatus.READY_TO_PULL);
     }
 
-    private void updateRetryLogging(final String messageId, final LegConfiguration legConfiguration, MessageStatus messageStatus) {
+    private UserMessageLog updateRetryLogging(final String messageId, final LegConfiguration legConfiguration, MessageStatus messageStatus) {
         LOG.debug("Updating retry for message");
-        MessageLog userMessageLog = this.userMessageLogDao.findByMessageId(messageId, MSHRole.SENDING);
+        UserMessageLog userMessageLog = this.userMessageLogDao.findByMessageId(messageId, MSHRole.SENDING);
         userMessageLog.setSendAttempts(userMessageLog.getSendAttempts() + 1);
+        // the attempt is over, the message is not held by the send queue anymore
+        userMessageLog.setSendLease(null);
         LOG.debug("Updating sendAttempts to [{}]", userMessageLog.getSendAttempts());
         userMessageLogDao.update(userMessageLog);
         if (hasAttemptsLeft(userMessageLog, legConfiguration)) {
@@ -91,6 +105,7 @@ public class UpdateRetryLoggingService {
                 messagingDao.clearPayloadData(messageId);
             }
         }
+        return userMessageLog;
     }
 
     public void updateWaitingReceiptMessageRetryLogging(final String messageId, final LegConfiguration legConfiguration) {
@@ -108,13 +123,32 @@ public class UpdateRetryLoggingService {
 
     private void increaseAttempAndNotify(LegConfiguration legConfiguration, MessageStatus messageStatus, MessageLog userMessageLog) {
         LOG.debug("Updating send attempts to [{}]", userMessageLog.getSendAttempts());
-        userMessageLog.setNextAttempt(legConfiguration.getReceptionAwareness().getStrategy().getAlgorithm().compute(userMessageLog.getNextAttempt(), userMessageLog.getSendAttemptsMax(), legConfiguration.getReceptionAwareness().getRetryTimeout()));
+        userMessageLog.setNextAttempt(computeNextAttempt(legConfiguration, userMessageLog));
         backendNotificationService.notifyOfMessageStatusChange(userMessageLog, messageStatus, new Timestamp(System.currentTimeMillis()));
         userMessageLog.setMessageStatus(messageStatus);
         LOG.debug("Updating status to [{}]", userMessageLog.getMessageStatus());
         userMessageLogDao.update(userMessageLog);
     }
 
+    /**
+     * Computes the next attempt with the retry strategy of the leg. The strategies growing the delay between attempts
+     * get the number of attempts already made and the configured backoff.
+     */
+    protected Date computeNextAttempt(final LegConfiguration legConfiguration, final MessageLog userMessageLog) {
+        final ReceptionAwareness receptionAwareness = legConfiguration.getReceptionAwareness();
+        final RetryStrategy.AttemptAlgorithm algorithm = receptionAwareness.getStrategy().getAlgorithm();
+        if (algorithm instanceof RetryStrategy.ProgressiveAttemptAlgorithm) {
+            return ((RetryStrategy.ProgressiveAttemptAlgorithm) algorithm).compute(new Date(getScheduledStartTime(userMessageLog)),
+                    userMessageLog.getSendAttempts(), userMessageLog.getSendAttemptsMax(), receptionAwareness.getRetryTimeout(), getBackoff());
+        }
+        return algorithm.compute(userMessageLog.getNextAttempt(), userMessageLog.getSendAttemptsMax(), receptionAwareness.getRetryTimeout());
+    }
+
+    protected RetryStrategy.Backoff getBackoff() {
+        return new RetryStrategy.Backoff(Long.parseLong(domibusProperties.getProperty(RETRY_BACKOFF_BASE, "0")),
+                Long.parseLong(domibusProperties.getProperty(RETRY_BACKOFF_CAP, "0")));
+    }
+
     /**
      * Check if the message can be sent again: there is time and attempts left
      */
@@ -3,6 +3,7 @@ package eu.domibus.messaging;
 import eu.domibus.api.jms.JMSMessageBuilder;
 import eu.domibus.api.jms.JmsMessage;
 
+import java.util.Date;
 
 /**
  * @author Christian Koch, Stefan Mueller
@@ -11,14 +12,24 @@ public class DispatchMessageCreator {
 
     private final String messageId;
 
+    private final Date sendLease;
+
     public DispatchMessageCreator(final String messageId) {
+        this(messageId, null);
+    }
+
+    public DispatchMessageCreator(final String messageId, final Date sendLease) {
         this.messageId = messageId;
+        this.sendLease = sendLease;
     }
 
     public JmsMessage createMessage() {
-        return JMSMessageBuilder
+        final JMSMessageBuilder builder = JMSMessageBuilder
                 .create()
-                .property(MessageConstants.MESSAGE_ID, messageId)
-                .build();
+                .property(MessageConstants.MESSAGE_ID, messageId);
+        if (sendLease != null) {
+            builder.property(MessageConstants.SEND_LEASE, sendLease.getTime());
+        }
+        return builder.build();
     }
 }
@@ -69,13 +69,29 @@ public class JMSManagerImpl implements JMSManager {
 
     @Override
     public void sendMessageToQueue(JmsMessage message, Queue destination) {
+        addOriginalQueueProperty(message, destination);
+        InternalJmsMessage internalJmsMessage = jmsMessageMapper.convert(message);
+        internalJmsManager.sendMessage(internalJmsMessage, destination);
+    }
+
+    @Override
+    public boolean isDeliveryDelaySupported() {
+        return internalJmsManager.isDeliveryDelaySupported();
+    }
+
+    @Override
+    public void sendMessageToQueue(JmsMessage message, Queue destination, long deliveryDelay) {
+        addOriginalQueueProperty(message, destination);
+        InternalJmsMessage internalJmsMessage = jmsMessageMapper.convert(message);
+        internalJmsManager.sendMessage(internalJmsMessage, destination, deliveryDelay);
+    }
+
+    protected void addOriginalQueueProperty(JmsMessage message, Queue destination) {
         try {
             message.getProperties().put(JmsMessage.PROPERTY_ORIGINAL_QUEUE, destination.getQueueName());
         } catch (JMSException e) {
             LOG.warn("Could not add the property [" + JmsMessage.PROPERTY_ORIGINAL_QUEUE + "] on the destination", e);
         }
-        InternalJmsMessage internalJmsMessage = jmsMessageMapper.convert(message);
-        internalJmsManager.sendMessage(internalJmsMessage, destination);
     }
 
     @Override
@@ -93,4 +109,9 @@ public class JMSManagerImpl implements JMSManager {
         InternalJmsMessage internalJmsMessage = internalJmsManager.consumeMessage(source, messageId);
         return jmsMessageMapper.convert(internalJmsMessage);
     }
+
+    @Override
+    public int consumeMessages(String source, List<String> messageIds) {
+        return internalJmsManager.consumeMessages(source, messageIds);
+    }
 }
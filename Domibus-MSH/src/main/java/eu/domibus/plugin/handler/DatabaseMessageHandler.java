@@ -1,5 +1,7 @@
 package eu.domibus.plugin.handler;
 
+import eu.domibus.api.exceptions.DomibusCoreErrorCode;
+import eu.domibus.api.message.UserMessageException;
 import eu.domibus.api.message.UserMessageLogService;
 import eu.domibus.api.usermessage.UserMessageService;
 import eu.domibus.api.pmode.PModeException;
@@ -9,6 +11,7 @@ import eu.domibus.common.dao.*;
 import eu.domibus.common.exception.CompressionException;
 import eu.domibus.common.exception.EbMS3Exception;
 import eu.domibus.common.exception.MessagingExceptionFactory;
+import eu.domibus.common.model.configuration.Identifier;
 import eu.domibus.common.model.configuration.LegConfiguration;
 import eu.domibus.common.model.configuration.Mpc;
 import eu.domibus.common.model.configuration.Party;
@@ -31,6 +34,7 @@ import eu.domibus.logging.MDCKey;
 import eu.domibus.messaging.*;
 import eu.domibus.plugin.Submission;
 import eu.domibus.plugin.transformer.impl.SubmissionAS4Transformer;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
@@ -38,7 +42,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.activation.DataHandler;
+import javax.mail.util.ByteArrayDataSource;
 import javax.persistence.NoResultException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -136,6 +144,8 @@ public class DatabaseMessageHandler implements MessageSubmitter<Submission>, Mes
         userMessageLogService.setMessageAsDownloaded(messageId);
         // Deleting the message and signal message if the retention download is zero and the payload is not stored on the file system.
         if (userMessage != null && 0 == pModeProvider.getRetentionDownloadedByMpcURI(userMessage.getMpc()) && !userMessage.isPayloadOnFileSystem()) {
+            // the payloads are read before they are emptied, the plugin reading them after the download
+            loadPayloadsInMemory(userMessage);
             messagingDao.clearPayloadData(messageId);
             List<SignalMessage> signalMessages = signalMessageDao.findSignalMessagesByRefMessageId(messageId);
             if (!signalMessages.isEmpty()) {
@@ -294,7 +304,7 @@ public class DatabaseMessageHandler implements MessageSubmitter<Submission>, Mes
                 userMessageService.scheduleSending(messageId);
             }
 
-            userMessageLogService.save(messageId, messageStatus.toString(), getNotificationStatus(legConfiguration).toString(), MSHRole.SENDING.toString(), getMaxAttempts(legConfiguration), message.getUserMessage().getMpc(), backendName, to.getEndpoint());
+            userMessageLogService.save(messageId, messageStatus.toString(), getNotificationStatus(legConfiguration).toString(), MSHRole.SENDING.toString(), getMaxAttempts(legConfiguration), message.getUserMessage().getMpc(), backendName, to.getEndpoint(), getReceiver(userMessage, to));
 
             LOG.info("Message submitted");
             return userMessage.getMessageInfo().getMessageId();
@@ -336,6 +346,55 @@ public class DatabaseMessageHandler implements MessageSubmitter<Submission>, Mes
         return ( legConfiguration.getReceptionAwareness() == null ? 1 : legConfiguration.getReceptionAwareness().getRetryCount() ) + 1; // counting retries after the first send attempt
     }
 
+    /**
+     * Reads in memory the payloads stored in the database, which are otherwise only read from the database when the
+     * plugin reads them.
+     */
+    protected void loadPayloadsInMemory(UserMessage userMessage) {
+        if (userMessage.getPayloadInfo() == null) {
+            return;
+        }
+        for (PartInfo partInfo : userMessage.getPayloadInfo().getPartInfo()) {
+            final DataHandler dataHandler = partInfo.getPayloadDatahandler();
+            if (dataHandler == null || !(dataHandler.getDataSource() instanceof DatabasePayloadDataSource)) {
+                continue;
+            }
+            try (InputStream inputStream = dataHandler.getInputStream()) {
+                partInfo.setPayloadDatahandler(new DataHandler(new ByteArrayDataSource(IOUtils.toByteArray(inputStream), dataHandler.getContentType())));
+            } catch (IOException e) {
+                throw new UserMessageException(DomibusCoreErrorCode.DOM_001, "Could not read the payload [" + partInfo.getHref() + "] of message [" + userMessage.getMessageInfo().getMessageId() + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Selects, in upper case, the smallest party id of the message identifying the receiver party in the PMode, or the
+     * smallest party id of the message if none does. The changeset TB_MESSAGE_LOG_RECEIVER backfills the existing
+     * messages with the same selection.
+     *
+     * @return the party id of the message matched by the pull requests
+     */
+    protected String getReceiver(UserMessage userMessage, Party to) {
+        String receiver = null;
+        String identifiedReceiver = null;
+        for (PartyId partyId : userMessage.getPartyInfo().getTo().getPartyId()) {
+            final String value = StringUtils.upperCase(partyId.getValue());
+            if (value == null) {
+                continue;
+            }
+            if (receiver == null || value.compareTo(receiver) < 0) {
+                receiver = value;
+            }
+            for (Identifier identifier : to.getIdentifiers()) {
+                if (StringUtils.equalsIgnoreCase(value, identifier.getPartyId())
+                        && (identifiedReceiver == null || value.compareTo(identifiedReceiver) < 0)) {
+                    identifiedReceiver = value;
+                }
+            }
+        }
+        return identifiedReceiver != null ? identifiedReceiver : receiver;
+    }
+
     private void fillMpc(UserMessage userMessage, LegConfiguration legConfiguration, Party to) {
         final Map<Party, Mpc> mpcMap = legConfiguration.getPartyMpcMap();
         String mpc = Ebms3Constants.DEFAULT_MPC;
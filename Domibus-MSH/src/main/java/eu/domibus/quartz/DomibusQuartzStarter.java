@@ -16,7 +16,9 @@ import javax.annotation.PostConstruct;
  * 1. checks existing jobs - if {@code ClassNotFoundException} is thrown - it deletes the job.
  * It could be the case of FS-PLUGIN which leaves metadata in {@code QRTZ_*} tables
  * <p>
- * 2. starts manually the Quartz scheduler
+ * 2. removes from the clustered scheduler the jobs now executed by the node scheduler
+ * <p>
+ * 3. starts manually the Quartz schedulers
  *
  * @author Catalin Enache
  * @version 1.0
@@ -31,6 +33,9 @@ public class DomibusQuartzStarter {
     /** injected scheduler by SchedulerFactoryBean */
     private Scheduler scheduler;
 
+    /** in memory scheduler executing the jobs on every node */
+    private Scheduler nodeScheduler;
+
     /**
      * entry point method (post-construct)
      *
@@ -42,8 +47,17 @@ public class DomibusQuartzStarter {
         //check Quartz scheduler jobs first
         checkSchedulerJobs();
 
+        if (nodeScheduler != null) {
+            deleteNodeJobsFromScheduler();
+        }
+
         scheduler.start();
         LOG.info("Quartz scheduler started.");
+
+        if (nodeScheduler != null) {
+            nodeScheduler.start();
+            LOG.info("Quartz node scheduler started.");
+        }
     }
 
 
@@ -52,6 +66,28 @@ public class DomibusQuartzStarter {
         this.scheduler = scheduler;
     }
 
+    /** node scheduler's setter */
+    public void setNodeScheduler(Scheduler nodeScheduler) {
+        this.nodeScheduler = nodeScheduler;
+    }
+
+    /**
+     * deletes from the clustered scheduler the jobs of the node scheduler, which are still persisted in the {@code QRTZ_*} tables
+     * by the previous versions
+     *
+     * @throws SchedulerException Quartz scheduler exception
+     */
+    protected void deleteNodeJobsFromScheduler() throws SchedulerException {
+        for (String groupName : nodeScheduler.getJobGroupNames()) {
+            for (JobKey jobKey : nodeScheduler.getJobKeys(GroupMatcher.jobGroupEquals(groupName))) {
+                if (scheduler.checkExists(jobKey)) {
+                    scheduler.deleteJob(jobKey);
+                    LOG.info("DELETED Quartz job: " + jobKey.getName() + " from group: " + jobKey.getGroup() + " now executed by the node scheduler");
+                }
+            }
+        }
+    }
+
 
     /**
      * goes through scheduler jobs and check for {@code ClassNotFoundException}
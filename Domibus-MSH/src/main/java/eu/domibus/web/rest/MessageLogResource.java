@@ -5,8 +5,9 @@ import eu.domibus.common.MSHRole;
 import eu.domibus.common.MessageStatus;
 import eu.domibus.common.NotificationStatus;
 import eu.domibus.common.dao.SignalMessageLogDao;
-import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.MessageLogInfo;
+import eu.domibus.common.model.logging.MessageLogInfoPage;
+import eu.domibus.common.services.MessagesLogService;
 import eu.domibus.ebms3.common.model.MessageType;
 import eu.domibus.web.rest.ro.MessageLogRO;
 import eu.domibus.web.rest.ro.MessageLogResultRO;
@@ -37,10 +38,10 @@ public class MessageLogResource {
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageLogResource.class);
 
     @Autowired
-    private UserMessageLogDao userMessageLogDao;
+    private SignalMessageLogDao signalMessageLogDao;
 
     @Autowired
-    private SignalMessageLogDao signalMessageLogDao;
+    private MessagesLogService messagesLogService;
 
     @Autowired
     DateUtil dateUtil;
@@ -112,10 +113,11 @@ public class MessageLogResource {
             resultList = signalMessageLogDao.findAllInfoPaged(pageSize * page, pageSize, column, asc, filters);
 
         } else if (messageType == MessageType.USER_MESSAGE) {
-            int numberOfUserMessageLogs = userMessageLogDao.countAllInfo(asc, filters);
-            LOGGER.debug("count User Messages Logs [{}]", numberOfUserMessageLogs);
-            result.setCount(numberOfUserMessageLogs);
-            resultList = userMessageLogDao.findAllInfoPaged(pageSize * page, pageSize, column, asc, filters);
+            //the user messages are read from the message tables and from the archive
+            MessageLogInfoPage userMessageLogs = messagesLogService.findUserMessageInfos(pageSize * page, pageSize, column, asc, filters);
+            LOGGER.debug("count User Messages Logs [{}]", userMessageLogs.getCount());
+            result.setCount(userMessageLogs.getCount());
+            resultList = userMessageLogs.getMessageLogInfos();
         }
         //needed here because the info is not needed for the queries but is used by the gui as the filter is returned with
         //the result. Why??.
@@ -0,0 +1,40 @@
+package eu.domibus.web.rest;
+
+import eu.domibus.common.services.impl.MessageRetentionService;
+import eu.domibus.core.retention.RetentionMetricsService;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import eu.domibus.web.rest.ro.RetentionReportRO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Reports the metrics of the last retention cycles of this node and what the next cycles would delete, without
+ * deleting anything.
+ *
+ * @since 3.3.3
+ */
+@RestController
+@RequestMapping(value = "/rest/retention")
+public class RetentionResource {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(RetentionResource.class);
+
+    @Autowired
+    private MessageRetentionService messageRetentionService;
+
+    @Autowired
+    private RetentionMetricsService retentionMetricsService;
+
+    @RequestMapping(value = "report", method = RequestMethod.GET)
+    public RetentionReportRO getReport() {
+        LOG.debug("Getting the retention report");
+        final RetentionReportRO result = new RetentionReportRO();
+        result.setPlans(messageRetentionService.planRetention());
+        result.setCycles(retentionMetricsService.getCycles());
+        result.setDeletionRate(retentionMetricsService.getDeletionRate());
+        return result;
+    }
+}
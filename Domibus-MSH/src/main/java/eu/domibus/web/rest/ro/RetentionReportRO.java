@@ -0,0 +1,42 @@
+package eu.domibus.web.rest.ro;
+
+import eu.domibus.core.retention.RetentionCycle;
+import eu.domibus.core.retention.RetentionMpcPlan;
+
+import java.util.List;
+
+/**
+ * @since 3.3.3
+ */
+public class RetentionReportRO {
+
+    private List<RetentionMpcPlan> plans;
+
+    private List<RetentionCycle> cycles;
+
+    private double deletionRate;
+
+    public List<RetentionMpcPlan> getPlans() {
+        return plans;
+    }
+
+    public void setPlans(List<RetentionMpcPlan> plans) {
+        this.plans = plans;
+    }
+
+    public List<RetentionCycle> getCycles() {
+        return cycles;
+    }
+
+    public void setCycles(List<RetentionCycle> cycles) {
+        this.cycles = cycles;
+    }
+
+    public double getDeletionRate() {
+        return deletionRate;
+    }
+
+    public void setDeletionRate(double deletionRate) {
+        this.deletionRate = deletionRate;
+    }
+}
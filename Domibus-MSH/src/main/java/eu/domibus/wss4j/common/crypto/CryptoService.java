@@ -28,6 +28,11 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Christian Koch, Stefan Mueller, Federico Martini
@@ -37,6 +42,8 @@ public class CryptoService {
 
     private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(CryptoService.class);
 
+    protected static final String DYNAMIC_DISCOVERY_TRUSTSTORE_PERSIST = "domibus.dynamic.discovery.truststore.persist";
+
     @Resource(name = "trustStoreProperties")
     private Properties trustStoreProperties;
 
@@ -47,62 +54,174 @@ public class CryptoService {
     @Autowired
     private JmsOperations jmsOperations;
 
-    private KeyStore trustStore;
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor executor;
+
+    @Autowired
+    @Qualifier("domibusProperties")
+    private Properties domibusProperties;
+
+    private volatile KeyStore trustStore;
 
     private KeyStore keyStore;
 
     private Object kestoreLock = new Object();
 
-    public synchronized KeyStore getTrustStore() {
-        if (trustStore == null) {
-            try {
-                trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                loadTrustStore();
-            } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException | WSSecurityException e) {
-                LOG.error("Error while initializing trustStore", e);
+    private final Object trustStoreLock = new Object();
+
+    private final Object trustStoreFileLock = new Object();
+
+    /**
+     * Certificates added at runtime (i.e. by the dynamic discovery) indexed by alias. It is used to detect without
+     * touching the truststore whether a certificate is already known and unchanged.
+     */
+    private final ConcurrentMap<String, X509Certificate> discoveredCertificates = new ConcurrentHashMap<>();
+
+    /**
+     * The number of certificates added to the in-memory truststore and not yet written to the truststore file.
+     */
+    private final AtomicInteger pendingCertificates = new AtomicInteger();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    public KeyStore getTrustStore() {
+        KeyStore result = trustStore;
+        if (result == null) {
+            synchronized (trustStoreLock) {
+                if (trustStore == null) {
+                    try {
+                        loadTrustStore();
+                    } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException | WSSecurityException e) {
+                        LOG.error("Error while initializing trustStore", e);
+                    }
+                }
+                result = trustStore;
             }
         }
-        return trustStore;
+        return result;
     }
 
     /**
-     * Adds the certificate to the trustStore
+     * Adds the certificate to the trustStore. The in-memory truststore is updated immediately. When
+     * {@value #DYNAMIC_DISCOVERY_TRUSTSTORE_PERSIST} is enabled the truststore file is written asynchronously as well,
+     * several additions being coalesced into a single write.
      *
      * @param certificate the certificate to add
      * @param alias       the certifictae alias
      * @param overwrite   if {@value true} existing entries will be replaced
-     * @return {@value true} if added, else {@value false}
+     * @return {@value true} if added, else {@value false} (also when the same certificate is already present under the alias)
      */
     public boolean addCertificate(final X509Certificate certificate, final String alias, final boolean overwrite) {
-        boolean containsAlias;
+        final X509Certificate knownCertificate = discoveredCertificates.get(alias);
+        if (certificate.equals(knownCertificate)) {
+            LOG.debug("Certificate [{}] is already present in the truststore", alias);
+            return false;
+        }
+        final KeyStore currentTrustStore = getTrustStore();
         try {
-            containsAlias = getTrustStore().containsAlias(alias);
+            final Certificate trustedCertificate = currentTrustStore.getCertificate(alias);
+            if (certificate.equals(trustedCertificate)) {
+                discoveredCertificates.put(alias, certificate);
+                return false;
+            }
+            if (trustedCertificate != null && !overwrite) {
+                return false;
+            }
         } catch (final KeyStoreException e) {
             throw new ConfigurationException("Error while trying to get the alias from the truststore. This should never happen", e);
         }
-        if (containsAlias && !overwrite) {
-            return false;
-        }
         try {
-            if (containsAlias) {
-                getTrustStore().deleteEntry(alias);
-            }
-            getTrustStore().setCertificateEntry(alias, certificate);
-            return true;
+            currentTrustStore.setCertificateEntry(alias, certificate);
         } catch (final KeyStoreException e) {
             throw new ConfigurationException(e);
         }
+        discoveredCertificates.put(alias, certificate);
+        if (isPersistDiscoveredCertificates()) {
+            pendingCertificates.incrementAndGet();
+            scheduleTrustStoreFlush();
+        }
+        return true;
     }
 
-    private void loadTrustStore() throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException, WSSecurityException {
-        if (trustStore == null) {
-            trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    /**
+     * Returns the certificate added at runtime under the given alias without accessing the truststore.
+     *
+     * @param alias the certificate alias
+     * @return the certificate or {@code null} if no certificate was added under this alias
+     */
+    public X509Certificate getDiscoveredCertificate(final String alias) {
+        return discoveredCertificates.get(alias);
+    }
+
+    protected boolean isPersistDiscoveredCertificates() {
+        return "true".equals(domibusProperties.getProperty(DYNAMIC_DISCOVERY_TRUSTSTORE_PERSIST, "false"));
+    }
+
+    protected void scheduleTrustStoreFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushTrustStore();
+                }
+            });
         }
+    }
+
+    /**
+     * Writes to the truststore file all the certificates added since the previous write.
+     */
+    protected void flushTrustStore() {
+        // certificates added from now on will trigger a new flush
+        flushScheduled.set(false);
+        synchronized (trustStoreFileLock) {
+            final int batchSize = pendingCertificates.getAndSet(0);
+            if (batchSize == 0) {
+                LOG.debug("No pending certificates to write in the truststore");
+                return;
+            }
+            LOG.debug("Writing [{}] added certificate(s) to the truststore file", batchSize);
+            try {
+                persistTrustStore();
+            } catch (KeyStoreException | CertificateException | NoSuchAlgorithmException | IOException e) {
+                LOG.error("Error while writing the truststore file", e);
+                pendingCertificates.addAndGet(batchSize);
+            }
+        }
+    }
+
+    private void persistTrustStore() throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+        String trustStoreFilename = trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.file");
+        String trustStorePassword = trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.password");
+        final File trustStoreFile = new File(trustStoreFilename);
+        final File temporaryFile = new File(trustStoreFile.getPath() + ".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile)) {
+            getTrustStore().store(fileOutputStream, trustStorePassword.toCharArray());
+        }
+        if (!temporaryFile.renameTo(trustStoreFile)) {
+            FileUtils.copyFile(temporaryFile, trustStoreFile);
+            FileUtils.deleteQuietly(temporaryFile);
+        }
+    }
+
+    /**
+     * Loads the truststore file in a new instance, which replaces the current one only once fully loaded: the readers
+     * of the truststore never see an uninitialized or partially loaded instance.
+     */
+    private void loadTrustStore() throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException, WSSecurityException {
         LOG.info("Initiating truststore");
         String trustStoreFilename = trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.file");
         String trustStorePassword = trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.password");
-        try (final FileInputStream strustStoreStream = new FileInputStream(trustStoreFilename)) {
-            trustStore.load(strustStoreStream, trustStorePassword.toCharArray());
+        final KeyStore loadedTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        synchronized (trustStoreFileLock) {
+            try (final FileInputStream strustStoreStream = new FileInputStream(trustStoreFilename)) {
+                loadedTrustStore.load(strustStoreStream, trustStorePassword.toCharArray());
+            }
+            trustStore = loadedTrustStore;
+            // the certificates added before the reload are gone from the in-memory truststore
+            discoveredCertificates.clear();
+            pendingCertificates.set(0);
         }
     }
 
@@ -128,9 +247,6 @@ public class CryptoService {
     @Transactional(propagation = Propagation.REQUIRED)
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public void replaceTruststore(byte[] store, String password) throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
-        if (trustStore == null) {
-            trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-        }
         String trustStoreFileValue = trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.file");
         File trustStoreFile = new File(trustStoreFileValue);
         if (!trustStoreFile.getParentFile().exists()) {
@@ -139,15 +255,21 @@ public class CryptoService {
         }
 
         LOG.debug("Replacing the existing truststore file [" + trustStoreFileValue + "] with the provided one");
-        FileOutputStream fileOutputStream = null;
-        try (ByteArrayInputStream newTrustStoreBytes = new ByteArrayInputStream(store)) {
-            validateLoadOperation(newTrustStoreBytes, password);
-            fileOutputStream = new FileOutputStream(trustStoreFile);
-            trustStore.load(newTrustStoreBytes, password.toCharArray());
-            trustStore.store(fileOutputStream, trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.password").toCharArray());
-        } finally {
-            if (fileOutputStream != null) {
-                fileOutputStream.close();
+        synchronized (trustStoreFileLock) {
+            FileOutputStream fileOutputStream = null;
+            try (ByteArrayInputStream newTrustStoreBytes = new ByteArrayInputStream(store)) {
+                validateLoadOperation(newTrustStoreBytes, password);
+                fileOutputStream = new FileOutputStream(trustStoreFile);
+                final KeyStore newTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                newTrustStore.load(newTrustStoreBytes, password.toCharArray());
+                newTrustStore.store(fileOutputStream, trustStoreProperties.getProperty("org.apache.ws.security.crypto.merlin.trustStore.password").toCharArray());
+                trustStore = newTrustStore;
+                discoveredCertificates.clear();
+                pendingCertificates.set(0);
+            } finally {
+                if (fileOutputStream != null) {
+                    fileOutputStream.close();
+                }
             }
         }
 
@@ -212,4 +334,8 @@ public class CryptoService {
         this.keystoreProperties = keystoreProperties;
     }
 
+    void setDomibusProperties(Properties domibusProperties) {
+        this.domibusProperties = domibusProperties;
+    }
+
 }
@@ -4,11 +4,13 @@ package eu.domibus.wss4j.common.crypto;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
 import eu.domibus.spring.SpringContextProvider;
+import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.springframework.beans.factory.annotation.Configurable;
 
 import java.io.IOException;
+import java.security.cert.X509Certificate;
 import java.util.Properties;
 
 /**
@@ -28,4 +30,18 @@ public class Merlin extends org.apache.wss4j.common.crypto.Merlin {
         LOG.debug("Merlin crypto successfully initialized");
     }
 
+    /**
+     * Serves the alias lookups of the certificates added at runtime (i.e. by the dynamic discovery) without accessing the truststore.
+     */
+    @Override
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        if (cryptoType != null && cryptoType.getType() == CryptoType.TYPE.ALIAS) {
+            final X509Certificate discoveredCertificate = cryptoService.getDiscoveredCertificate(cryptoType.getAlias());
+            if (discoveredCertificate != null) {
+                return new X509Certificate[]{discoveredCertificate};
+            }
+        }
+        return super.getX509Certificates(cryptoType);
+    }
+
 }
@@ -17,6 +17,7 @@ import org.springframework.jms.core.JmsOperations;
 import javax.persistence.EntityManager;
 import javax.xml.bind.JAXBContext;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * @author Cosmin Baciu
@@ -43,6 +44,9 @@ public class PModeDaoTest {
     @Injectable
     protected ProcessDao processDao;
 
+    @Injectable
+    private Executor taskExecutor;
+
     @Tested(fullyInitialized = true)
     private PModeDao pModeDao;
 
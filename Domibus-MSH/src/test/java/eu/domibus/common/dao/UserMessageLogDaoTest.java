@@ -0,0 +1,262 @@
+package eu.domibus.common.dao;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import eu.domibus.InMemoryDataBaseConfig;
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.NotificationStatus;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.common.model.logging.UserMessageLogInfoFilter;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.ebms3.common.model.MessageInfo;
+import eu.domibus.logging.DomibusLogger;
+import eu.domibus.logging.DomibusLoggerFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {InMemoryDataBaseConfig.class,
+        UserMessageLogDaoTest.UserMessageLogDaoConfig.class})
+public class UserMessageLogDaoTest {
+
+    private static final DomibusLogger LOG = DomibusLoggerFactory.getLogger(UserMessageLogDaoTest.class);
+
+    private static final int EXPIRED_MESSAGES = 5000;
+
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    @Configuration
+    static public class UserMessageLogDaoConfig {
+
+        @Bean
+        public UserMessageLogDao userMessageLogDao() {
+            return new UserMessageLogDao();
+        }
+
+        @Bean
+        public UserMessageLogInfoFilter userMessageLogInfoFilter() {
+            return new UserMessageLogInfoFilter();
+        }
+    }
+
+    @PersistenceContext
+    private javax.persistence.EntityManager em;
+
+    @Autowired
+    private UserMessageLogDao userMessageLogDao;
+
+    @Test
+    @Transactional
+    public void setTimedoutMessagesAsSendFailure() throws Exception {
+        createMessageLog("expired", MessageStatus.WAITING_FOR_RETRY);
+        createMessageLog("acknowledged", MessageStatus.ACKNOWLEDGED);
+
+        final int failed = userMessageLogDao.setTimedoutMessagesAsSendFailure(Arrays.asList("expired", "acknowledged"));
+        em.clear();
+
+        assertEquals(1, failed);
+        final UserMessageLog expired = userMessageLogDao.findByMessageId("expired", MSHRole.SENDING);
+        assertEquals(MessageStatus.SEND_FAILURE, expired.getMessageStatus());
+        assertNotNull(expired.getFailed());
+        assertNull(expired.getNextAttempt());
+        assertEquals(MessageStatus.ACKNOWLEDGED, userMessageLogDao.findByMessageId("acknowledged", MSHRole.SENDING).getMessageStatus());
+    }
+
+    @Test
+    @Transactional
+    public void findByMessageIdsForUpdateThenSetTimedoutMessagesAsSendFailure() throws Exception {
+        createMessageLog("expired", MessageStatus.WAITING_FOR_RETRY);
+        createMessageLog("acknowledged", MessageStatus.ACKNOWLEDGED);
+        em.flush();
+        em.clear();
+
+        final List<UserMessageLog> locked = userMessageLogDao.findByMessageIdsForUpdate(Arrays.asList("expired", "acknowledged"), MSHRole.SENDING);
+        assertEquals(2, locked.size());
+
+        assertEquals(1, userMessageLogDao.setTimedoutMessagesAsSendFailure(Arrays.asList("expired", "acknowledged")));
+        // the locked logs keep the status read before the update
+        for (UserMessageLog userMessageLog : locked) {
+            assertTrue(userMessageLog.getMessageStatus() != MessageStatus.SEND_FAILURE);
+        }
+    }
+
+    @Test
+    @Transactional
+    public void findByMessageIdsAndSetAsNotified() throws Exception {
+        createMessageLog("1", MessageStatus.WAITING_FOR_RETRY);
+        createMessageLog("2", MessageStatus.WAITING_FOR_RETRY);
+
+        assertEquals(2, userMessageLogDao.findByMessageIds(Arrays.asList("1", "2", "3"), MSHRole.SENDING).size());
+        assertEquals(0, userMessageLogDao.findByMessageIds(Arrays.asList("1", "2"), MSHRole.RECEIVING).size());
+
+        userMessageLogDao.setAsNotified(Arrays.asList("1", "2"));
+        em.clear();
+
+        for (UserMessageLog userMessageLog : userMessageLogDao.findByMessageIds(Arrays.asList("1", "2"), MSHRole.SENDING)) {
+            assertEquals(NotificationStatus.NOTIFIED, userMessageLog.getNotificationStatus());
+        }
+    }
+
+    @Test
+    @Transactional
+    public void bulkExpiryThroughput() throws Exception {
+        final List<String> messageIds = new ArrayList<>();
+        for (int i = 0; i < EXPIRED_MESSAGES; i++) {
+            final String messageId = "expired-" + i;
+            createMessageLog(messageId, MessageStatus.WAITING_FOR_RETRY);
+            messageIds.add(messageId);
+        }
+        em.flush();
+        em.clear();
+
+        long start = System.currentTimeMillis();
+        int failed = 0;
+        for (List<String> chunk : Lists.partition(messageIds, PURGE_BATCH_SIZE)) {
+            userMessageLogDao.findByMessageIds(chunk, MSHRole.SENDING);
+            userMessageLogDao.setAsNotified(chunk);
+            failed += userMessageLogDao.setTimedoutMessagesAsSendFailure(chunk);
+        }
+        final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        LOG.info("Expired [{}] messages in [{}] ms: [{}] messages/s", failed, elapsed, failed * 1000L / elapsed);
+
+        assertEquals(EXPIRED_MESSAGES, failed);
+        assertEquals(0, userMessageLogDao.findTimedoutMessages(0).size());
+    }
+
+    @Test
+    @Transactional
+    public void findTimedoutMessagesByShard() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            createMessageLog("sharded-" + i, MessageStatus.WAITING_FOR_RETRY);
+        }
+
+        final List<String> shard0 = userMessageLogDao.findTimedoutMessages(0, new ClusterShard(0, 2));
+        final List<String> shard1 = userMessageLogDao.findTimedoutMessages(0, new ClusterShard(1, 2));
+
+        assertEquals(10, shard0.size() + shard1.size());
+        assertTrue(Collections.disjoint(shard0, shard1));
+        assertEquals(10, userMessageLogDao.findTimedoutMessages(0, ClusterShard.ALL).size());
+    }
+
+    @Test
+    @Transactional
+    public void findExpiredUndownloadedUserMessagesInChunksAndSetAsDeleted() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            createMessageLog("received-" + i, MessageStatus.RECEIVED).setMpc("mpc");
+        }
+        createMessageLog("other-mpc", MessageStatus.RECEIVED).setMpc("other");
+        em.flush();
+        final Date olderThan = new Date(System.currentTimeMillis() + 60000);
+
+        final List<ExpiredMessageDto> firstChunk = userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, "mpc", ClusterShard.ALL, 0, 3);
+        final List<ExpiredMessageDto> secondChunk = userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, "mpc", ClusterShard.ALL, firstChunk.get(2).getEntityId(), 3);
+
+        assertEquals(3, firstChunk.size());
+        assertEquals(2, secondChunk.size());
+        assertTrue(firstChunk.get(2).getEntityId() < secondChunk.get(0).getEntityId());
+
+        final List<String> messageIds = new ArrayList<>();
+        for (ExpiredMessageDto expiredMessage : Iterables.concat(firstChunk, secondChunk)) {
+            messageIds.add(expiredMessage.getMessageId());
+        }
+        assertEquals(5, userMessageLogDao.setMessagesAsDeleted(messageIds));
+        em.clear();
+
+        assertEquals(0, userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, "mpc", ClusterShard.ALL, 0, 3).size());
+        final UserMessageLog deleted = userMessageLogDao.findByMessageId("received-0", MSHRole.SENDING);
+        assertEquals(MessageStatus.DELETED, deleted.getMessageStatus());
+        assertNotNull(deleted.getDeleted());
+        assertEquals(MessageStatus.RECEIVED, userMessageLogDao.findByMessageId("other-mpc", MSHRole.SENDING).getMessageStatus());
+    }
+
+    @Test
+    @Transactional
+    public void findMpcsAndCountMessagesReceivedBetween() throws Exception {
+        createMessageLog("received", MessageStatus.RECEIVED).setMpc("mpc1");
+        createMessageLog("retried", MessageStatus.WAITING_FOR_RETRY).setMpc("mpc1");
+        final UserMessageLog downloaded = createMessageLog("downloaded", MessageStatus.DOWNLOADED);
+        downloaded.setMpc("mpc2");
+        downloaded.setDownloaded(new Date());
+        em.flush();
+        final Date from = new Date(System.currentTimeMillis() - 60000);
+        final Date to = new Date(System.currentTimeMillis() + 60000);
+
+        assertEquals(new HashSet<>(Arrays.asList("mpc1", "mpc2")), new HashSet<>(userMessageLogDao.findMpcsReceivedBetween(from, to)));
+        assertTrue(userMessageLogDao.findMpcsReceivedBetween(to, new Date(to.getTime() + 60000)).isEmpty());
+        assertEquals(1, userMessageLogDao.countReceivedBetweenNotInStatuses(from, to, Arrays.asList(MessageStatus.RECEIVED, MessageStatus.DOWNLOADED)));
+        assertEquals(1, userMessageLogDao.countReceivedBetweenDownloadedAfter("mpc2", from, to, from));
+        assertEquals(0, userMessageLogDao.countReceivedBetweenDownloadedAfter("mpc1", from, to, from));
+    }
+
+    @Test
+    @Transactional
+    public void leaseReadyToPullMessages() throws Exception {
+        for (String messageId : Arrays.asList("1", "2", "3")) {
+            final UserMessageLog userMessageLog = createMessageLog(messageId, MessageStatus.READY_TO_PULL);
+            userMessageLog.setMpc("mpc");
+            userMessageLog.setReceiver("RED_GW");
+        }
+        createMessageLog("pulled", MessageStatus.BEING_PULLED).setMpc("mpc");
+        em.flush();
+        final Date leaseExpiry = new Date(System.currentTimeMillis() + 60000);
+
+        final List<Integer> leased = userMessageLogDao.leaseReadyToPullMessages("mpc", Arrays.asList("RED_GW"), leaseExpiry, 2);
+        assertEquals(2, leased.size());
+        // the leased messages are skipped until their lease expires
+        final List<Integer> leasedLeft = userMessageLogDao.leaseReadyToPullMessages("mpc", Arrays.asList("RED_GW"), leaseExpiry, 2);
+        assertEquals(1, leasedLeft.size());
+        assertTrue(userMessageLogDao.leaseReadyToPullMessages("mpc", Arrays.asList("RED_GW"), leaseExpiry, 2).isEmpty());
+        em.clear();
+
+        for (Integer entityId : leased) {
+            final UserMessageLog userMessageLog = em.find(UserMessageLog.class, entityId);
+            assertEquals(MessageStatus.READY_TO_PULL, userMessageLog.getMessageStatus());
+            assertNotNull(userMessageLog.getPullLease());
+        }
+        assertNotNull(userMessageLogDao.claimLeasedMessage(leasedLeft.get(0)));
+        assertNull(userMessageLogDao.claimLeasedMessage(leasedLeft.get(0)));
+    }
+
+    private UserMessageLog createMessageLog(String messageId, MessageStatus messageStatus) {
+        MessageInfo messageInfo = new MessageInfo();
+        messageInfo.setMessageId(messageId);
+        messageInfo.setTimestamp(new Date());
+        em.persist(messageInfo);
+
+        UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setMessageId(messageId);
+        userMessageLog.setMessageStatus(messageStatus);
+        userMessageLog.setNotificationStatus(NotificationStatus.REQUIRED);
+        userMessageLog.setMshRole(MSHRole.SENDING);
+        userMessageLog.setReceived(new Date());
+        userMessageLog.setSendAttempts(1);
+        userMessageLog.setSendAttemptsMax(3);
+        userMessageLog.setNextAttempt(new Date(System.currentTimeMillis() - 60000));
+        userMessageLogDao.create(userMessageLog);
+        return userMessageLog;
+    }
+}
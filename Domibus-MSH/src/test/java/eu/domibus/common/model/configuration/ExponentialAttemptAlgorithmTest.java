@@ -0,0 +1,133 @@
+package eu.domibus.common.model.configuration;
+
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.integration.junit4.JMockit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class ExponentialAttemptAlgorithmTest {
+
+    private static final long SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 = 1451602800000L;
+    private static final long ONE_MINUTE = 60000L;
+
+    private RetryStrategy.ProgressiveAttemptAlgorithm exponential = (RetryStrategy.ProgressiveAttemptAlgorithm) RetryStrategy.EXPONENTIAL.getAlgorithm();
+    private RetryStrategy.ProgressiveAttemptAlgorithm exponentialJitter = (RetryStrategy.ProgressiveAttemptAlgorithm) RetryStrategy.EXPONENTIAL_JITTER.getAlgorithm();
+
+    @Test
+    public void compute_NegativeMaxAttempts_ReturnNull() {
+        Assert.assertNull(exponential.compute(new Date(), 1, -1, 20, RetryStrategy.Backoff.DEFAULT));
+        Assert.assertNull(exponentialJitter.compute(new Date(), 1, -1, 20, RetryStrategy.Backoff.DEFAULT));
+    }
+
+    @Test
+    public void compute_NullForDate_ReturnNull() {
+        Assert.assertNull(exponential.compute(null, 1, 2, 1, RetryStrategy.Backoff.DEFAULT));
+    }
+
+    @Test
+    public void compute_TimeoutReached_ReturnNull() {
+        new SystemMockFirstOfJanuary2016();
+
+        Assert.assertNull(exponential.compute(new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 - 13 * ONE_MINUTE), 1, 4, 12, RetryStrategy.Backoff.DEFAULT));
+    }
+
+    @Test
+    public void getExponentialDelay_DerivedBase_AttemptsFitInTheTimeout() {
+        // 12 minutes for 4 attempts: 48s, 96s, 192s and 384s
+        long total = 0;
+        long previous = 0;
+        for (int sendAttempts = 1; sendAttempts <= 4; sendAttempts++) {
+            final long delay = RetryStrategy.getExponentialDelay(sendAttempts, 4, 12, RetryStrategy.Backoff.DEFAULT);
+            if (previous > 0) {
+                Assert.assertEquals(2 * previous, delay);
+            }
+            previous = delay;
+            total += delay;
+        }
+        Assert.assertEquals(48000L, RetryStrategy.getExponentialDelay(1, 4, 12, RetryStrategy.Backoff.DEFAULT));
+        Assert.assertEquals(12 * ONE_MINUTE, total);
+    }
+
+    @Test
+    public void getExponentialDelay_ConfiguredBaseAndCap() {
+        final RetryStrategy.Backoff backoff = new RetryStrategy.Backoff(1000, 10000);
+
+        Assert.assertEquals(1000L, RetryStrategy.getExponentialDelay(1, 10, 60, backoff));
+        Assert.assertEquals(2000L, RetryStrategy.getExponentialDelay(2, 10, 60, backoff));
+        Assert.assertEquals(8000L, RetryStrategy.getExponentialDelay(4, 10, 60, backoff));
+        Assert.assertEquals(10000L, RetryStrategy.getExponentialDelay(5, 10, 60, backoff));
+        Assert.assertEquals(10000L, RetryStrategy.getExponentialDelay(Integer.MAX_VALUE, 10, 60, backoff));
+    }
+
+    @Test
+    public void getExponentialDelay_LargeMaxAttempts_NoOverflow() {
+        final long delay = RetryStrategy.getExponentialDelay(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, RetryStrategy.Backoff.DEFAULT);
+
+        Assert.assertTrue(delay > 0);
+        Assert.assertTrue(delay <= (long) Integer.MAX_VALUE * ONE_MINUTE);
+    }
+
+    @Test
+    public void compute_Exponential_DelayFromNow() {
+        new SystemMockFirstOfJanuary2016();
+        final Date scheduledStart = new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 - ONE_MINUTE);
+
+        final Date nextAttempt = exponential.compute(scheduledStart, 2, 4, 12, RetryStrategy.Backoff.DEFAULT);
+
+        Assert.assertEquals(new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 + 96000), nextAttempt);
+    }
+
+    @Test
+    public void compute_Exponential_LastAttemptAtTheTimeout() {
+        new SystemMockFirstOfJanuary2016();
+        final Date scheduledStart = new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 - 11 * ONE_MINUTE);
+
+        final Date nextAttempt = exponential.compute(scheduledStart, 4, 4, 12, RetryStrategy.Backoff.DEFAULT);
+
+        Assert.assertEquals(new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 + ONE_MINUTE), nextAttempt);
+    }
+
+    @Test
+    public void compute_ExponentialJitter_AttemptsSpreadOverTheDelay() {
+        new SystemMockFirstOfJanuary2016();
+        final Date scheduledStart = new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016);
+        final long maxDelay = 192000;
+        final int samples = 2000;
+
+        final Set<Long> distinctDelays = new HashSet<>();
+        long total = 0;
+        int firstHalf = 0;
+        for (int i = 0; i < samples; i++) {
+            final long delay = exponentialJitter.compute(scheduledStart, 3, 4, 12, RetryStrategy.Backoff.DEFAULT).getTime() - SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016;
+            Assert.assertTrue("delay [" + delay + "] out of bounds", delay >= 0 && delay <= maxDelay);
+            distinctDelays.add(delay);
+            total += delay;
+            if (delay < maxDelay / 2) {
+                firstHalf++;
+            }
+        }
+
+        // uniformly distributed between 0 and the exponential delay
+        Assert.assertTrue(distinctDelays.size() > samples / 2);
+        final long mean = total / samples;
+        Assert.assertTrue("mean delay [" + mean + "]", Math.abs(mean - maxDelay / 2) < maxDelay / 10);
+        Assert.assertTrue("first half [" + firstHalf + "]", Math.abs(firstHalf - samples / 2) < samples / 10);
+    }
+
+    private static class SystemMockFirstOfJanuary2016 extends MockUp<System> {
+        @Mock
+        public static long currentTimeMillis() {
+            return SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016;
+        }
+    }
+}
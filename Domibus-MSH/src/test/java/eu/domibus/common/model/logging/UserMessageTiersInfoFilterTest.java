@@ -0,0 +1,100 @@
+package eu.domibus.common.model.logging;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.ebms3.common.model.MessageType;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class UserMessageTiersInfoFilterTest {
+
+    @Tested
+    UserMessageTiersInfoFilter userMessageTiersInfoFilter;
+
+    @Test
+    public void testFilterUserMessageTiersQuerySortsBothTiersInTheDatabase() {
+        final HashMap<String, Object> filters = new HashMap<>();
+        filters.put("fromPartyId", "domibus-blue");
+        filters.put("receivedFrom", new Date());
+        filters.put("messageStatus", null);
+
+        final String query = userMessageTiersInfoFilter.filterUserMessageTiersQuery("fromPartyId", false, filters);
+
+        assertTrue(query.contains(" UNION ALL "));
+        assertTrue(query.contains("partyFrom.VALUE = :fromPartyId"));
+        assertTrue(query.contains("log.FROM_PARTY_ID = :fromPartyId"));
+        assertTrue(query.contains("log.RECEIVED >= :receivedFrom"));
+        assertFalse(query.contains(":messageStatus"));
+        assertTrue(query.endsWith(" ORDER BY FROM_PARTY_ID DESC, TIER, ENTITY_ID"));
+    }
+
+    @Test
+    public void testFilterUserMessageTiersQueryWithoutSortableColumn() {
+        final String query = userMessageTiersInfoFilter.filterUserMessageTiersQuery("unknown", true, new HashMap<String, Object>());
+
+        assertTrue(query.endsWith(" ORDER BY TIER, ENTITY_ID"));
+    }
+
+    @Test
+    public void testApplyParametersBindsTheEnumNamesAndTheDates(@Injectable final Query query) {
+        final Date receivedTo = new Date();
+        final HashMap<String, Object> filters = new HashMap<>();
+        filters.put("mshRole", MSHRole.SENDING);
+        filters.put("receivedTo", receivedTo);
+        filters.put("messageId", "");
+
+        userMessageTiersInfoFilter.applyParameters(query, filters);
+
+        new Verifications() {{
+            query.setParameter("mshRole", "SENDING");
+            query.setParameter("receivedTo", receivedTo, TemporalType.TIMESTAMP);
+            query.setParameter("messageId", any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testToMessageLogInfos() {
+        final Timestamp received = new Timestamp(1000L);
+        final Object[] row = {BigDecimal.ONE, BigDecimal.ZERO, "messageId", "ACKNOWLEDGED", null, "SENDING", "USER_MESSAGE",
+                null, received, BigDecimal.ONE, new BigDecimal(5), null, "conversationId", "from", "to", "sender", "recipient", null, null, null};
+
+        final List<MessageLogInfo> infos = userMessageTiersInfoFilter.toMessageLogInfos(Collections.singletonList(row));
+
+        assertEquals(1, infos.size());
+        final MessageLogInfo info = infos.get(0);
+        assertEquals("messageId", info.getMessageId());
+        assertEquals(MessageStatus.ACKNOWLEDGED, info.getMessageStatus());
+        assertNull(info.getNotificationStatus());
+        assertEquals(MSHRole.SENDING, info.getMshRole());
+        assertEquals(MessageType.USER_MESSAGE, info.getMessageType());
+        assertEquals(received, info.getReceived());
+        assertEquals(1, info.getSendAttempts());
+        assertEquals(5, info.getSendAttemptsMax());
+        assertEquals("conversationId", info.getConversationId());
+        assertEquals("from", info.getFromPartyId());
+        assertEquals("recipient", info.getFinalRecipient());
+    }
+}
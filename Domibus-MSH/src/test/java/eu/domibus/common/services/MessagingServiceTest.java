@@ -2,16 +2,21 @@ package eu.domibus.common.services;
 
 import eu.domibus.api.util.xml.XMLUtil;
 import eu.domibus.common.MSHRole;
+import eu.domibus.common.dao.AttachmentDAO;
 import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.exception.CompressionException;
+import eu.domibus.common.model.payload.PayloadContent;
 import eu.domibus.common.services.impl.CompressionService;
 import eu.domibus.common.services.impl.MessagingServiceImpl;
+import eu.domibus.common.services.impl.PayloadCompressor;
 import eu.domibus.configuration.Storage;
+import eu.domibus.core.payload.PayloadContentService;
 import eu.domibus.ebms3.common.model.Messaging;
 import eu.domibus.ebms3.common.model.PartInfo;
 import eu.domibus.ebms3.common.model.Property;
 import eu.domibus.messaging.MessagingUtils;
 import eu.domibus.xml.XMLUtilImpl;
+import mockit.Expectations;
 import mockit.Injectable;
 import mockit.Tested;
 import mockit.Verifications;
@@ -32,6 +37,7 @@ import java.io.*;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * @author Ioana Dragusanu
@@ -54,6 +60,15 @@ public class MessagingServiceTest {
     @Injectable
     Storage storage;
 
+    @Injectable
+    AttachmentDAO attachmentDAO;
+
+    @Injectable
+    PayloadContentService payloadContentService;
+
+    @Injectable
+    PayloadCompressor payloadCompressor;
+
     @Test
     public void testStoreMessageCalls(@Injectable final Messaging messaging) throws IOException, JAXBException, XMLStreamException {
         messagingService.storeMessage(messaging, MSHRole.SENDING);
@@ -66,9 +81,13 @@ public class MessagingServiceTest {
 
     @Test
     public void testStoreValidMessage() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
-        PartInfo partInfo = storeValidMessage();
+        final PartInfo partInfo = storeValidMessage();
         byte[] expectedBinaryData = Files.readAllBytes(Paths.get(validContentFilePath));
         Assert.assertEquals(new String(expectedBinaryData), new String(partInfo.getBinaryData()));
+
+        new Verifications() {{
+            attachmentDAO.storeBinaryData(Arrays.asList(partInfo));
+        }};
     }
 
     @Test
@@ -83,14 +102,68 @@ public class MessagingServiceTest {
     @Test
     public void testStoreValidMessageCompressedWithStorageDirectory() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
         messagingService.setStorage(new Storage(new File(STORAGE_PATH)));
+        messagingService.setPayloadCompressor(new PayloadCompressor());
         PartInfo partInfo = storeValidMessage(true);
         byte[] expectedCompressedData = MessagingUtils.compress(validContentFilePath);
         byte[] result = Files.readAllBytes(Paths.get(partInfo.getFileName()));
         Assert.assertEquals(new String(expectedCompressedData), new String(result));
     }
 
+    @Test
+    public void testStoreSmallMessageInDatabaseWithStorageDirectory() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
+        final Storage storage = new Storage(new File(STORAGE_PATH));
+        new Expectations(storage) {{
+            storage.getDatabaseMaxSize();
+            result = 1024;
+        }};
+        messagingService.setStorage(storage);
+
+        PartInfo partInfo = storeValidMessage();
+
+        Assert.assertNull(partInfo.getFileName());
+        byte[] expectedBinaryData = Files.readAllBytes(Paths.get(validContentFilePath));
+        Assert.assertEquals(new String(expectedBinaryData), new String(partInfo.getBinaryData()));
+    }
+
+    @Test
+    public void testStoreLargeMessageToStorageDirectory() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
+        final Storage storage = new Storage(new File(STORAGE_PATH));
+        new Expectations(storage) {{
+            storage.getDatabaseMaxSize();
+            result = 10;
+        }};
+        messagingService.setStorage(storage);
+
+        PartInfo partInfo = storeValidMessage();
+
+        Assert.assertNull(partInfo.getBinaryData());
+        byte[] expectedBinaryData = Files.readAllBytes(Paths.get(validContentFilePath));
+        byte[] result = Files.readAllBytes(Paths.get(partInfo.getFileName()));
+        Assert.assertEquals(new String(expectedBinaryData), new String(result));
+    }
+
+    @Test
+    public void testStoreValidMessageWithDeduplication() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
+        messagingService.setStorage(new Storage(new File(STORAGE_PATH)));
+        final PayloadContent content = new PayloadContent();
+        content.setFilePath("shared.payload");
+        content.setLength(42);
+        new Expectations() {{
+            payloadContentService.isEnabled();
+            result = true;
+            payloadContentService.store((InputStream) any, false);
+            result = content;
+        }};
+
+        PartInfo partInfo = storeValidMessage();
+
+        Assert.assertEquals("shared.payload", partInfo.getFileName());
+        Assert.assertEquals(42, partInfo.getLength());
+    }
+
     @Test
     public void testStoreValidMessageCompressed() throws IOException, JAXBException, XMLStreamException, ParserConfigurationException, SAXException {
+        messagingService.setPayloadCompressor(new PayloadCompressor());
         PartInfo partInfo = storeValidMessage(true);
         byte[] expectedCompressedData = MessagingUtils.compress(validContentFilePath);
         Assert.assertEquals(new String(expectedCompressedData), new String(partInfo.getBinaryData()));
@@ -13,16 +13,17 @@ import eu.domibus.common.dao.MessagingDao;
 import eu.domibus.common.exception.EbMS3Exception;
 import eu.domibus.common.model.configuration.*;
 import eu.domibus.common.model.configuration.Process;
+import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.validators.ProcessValidator;
+import eu.domibus.core.pull.PullFrequencyService;
+import eu.domibus.core.pull.PullMessagePrefetchService;
 import eu.domibus.ebms3.common.context.MessageExchangeConfiguration;
 import eu.domibus.ebms3.common.dao.PModeProvider;
-import eu.domibus.ebms3.common.model.MessagePullDto;
 import eu.domibus.ebms3.common.model.SignalMessage;
 import eu.domibus.ebms3.common.model.UserMessage;
 import eu.domibus.ebms3.sender.EbMS3MessageBuilder;
 import eu.domibus.util.PojoInstaciatorUtil;
 import org.apache.commons.lang3.Validate;
-import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -64,6 +65,12 @@ public class MessageExchangeServiceImplTest {
     @Mock
     private UserMessageLogService messageLogService;
 
+    @Mock
+    private PullMessagePrefetchService pullMessagePrefetchService;
+
+    @Mock
+    private PullFrequencyService pullFrequencyService;
+
     @Spy
     private ProcessValidator processValidator;
 
@@ -137,6 +144,7 @@ public class MessageExchangeServiceImplTest {
     @Test
     public void testInitiatePullRequest() throws Exception {
         when(pModeProvider.isConfigurationLoaded()).thenReturn(true);
+        when(pullFrequencyService.getPullRequestsDue(anyString(), anyString())).thenReturn(1);
         ArgumentCaptor<Map> mapArgumentCaptor= ArgumentCaptor.forClass(Map.class);
         messageExchangeService.initiatePullRequest();
         verify(pModeProvider, times(1)).getGatewayParty();
@@ -151,6 +159,15 @@ public class MessageExchangeServiceImplTest {
         }
     }
 
+    @Test
+    public void testInitiatePullRequestFollowsThePullFrequency() throws Exception {
+        when(pModeProvider.isConfigurationLoaded()).thenReturn(true);
+        when(pullFrequencyService.getPullRequestsDue("qn1", "responder")).thenReturn(3);
+        when(pullFrequencyService.getPullRequestsDue("qn2", "responder")).thenReturn(0);
+        messageExchangeService.initiatePullRequest();
+        verify(jmsPullTemplate, times(3)).convertAndSend(any(Destination.class), any(Map.class), any(MessagePostProcessor.class));
+    }
+
     @Test
     public void testInitiatePullRequestWithoutConfiguration() throws Exception {
         when(pModeProvider.isConfigurationLoaded()).thenReturn(false);
@@ -206,7 +223,7 @@ public class MessageExchangeServiceImplTest {
 
         when(party.getIdentifiers()).thenReturn(identifiers);
 
-        when(messagingDao.findMessagingOnStatusReceiverAndMpc(eq("party1"), eq(MessageStatus.READY_TO_PULL), eq(mpc))).thenReturn(Lists.<MessagePullDto>newArrayList());
+        when(pullMessagePrefetchService.claimReadyToPullMessage(eq(mpc), eq(Lists.newArrayList("PARTY1")))).thenReturn(null);
 
         final String messageId = messageExchangeService.retrieveReadyToPullUserMessageId(mpc, party);
         assertNull(messageId);
@@ -226,8 +243,9 @@ public class MessageExchangeServiceImplTest {
         when(party.getIdentifiers()).thenReturn(identifiers);
 
         final String testMessageId = "testMessageId";
-        final List<MessagePullDto> messagePullDtos = Lists.newArrayList(new MessagePullDto(testMessageId, DateTime.now().toDate()), new MessagePullDto("messageID2", DateTime.now().toDate()));
-        when(messagingDao.findMessagingOnStatusReceiverAndMpc(eq("party1"), eq(MessageStatus.READY_TO_PULL), eq(mpc))).thenReturn(messagePullDtos);
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setMessageId(testMessageId);
+        when(pullMessagePrefetchService.claimReadyToPullMessage(eq(mpc), eq(Lists.newArrayList("PARTY1")))).thenReturn(userMessageLog);
 
         final String messageId = messageExchangeService.retrieveReadyToPullUserMessageId(mpc, party);
         verify(messageLogService, times(1)).setIntermediaryPullStatus(eq(testMessageId));
@@ -1,8 +1,12 @@
 package eu.domibus.common.services.impl;
 
-import eu.domibus.api.usermessage.UserMessageService;
-import eu.domibus.api.util.CollectionUtil;
 import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.core.retention.ExpiredMessageDeleter;
+import eu.domibus.core.retention.RetentionMetricsService;
+import eu.domibus.core.retention.RetentionMpcPlan;
 import eu.domibus.ebms3.common.dao.PModeProvider;
 import mockit.Expectations;
 import mockit.Injectable;
@@ -25,9 +29,6 @@ import java.util.Properties;
 @RunWith(JMockit.class)
 public class MessageRetentionServiceTest {
 
-    @Injectable
-    private CollectionUtil collectionUtil;
-
     @Injectable
     private Properties domibusProperties;
 
@@ -38,7 +39,13 @@ public class MessageRetentionServiceTest {
     private UserMessageLogDao userMessageLogDao;
 
     @Injectable
-    private UserMessageService userMessageService;
+    private ExpiredMessageDeleter expiredMessageDeleter;
+
+    @Injectable
+    private ClusterNodeService clusterNodeService;
+
+    @Injectable
+    private RetentionMetricsService retentionMetricsService;
 
     @Tested
     MessageRetentionService messageRetentionService;
@@ -64,6 +71,10 @@ public class MessageRetentionServiceTest {
 
         new Verifications() {{
             messageRetentionService.deleteExpiredMessages(mpc1, 10, 20);
+            retentionMetricsService.startCycle();
+            times = 1;
+            retentionMetricsService.endCycle();
+            times = 1;
         }};
     }
 
@@ -97,7 +108,7 @@ public class MessageRetentionServiceTest {
         messageRetentionService.deleteExpiredDownloadedMessages(mpc1, 10);
 
         new Verifications() {{
-            userMessageLogDao.getDownloadedUserMessagesOlderThan(withAny(new Date()), anyString);
+            expiredMessageDeleter.deleteChunk(anyString, withAny(new Date()), anyBoolean, (ClusterShard) any, anyInt, anyInt, anyInt);
             times = 0;
         }};
     }
@@ -114,16 +125,13 @@ public class MessageRetentionServiceTest {
         messageRetentionService.deleteExpiredNotDownloadedMessages(mpc1, 10);
 
         new Verifications() {{
-            userMessageLogDao.getUndownloadedUserMessagesOlderThan(withAny(new Date()), anyString);
+            expiredMessageDeleter.deleteChunk(anyString, withAny(new Date()), anyBoolean, (ClusterShard) any, anyInt, anyInt, anyInt);
             times = 0;
         }};
     }
 
     @Test
     public void testDeleteExpiredDownloadedMessages() throws Exception {
-        String id1 = "1";
-        String id2 = "2";
-        final List<String> downloadedMessageIds = Arrays.asList(new String[]{id1, id2});
         final String mpc1 = "mpc1";
         final Integer messagesDeleteLimit = 5;
 
@@ -131,22 +139,15 @@ public class MessageRetentionServiceTest {
             pModeProvider.getRetentionDownloadedByMpcURI(mpc1);
             result = 10;
 
-            userMessageLogDao.getDownloadedUserMessagesOlderThan(withAny(new Date()), mpc1);
-            result = downloadedMessageIds;
+            messageRetentionService.deleteExpiredMessages(mpc1, withAny(new Date()), true, messagesDeleteLimit);
+            result = 2;
         }};
 
         messageRetentionService.deleteExpiredDownloadedMessages(mpc1, messagesDeleteLimit);
-
-        new Verifications() {{
-            messageRetentionService.delete(downloadedMessageIds, messagesDeleteLimit);
-        }};
     }
 
     @Test
     public void testDeleteExpiredNotDownloadedMessages() throws Exception {
-        String id1 = "1";
-        String id2 = "2";
-        final List<String> downloadedMessageIds = Arrays.asList(new String[]{id1, id2});
         final String mpc1 = "mpc1";
         final Integer messagesDeleteLimit = 5;
 
@@ -154,14 +155,146 @@ public class MessageRetentionServiceTest {
             pModeProvider.getRetentionUndownloadedByMpcURI(mpc1);
             result = 10;
 
-            userMessageLogDao.getUndownloadedUserMessagesOlderThan(withAny(new Date()), mpc1);
-            result = downloadedMessageIds;
+            messageRetentionService.deleteExpiredMessages(mpc1, withAny(new Date()), false, messagesDeleteLimit);
+            result = 2;
         }};
 
         messageRetentionService.deleteExpiredNotDownloadedMessages(mpc1, messagesDeleteLimit);
+    }
+
+    @Test
+    public void testDeleteExpiredMessagesInChunks() throws Exception {
+        final String mpc1 = "mpc1";
+        final Date olderThan = new Date();
+
+        new Expectations(messageRetentionService) {{
+            clusterNodeService.getShard();
+            result = ClusterShard.ALL;
+
+            messageRetentionService.getRetentionValue(MessageRetentionService.BATCH_SIZE_PROPERTY, MessageRetentionService.DEFAULT_BATCH_SIZE);
+            result = 2;
+
+            expiredMessageDeleter.deleteChunk(mpc1, olderThan, true, ClusterShard.ALL, 0, 2, 2);
+            result = Arrays.asList(new ExpiredMessageDto(3, "1"), new ExpiredMessageDto(7, "2"));
+
+            expiredMessageDeleter.deleteChunk(mpc1, olderThan, true, ClusterShard.ALL, 7, 2, 2);
+            result = Arrays.asList(new ExpiredMessageDto(8, "3"));
+        }};
+
+        final Integer deleted = messageRetentionService.deleteExpiredMessages(mpc1, olderThan, true, 10);
+
+        Assert.assertEquals(Integer.valueOf(3), deleted);
+        new Verifications() {{
+            expiredMessageDeleter.deleteChunk(anyString, (Date) any, anyBoolean, (ClusterShard) any, anyInt, anyInt, anyInt);
+            times = 2;
+            retentionMetricsService.addDeleted(2);
+            retentionMetricsService.addDeleted(1);
+        }};
+    }
+
+    @Test
+    public void testDeleteExpiredMessagesStopsAtTheLimit() throws Exception {
+        final String mpc1 = "mpc1";
+        final Date olderThan = new Date();
+
+        new Expectations(messageRetentionService) {{
+            clusterNodeService.getShard();
+            result = ClusterShard.ALL;
+
+            messageRetentionService.getRetentionValue(MessageRetentionService.BATCH_SIZE_PROPERTY, MessageRetentionService.DEFAULT_BATCH_SIZE);
+            result = 500;
+
+            expiredMessageDeleter.deleteChunk(mpc1, olderThan, false, ClusterShard.ALL, 0, 2, 3);
+            result = Arrays.asList(new ExpiredMessageDto(3, "1"), new ExpiredMessageDto(7, "2"), new ExpiredMessageDto(9, "3"));
+
+            userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, mpc1, ClusterShard.ALL, 7, RetentionMetricsService.MAX_COUNTED_EXPIRED_LEFT);
+            result = Arrays.asList(new ExpiredMessageDto(9, "3"), new ExpiredMessageDto(12, "4"));
+        }};
+
+        final Integer deleted = messageRetentionService.deleteExpiredMessages(mpc1, olderThan, false, 2);
+
+        Assert.assertEquals(Integer.valueOf(2), deleted);
+        new Verifications() {{
+            expiredMessageDeleter.deleteChunk(anyString, (Date) any, anyBoolean, (ClusterShard) any, anyInt, anyInt, anyInt);
+            times = 1;
+            retentionMetricsService.addSelected(2);
+            retentionMetricsService.addDeleted(2);
+            retentionMetricsService.addLimitReached(mpc1, 2);
+            times = 1;
+            userMessageLogDao.countExpiredUndownloadedUserMessages((Date) any, anyString, (ClusterShard) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testDeleteExpiredMessagesUpToTheLimitWithoutMessagesLeft() throws Exception {
+        final String mpc1 = "mpc1";
+        final Date olderThan = new Date();
+
+        new Expectations(messageRetentionService) {{
+            clusterNodeService.getShard();
+            result = ClusterShard.ALL;
+
+            messageRetentionService.getRetentionValue(MessageRetentionService.BATCH_SIZE_PROPERTY, MessageRetentionService.DEFAULT_BATCH_SIZE);
+            result = 500;
+
+            expiredMessageDeleter.deleteChunk(mpc1, olderThan, true, ClusterShard.ALL, 0, 2, 3);
+            result = Arrays.asList(new ExpiredMessageDto(3, "1"), new ExpiredMessageDto(7, "2"));
+        }};
+
+        final Integer deleted = messageRetentionService.deleteExpiredMessages(mpc1, olderThan, true, 2);
+
+        Assert.assertEquals(Integer.valueOf(2), deleted);
+        new Verifications() {{
+            retentionMetricsService.addLimitReached(anyString, anyInt);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testPlanRetention() throws Exception {
+        final String mpc1 = "mpc1";
+
+        new Expectations(messageRetentionService) {{
+            pModeProvider.getMpcURIList();
+            result = Arrays.asList(mpc1);
+
+            messageRetentionService.getRetentionValue(MessageRetentionService.DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, MessageRetentionService.DEFAULT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
+            result = 100;
+
+            messageRetentionService.getRetentionValue(MessageRetentionService.NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT_PROPERTY, MessageRetentionService.DEFAULT_NOT_DOWNLOADED_MESSAGES_DELETE_LIMIT);
+            result = 100;
+
+            clusterNodeService.getShard();
+            result = new ClusterShard(0, 2);
+
+            retentionMetricsService.getDeletionRate();
+            result = 50d;
 
+            pModeProvider.getRetentionDownloadedByMpcURI(mpc1);
+            result = 10;
+
+            pModeProvider.getRetentionUndownloadedByMpcURI(mpc1);
+            result = -1;
+
+            userMessageLogDao.countExpiredDownloadedUserMessages((Date) any, mpc1, ClusterShard.ALL);
+            result = 500L;
+        }};
+
+        final List<RetentionMpcPlan> plans = messageRetentionService.planRetention();
+
+        Assert.assertEquals(1, plans.size());
+        final RetentionMpcPlan plan = plans.get(0);
+        Assert.assertEquals(500L, plan.getExpiredDownloaded());
+        Assert.assertEquals(0L, plan.getExpiredUndownloaded());
+        Assert.assertEquals(200L, plan.getDeletedPerCycle());
+        Assert.assertEquals(3L, plan.getCyclesToCatchUp());
+        Assert.assertEquals(2000L, plan.getEstimatedCycleDuration());
         new Verifications() {{
-            messageRetentionService.delete(downloadedMessageIds, messagesDeleteLimit);
+            userMessageLogDao.countExpiredUndownloadedUserMessages((Date) any, anyString, (ClusterShard) any);
+            times = 0;
+            expiredMessageDeleter.deleteChunk(anyString, (Date) any, anyBoolean, (ClusterShard) any, anyInt, anyInt, anyInt);
+            times = 0;
         }};
     }
 
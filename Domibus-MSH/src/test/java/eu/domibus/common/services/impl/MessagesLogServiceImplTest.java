@@ -0,0 +1,116 @@
+package eu.domibus.common.services.impl;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.dao.SignalMessageLogDao;
+import eu.domibus.common.dao.UserMessageArchiveDao;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.MessageLogInfo;
+import eu.domibus.common.model.logging.MessageLogInfoPage;
+import eu.domibus.ebms3.common.model.MessageType;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class MessagesLogServiceImplTest {
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    SignalMessageLogDao signalMessageLogDao;
+
+    @Injectable
+    UserMessageArchiveDao userMessageArchiveDao;
+
+    @Tested
+    MessagesLogServiceImpl messagesLogService;
+
+    @Test
+    public void testFindUserMessageInfosWithoutArchivedMessages() {
+        final HashMap<String, Object> filters = new HashMap<>();
+        new Expectations() {{
+            userMessageArchiveDao.countAllInfo(filters);
+            result = 0;
+            userMessageLogDao.countAllInfo(true, filters);
+            result = 30;
+        }};
+
+        final MessageLogInfoPage page = messagesLogService.findUserMessageInfos(10, 10, "received", true, filters);
+
+        assertEquals(30, page.getCount());
+        new Verifications() {{
+            userMessageLogDao.countAllInfo(true, filters);
+            times = 1;
+            userMessageLogDao.findAllInfoPaged(10, 10, "received", true, filters);
+            times = 1;
+            userMessageArchiveDao.findAllInfoPaged(anyInt, anyInt, anyString, anyBoolean, filters);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testFindUserMessageInfosReadsBothTiersAtOnce() {
+        final HashMap<String, Object> filters = new HashMap<>();
+        final List<MessageLogInfo> infos = Arrays.asList(createInfo("archived3", 3), createInfo("current2", 2));
+        new Expectations() {{
+            userMessageArchiveDao.countAllInfo(filters);
+            result = 2;
+            userMessageLogDao.countAllInfo(false, filters);
+            result = 2;
+            userMessageArchiveDao.findAllTiersInfoPaged(1, 2, "received", false, filters);
+            result = infos;
+        }};
+
+        final MessageLogInfoPage page = messagesLogService.findUserMessageInfos(1, 2, "received", false, filters);
+
+        assertEquals(4, page.getCount());
+        assertEquals(infos, page.getMessageLogInfos());
+        new Verifications() {{
+            userMessageLogDao.findAllInfoPaged(anyInt, anyInt, anyString, anyBoolean, filters);
+            times = 0;
+            userMessageArchiveDao.findAllInfoPaged(anyInt, anyInt, anyString, anyBoolean, filters);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testFindUserMessageInfosAfterTheLastPage() {
+        final HashMap<String, Object> filters = new HashMap<>();
+        new Expectations() {{
+            userMessageArchiveDao.countAllInfo(filters);
+            result = 5;
+            userMessageLogDao.countAllInfo(true, filters);
+            result = 3;
+        }};
+
+        final MessageLogInfoPage page = messagesLogService.findUserMessageInfos(10, 10, null, true, filters);
+
+        assertEquals(8, page.getCount());
+        assertEquals(0, page.getMessageLogInfos().size());
+        new Verifications() {{
+            userMessageArchiveDao.findAllTiersInfoPaged(anyInt, anyInt, anyString, anyBoolean, filters);
+            times = 0;
+        }};
+    }
+
+    private MessageLogInfo createInfo(String messageId, long received) {
+        return new MessageLogInfo(messageId, MessageStatus.ACKNOWLEDGED, null, MSHRole.SENDING, MessageType.USER_MESSAGE,
+                null, new Date(received), 1, 5, null, null, null, null, null, null, null, null, null);
+    }
+}
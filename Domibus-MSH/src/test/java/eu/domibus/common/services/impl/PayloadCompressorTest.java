@@ -0,0 +1,101 @@
+package eu.domibus.common.services.impl;
+
+import mockit.Deencapsulation;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+public class PayloadCompressorTest {
+
+    private PayloadCompressor payloadCompressor;
+
+    private Properties domibusProperties;
+
+    @Before
+    public void setUp() {
+        payloadCompressor = new PayloadCompressor();
+        domibusProperties = new Properties();
+        Deencapsulation.setField(payloadCompressor, "domibusProperties", domibusProperties);
+        Deencapsulation.setField(payloadCompressor, "taskExecutor", new SyncTaskExecutor());
+    }
+
+    @Test
+    public void testCompress() throws Exception {
+        domibusProperties.setProperty(PayloadCompressor.COMPRESSION_LEVEL, "9");
+        final byte[] content = createTextContent(1000);
+
+        final byte[] compressed = compress(content);
+
+        assertTrue(compressed.length < content.length);
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    @Test
+    public void testCompressInParallelBlocksIsStandardGzip() throws Exception {
+        domibusProperties.setProperty(PayloadCompressor.COMPRESSION_PARALLEL_THREADS, "3");
+        domibusProperties.setProperty(PayloadCompressor.COMPRESSION_PARALLEL_BLOCK_SIZE, "65536");
+        final byte[] content = createTextContent(20000);
+
+        final byte[] compressed = compress(content);
+
+        assertTrue(content.length > 5 * 65536);
+        assertArrayEquals(content, decompress(compressed));
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0])));
+    }
+
+    @Test
+    public void testRandomContentIsNotCompressible() throws Exception {
+        final byte[] random = new byte[PayloadCompressor.ENTROPY_SAMPLE_SIZE];
+        new Random(1).nextBytes(random);
+        final InputStream is = new BufferedInputStream(new ByteArrayInputStream(random), PayloadCompressor.ENTROPY_SAMPLE_SIZE + 1);
+
+        assertFalse(payloadCompressor.isCompressible(is));
+        assertEquals(random.length, IOUtils.toByteArray(is).length);
+        assertTrue(payloadCompressor.isCompressible(new BufferedInputStream(new ByteArrayInputStream(createTextContent(1000)))));
+    }
+
+    @Test
+    public void testSkippedMimeTypes() throws Exception {
+        assertTrue(payloadCompressor.isSkippedMimeType("application/zip"));
+        assertTrue(payloadCompressor.isSkippedMimeType("Video/MP4"));
+        assertTrue(payloadCompressor.isSkippedMimeType("image/png; name=scan.png"));
+        assertFalse(payloadCompressor.isSkippedMimeType("application/xml"));
+        assertFalse(payloadCompressor.isSkippedMimeType(null));
+    }
+
+    private byte[] compress(byte[] content) throws Exception {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        assertEquals(content.length, payloadCompressor.compress(new ByteArrayInputStream(content), compressed));
+        return compressed.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed) throws Exception {
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private byte[] createTextContent(int lines) {
+        final Random random = new Random(1);
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            content.append("<invoiceLine id=\"").append(random.nextInt(10000)).append("\">payload content</invoiceLine>\n");
+        }
+        return content.toString().getBytes();
+    }
+}
@@ -85,6 +85,9 @@ public class UserMessageHandlerServiceTest {
     @Injectable
     UserMessageLogDao userMessageLogDao;
 
+    @Injectable
+    UserMessageArchiveDao userMessageArchiveDao;
+
     @Injectable
     UserMessageLogService userMessageLogService;
 
@@ -894,6 +897,24 @@ public class UserMessageHandlerServiceTest {
         Assert.assertFalse("Expecting not duplicate result", userMessageHandlerService.checkDuplicate(messaging2));
     }
 
+    @Test
+    public void testCheckDuplicateOfArchivedMessage() {
+        new Expectations() {{
+            userMessageLogDao.findByMessageId("1234", MSHRole.RECEIVING);
+            result = null;
+
+            userMessageArchiveDao.existsByMessageId("1234", MSHRole.RECEIVING);
+            result = true;
+        }};
+        Messaging messaging = new Messaging();
+        UserMessage userMessage = new UserMessage();
+        MessageInfo messageInfo = new MessageInfo();
+        messageInfo.setMessageId("1234");
+        userMessage.setMessageInfo(messageInfo);
+        messaging.setUserMessage(userMessage);
+        Assert.assertTrue("Expecting match in duplicate check", userMessageHandlerService.checkDuplicate(messaging));
+    }
+
     @Test
     public void testInvoke_DuplicateMessage(@Injectable final BackendFilter matchingBackendFilter, @Injectable final LegConfiguration legConfiguration,
                                             @Injectable final Messaging messaging, @Injectable final UserMessage userMessage)
@@ -0,0 +1,106 @@
+package eu.domibus.configuration;
+
+import mockit.integration.junit4.JMockit;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class StorageTest {
+
+    private static final byte[] CONTENT = "payload content".getBytes();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Storage storage;
+
+    @Before
+    public void setUp() {
+        storage = new Storage(folder.getRoot());
+    }
+
+    @Test
+    public void testPayloadFilesAreSpreadOverHashedSubdirectories() throws Exception {
+        final File payloadFile = storage.getPayloadFile("7b7ac3c1-1a36-4a4b-9a2c-1b0e5b3f0c11.payload");
+
+        final File directory = payloadFile.getParentFile();
+        assertEquals(folder.getRoot(), directory.getParentFile().getParentFile());
+        assertEquals(2, directory.getName().length());
+        assertEquals(payloadFile, storage.getPayloadFile(payloadFile.getName()));
+        assertTrue(storage.createPayloadFile().getName().endsWith(Storage.PAYLOAD_FILE_EXTENSION));
+    }
+
+    @Test
+    public void testStorePayload() throws Exception {
+        final File payloadFile = storage.createPayloadFile();
+
+        final long length = storage.storePayload(payloadFile, new ByteArrayInputStream(CONTENT), false);
+
+        assertEquals(CONTENT.length, length);
+        assertArrayEquals(CONTENT, Files.readAllBytes(payloadFile.toPath()));
+        assertEquals(1, payloadFile.getParentFile().list().length);
+    }
+
+    @Test
+    public void testStoreCompressedPayload() throws Exception {
+        final File payloadFile = storage.createPayloadFile();
+
+        storage.storePayload(payloadFile, new ByteArrayInputStream(CONTENT), true);
+
+        try (InputStream is = new GZIPInputStream(new FileInputStream(payloadFile))) {
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoFile() throws Exception {
+        final File payloadFile = storage.createPayloadFile();
+        final InputStream failingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        try {
+            storage.storePayload(payloadFile, failingStream, false);
+            fail("The payload should not have been stored");
+        } catch (IOException e) {
+            assertFalse(payloadFile.exists());
+            assertEquals(0, payloadFile.getParentFile().list().length);
+        }
+    }
+
+    @Test
+    public void testLinkPayloadKeepsTheSourceFile() throws Exception {
+        final File flatFile = folder.newFile("flat" + Storage.PAYLOAD_FILE_EXTENSION);
+        Files.write(flatFile.toPath(), CONTENT);
+        final File payloadFile = storage.getPayloadFile(flatFile.getName());
+
+        storage.linkPayload(flatFile, payloadFile);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(payloadFile.toPath()));
+        assertTrue(flatFile.exists());
+    }
+}
@@ -0,0 +1,90 @@
+package eu.domibus.core.archive;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class MessageArchiveServiceTest {
+
+    @Injectable
+    MessageArchiver messageArchiver;
+
+    @Injectable
+    ClusterNodeService clusterNodeService;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    MessageArchiveService messageArchiveService;
+
+    @Test
+    public void testArchiveMessagesWhenDisabled() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(MessageArchiveService.ARCHIVE_ENABLED, anyString);
+            result = "false";
+        }};
+
+        assertEquals(0, messageArchiveService.archiveMessages());
+
+        new Verifications() {{
+            messageArchiver.archiveChunk((Date) any, (ClusterShard) any, anyInt, anyInt);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testArchiveMessagesStopsAtTheLimit() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(MessageArchiveService.ARCHIVE_ENABLED, anyString);
+            result = "true";
+            domibusProperties.getProperty(MessageArchiveService.ARCHIVE_AFTER_DAYS, anyString);
+            result = "30";
+            domibusProperties.getProperty(MessageArchiveService.ARCHIVE_BATCH_SIZE, anyString);
+            result = "2";
+            domibusProperties.getProperty(MessageArchiveService.ARCHIVE_MAX, anyString);
+            result = "3";
+            clusterNodeService.getShard();
+            result = ClusterShard.ALL;
+            messageArchiver.archiveChunk((Date) any, ClusterShard.ALL, 0, 2);
+            result = Arrays.asList(createMessageLog(1, "1"), createMessageLog(2, "2"));
+            messageArchiver.archiveChunk((Date) any, ClusterShard.ALL, 2, 1);
+            result = Arrays.asList(createMessageLog(3, "3"));
+        }};
+
+        assertEquals(3, messageArchiveService.archiveMessages());
+
+        new Verifications() {{
+            messageArchiver.archiveChunk((Date) any, (ClusterShard) any, anyInt, anyInt);
+            times = 2;
+        }};
+    }
+
+    private UserMessageLog createMessageLog(int entityId, String messageId) {
+        UserMessageLog messageLog = new UserMessageLog();
+        messageLog.setEntityId(entityId);
+        messageLog.setMessageId(messageId);
+        messageLog.setMessageStatus(MessageStatus.ACKNOWLEDGED);
+        messageLog.setMshRole(MSHRole.SENDING);
+        return messageLog;
+    }
+}
@@ -0,0 +1,160 @@
+package eu.domibus.core.archive;
+
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.dao.MessagingDao;
+import eu.domibus.common.dao.RawEnvelopeLogDao;
+import eu.domibus.common.dao.SignalMessageDao;
+import eu.domibus.common.dao.SignalMessageLogDao;
+import eu.domibus.common.dao.UserMessageArchiveDao;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.UserMessageArchive;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.core.payload.PayloadFileDeletionService;
+import eu.domibus.ebms3.common.model.*;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class MessageArchiverTest {
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    UserMessageArchiveDao userMessageArchiveDao;
+
+    @Injectable
+    MessagingDao messagingDao;
+
+    @Injectable
+    SignalMessageDao signalMessageDao;
+
+    @Injectable
+    SignalMessageLogDao signalMessageLogDao;
+
+    @Injectable
+    RawEnvelopeLogDao rawEnvelopeLogDao;
+
+    @Injectable
+    PayloadFileDeletionService payloadFileDeletionService;
+
+    @Tested
+    MessageArchiver messageArchiver;
+
+    @Test
+    public void testArchiveChunkArchivesTheArchivableMessages() throws Exception {
+        final Date olderThan = new Date();
+        final List<UserMessageLog> messageLogs = Arrays.asList(createMessageLog(3, "3"));
+        new Expectations(messageArchiver) {{
+            userMessageLogDao.findArchivableMessages(MessageArchiver.ARCHIVABLE_STATUSES, olderThan, ClusterShard.ALL, 2, 10);
+            result = messageLogs;
+            messageArchiver.archive(messageLogs);
+        }};
+
+        assertEquals(messageLogs, messageArchiver.archiveChunk(olderThan, ClusterShard.ALL, 2, 10));
+
+        new Verifications() {{
+            messageArchiver.archive(messageLogs);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testArchiveRemovesTheMessagesAndTheirSignals() throws Exception {
+        final List<String> messageIds = Arrays.asList("1", "2");
+        final List<String> signalMessageIds = Arrays.asList("signal1");
+        final Messaging messaging = createMessaging("1", "payload");
+        final List<Messaging> messagings = Arrays.asList(messaging);
+        new Expectations() {{
+            messagingDao.findMessagingsByUserMessageIds(messageIds);
+            result = messagings;
+            signalMessageDao.findSignalMessageIdsByRefMessageIds(messageIds);
+            result = signalMessageIds;
+        }};
+
+        messageArchiver.archive(Arrays.asList(createMessageLog(1, "1"), createMessageLog(2, "2")));
+
+        new Verifications() {{
+            final List<UserMessageArchive> archives = new ArrayList<>();
+            userMessageArchiveDao.create(withCapture(archives));
+            times = 2;
+            assertEquals("1", archives.get(0).getMessageId());
+            assertEquals("conversation", archives.get(0).getConversationId());
+            assertEquals("sender", archives.get(0).getFromPartyId());
+            assertEquals("originalSender", archives.get(0).getOriginalSender());
+            assertEquals("finalRecipient", archives.get(0).getFinalRecipient());
+            assertEquals("2", archives.get(1).getMessageId());
+            assertNull(archives.get(1).getConversationId());
+
+            payloadFileDeletionService.scheduleDeletion(Arrays.asList("payload"));
+            rawEnvelopeLogDao.deleteRawEnvelopes(messageIds);
+            userMessageLogDao.deleteByMessageIds(messageIds);
+            signalMessageLogDao.deleteByMessageIds(signalMessageIds);
+            messagingDao.deleteMessages(messageIds, signalMessageIds);
+        }};
+    }
+
+    private UserMessageLog createMessageLog(int entityId, String messageId) {
+        UserMessageLog messageLog = new UserMessageLog();
+        messageLog.setEntityId(entityId);
+        messageLog.setMessageId(messageId);
+        messageLog.setMessageStatus(MessageStatus.ACKNOWLEDGED);
+        messageLog.setMshRole(MSHRole.SENDING);
+        return messageLog;
+    }
+
+    private Messaging createMessaging(String messageId, String fileName) {
+        MessageInfo messageInfo = new MessageInfo();
+        messageInfo.setMessageId(messageId);
+        CollaborationInfo collaborationInfo = new CollaborationInfo();
+        collaborationInfo.setConversationId("conversation");
+        PartyId partyId = new PartyId();
+        partyId.setValue("sender");
+        From from = new From();
+        from.getPartyId().add(partyId);
+        PartyInfo partyInfo = new PartyInfo();
+        partyInfo.setFrom(from);
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.getProperty().add(createProperty("originalSender"));
+        messageProperties.getProperty().add(createProperty("finalRecipient"));
+        PartInfo partInfo = new PartInfo();
+        partInfo.setFileName(fileName);
+        PayloadInfo payloadInfo = new PayloadInfo();
+        payloadInfo.getPartInfo().add(partInfo);
+
+        UserMessage userMessage = new UserMessage();
+        userMessage.setMessageInfo(messageInfo);
+        userMessage.setCollaborationInfo(collaborationInfo);
+        userMessage.setPartyInfo(partyInfo);
+        userMessage.setMessageProperties(messageProperties);
+        userMessage.setPayloadInfo(payloadInfo);
+        Messaging messaging = new Messaging();
+        messaging.setUserMessage(userMessage);
+        return messaging;
+    }
+
+    private Property createProperty(String name) {
+        Property property = new Property();
+        property.setName(name);
+        property.setValue(name);
+        return property;
+    }
+}
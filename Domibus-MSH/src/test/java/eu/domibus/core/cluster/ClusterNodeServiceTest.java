@@ -0,0 +1,112 @@
+package eu.domibus.core.cluster;
+
+import mockit.Deencapsulation;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class ClusterNodeServiceTest {
+
+    @Injectable
+    ClusterNodeDao clusterNodeDao;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    ClusterNodeService clusterNodeService;
+
+    @Test
+    public void testGetShardWhenNotClustered() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(ClusterNodeService.CLUSTERED, anyString);
+            result = "false";
+        }};
+
+        assertEquals(ClusterShard.ALL, clusterNodeService.getShard());
+
+        new Verifications() {{
+            clusterNodeDao.heartbeat(anyString, (Date) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testHeartbeatComputesTheShardOfTheNode() throws Exception {
+        Deencapsulation.setField(clusterNodeService, "nodeId", "node2");
+        new Expectations() {{
+            domibusProperties.getProperty(ClusterNodeService.CLUSTERED, anyString);
+            result = "true";
+            domibusProperties.getProperty(ClusterNodeService.NODE_TIMEOUT, anyString);
+            result = "60000";
+            clusterNodeDao.findActiveNodeIds((Date) any);
+            result = Arrays.asList("node1", "node2", "node3");
+        }};
+
+        clusterNodeService.heartbeat();
+
+        assertEquals(new ClusterShard(1, 3), clusterNodeService.getShard());
+        new Verifications() {{
+            clusterNodeDao.heartbeat("node2", (Date) any);
+            times = 1;
+            clusterNodeDao.deleteInactiveNodes((Date) any);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testGetShardReadsAnOutdatedShardWithoutWriting() throws Exception {
+        Deencapsulation.setField(clusterNodeService, "nodeId", "node1");
+        Deencapsulation.setField(clusterNodeService, "shard", new ClusterShard(0, 2));
+        Deencapsulation.setField(clusterNodeService, "shardComputed", System.currentTimeMillis() - 120000);
+        new Expectations() {{
+            domibusProperties.getProperty(ClusterNodeService.CLUSTERED, anyString);
+            result = "true";
+            domibusProperties.getProperty(ClusterNodeService.NODE_TIMEOUT, anyString);
+            result = "60000";
+            clusterNodeDao.findActiveNodeIds((Date) any);
+            result = Arrays.asList("node1");
+        }};
+
+        assertEquals(ClusterShard.ALL, clusterNodeService.getShard());
+        new Verifications() {{
+            clusterNodeDao.heartbeat(anyString, (Date) any);
+            times = 0;
+            clusterNodeDao.deleteInactiveNodes((Date) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testGetShardOfANodeWithoutHeartbeatIsEmpty() throws Exception {
+        Deencapsulation.setField(clusterNodeService, "nodeId", "node3");
+        new Expectations() {{
+            domibusProperties.getProperty(ClusterNodeService.CLUSTERED, anyString);
+            result = "true";
+            domibusProperties.getProperty(ClusterNodeService.NODE_TIMEOUT, anyString);
+            result = "60000";
+            clusterNodeDao.findActiveNodeIds((Date) any);
+            result = Arrays.asList("node1", "node2");
+        }};
+
+        assertEquals(ClusterShard.NONE, clusterNodeService.getShard());
+        new Verifications() {{
+            clusterNodeDao.heartbeat(anyString, (Date) any);
+            times = 0;
+        }};
+    }
+}
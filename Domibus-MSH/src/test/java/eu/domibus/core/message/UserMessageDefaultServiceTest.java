@@ -9,11 +9,13 @@ import eu.domibus.api.pmode.PModeServiceHelper;
 import eu.domibus.api.pmode.domain.LegConfiguration;
 import eu.domibus.common.MessageStatus;
 import eu.domibus.common.dao.MessagingDao;
+import eu.domibus.common.dao.RawEnvelopeLogDao;
 import eu.domibus.common.dao.SignalMessageDao;
 import eu.domibus.common.dao.SignalMessageLogDao;
 import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.UserMessageLog;
 import eu.domibus.common.services.MessageExchangeService;
+import eu.domibus.core.retention.RetentionMetricsService;
 import eu.domibus.ebms3.common.UserMessageServiceHelper;
 import eu.domibus.ebms3.common.model.UserMessage;
 import eu.domibus.ebms3.receiver.BackendNotificationService;
@@ -27,7 +29,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import javax.jms.Queue;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -67,6 +71,9 @@ public class UserMessageDefaultServiceTest {
     @Injectable
     private SignalMessageLogDao signalMessageLogDao;
 
+    @Injectable
+    private RawEnvelopeLogDao rawEnvelopeLogDao;
+
     @Injectable
     private BackendNotificationService backendNotificationService;
 
@@ -85,6 +92,9 @@ public class UserMessageDefaultServiceTest {
     @Injectable
     MessageExchangeService messageExchangeService;
 
+    @Injectable
+    RetentionMetricsService retentionMetricsService;
+
 
     @Test
     public void testGetFinalRecipient(@Injectable  final UserMessage userMessage) throws Exception {
@@ -321,6 +331,28 @@ public class UserMessageDefaultServiceTest {
 
     }
 
+    @Test
+    public void testScheduleSendingWithDelay(@Injectable final JmsMessage jmsMessage, final @Mocked DispatchMessageCreator dispatchMessageCreator) throws Exception {
+        final String messageId = "1";
+        final long delay = 60000L;
+
+        new Expectations(userMessageDefaultService) {{
+            new DispatchMessageCreator(messageId);
+            result = dispatchMessageCreator;
+
+            dispatchMessageCreator.createMessage();
+            result = jmsMessage;
+
+        }};
+
+        userMessageDefaultService.scheduleSending(messageId, delay);
+
+        new Verifications() {{
+            jmsManager.sendMessageToQueue(jmsMessage, sendMessageQueue, delay);
+        }};
+
+    }
+
     @Test
     public void testRestoreFailedMessagesDuringPeriodWhenAPreviousMessageIsFailing() throws Exception {
         final String finalRecipient = "C4";
@@ -460,6 +492,61 @@ public class UserMessageDefaultServiceTest {
         }};
     }
 
+    @Test
+    public void testDeleteMessagesInBulk(@Mocked final NotificationListener notificationListener1) throws Exception {
+        final List<String> messageIds = Arrays.asList("1", "2");
+        final String queueName = "wsQueue";
+
+        final List<NotificationListener> notificationListeners = new ArrayList<>();
+        notificationListeners.add(notificationListener1);
+
+        new Expectations() {{
+            backendNotificationService.getNotificationListenerServices();
+            result = notificationListeners;
+
+            notificationListener1.getBackendNotificationQueue().getQueueName();
+            result = queueName;
+
+            signalMessageDao.findSignalMessageIdsByRefMessageIds(messageIds);
+            result = Arrays.asList("signal1");
+        }};
+
+        userMessageDefaultService.delete(messageIds);
+
+        new Verifications() {{
+            jmsManager.consumeMessages(queueName, messageIds);
+            messagingDao.clearPayloadData(messageIds);
+            backendNotificationService.notifyOfMessageStatusChange(messageIds, MessageStatus.DELETED, (Timestamp) any);
+            signalMessageDao.clearReceipts(messageIds);
+            rawEnvelopeLogDao.deleteRawEnvelopes(messageIds);
+            userMessageLogDao.setMessagesAsDeleted(Arrays.asList("1", "2", "signal1"));
+
+            jmsManager.consumeMessage(anyString, anyString);
+            times = 0;
+            userMessageLogService.setMessageAsDeleted(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testDeleteMessagesInBatches() throws Exception {
+        final List<String> messageIds = new ArrayList<>();
+        for (int i = 0; i < UserMessageDefaultService.DELETE_BATCH_SIZE + 1; i++) {
+            messageIds.add(String.valueOf(i));
+        }
+
+        new Expectations(userMessageDefaultService) {{
+            userMessageDefaultService.deleteMessages((List<String>) any);
+        }};
+
+        userMessageDefaultService.delete(messageIds);
+
+        new Verifications() {{
+            userMessageDefaultService.deleteMessages((List<String>) any);
+            times = 2;
+        }};
+    }
+
     private static class CurrentTimeMillisMock extends MockUp<System> {
         @Mock
         public static long currentTimeMillis() {
@@ -44,8 +44,9 @@ public class UserMessageLogDefaultServiceTest {
         final String mpc = " default";
         final String backendName = "JMS";
         final String endpoint = "http://localhost";
+        final String receiver = "domibus-red";
 
-        userMessageLogDefaultService.save(messageId, messageStatus, notificationStatus, mshRole, maxAttempts, mpc, backendName, endpoint);
+        userMessageLogDefaultService.save(messageId, messageStatus, notificationStatus, mshRole, maxAttempts, mpc, backendName, endpoint, receiver);
 
         new Verifications() {{
             backendNotificationService.notifyOfMessageStatusChange(withAny(new UserMessageLog()), MessageStatus.SEND_ENQUEUED, withAny(new Timestamp(System.currentTimeMillis())));
@@ -60,6 +61,7 @@ public class UserMessageLogDefaultServiceTest {
             Assert.assertEquals(mpc, userMessageLog.getMpc());
             Assert.assertEquals(backendName, userMessageLog.getBackend());
             Assert.assertEquals(endpoint, userMessageLog.getEndpoint());
+            Assert.assertEquals("DOMIBUS-RED", userMessageLog.getReceiver());
         }};
     }
 
@@ -0,0 +1,117 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.model.payload.PayloadContent;
+import eu.domibus.configuration.Storage;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PayloadContentServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Injectable
+    PayloadContentDao payloadContentDao;
+
+    @Injectable
+    Storage storage;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    PayloadContentService payloadContentService;
+
+    @Test
+    public void testStoredContentIsReused() throws Exception {
+        final File payloadFile = folder.newFile("new.payload");
+        final PayloadContent existing = createContent("shared.payload", 3);
+        new Expectations() {{
+            storage.createPayloadFile();
+            result = payloadFile;
+            storage.storePayload(payloadFile, (InputStream) any, false);
+            result = 7L;
+            payloadContentDao.findByDigestForUpdate(anyString, false);
+            result = existing;
+        }};
+
+        final PayloadContent content = payloadContentService.store(new ByteArrayInputStream("payload".getBytes()), false);
+
+        assertSame(existing, content);
+        assertEquals(4, content.getReferenceCount());
+        assertFalse(payloadFile.exists());
+    }
+
+    @Test
+    public void testNewContentIsReferencedOnce() throws Exception {
+        final File payloadFile = folder.newFile("new.payload");
+        new Expectations() {{
+            storage.createPayloadFile();
+            result = payloadFile;
+            storage.storePayload(payloadFile, (InputStream) any, true);
+            result = 7L;
+            payloadContentDao.findByDigestForUpdate(anyString, true);
+            result = null;
+        }};
+
+        final PayloadContent content = payloadContentService.store(new ByteArrayInputStream("payload".getBytes()), true);
+
+        assertEquals(1, content.getReferenceCount());
+        assertEquals("new.payload", content.getFileName());
+        assertEquals(payloadFile.getAbsolutePath(), content.getFilePath());
+        assertEquals(7L, content.getLength());
+        new Verifications() {{
+            payloadContentDao.create(content);
+        }};
+    }
+
+    @Test
+    public void testReleaseKeepsTheFilesStillReferenced() throws Exception {
+        final PayloadContent stillReferenced = createContent("shared.payload", 3);
+        final PayloadContent lastReference = createContent("last.payload", 1);
+        new Expectations() {{
+            payloadContentDao.findByFileNamesForUpdate((List<String>) any);
+            result = Arrays.asList(stillReferenced, lastReference);
+        }};
+
+        final List<String> unreferenced = payloadContentService.release(Arrays.asList(
+                "/storage/ab/shared.payload", "/storage/ab/shared.payload", "/storage/cd/last.payload", "/storage/ef/own.payload"));
+
+        assertEquals(Arrays.asList("/storage/cd/last.payload", "/storage/ef/own.payload"), unreferenced);
+        assertEquals(1, stillReferenced.getReferenceCount());
+        new Verifications() {{
+            payloadContentDao.delete(lastReference);
+            payloadContentDao.update(stillReferenced);
+        }};
+    }
+
+    private PayloadContent createContent(String fileName, int referenceCount) {
+        final PayloadContent content = new PayloadContent();
+        content.setFileName(fileName);
+        content.setFilePath("/storage/" + fileName);
+        content.setReferenceCount(referenceCount);
+        return content;
+    }
+}
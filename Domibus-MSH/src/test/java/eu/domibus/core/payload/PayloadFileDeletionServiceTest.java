@@ -0,0 +1,150 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.model.payload.PayloadFileDeletion;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import mockit.Deencapsulation;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PayloadFileDeletionServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Injectable
+    PayloadFileDeletionDao payloadFileDeletionDao;
+
+    @Injectable
+    ClusterNodeService clusterNodeService;
+
+    @Injectable
+    PayloadContentService payloadContentService;
+
+    @Injectable
+    TaskExecutor taskExecutor;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    PayloadFileDeletionService payloadFileDeletionService;
+
+    @Before
+    public void setUp() {
+        new Expectations() {{
+            domibusProperties.getProperty(PayloadFileDeletionService.DELETION_WORKERS, anyString);
+            result = "2";
+            minTimes = 0;
+            domibusProperties.getProperty(PayloadFileDeletionService.DELETION_RETRY_DELAY, anyString);
+            result = "60000";
+            minTimes = 0;
+            domibusProperties.getProperty(PayloadFileDeletionService.DELETION_BATCH_SIZE, anyString);
+            result = "1000";
+            minTimes = 0;
+        }};
+        payloadFileDeletionService.init();
+    }
+
+    @Test
+    public void testDeleteFilesRetriesTheFailedDeletions() throws Exception {
+        final File payload = folder.newFile("payload");
+        final File missing = new File(folder.getRoot(), "missing");
+        final File notDeletable = folder.newFolder("notDeletable");
+        new File(notDeletable, "content").createNewFile();
+
+        final int deleted = payloadFileDeletionService.deleteFiles(Arrays.asList(
+                createDeletion(1, payload), createDeletion(2, missing), createDeletion(3, notDeletable)));
+
+        assertEquals(1, deleted);
+        assertFalse(payload.exists());
+        assertEquals(1, payloadFileDeletionService.getDeletedFiles());
+        assertEquals(1, payloadFileDeletionService.getFailedDeletions());
+        new Verifications() {{
+            payloadFileDeletionDao.deleteByIds(Arrays.asList(1, 2));
+            times = 1;
+            payloadFileDeletionDao.reschedule(Arrays.asList(3), (Date) any);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testDeleteFilesAsyncLeavesTheFilesToTheJobWhenNoWorkerIsFree() throws Exception {
+        Deencapsulation.setField(payloadFileDeletionService, "workers", new Semaphore(0));
+
+        payloadFileDeletionService.deleteFilesAsync(Arrays.asList(createDeletion(1, folder.newFile("payload"))));
+
+        new Verifications() {{
+            taskExecutor.execute((Runnable) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testDeleteFilesAsyncSplitsTheFilesBetweenTheWorkers() throws Exception {
+        payloadFileDeletionService.deleteFilesAsync(Arrays.asList(
+                createDeletion(1, folder.newFile("payload1")),
+                createDeletion(2, folder.newFile("payload2")),
+                createDeletion(3, folder.newFile("payload3"))));
+
+        new Verifications() {{
+            taskExecutor.execute((Runnable) any);
+            times = 2;
+        }};
+    }
+
+    @Test
+    public void testReclaimOrphanedFiles() throws Exception {
+        Deencapsulation.setField(payloadFileDeletionService, "taskExecutor", new SyncTaskExecutor());
+        final File payload1 = folder.newFile("payload1");
+        final File payload2 = folder.newFile("payload2");
+        final List<PayloadFileDeletion> due = Arrays.asList(
+                createDeletion(1, payload1), createDeletion(2, payload2), createDeletion(3, new File(folder.getRoot(), "missing")));
+        new Expectations() {{
+            clusterNodeService.getShard();
+            result = ClusterShard.ALL;
+            payloadFileDeletionDao.findDue((Date) any, ClusterShard.ALL, 1000);
+            result = due;
+        }};
+
+        final int reclaimed = payloadFileDeletionService.reclaimOrphanedFiles();
+
+        assertEquals(2, reclaimed);
+        assertEquals(2, payloadFileDeletionService.getReclaimedFiles());
+        assertFalse(payload1.exists());
+        assertFalse(payload2.exists());
+        assertEquals(2, ((Semaphore) Deencapsulation.getField(payloadFileDeletionService, "workers")).availablePermits());
+    }
+
+    private PayloadFileDeletion createDeletion(int entityId, File file) {
+        PayloadFileDeletion deletion = new PayloadFileDeletion();
+        deletion.setEntityId(entityId);
+        deletion.setFileName(file.getAbsolutePath());
+        deletion.setNextAttempt(new Date());
+        return deletion;
+    }
+}
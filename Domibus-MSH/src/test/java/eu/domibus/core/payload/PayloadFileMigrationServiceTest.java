@@ -0,0 +1,78 @@
+package eu.domibus.core.payload;
+
+import eu.domibus.common.dao.AttachmentDAO;
+import eu.domibus.configuration.Storage;
+import eu.domibus.ebms3.common.model.PartInfo;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PayloadFileMigrationServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Injectable
+    Storage storage;
+
+    @Injectable
+    AttachmentDAO attachmentDAO;
+
+    @Injectable
+    PayloadContentDao payloadContentDao;
+
+    @Tested
+    PayloadFileMigrationService payloadFileMigrationService;
+
+    @Test
+    public void testReferencedFlatFilesAreMigrated() throws Exception {
+        final File referenced = folder.newFile("referenced.payload");
+        final File unreferenced = folder.newFile("unreferenced.payload");
+        final File referencedTarget = new File(folder.getRoot(), "ab/referenced.payload");
+        final File unreferencedTarget = new File(folder.getRoot(), "cd/unreferenced.payload");
+
+        new Expectations() {{
+            storage.getStorageDirectory();
+            result = folder.getRoot();
+            storage.getPayloadFile("referenced.payload");
+            result = referencedTarget;
+            storage.getPayloadFile("unreferenced.payload");
+            result = unreferencedTarget;
+            attachmentDAO.findByFileNameForUpdate(referenced.getAbsolutePath());
+            result = Arrays.asList(new PartInfo());
+            attachmentDAO.findByFileNameForUpdate(unreferenced.getAbsolutePath());
+            result = Collections.emptyList();
+            storage.linkPayload(referenced, referencedTarget);
+            times = 1;
+        }};
+
+        assertEquals(1, payloadFileMigrationService.migrateFlatPayloadFiles(10));
+
+        assertFalse(referenced.exists());
+        assertTrue(unreferenced.exists());
+        new Verifications() {{
+            attachmentDAO.updateFileName(referenced.getAbsolutePath(), referencedTarget.getAbsolutePath());
+            times = 1;
+            attachmentDAO.updateFileName(unreferenced.getAbsolutePath(), anyString);
+            times = 0;
+        }};
+    }
+}
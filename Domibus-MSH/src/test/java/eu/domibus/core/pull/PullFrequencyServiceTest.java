@@ -0,0 +1,164 @@
+package eu.domibus.core.pull;
+
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.integration.junit4.JMockit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PullFrequencyServiceTest {
+
+    private static final String MPC = "mpc";
+
+    private static final String RESPONDER = "red_gw";
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    PullFrequencyService pullFrequencyService;
+
+    @Before
+    public void recordProperties() {
+        new Expectations() {{
+            domibusProperties.getProperty(PullFrequencyService.PULL_INTERVAL_MIN, anyString);
+            result = "100";
+            minTimes = 0;
+            domibusProperties.getProperty(PullFrequencyService.PULL_INTERVAL_MAX, anyString);
+            result = "400";
+            minTimes = 0;
+            domibusProperties.getProperty(PullFrequencyService.PULL_CONCURRENT_MAX, anyString);
+            result = "3";
+            minTimes = 0;
+            domibusProperties.getProperty(PullFrequencyService.PULL_MPC_CONCURRENT_MAX, anyString);
+            result = "2";
+            minTimes = 0;
+        }};
+    }
+
+    @Test
+    public void testPullIsNotDueBeforeTheInterval() throws Exception {
+        assertEquals(1, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+        assertEquals(0, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+    }
+
+    @Test
+    public void testPullRequestsDueAreOnlyCountedOnceStarted() throws Exception {
+        final PullFrequency frequency = pullFrequencyService.getFrequency(MPC, RESPONDER, System.currentTimeMillis());
+        frequency.setLastPullReturnedMessage(true);
+        assertEquals(2, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+        frequency.setNextPull(0);
+        assertEquals(2, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+        frequency.setNextPull(0);
+        assertEquals(1, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+        assertEquals(1, frequency.getInProgress());
+    }
+
+    @Test
+    public void testParallelPullsAreCappedPerMpc() throws Exception {
+        final PullFrequency frequency = pullFrequencyService.getFrequency(MPC, RESPONDER, System.currentTimeMillis());
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "2"));
+        assertFalse(pullFrequencyService.startPullRequest(MPC, RESPONDER, "3"));
+        assertEquals(2, frequency.getInProgress());
+
+        pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.EMPTY);
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "3"));
+    }
+
+    @Test
+    public void testRedeliveredPullRequestsAreCountedAndReleasedOnce() throws Exception {
+        final PullFrequency frequency = pullFrequencyService.getFrequency(MPC, RESPONDER, System.currentTimeMillis());
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+        assertEquals(1, frequency.getInProgress());
+
+        assertEquals(2, pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.MESSAGE));
+        assertEquals(100, frequency.getInterval());
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "2"));
+        assertEquals(0, pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.EMPTY));
+        assertEquals(1, frequency.getInProgress());
+        assertEquals(100, frequency.getInterval());
+    }
+
+    @Test
+    public void testMessagesArePipelinedUntilTheMpcIsEmpty() throws Exception {
+        final PullFrequency frequency = pullFrequencyService.getFrequency(MPC, RESPONDER, System.currentTimeMillis());
+        frequency.setInterval(400);
+        assertEquals(1, pullFrequencyService.getPullRequestsDue(MPC, RESPONDER));
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+
+        assertEquals(2, pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.MESSAGE));
+        assertEquals(200, frequency.getInterval());
+        assertTrue(frequency.isLastPullReturnedMessage());
+        assertEquals(0, frequency.getInProgress());
+
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "2"));
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "3"));
+        assertEquals(0, pullFrequencyService.pullCompleted(MPC, RESPONDER, "2", PullFrequencyService.Outcome.EMPTY));
+        assertTrue(frequency.isPipelineStopped());
+        assertEquals(0, pullFrequencyService.pullCompleted(MPC, RESPONDER, "3", PullFrequencyService.Outcome.MESSAGE));
+        assertEquals(0, frequency.getInProgress());
+    }
+
+    @Test
+    public void testEmptyMpcBacksOffUpToTheMaximumInterval() throws Exception {
+        final PullFrequency frequency = pullFrequencyService.getFrequency(MPC, RESPONDER, System.currentTimeMillis());
+
+        for (String pullRequestId : new String[]{"1", "2"}) {
+            pullFrequencyService.startPullRequest(MPC, RESPONDER, pullRequestId);
+        }
+        pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.EMPTY);
+        assertEquals(200, frequency.getInterval());
+        pullFrequencyService.pullCompleted(MPC, RESPONDER, "2", PullFrequencyService.Outcome.FAILURE);
+        assertEquals(400, frequency.getInterval());
+        pullFrequencyService.startPullRequest(MPC, RESPONDER, "3");
+        pullFrequencyService.pullCompleted(MPC, RESPONDER, "3", PullFrequencyService.Outcome.EMPTY);
+        assertEquals(400, frequency.getInterval());
+        assertFalse(frequency.isLastPullReturnedMessage());
+    }
+
+    @Test
+    public void testConcurrentPullsAreCappedPerResponder() throws Exception {
+        final long now = System.currentTimeMillis();
+        pullFrequencyService.getFrequency("other", RESPONDER, now).setLastPullReturnedMessage(true);
+
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "1"));
+        assertTrue(pullFrequencyService.startPullRequest(MPC, RESPONDER, "2"));
+        assertEquals(1, pullFrequencyService.getPullRequestsDue("other", RESPONDER));
+        assertTrue(pullFrequencyService.startPullRequest("other", RESPONDER, "3"));
+        assertFalse(pullFrequencyService.startPullRequest("other", RESPONDER, "4"));
+
+        pullFrequencyService.getFrequency("other", RESPONDER, now).setNextPull(0);
+        assertEquals(0, pullFrequencyService.getPullRequestsDue("other", RESPONDER));
+        assertEquals(1, pullFrequencyService.pullCompleted(MPC, RESPONDER, "1", PullFrequencyService.Outcome.MESSAGE));
+    }
+
+    @Test
+    public void testGetFrequencies() throws Exception {
+        pullFrequencyService.getPullRequestsDue(MPC, RESPONDER);
+        pullFrequencyService.startPullRequest(MPC, RESPONDER, "1");
+
+        final List<PullFrequency> frequencies = pullFrequencyService.getFrequencies();
+
+        assertEquals(1, frequencies.size());
+        assertEquals(MPC, frequencies.get(0).getMpc());
+        assertEquals(RESPONDER, frequencies.get(0).getResponder());
+        assertEquals(1, frequencies.get(0).getWindowRequests());
+    }
+}
@@ -0,0 +1,148 @@
+package eu.domibus.core.pull;
+
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.UserMessageLog;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PullMessagePrefetchServiceTest {
+
+    private static final String MPC = "mpc";
+
+    private static final List<String> RECEIVERS = Arrays.asList("RED_GW");
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    TaskExecutor taskExecutor;
+
+    @Injectable
+    PlatformTransactionManager transactionManager;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    PullMessagePrefetchService pullMessagePrefetchService;
+
+    @Test
+    public void testClaimWhenDisabled() throws Exception {
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        recordProperties("false", "2");
+        new Expectations() {{
+            userMessageLogDao.claimReadyToPullMessage(MPC, RECEIVERS);
+            result = userMessageLog;
+        }};
+
+        assertSame(userMessageLog, pullMessagePrefetchService.claimReadyToPullMessage(MPC, RECEIVERS));
+
+        new Verifications() {{
+            taskExecutor.execute((Runnable) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testClaimTakesTheBufferedMessages() throws Exception {
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        recordProperties("true", "2");
+        new Expectations() {{
+            userMessageLogDao.leaseReadyToPullMessages(MPC, RECEIVERS, (Date) any, 2);
+            result = Arrays.asList(1, 2);
+            userMessageLogDao.claimLeasedMessage(1);
+            result = null;
+            userMessageLogDao.claimLeasedMessage(2);
+            result = userMessageLog;
+        }};
+        pullMessagePrefetchService.refill(pullMessagePrefetchService.getBuffer(MPC, RECEIVERS));
+
+        assertSame(userMessageLog, pullMessagePrefetchService.claimReadyToPullMessage(MPC, RECEIVERS));
+
+        new Verifications() {{
+            TransactionDefinition definition;
+            transactionManager.getTransaction(definition = withCapture());
+            assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getPropagationBehavior());
+            transactionManager.commit((TransactionStatus) any);
+            times = 1;
+            userMessageLogDao.claimReadyToPullMessage(anyString, (List<String>) any);
+            times = 0;
+            taskExecutor.execute((Runnable) any);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testClaimSearchesTheDatabaseWhenTheBufferIsEmpty() throws Exception {
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        recordProperties("true", "2");
+        new Expectations() {{
+            userMessageLogDao.claimReadyToPullMessage(MPC, RECEIVERS);
+            result = userMessageLog;
+        }};
+
+        assertSame(userMessageLog, pullMessagePrefetchService.claimReadyToPullMessage(MPC, RECEIVERS));
+
+        new Verifications() {{
+            taskExecutor.execute((Runnable) any);
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testClaimBacksOffAfterAnEmptyRefill() throws Exception {
+        recordProperties("true", "2");
+        new Expectations() {{
+            userMessageLogDao.leaseReadyToPullMessages(MPC, RECEIVERS, (Date) any, anyInt);
+            result = Arrays.<Integer>asList();
+        }};
+        final PullMessagePrefetchService.PrefetchBuffer buffer = pullMessagePrefetchService.getBuffer(MPC, RECEIVERS);
+        pullMessagePrefetchService.refill(buffer);
+
+        assertNull(pullMessagePrefetchService.claimReadyToPullMessage(MPC, RECEIVERS));
+        assertEquals(0, buffer.entityIds.size());
+
+        new Verifications() {{
+            userMessageLogDao.claimReadyToPullMessage(anyString, (List<String>) any);
+            times = 0;
+            taskExecutor.execute((Runnable) any);
+            times = 0;
+        }};
+    }
+
+    private void recordProperties(final String enabled, final String batchSize) {
+        new Expectations() {{
+            domibusProperties.getProperty(PullMessagePrefetchService.PULL_PREFETCH_ENABLED, anyString);
+            result = enabled;
+            minTimes = 0;
+            domibusProperties.getProperty(PullMessagePrefetchService.PULL_PREFETCH_BATCH_SIZE, anyString);
+            result = batchSize;
+            minTimes = 0;
+            domibusProperties.getProperty(PullMessagePrefetchService.PULL_PREFETCH_LEASE_SECONDS, anyString);
+            result = "60";
+            minTimes = 0;
+        }};
+    }
+}
@@ -0,0 +1,69 @@
+package eu.domibus.core.retention;
+
+import eu.domibus.api.usermessage.UserMessageService;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.ExpiredMessageDto;
+import eu.domibus.core.cluster.ClusterShard;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class ExpiredMessageDeleterTest {
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    UserMessageService userMessageService;
+
+    @Tested
+    ExpiredMessageDeleter expiredMessageDeleter;
+
+    @Test
+    public void testDeleteChunkDeletesUpToMaxResults() throws Exception {
+        final Date olderThan = new Date();
+        final List<ExpiredMessageDto> expiredMessages = Arrays.asList(new ExpiredMessageDto(3, "1"), new ExpiredMessageDto(7, "2"), new ExpiredMessageDto(9, "3"));
+        new Expectations() {{
+            userMessageLogDao.findExpiredUndownloadedUserMessages(olderThan, "mpc1", ClusterShard.ALL, 2, 3);
+            result = expiredMessages;
+        }};
+
+        assertEquals(expiredMessages, expiredMessageDeleter.deleteChunk("mpc1", olderThan, false, ClusterShard.ALL, 2, 2, 3));
+
+        new Verifications() {{
+            userMessageService.delete(Arrays.asList("1", "2"));
+            times = 1;
+        }};
+    }
+
+    @Test
+    public void testDeleteChunkWithoutExpiredMessages() throws Exception {
+        final Date olderThan = new Date();
+        new Expectations() {{
+            userMessageLogDao.findExpiredDownloadedUserMessages(olderThan, "mpc1", ClusterShard.ALL, 0, 10);
+            result = new ArrayList<>();
+        }};
+
+        assertEquals(0, expiredMessageDeleter.deleteChunk("mpc1", olderThan, true, ClusterShard.ALL, 0, 10, 10).size());
+
+        new Verifications() {{
+            userMessageService.delete((List<String>) any);
+            times = 0;
+        }};
+    }
+}
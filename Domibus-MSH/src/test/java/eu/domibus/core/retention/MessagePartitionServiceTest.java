@@ -0,0 +1,294 @@
+package eu.domibus.core.retention;
+
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.core.payload.PayloadFileDeletionService;
+import eu.domibus.ebms3.common.dao.PModeProvider;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.VerificationsInOrder;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class MessagePartitionServiceTest {
+
+    private static final String MPC = "mpc";
+
+    @Injectable
+    MessagePartitionDao messagePartitionDao;
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    PModeProvider pModeProvider;
+
+    @Injectable
+    PayloadFileDeletionService payloadFileDeletionService;
+
+    @Injectable
+    ClusterNodeService clusterNodeService;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Tested
+    MessagePartitionService messagePartitionService;
+
+    @Test
+    public void testMaintainPartitionsWhenDisabled() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(MessagePartitionService.PARTITIONS_ENABLED, anyString);
+            result = "false";
+        }};
+
+        messagePartitionService.maintainPartitions();
+
+        new Verifications() {{
+            messagePartitionDao.findPartitionNames(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testMaintainPartitionsOnlyOnTheFirstNode() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(MessagePartitionService.PARTITIONS_ENABLED, anyString);
+            result = "true";
+            clusterNodeService.getShard();
+            result = new ClusterShard(1, 2);
+        }};
+
+        messagePartitionService.maintainPartitions();
+
+        new Verifications() {{
+            messagePartitionDao.findPartitionNames(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testCreatePartitionsUntilThePrecreatedDays() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(MessagePartitionService.PARTITIONS_PRECREATED_DAYS, anyString);
+            result = "2";
+            messagePartitionDao.findPartitionNames(anyString);
+            result = Arrays.asList("P_INITIAL", "P20171019", "P_MAX");
+        }};
+
+        messagePartitionService.createPartitions(date("2017-10-19 12:00"));
+
+        final int tables = MessagePartitionService.PARTITIONED_TABLES.size();
+        new Verifications() {{
+            messagePartitionDao.createPartition(anyString, "P20171020", date("2017-10-21 00:00"));
+            times = tables;
+            messagePartitionDao.createPartition(anyString, "P20171021", date("2017-10-22 00:00"));
+            times = tables;
+            messagePartitionDao.createPartition(anyString, anyString, (Date) any);
+            times = 2 * tables;
+        }};
+    }
+
+    @Test
+    public void testDropExpiredPartitionsStopsAtTheFirstRetainedPartition() throws Exception {
+        final List<String> fileNames = Arrays.asList("payload");
+        new Expectations() {{
+            messagePartitionDao.findPartitionNames(anyString);
+            result = Arrays.asList("P_INITIAL", "P20170101", "P20170102", "P20170103", "P_MAX");
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, MessagePartitionService.FINAL_STATUSES);
+            returns(0L, 1L);
+            messagePartitionDao.findPayloadFileNames("P20170101");
+            result = fileNames;
+        }};
+
+        final int dropped = messagePartitionService.dropExpiredPartitions(date("2017-10-19 12:00"));
+
+        assertEquals(1, dropped);
+        final int tables = MessagePartitionService.PARTITIONED_TABLES.size();
+        new Verifications() {{
+            messagePartitionDao.deleteUnpartitionedRows("P20170101");
+            times = 1;
+            messagePartitionDao.deleteUnpartitionedRows("P20170102");
+            times = 0;
+            payloadFileDeletionService.scheduleDeletion(fileNames);
+            times = 1;
+            messagePartitionDao.dropPartition(anyString, "P20170101");
+            times = tables;
+            messagePartitionDao.dropPartition(MessagePartitionService.MESSAGE_LOG_TABLE, "P20170101");
+            times = 1;
+            messagePartitionDao.dropPartition(anyString, "P20170102");
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testDropPartitionSchedulesThePayloadDeletionAfterTheDrop() throws Exception {
+        final List<String> fileNames = Arrays.asList("payload1", "payload2");
+        new Expectations() {{
+            messagePartitionDao.findPartitionNames(anyString);
+            result = Arrays.asList("P_INITIAL", "P20170101", "P_MAX");
+            messagePartitionDao.findPayloadFileNames("P20170101");
+            result = fileNames;
+        }};
+
+        messagePartitionService.dropPartition("P20170101");
+
+        new VerificationsInOrder() {{
+            messagePartitionDao.deleteUnpartitionedRows("P20170101");
+            messagePartitionDao.dropPartition(MessagePartitionService.PART_INFO_TABLE, "P20170101");
+            payloadFileDeletionService.scheduleDeletion(fileNames);
+            messagePartitionDao.dropPartition(MessagePartitionService.MESSAGE_LOG_TABLE, "P20170101");
+        }};
+    }
+
+    @Test
+    public void testDropPartitionKeepsThePayloadsWhenTheDropFails() throws Exception {
+        new Expectations() {{
+            messagePartitionDao.findPartitionNames(anyString);
+            result = Arrays.asList("P_INITIAL", "P20170101", "P_MAX");
+            messagePartitionDao.findPayloadFileNames("P20170101");
+            result = Arrays.asList("payload");
+            messagePartitionDao.dropPartition(MessagePartitionService.PART_INFO_TABLE, "P20170101");
+            result = new RuntimeException("drop failed");
+        }};
+
+        try {
+            messagePartitionService.dropPartition("P20170101");
+            fail("The failed drop should have been propagated");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        new Verifications() {{
+            payloadFileDeletionService.scheduleDeletion((List<String>) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testIsExpiredWhenThePeriodIsPastTheRetention() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            result = 0L;
+            userMessageLogDao.findMpcsReceivedBetween((Date) any, (Date) any);
+            result = Arrays.asList(MPC);
+            pModeProvider.getRetentionUndownloadedByMpcURI(MPC);
+            result = 14 * 24 * 60;
+            pModeProvider.getRetentionDownloadedByMpcURI(MPC);
+            result = 60;
+            userMessageLogDao.countReceivedBetweenDownloadedAfter(MPC, (Date) any, (Date) any, date("2017-10-19 11:00"));
+            result = 0L;
+        }};
+
+        assertTrue(messagePartitionService.isExpired(date("2017-10-01 00:00"), date("2017-10-02 00:00"), date("2017-10-19 12:00")));
+    }
+
+    @Test
+    public void testIsExpiredWhenThePeriodIsWithinTheRetention() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            result = 0L;
+            userMessageLogDao.findMpcsReceivedBetween((Date) any, (Date) any);
+            result = Arrays.asList(MPC);
+            pModeProvider.getRetentionUndownloadedByMpcURI(MPC);
+            result = 30 * 24 * 60;
+            pModeProvider.getRetentionDownloadedByMpcURI(MPC);
+            result = 60;
+        }};
+
+        assertFalse(messagePartitionService.isExpired(date("2017-10-01 00:00"), date("2017-10-02 00:00"), date("2017-10-19 12:00")));
+    }
+
+    @Test
+    public void testIsExpiredWhenTheMessagesAreKeptIndefinitely() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            result = 0L;
+            userMessageLogDao.findMpcsReceivedBetween((Date) any, (Date) any);
+            result = Arrays.asList(MPC);
+            pModeProvider.getRetentionUndownloadedByMpcURI(MPC);
+            result = -1;
+        }};
+
+        assertFalse(messagePartitionService.isExpired(date("2017-01-01 00:00"), date("2017-01-02 00:00"), date("2017-10-19 12:00")));
+    }
+
+    @Test
+    public void testIsExpiredWhenMessagesWereDownloadedRecently() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            result = 0L;
+            userMessageLogDao.findMpcsReceivedBetween((Date) any, (Date) any);
+            result = Arrays.asList(MPC);
+            pModeProvider.getRetentionUndownloadedByMpcURI(MPC);
+            result = 60;
+            pModeProvider.getRetentionDownloadedByMpcURI(MPC);
+            result = 60;
+            userMessageLogDao.countReceivedBetweenDownloadedAfter(MPC, (Date) any, (Date) any, (Date) any);
+            result = 1L;
+        }};
+
+        assertFalse(messagePartitionService.isExpired(date("2017-10-01 00:00"), date("2017-10-02 00:00"), date("2017-10-19 12:00")));
+    }
+
+    @Test
+    public void testIsExpiredWithTheFinalStatusesOfTheSentMessages() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            result = 0L;
+            userMessageLogDao.findMpcsReceivedBetween((Date) any, (Date) any);
+            result = Arrays.asList(MPC);
+            pModeProvider.getRetentionUndownloadedByMpcURI(MPC);
+            result = 14 * 24 * 60;
+            pModeProvider.getRetentionDownloadedByMpcURI(MPC);
+            result = 60;
+            userMessageLogDao.countReceivedBetweenDownloadedAfter(MPC, (Date) any, (Date) any, (Date) any);
+            result = 0L;
+        }};
+
+        assertTrue(messagePartitionService.isExpired(date("2017-10-01 00:00"), date("2017-10-02 00:00"), date("2017-10-19 12:00")));
+
+        new Verifications() {{
+            List<MessageStatus> finalStatuses;
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, finalStatuses = withCapture());
+            assertTrue(finalStatuses.containsAll(Arrays.asList(MessageStatus.ACKNOWLEDGED, MessageStatus.ACKNOWLEDGED_WITH_WARNING, MessageStatus.SEND_FAILURE)));
+            assertFalse(finalStatuses.contains(MessageStatus.WAITING_FOR_RETRY));
+            assertFalse(finalStatuses.contains(MessageStatus.SEND_ENQUEUED));
+        }};
+    }
+
+    @Test
+    public void testIsExpiredIncludesTheReceivedTolerance() throws Exception {
+        // the rows of the messages received in the first hour of the next day may be in the partition
+        assertFalse(messagePartitionService.isExpired(date("2017-10-18 00:00"), date("2017-10-19 00:00"), date("2017-10-19 00:30")));
+
+        new Verifications() {{
+            userMessageLogDao.countReceivedBetweenNotInStatuses((Date) any, (Date) any, (List<MessageStatus>) any);
+            times = 0;
+        }};
+    }
+
+    private static Date date(String date) throws Exception {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm").parse(date);
+    }
+}
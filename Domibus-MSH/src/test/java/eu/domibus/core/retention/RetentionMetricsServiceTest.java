@@ -0,0 +1,69 @@
+package eu.domibus.core.retention;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @since 3.3.3
+ */
+public class RetentionMetricsServiceTest {
+
+    private final RetentionMetricsService retentionMetricsService = new RetentionMetricsService();
+
+    @Test
+    public void testMetricsAreOnlyRecordedDuringACycle() {
+        retentionMetricsService.addDeleted(5);
+        assertNull(retentionMetricsService.getLastCycle());
+
+        retentionMetricsService.startCycle();
+        retentionMetricsService.addSelected(3);
+        retentionMetricsService.addSelected(2);
+        retentionMetricsService.addDeleted(5);
+        retentionMetricsService.addJmsCleanupTime(10);
+        retentionMetricsService.addDatabaseDeletionTime(20);
+        retentionMetricsService.addLimitReached("mpc1", 7);
+        retentionMetricsService.addLimitReached("mpc1", 3);
+        retentionMetricsService.endCycle();
+        retentionMetricsService.addDeleted(5);
+
+        final RetentionCycle cycle = retentionMetricsService.getLastCycle();
+        assertEquals(5, cycle.getSelected());
+        assertEquals(5, cycle.getDeleted());
+        assertEquals(10, cycle.getJmsCleanupTime());
+        assertEquals(20, cycle.getDatabaseDeletionTime());
+        assertEquals(2, cycle.getLimitReached());
+        assertEquals(Integer.valueOf(10), cycle.getExpiredLeft().get("mpc1"));
+    }
+
+    @Test
+    public void testOnlyTheLastCyclesAreKept() {
+        for (int i = 0; i < RetentionMetricsService.MAX_CYCLES + 5; i++) {
+            retentionMetricsService.startCycle();
+            retentionMetricsService.addDeleted(i);
+            retentionMetricsService.endCycle();
+        }
+
+        final List<RetentionCycle> cycles = retentionMetricsService.getCycles();
+        assertEquals(RetentionMetricsService.MAX_CYCLES, cycles.size());
+        assertEquals(RetentionMetricsService.MAX_CYCLES + 4, cycles.get(0).getDeleted());
+    }
+
+    @Test
+    public void testDeletionRateIgnoresTheIdleCycles() {
+        assertEquals(0d, retentionMetricsService.getDeletionRate(), 0);
+
+        retentionMetricsService.startCycle();
+        retentionMetricsService.endCycle();
+        retentionMetricsService.getLastCycle().setDuration(1000);
+        retentionMetricsService.startCycle();
+        retentionMetricsService.addDeleted(100);
+        retentionMetricsService.endCycle();
+        retentionMetricsService.getLastCycle().setDuration(2000);
+
+        assertEquals(50d, retentionMetricsService.getDeletionRate(), 0.001);
+    }
+}
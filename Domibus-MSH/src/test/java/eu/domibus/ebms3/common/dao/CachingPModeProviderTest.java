@@ -7,12 +7,15 @@ import eu.domibus.api.util.xml.XMLUtil;
 import eu.domibus.common.dao.ConfigurationDAO;
 import eu.domibus.common.dao.ConfigurationRawDAO;
 import eu.domibus.common.dao.ProcessDao;
+import eu.domibus.common.ErrorCode;
+import eu.domibus.common.MSHRole;
 import eu.domibus.common.exception.EbMS3Exception;
-import eu.domibus.common.model.configuration.Configuration;
-import eu.domibus.common.model.configuration.Party;
+import eu.domibus.common.model.configuration.*;
 import eu.domibus.common.model.configuration.Process;
-import eu.domibus.common.model.configuration.Role;
+import eu.domibus.ebms3.common.context.MessageExchangeConfiguration;
+import eu.domibus.ebms3.common.model.AgreementRef;
 import eu.domibus.ebms3.common.model.PartyId;
+import eu.domibus.ebms3.common.model.UserMessage;
 import eu.domibus.ebms3.common.validators.ConfigurationValidator;
 import eu.domibus.logging.DomibusLogger;
 import eu.domibus.logging.DomibusLoggerFactory;
@@ -33,10 +36,8 @@ import javax.xml.bind.Unmarshaller;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * @author Arun Raj
@@ -85,6 +86,12 @@ public class CachingPModeProviderTest {
     @Injectable
     ProcessDao processDao;
 
+    @Injectable
+    java.util.Properties domibusProperties;
+
+    @Injectable
+    Executor taskExecutor;
+
     @Tested
     CachingPModeProvider cachingPModeProvider;
 
@@ -255,33 +262,23 @@ public class CachingPModeProviderTest {
         final Set<Party> parties = configuration.getBusinessProcesses().getParties();
         final Party red_gw = getPartyByName(parties, "red_gw");
         final Party blue_gw = getPartyByName(parties, "blue_gw");
-        final Set<Process> processes = configuration.getBusinessProcesses().getProcesses();
-        final Collection<Process> filter = Collections2.filter(processes, new Predicate<Process>() {
-            @Override
-            public boolean apply(Process process) {
-                return process.getInitiatorParties().contains(red_gw) && "pull".equals(process.getMepBinding().getName());
-            }
-        });
         new Expectations() {{
             configurationDAO.configurationExists();
             result = true;
             configurationDAO.readEager();
             result = configuration;
-            processDao.findPullProcessesByInitiator(red_gw);
-            result = Lists.newArrayList(filter);
-            processDao.findPullProcessesByInitiator(blue_gw);
-            result = Lists.newArrayList();
         }};
         cachingPModeProvider.init();
         List<Process> pullProcessesByInitiator = cachingPModeProvider.findPullProcessesByInitiator(red_gw);
         Assert.assertEquals(5, pullProcessesByInitiator.size());
+        for (Process process : pullProcessesByInitiator) {
+            Assert.assertEquals("pull", process.getMepBinding().getName());
+        }
         pullProcessesByInitiator = cachingPModeProvider.findPullProcessesByInitiator(blue_gw);
         Assert.assertEquals(0, pullProcessesByInitiator.size());
         new Verifications() {{
-            processDao.findPullProcessesByInitiator(red_gw);
-            times = 1;
-            processDao.findPullProcessesByInitiator(blue_gw);
-            times = 1;
+            processDao.findPullProcessesByInitiator((Party) any);
+            times = 0;
         }};
     }
 
@@ -305,30 +302,152 @@ public class CachingPModeProviderTest {
     public void testRetrievePullProcessBasedOnMpc() throws InvocationTargetException, NoSuchMethodException, IllegalAccessException, JAXBException {
         configuration = loadSamplePModeConfiguration(PULL_PMODE_CONFIG_URI);
         final String mpcName = "http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPCOne";
-        final String emptyMpc = "http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPCTwo";
+        final String emptyMpc = "http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPC";
         new Expectations() {{
             configurationDAO.configurationExists();
             result = true;
             configurationDAO.readEager();
             result = configuration;
-            processDao.findPullProcessByMpc(mpcName);
-            result = Lists.newArrayList(new Process());
-            processDao.findPullProcessByMpc(emptyMpc);
-            result = Lists.newArrayList();
         }};
         cachingPModeProvider.init();
         List<Process> pullProcessesByMpc = cachingPModeProvider.findPullProcessByMpc(mpcName);
         Assert.assertEquals(1, pullProcessesByMpc.size());
+        Assert.assertEquals("tc13Process", pullProcessesByMpc.get(0).getName());
         pullProcessesByMpc = cachingPModeProvider.findPullProcessByMpc(emptyMpc);
         Assert.assertEquals(0, pullProcessesByMpc.size());
         new Verifications() {{
-            processDao.findPullProcessByMpc(mpcName);
-            times = 1;
-            processDao.findPullProcessByMpc(emptyMpc);
+            processDao.findPullProcessByMpc(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testRetrievePullProcessBasedOnMessageContext() throws InvocationTargetException, NoSuchMethodException, IllegalAccessException, JAXBException {
+        configuration = loadSamplePModeConfiguration(PULL_PMODE_CONFIG_URI);
+        new Expectations() {{
+            configurationDAO.configurationExists();
+            result = true;
+            configurationDAO.readEager();
+            result = configuration;
+        }};
+        cachingPModeProvider.init();
+        MessageExchangeConfiguration pulledMessage = new MessageExchangeConfiguration("", "blue_gw", "red_gw", "testService14", "tc14Action", "pullTestcase14tc14Action");
+        List<Process> processes = cachingPModeProvider.findPullProcessesByMessageContext(pulledMessage);
+        Assert.assertEquals(1, processes.size());
+        Assert.assertEquals("tc14Process", processes.get(0).getName());
+
+        MessageExchangeConfiguration pushedMessage = new MessageExchangeConfiguration("", "red_gw", "blue_gw", "testService14", "tc14Action", "pullTestcase14tc14Action");
+        Assert.assertTrue(cachingPModeProvider.findPullProcessesByMessageContext(pushedMessage).isEmpty());
+        new Verifications() {{
+            processDao.findPullProcessesByMessageContext((MessageExchangeConfiguration) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testGetRetentionByMpcURIIgnoresCase() throws InvocationTargetException, NoSuchMethodException, IllegalAccessException, JAXBException {
+        configuration = loadSamplePModeConfiguration(PULL_PMODE_CONFIG_URI);
+        new Expectations() {{
+            configurationDAO.configurationExists();
+            result = true;
+            configurationDAO.readEager();
+            result = configuration;
+        }};
+        cachingPModeProvider.init();
+        Assert.assertEquals(15, cachingPModeProvider.getRetentionDownloadedByMpcURI("http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/DEFAULTMPCTWO"));
+        Assert.assertEquals(600, cachingPModeProvider.getRetentionUndownloadedByMpcURI("http://docs.oasis-open.org/ebxml-msg/ebms/v3.0/ns/core/200704/defaultMPCTwo"));
+        Assert.assertEquals(-1, cachingPModeProvider.getRetentionUndownloadedByMpcURI(NONEXISTANTMPC));
+    }
+
+
+    @Test
+    public void testInitSyntheticPModeWith10000Parties() throws EbMS3Exception {
+        final int partyCount = 10000;
+        final PartyIdType partyIdType = new PartyIdType();
+        partyIdType.setName("partyTypeUrn");
+        partyIdType.setValue("urn:oasis:names:tc:ebcore:partyid-type:unregistered");
+        final Set<Party> parties = new HashSet<>();
+        for (int i = 0; i < partyCount; i++) {
+            final Identifier identifier = new Identifier();
+            identifier.setPartyId("party_id_" + i);
+            identifier.setPartyIdType(partyIdType);
+            final Party party = new Party();
+            party.setName("party_" + i);
+            party.setEndpoint("http://localhost:8080/party_" + i);
+            party.getIdentifiers().add(identifier);
+            parties.add(party);
+        }
+        final BusinessProcesses businessProcesses = new BusinessProcesses();
+        businessProcesses.setParties(parties);
+        final Configuration syntheticConfiguration = new Configuration();
+        syntheticConfiguration.setBusinessProcesses(businessProcesses);
+        syntheticConfiguration.setMpcs(new HashSet<Mpc>());
+
+        new Expectations() {{
+            configurationDAO.configurationExists();
+            result = true;
+            configurationDAO.readEager();
+            result = syntheticConfiguration;
+        }};
+
+        final long start = System.currentTimeMillis();
+        cachingPModeProvider.init();
+        LOG.info("Synthetic PMode with [{}] parties initialized in [{}] ms", partyCount, System.currentTimeMillis() - start);
+
+        final long lookupStart = System.currentTimeMillis();
+        for (int i = 0; i < partyCount; i++) {
+            PartyId partyId = new PartyId();
+            partyId.setValue("PARTY_ID_" + i);
+            partyId.setType("urn:oasis:names:tc:ebcore:partyid-type:unregistered");
+            Assert.assertEquals("party_" + i, cachingPModeProvider.findPartyName(Collections.singletonList(partyId)));
+        }
+        LOG.info("[{}] party lookups done in [{}] ms", partyCount, System.currentTimeMillis() - lookupStart);
+
+        Assert.assertEquals("party_42", cachingPModeProvider.getSenderParty("PARTY_42:party_1:service:action:agreement:leg").getName());
+        Assert.assertEquals("party_1", cachingPModeProvider.getReceiverParty("PARTY_42:party_1:service:action:agreement:leg").getName());
+    }
+
+    @Test
+    public void testFindUserMessageExchangeContextIsMemoised(@Injectable final UserMessage userMessage) throws EbMS3Exception {
+        new Expectations(cachingPModeProvider) {{
+            cachingPModeProvider.findAgreement((AgreementRef) any);
+            result = "agreementName";
+            cachingPModeProvider.findPartyName((Collection<PartyId>) any);
+            returns("senderParty", "receiverParty");
+            cachingPModeProvider.findServiceName((eu.domibus.ebms3.common.model.Service) any);
+            result = "serviceName";
+            cachingPModeProvider.findActionName(anyString);
+            result = "actionName";
+            cachingPModeProvider.findLegName(anyString, anyString, anyString, anyString, anyString);
+            result = "legName";
             times = 1;
         }};
+
+        MessageExchangeConfiguration first = cachingPModeProvider.findUserMessageExchangeContext(userMessage, MSHRole.SENDING);
+        MessageExchangeConfiguration second = cachingPModeProvider.findUserMessageExchangeContext(userMessage, MSHRole.RECEIVING);
+
+        Assert.assertEquals("senderParty:receiverParty:serviceName:actionName:agreementName:legName", first.getPmodeKey());
+        Assert.assertSame(first, second);
     }
 
+    @Test
+    public void testFindUserMessageExchangeContextMemoisesFailures(@Injectable final UserMessage userMessage) throws EbMS3Exception {
+        new Expectations(cachingPModeProvider) {{
+            cachingPModeProvider.findAgreement((AgreementRef) any);
+            result = new EbMS3Exception(ErrorCode.EbMS3ErrorCode.EBMS_0001, "No matching agreement found", null, null);
+            times = 1;
+        }};
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cachingPModeProvider.findUserMessageExchangeContext(userMessage, MSHRole.SENDING);
+                Assert.fail("Expected EbMS3Exception as no agreement is matching");
+            } catch (EbMS3Exception e) {
+                Assert.assertEquals(ErrorCode.EbMS3ErrorCode.EBMS_0001, e.getErrorCode());
+                Assert.assertEquals("No matching agreement found", e.getErrorDetail());
+            }
+        }
+    }
 
     private Party getPartyByName(Set<Party> parties, final String partyName) {
         final Collection<Party> filter = Collections2.filter(parties, new Predicate<Party>() {
@@ -34,6 +34,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.never;
@@ -88,6 +89,12 @@ public class PModeDaoTestIT {
             return Mockito.mock(JmsOperations.class);
         }
 
+        @Bean
+        @Qualifier("taskExecutor")
+        public Executor taskExecutor() {
+            return Mockito.mock(Executor.class);
+        }
+
         @Bean
         public ConfigurationValidator validator() {
             return new ConfigurationValidator() {
@@ -142,18 +149,18 @@ public class PModeDaoTestIT {
         assertTrue(updatePmodeMessage.size() > 0);
 
         ArgumentCaptor<Configuration> parameter = ArgumentCaptor.forClass(Configuration.class);
-        Mockito.verify(configurationDAO).updateConfiguration(parameter.capture());
+        ArgumentCaptor<ConfigurationRaw> rawConfig = ArgumentCaptor.forClass(ConfigurationRaw.class);
+        Mockito.verify(configurationDAO).createConfiguration(parameter.capture());
+        Mockito.verify(configurationDAO).activateConfiguration(Mockito.eq(parameter.getValue()), rawConfig.capture());
 
         //compare the provided PMode with the one that gets saved
         Configuration saved = parameter.getValue();
         assertNotNull(saved);
         Configuration original = unmarshallerResult.getResult();
+        original.preparePersist();
         assertEquals(saved.getMpcsXml().getMpc().size(), original.getMpcsXml().getMpc().size());
         assertEquals(saved.getBusinessProcesses(), original.getBusinessProcesses());
 
-        ArgumentCaptor<ConfigurationRaw> rawConfig = ArgumentCaptor.forClass(ConfigurationRaw.class);
-        Mockito.verify(configurationRawDAO).create(rawConfig.capture());
-
         final ConfigurationRaw raw = rawConfig.getValue();
         assertNotNull(raw.getConfigurationDate());
         assertEquals(raw.getXml(), pModeBytes);
@@ -172,12 +179,14 @@ public class PModeDaoTestIT {
         assertTrue(updatePmodeMessage.isEmpty());
 
         ArgumentCaptor<Configuration> parameter = ArgumentCaptor.forClass(Configuration.class);
-        Mockito.verify(configurationDAO).updateConfiguration(parameter.capture());
+        Mockito.verify(configurationDAO).createConfiguration(parameter.capture());
+        Mockito.verify(configurationDAO).activateConfiguration(Mockito.eq(parameter.getValue()), Mockito.any(ConfigurationRaw.class));
 
         //compare the provided PMode with the one that gets saved
         Configuration saved = parameter.getValue();
         assertNotNull(saved);
         Configuration original = unmarshallerResult.getResult();
+        original.preparePersist();
         assertEquals(saved.getMpcsXml().getMpc().size(), original.getMpcsXml().getMpc().size());
         assertEquals(saved.getBusinessProcesses(), original.getBusinessProcesses());
     }
@@ -196,6 +205,7 @@ public class PModeDaoTestIT {
             assertTrue(e.getErrors().size() > 0);
         }
 
-        Mockito.verify(configurationDAO, never()).updateConfiguration((Configuration) Mockito.anyObject());
+        Mockito.verify(configurationDAO, never()).createConfiguration((Configuration) Mockito.anyObject());
+        Mockito.verify(configurationDAO, never()).activateConfiguration((Configuration) Mockito.anyObject(), (ConfigurationRaw) Mockito.anyObject());
     }
 }
@@ -535,6 +535,36 @@ public class BackendNotificationServiceTest {
         }};
     }
 
+    @Test
+    public void testNotifyOfSendFailureForSeveralMessages(@Injectable final MessageLog messageLog1, @Injectable final MessageLog messageLog2) throws Exception {
+        new Expectations(backendNotificationService) {{
+            backendNotificationService.isPluginNotificationDisabled();
+            result = false;
+
+            messageLog1.getMessageId();
+            result = "1";
+            messageLog1.getBackend();
+            result = "JMS";
+
+            messageLog2.getMessageId();
+            result = "2";
+            messageLog2.getBackend();
+            result = "WS";
+
+            backendNotificationService.notify(anyString, anyString, NotificationType.MESSAGE_SEND_FAILURE);
+        }};
+
+        backendNotificationService.notifyOfSendFailure(Arrays.asList(messageLog1, messageLog2));
+
+        new Verifications() {{
+            backendNotificationService.notify("1", "JMS", NotificationType.MESSAGE_SEND_FAILURE);
+            backendNotificationService.notify("2", "WS", NotificationType.MESSAGE_SEND_FAILURE);
+            messageLogDao.setAsNotified(Arrays.asList("1", "2"));
+            messageLogDao.setAsNotified(anyString);
+            times = 0;
+        }};
+    }
+
     @Test
     public void testNotifyOfMessageStatusChange(@Injectable final MessageLog messageLog) throws Exception {
         final String messageId = "1";
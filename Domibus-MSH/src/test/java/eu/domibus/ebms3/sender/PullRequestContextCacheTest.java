@@ -0,0 +1,77 @@
+package eu.domibus.ebms3.sender;
+
+import eu.domibus.common.exception.ConfigurationException;
+import eu.domibus.common.exception.EbMS3Exception;
+import eu.domibus.common.model.configuration.LegConfiguration;
+import eu.domibus.common.model.configuration.Party;
+import eu.domibus.ebms3.common.dao.PModeProvider;
+import eu.domibus.pki.PolicyService;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Mocked;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.apache.neethi.Policy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class PullRequestContextCacheTest {
+
+    private static final String PMODE_KEY = "red_gw:blue_gw:service:action:agreement:leg";
+
+    @Injectable
+    PModeProvider pModeProvider;
+
+    @Injectable
+    PolicyService policyService;
+
+    @Tested
+    PullRequestContextCache pullRequestContextCache;
+
+    @Test
+    public void testContextIsResolvedOnce(@Mocked final LegConfiguration legConfiguration, @Mocked final Party party, @Mocked final Policy policy) throws Exception {
+        new Expectations() {{
+            pModeProvider.getLegConfiguration(PMODE_KEY);
+            result = legConfiguration;
+            pModeProvider.getReceiverParty(PMODE_KEY);
+            result = party;
+            legConfiguration.getSecurity().getPolicy();
+            result = "signOnly.xml";
+            policyService.parsePolicy("policies/signOnly.xml");
+            result = policy;
+        }};
+
+        final PullRequestContextCache.PullRequestContext context = pullRequestContextCache.getContext(PMODE_KEY);
+        assertSame(context, pullRequestContextCache.getContext(PMODE_KEY));
+        assertSame(legConfiguration, context.getLegConfiguration());
+        assertSame(party, context.getReceiverParty());
+        assertSame(policy, context.getPolicy());
+
+        pullRequestContextCache.clear();
+        pullRequestContextCache.getContext(PMODE_KEY);
+
+        new Verifications() {{
+            pModeProvider.getLegConfiguration(PMODE_KEY);
+            times = 2;
+        }};
+    }
+
+    @Test(expected = EbMS3Exception.class)
+    public void testInvalidPolicy(@Mocked final LegConfiguration legConfiguration) throws Exception {
+        new Expectations() {{
+            pModeProvider.getLegConfiguration(PMODE_KEY);
+            result = legConfiguration;
+            policyService.parsePolicy(anyString);
+            result = new ConfigurationException("invalid policy");
+        }};
+
+        pullRequestContextCache.getContext(PMODE_KEY);
+    }
+}
@@ -0,0 +1,285 @@
+package eu.domibus.ebms3.sender;
+
+import eu.domibus.api.jms.JMSManager;
+import eu.domibus.api.message.UserMessageLogService;
+import eu.domibus.api.usermessage.UserMessageService;
+import eu.domibus.common.MSHRole;
+import eu.domibus.common.MessageStatus;
+import eu.domibus.common.NotificationStatus;
+import eu.domibus.common.dao.MessagingDao;
+import eu.domibus.common.dao.UserMessageLogDao;
+import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.core.cluster.ClusterNodeService;
+import eu.domibus.core.cluster.ClusterShard;
+import eu.domibus.ebms3.receiver.BackendNotificationService;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Tested;
+import mockit.Verifications;
+import mockit.VerificationsInOrder;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @since 3.3.3
+ */
+@RunWith(JMockit.class)
+public class RetryServiceTest {
+
+    @Injectable
+    BackendNotificationService backendNotificationService;
+
+    @Injectable
+    Properties domibusProperties;
+
+    @Injectable
+    UserMessageService userMessageService;
+
+    @Injectable
+    UserMessageLogDao userMessageLogDao;
+
+    @Injectable
+    UserMessageLogService userMessageLogService;
+
+    @Injectable
+    MessagingDao messagingDao;
+
+    @Injectable
+    JMSManager jmsManager;
+
+    @Injectable
+    ClusterNodeService clusterNodeService;
+
+    @Tested
+    RetryService retryService;
+
+    @Test
+    public void testEnqueueMessagesMarksRetriedMessagesAsEnqueued() throws Exception {
+        final ClusterShard shard = new ClusterShard(1, 2);
+        new Expectations(retryService) {{
+            clusterNodeService.getShard();
+            result = shard;
+            domibusProperties.getProperty(RetryService.TIMEOUT_TOLERANCE);
+            result = "10800000";
+            domibusProperties.getProperty(RetryService.RETRY_BATCH_SIZE, anyString);
+            result = "2";
+            userMessageLogDao.findTimedoutMessages(anyInt, shard);
+            result = new ArrayList<>();
+            userMessageLogDao.findRetryMessages((Date) any, 2, shard);
+            result = new ArrayList<>(Arrays.asList("1", "2"));
+            userMessageLogDao.claimRetryMessage(anyString, (Date) any);
+            result = 1;
+            retryService.purgePullMessage(shard);
+            retryService.resetWaitingForReceiptPullMessages(shard);
+        }};
+
+        retryService.enqueueMessages();
+
+        new Verifications() {{
+            userMessageLogDao.claimRetryMessage("1", (Date) any);
+            userMessageService.scheduleSending("1", null, (Date) any);
+            userMessageLogDao.claimRetryMessage("2", (Date) any);
+            userMessageService.scheduleSending("2", null, (Date) any);
+            userMessageLogService.setMessageAsSendFailure(anyString);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testEnqueueRetrySkipsTheMessagesAlreadyClaimed() throws Exception {
+        new Expectations() {{
+            userMessageLogDao.claimRetryMessage("1", (Date) any);
+            result = 0;
+        }};
+
+        retryService.enqueueRetry("1");
+
+        new Verifications() {{
+            userMessageService.scheduleSending(anyString, (Long) any, (Date) any);
+            times = 0;
+            backendNotificationService.notifyOfMessageStatusChange((UserMessageLog) any, MessageStatus.SEND_ENQUEUED, (Timestamp) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testEnqueueRetryLeasesTheMessageForTheEnqueuedTimeout() throws Exception {
+        final long before = System.currentTimeMillis();
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setMessageId("1");
+        userMessageLog.setMessageStatus(MessageStatus.WAITING_FOR_RETRY);
+        new Expectations() {{
+            domibusProperties.getProperty(RetryService.RETRY_ENQUEUED_TIMEOUT, anyString);
+            result = "60000";
+            userMessageLogDao.findByMessageId("1", MSHRole.SENDING);
+            result = userMessageLog;
+            userMessageLogDao.claimRetryMessage("1", (Date) any);
+            result = 1;
+        }};
+
+        retryService.enqueueRetry("1");
+
+        new Verifications() {{
+            Date sendLease;
+            userMessageLogDao.claimRetryMessage("1", sendLease = withCapture());
+            assertTrue(sendLease.getTime() >= before / 1000 * 1000 + 60000);
+            assertEquals(0, sendLease.getTime() % 1000);
+            backendNotificationService.notifyOfMessageStatusChange(userMessageLog, MessageStatus.SEND_ENQUEUED, (Timestamp) any);
+            Date enqueuedSendLease;
+            userMessageService.scheduleSending("1", null, enqueuedSendLease = withCapture());
+            assertEquals(sendLease, enqueuedSendLease);
+        }};
+    }
+
+    @Test
+    public void testRenewSendLease() throws Exception {
+        final Date sendLease = new Date(1000000);
+        new Expectations() {{
+            domibusProperties.getProperty(RetryService.RETRY_ENQUEUED_TIMEOUT, anyString);
+            result = "60000";
+            userMessageLogDao.renewSendLease("1", sendLease, (Date) any);
+            result = 1;
+            userMessageLogDao.renewSendLease("2", sendLease, (Date) any);
+            result = 0;
+        }};
+
+        assertTrue(retryService.renewSendLease("1", sendLease));
+        assertFalse(retryService.renewSendLease("2", sendLease));
+    }
+
+    @Test
+    public void testScheduleRetryOnTheBroker() throws Exception {
+        final Date nextAttempt = new Date(System.currentTimeMillis() + 60000);
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setMessageId("1");
+        userMessageLog.setNextAttempt(nextAttempt);
+        new Expectations() {{
+            domibusProperties.getProperty(RetryService.RETRY_SCHEDULING, anyString);
+            result = "broker";
+            jmsManager.isDeliveryDelaySupported();
+            result = true;
+            domibusProperties.getProperty(RetryService.RETRY_BROKER_TOLERANCE, anyString);
+            result = "300000";
+        }};
+
+        retryService.scheduleRetry(userMessageLog);
+
+        assertEquals((nextAttempt.getTime() + 300000) / 1000 * 1000, userMessageLog.getSendLease().getTime());
+        new Verifications() {{
+            userMessageLogDao.update(userMessageLog);
+            long delay;
+            userMessageService.scheduleSending("1", delay = withCapture(), userMessageLog.getSendLease());
+            assertTrue(delay > 0 && delay <= 60000);
+        }};
+    }
+
+    @Test
+    public void testScheduleRetryNotSupportedByTheBroker() throws Exception {
+        new Expectations() {{
+            domibusProperties.getProperty(RetryService.RETRY_SCHEDULING, anyString);
+            result = "BROKER";
+            jmsManager.isDeliveryDelaySupported();
+            result = false;
+        }};
+
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setMessageId("1");
+        retryService.scheduleRetry(userMessageLog);
+
+        assertNull(userMessageLog.getSendLease());
+        new Verifications() {{
+            userMessageService.scheduleSending(anyString, anyLong, (Date) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testPurgeTimedoutMessagesInChunks() throws Exception {
+        new Expectations(retryService) {{
+            retryService.getPurgeBatchSize();
+            result = 2;
+        }};
+
+        retryService.purgeTimedoutMessages(Arrays.asList("1", "2", "3"));
+
+        new Verifications() {{
+            retryService.purgeTimedoutMessagesChunk(Arrays.asList("1", "2"));
+            retryService.purgeTimedoutMessagesChunk(Arrays.asList("3"));
+        }};
+    }
+
+    @Test
+    public void testPurgeTimedoutMessagesChunk() throws Exception {
+        final UserMessageLog expiredToNotify = new UserMessageLog();
+        expiredToNotify.setMessageId("1");
+        expiredToNotify.setMessageStatus(MessageStatus.WAITING_FOR_RETRY);
+        expiredToNotify.setNotificationStatus(NotificationStatus.REQUIRED);
+        final UserMessageLog expired = new UserMessageLog();
+        expired.setMessageId("2");
+        expired.setMessageStatus(MessageStatus.WAITING_FOR_RETRY);
+        expired.setNotificationStatus(NotificationStatus.NOT_REQUIRED);
+        final UserMessageLog acknowledged = new UserMessageLog();
+        acknowledged.setMessageId("3");
+        acknowledged.setMessageStatus(MessageStatus.ACKNOWLEDGED);
+        final List<String> messageIds = Arrays.asList("1", "2", "3");
+
+        new Expectations() {{
+            userMessageLogDao.findByMessageIdsForUpdate(messageIds, MSHRole.SENDING);
+            result = Arrays.asList(expiredToNotify, expired, acknowledged);
+            domibusProperties.getProperty("domibus.sendMessage.failure.delete.payload", anyString);
+            result = "true";
+        }};
+
+        retryService.purgeTimedoutMessagesChunk(messageIds);
+
+        new VerificationsInOrder() {{
+            userMessageLogDao.setTimedoutMessagesAsSendFailure(Arrays.asList("1", "2"));
+            backendNotificationService.notifyOfSendFailure(Arrays.asList(expiredToNotify));
+            backendNotificationService.notifyOfMessageStatusChange(expiredToNotify, MessageStatus.SEND_FAILURE, (Timestamp) any);
+            backendNotificationService.notifyOfMessageStatusChange(expired, MessageStatus.SEND_FAILURE, (Timestamp) any);
+            messagingDao.clearPayloadData(Arrays.asList("1", "2"));
+        }};
+        new Verifications() {{
+            backendNotificationService.notifyOfMessageStatusChange(acknowledged, MessageStatus.SEND_FAILURE, (Timestamp) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testResetWaitingForReceiptPullMessagesInChunks() throws Exception {
+        final ClusterShard shard = new ClusterShard(0, 1);
+        new Expectations(retryService) {{
+            userMessageLogDao.findPullWaitingForReceiptMessages(shard);
+            result = Arrays.asList("1", "2", "3");
+            retryService.getPurgeBatchSize();
+            result = 2;
+            userMessageLogDao.findPullWaitingForReceiptMessagesWithoutAttemptLeft(Arrays.asList("1", "2"));
+            result = Arrays.asList("2");
+            userMessageLogDao.findPullWaitingForReceiptMessagesWithoutAttemptLeft(Arrays.asList("3"));
+            result = new ArrayList<>();
+            retryService.purgeTimedoutMessage("2");
+        }};
+
+        retryService.resetWaitingForReceiptPullMessages(shard);
+
+        new Verifications() {{
+            userMessageLogDao.resetPullWaitingForReceiptMessages(Arrays.asList("1", "2"));
+            userMessageLogDao.resetPullWaitingForReceiptMessages(Arrays.asList("3"));
+            retryService.purgeTimedoutMessage(anyString);
+            times = 1;
+        }};
+    }
+}
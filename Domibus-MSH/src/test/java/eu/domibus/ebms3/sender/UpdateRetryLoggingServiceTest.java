@@ -49,6 +49,9 @@ public class UpdateRetryLoggingServiceTest {
     @Injectable
     private MessagingDao messagingDao;
 
+    @Injectable
+    private RetryService retryService;
+
     private LegConfiguration legConfiguration = new LegConfiguration();
 
     @Injectable
@@ -309,6 +312,37 @@ public class UpdateRetryLoggingServiceTest {
         assertEquals(MessageStatus.WAITING_FOR_RETRY, userMessageLog.getMessageStatus());
         assertEquals(1, userMessageLog.getSendAttempts());
 
+        new Verifications() {{
+            retryService.scheduleRetry(userMessageLog);
+        }};
+    }
+
+    @Test
+    public void testComputeNextAttempt_exponentialStrategy_DelayGrowsWithTheAttempts() throws Exception {
+        new SystemMockFirstOfJanuary2016();
+
+        final ReceptionAwareness receptionAwareness = new ReceptionAwareness();
+        receptionAwareness.setStrategy(RetryStrategy.EXPONENTIAL);
+        receptionAwareness.setRetryTimeout(RETRY_TIMEOUT_IN_MINUTES);
+        final LegConfiguration exponentialLeg = new LegConfiguration();
+        Deencapsulation.setField(exponentialLeg, "receptionAwareness", receptionAwareness);
+
+        final UserMessageLog userMessageLog = new UserMessageLog();
+        userMessageLog.setSendAttempts(3);
+        userMessageLog.setSendAttemptsMax(10);
+        userMessageLog.setReceived(new Date(FIVE_MINUTES_BEFORE_FIRST_OF_JANUARY_2016));
+
+        new Expectations() {{
+            domibusProperties.getProperty(UpdateRetryLoggingService.RETRY_BACKOFF_BASE, anyString);
+            result = "1000";
+            domibusProperties.getProperty(UpdateRetryLoggingService.RETRY_BACKOFF_CAP, anyString);
+            result = "60000";
+        }};
+
+        assertEquals(new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 + 4000), updateRetryLoggingService.computeNextAttempt(exponentialLeg, userMessageLog));
+
+        userMessageLog.setSendAttempts(8);
+        assertEquals(new Date(SYSTEM_DATE_IN_MILLIS_FIRST_OF_JANUARY_2016 + 60000), updateRetryLoggingService.computeNextAttempt(exponentialLeg, userMessageLog));
     }
 
     private static class SystemMockFirstOfJanuary2016 extends MockUp<System> {
@@ -8,6 +8,7 @@ import eu.domibus.api.pmode.PModeException;
 import eu.domibus.api.security.AuthUtils;
 import eu.domibus.common.ErrorCode;
 import eu.domibus.common.ErrorResult;
+import eu.domibus.common.DatabasePayloadDataSource;
 import eu.domibus.common.MSHRole;
 import eu.domibus.common.MessageStatus;
 import eu.domibus.common.dao.*;
@@ -38,14 +39,19 @@ import eu.domibus.plugin.Submission;
 import eu.domibus.plugin.transformer.impl.SubmissionAS4Transformer;
 import mockit.Expectations;
 import mockit.Injectable;
+import mockit.Mock;
+import mockit.MockUp;
 import mockit.Tested;
 import mockit.Verifications;
+import mockit.VerificationsInOrder;
 import mockit.integration.junit4.JMockit;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.security.access.AccessDeniedException;
 
+import javax.activation.DataHandler;
 import javax.jms.Queue;
 import javax.persistence.NoResultException;
 import java.io.IOException;
@@ -263,7 +269,7 @@ public class DatabaseMessageHandlerTest {
             pModeProvider.getLegConfiguration(anyString);
             compressionService.handleCompression(withAny(new UserMessage()), withAny(new LegConfiguration()));
             messagingService.storeMessage(withAny(new Messaging()), MSHRole.SENDING);
-            userMessageLogService.save(messageId, anyString, anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString);
+            userMessageLogService.save(messageId, anyString, anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString, anyString);
             userMessageService.scheduleSending(MESS_ID);
         }};
 
@@ -344,7 +350,7 @@ public class DatabaseMessageHandlerTest {
             assertEquals("bdx:noprocess", message.getCollaborationInfo().getService().getValue());
             messagingService.storeMessage(withAny(new Messaging()), MSHRole.SENDING);
             UserMessageLog userMessageLog;
-            userMessageLogService.save(messageId, MessageStatus.READY_TO_PULL.toString(), anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString);
+            userMessageLogService.save(messageId, MessageStatus.READY_TO_PULL.toString(), anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString, anyString);
             userMessageService.scheduleSending(MESS_ID);
             times = 0;
         }};
@@ -403,7 +409,7 @@ public class DatabaseMessageHandlerTest {
             pModeProvider.getLegConfiguration(anyString);
             compressionService.handleCompression(withAny(new UserMessage()), withAny(new LegConfiguration()));
             messagingService.storeMessage(withAny(new Messaging()), MSHRole.SENDING);
-            userMessageLogService.save(messageId, anyString, anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString);
+            userMessageLogService.save(messageId, anyString, anyString, MSHRole.SENDING.toString(), anyInt, anyString, anyString, anyString, anyString);
         }};
 
     }
@@ -1000,6 +1006,46 @@ public class DatabaseMessageHandlerTest {
 
     }
 
+    @Test
+    public void testDownloadMessageWithRetentionZeroKeepsThePayloadReadable(@Injectable final AttachmentDAO attachmentDAO) throws Exception {
+        final UserMessage userMessage = createUserMessage();
+        final PartInfo partInfo = userMessage.getPayloadInfo().getPartInfo().iterator().next();
+        final DatabasePayloadDataSource dataSource = new DatabasePayloadDataSource(1, "text/xml");
+        partInfo.setPayloadDatahandler(new DataHandler(dataSource));
+        new MockUp<DatabasePayloadDataSource>() {
+            @Mock
+            AttachmentDAO getAttachmentDAO() {
+                return attachmentDAO;
+            }
+        };
+
+        new Expectations() {{
+            authUtils.isUnsecureLoginAllowed();
+            result = true;
+
+            messagingDao.findUserMessageByMessageId(MESS_ID);
+            result = userMessage;
+
+            userMessageLogDao.findByMessageId(MESS_ID, MSHRole.RECEIVING);
+            result = new UserMessageLog();
+
+            pModeProvider.getRetentionDownloadedByMpcURI(userMessage.getMpc());
+            result = 0;
+
+            attachmentDAO.loadBinaryData(1);
+            result = "payload".getBytes();
+        }};
+
+        dmh.downloadMessage(MESS_ID);
+
+        assertEquals("payload", IOUtils.toString(partInfo.getPayloadDatahandler().getInputStream()));
+        new VerificationsInOrder() {{
+            attachmentDAO.loadBinaryData(1);
+            times = 1;
+            messagingDao.clearPayloadData(MESS_ID);
+        }};
+    }
+
     @Test
     public void testDownloadMessageOK_RetentionNonZero() throws Exception {
 
@@ -1200,4 +1246,27 @@ public class DatabaseMessageHandlerTest {
 
     }
 
+    @Test
+    public void testGetReceiverSelectsTheSmallestPartyIdOfTheReceiverParty() {
+        final UserMessage userMessage = new UserMessage();
+        userMessage.setPartyInfo(new PartyInfo());
+        userMessage.getPartyInfo().setTo(new To());
+        for (String value : new String[]{"a-other", "red_gw", "blue_gw"}) {
+            final PartyId partyId = new PartyId();
+            partyId.setValue(value);
+            userMessage.getPartyInfo().getTo().getPartyId().add(partyId);
+        }
+        final Party to = new Party();
+        for (String value : new String[]{"RED_GW", "Blue_Gw"}) {
+            final Identifier identifier = new Identifier();
+            identifier.setPartyId(value);
+            to.getIdentifiers().add(identifier);
+        }
+
+        assertEquals("BLUE_GW", dmh.getReceiver(userMessage, to));
+
+        to.getIdentifiers().clear();
+        assertEquals("A-OTHER", dmh.getReceiver(userMessage, to));
+    }
+
 }
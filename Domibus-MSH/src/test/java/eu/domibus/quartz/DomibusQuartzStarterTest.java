@@ -38,6 +38,9 @@ public class DomibusQuartzStarterTest {
     @Injectable
     private Scheduler scheduler;
 
+    @Injectable
+    private Scheduler nodeScheduler;
+
     @Before
     public void setUp() throws Exception {
         jobKeys.add(jobKey1);
@@ -113,4 +116,29 @@ public class DomibusQuartzStarterTest {
         }};
     }
 
-}
\ No newline at end of file
+    @Test
+    public void deleteNodeJobsFromScheduler_PersistedJob_JobDeleted() throws Exception {
+
+        new Expectations() {{
+            nodeScheduler.getJobGroupNames();
+            result = jobGroups;
+
+            nodeScheduler.getJobKeys(GroupMatcher.jobGroupEquals(groupName));
+            result = jobKeys;
+
+            scheduler.checkExists(jobKey1);
+            result = true;
+        }};
+
+        //tested method
+        domibusQuartzStarter.deleteNodeJobsFromScheduler();
+
+        new Verifications() {{
+            scheduler.deleteJob(jobKey1);
+            times = 1;
+            nodeScheduler.deleteJob((JobKey) any);
+            times = 0;
+        }};
+    }
+
+}
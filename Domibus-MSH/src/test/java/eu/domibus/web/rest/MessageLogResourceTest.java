@@ -4,11 +4,12 @@ import eu.domibus.api.util.DateUtil;
 import eu.domibus.common.MSHRole;
 import eu.domibus.common.MessageStatus;
 import eu.domibus.common.dao.SignalMessageLogDao;
-import eu.domibus.common.dao.UserMessageLogDao;
 import eu.domibus.common.model.logging.MessageLog;
 import eu.domibus.common.model.logging.MessageLogInfo;
+import eu.domibus.common.model.logging.MessageLogInfoPage;
 import eu.domibus.common.model.logging.SignalMessageLog;
 import eu.domibus.common.model.logging.UserMessageLog;
+import eu.domibus.common.services.MessagesLogService;
 import eu.domibus.ebms3.common.model.MessageType;
 import eu.domibus.web.rest.ro.MessageLogRO;
 import eu.domibus.web.rest.ro.MessageLogResultRO;
@@ -36,7 +37,7 @@ public class MessageLogResourceTest {
     MessageLogResource messageLogResource;
 
     @Injectable
-    UserMessageLogDao userMessageLogDao;
+    MessagesLogService messagesLogService;
 
     @Injectable
     SignalMessageLogDao signalMessageLogDao;
@@ -94,8 +95,8 @@ public class MessageLogResourceTest {
         final List<MessageLogInfo> resultList = new ArrayList<>();
         resultList.add(messageLogInfo);
         new Expectations() {{
-            userMessageLogDao.findAllInfoPaged(anyInt, anyInt, anyString, anyBoolean, (HashMap<String, Object>) any);
-            result = resultList;
+            messagesLogService.findUserMessageInfos(anyInt, anyInt, anyString, anyBoolean, (HashMap<String, Object>) any);
+            result = new MessageLogInfoPage(1, resultList);
         }};
 
         // When
@@ -21,10 +21,15 @@ import java.io.FileInputStream;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.Enumeration;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -54,12 +59,18 @@ public class CryptoServiceTest {
     @Mock
     private JmsOperations jmsOperations;
 
+    @Mock
+    private Executor executor;
+
     @Spy
     private Properties trustStoreProperties;
 
     @Spy
     private Properties keyStoreProperties;
 
+    @Spy
+    private Properties domibusProperties;
+
     @Before
     public void initMocks() {
         MockitoAnnotations.initMocks(this);
@@ -122,4 +133,46 @@ public class CryptoServiceTest {
         }
     }
 
+    @Test
+    public void testAddCertificate_SameCertificateTwice_SingleTruststoreWriteScheduled() throws Exception {
+        when(trustStoreProperties.getProperty(TRUSTSTORE_FILE_PROPERTY_NAME)).thenReturn(RESOURCE_PATH + NON_EMPTY_SOURCE_KEYSTORE);
+        when(trustStoreProperties.getProperty(TRUSTSTORE_PASSWORD_PROPERTY_NAME)).thenReturn(TRUSTSTORE_PASSWORD_PROPERTY_VALUE);
+        when(keyStoreProperties.getProperty(KEYSTORE_FILE_PROPERTY_NAME)).thenReturn(RESOURCE_PATH + GREEN_KEYSTORE);
+        when(keyStoreProperties.getProperty(KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD_PROPERTY_VALUE);
+        classUnderTest.setTrustStoreProperties(trustStoreProperties);
+        classUnderTest.setKeyStoreProperties(keyStoreProperties);
+
+        classUnderTest.setDomibusProperties(domibusProperties);
+        domibusProperties.setProperty(CryptoService.DYNAMIC_DISCOVERY_TRUSTSTORE_PERSIST, "true");
+
+        X509Certificate certificate = (X509Certificate) classUnderTest.getCertificateFromKeystore("green_gw");
+        String alias = "discovered_party";
+
+        assertTrue(classUnderTest.addCertificate(certificate, alias, true));
+        assertFalse(classUnderTest.addCertificate(certificate, alias, true));
+
+        assertEquals(certificate, classUnderTest.getTrustStore().getCertificate(alias));
+        assertEquals(certificate, classUnderTest.getDiscoveredCertificate(alias));
+        verify(executor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testAddCertificate_PersistenceDisabled_NoTruststoreWriteScheduled() throws Exception {
+        when(trustStoreProperties.getProperty(TRUSTSTORE_FILE_PROPERTY_NAME)).thenReturn(RESOURCE_PATH + NON_EMPTY_SOURCE_KEYSTORE);
+        when(trustStoreProperties.getProperty(TRUSTSTORE_PASSWORD_PROPERTY_NAME)).thenReturn(TRUSTSTORE_PASSWORD_PROPERTY_VALUE);
+        when(keyStoreProperties.getProperty(KEYSTORE_FILE_PROPERTY_NAME)).thenReturn(RESOURCE_PATH + GREEN_KEYSTORE);
+        when(keyStoreProperties.getProperty(KEYSTORE_PASSWORD)).thenReturn(KEYSTORE_PASSWORD_PROPERTY_VALUE);
+        classUnderTest.setTrustStoreProperties(trustStoreProperties);
+        classUnderTest.setKeyStoreProperties(keyStoreProperties);
+        classUnderTest.setDomibusProperties(domibusProperties);
+
+        X509Certificate certificate = (X509Certificate) classUnderTest.getCertificateFromKeystore("green_gw");
+        String alias = "discovered_party";
+
+        assertTrue(classUnderTest.addCertificate(certificate, alias, true));
+
+        assertEquals(certificate, classUnderTest.getTrustStore().getCertificate(alias));
+        verify(executor, times(0)).execute(any(Runnable.class));
+    }
+
 }
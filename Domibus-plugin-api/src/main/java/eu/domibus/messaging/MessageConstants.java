@@ -7,6 +7,7 @@ public class MessageConstants {
     public static final String MESSAGE_ID = "MESSAGE_ID";
     public static final String ENDPOINT = "ENDPOINT";
     public static final String DELAY = "DELAY";
+    public static final String SEND_LEASE = "SEND_LEASE";
     public static final String NOTIFICATION_TYPE = "NOTIFICATION_TYPE";
     public static final String ORIGINAL_SENDER = "originalSender";
     public static final String FINAL_RECIPIENT = "finalRecipient";